@@ -0,0 +1,222 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.asn1;
+
+import java.util.Vector;
+
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
+
+/**
+ * A constructed type whose encoding is deferred until it is used.
+ * <p>
+ * addComponent() only records the component. The encoding is produced the
+ * first time the bytes, value or length of the object are requested: the size
+ * of every pending component is computed once, a buffer of the final size is
+ * allocated, and the tags, lengths and values of this object and its pending
+ * constructed components are written into it in a single pass. Building an
+ * object from n components therefore copies each byte once, rather than
+ * re-encoding the value for every component added.
+ * <p>
+ * Components are held by reference until this object is encoded, so a
+ * component must not be modified after it has been added. Components added
+ * to an object that already has a value (e.g. one that was decoded) are
+ * appended to that value.
+ *
+ * @author tejohnson
+ */
+public abstract class ASN1ConstructedObject extends ASN1Object implements
+		ASN1ConstructedType {
+
+	/*
+	 * No field initializers; setValue() is called from the ASN1Object
+	 * constructors before they would run.
+	 */
+	// Value held before the first pending component, or null
+	private byte[] head;
+	// Pending components, or null once encoded
+	private Vector<ASN1Object> components;
+	// Size of the pending value, or -1 if not yet computed
+	private int valueSize;
+
+	public ASN1ConstructedObject() {
+		super();
+	}
+
+	/**
+	 * Constructor for ASN1ConstructedObject.
+	 * @param encoded ASN1Object
+	 */
+	public ASN1ConstructedObject(ASN1Object encoded) {
+		super(encoded);
+	}
+
+	/**
+	 * Constructor for ASN1ConstructedObject.
+	 * @param encoded byte[]
+	 * @throws TLVEncodingException
+	 */
+	public ASN1ConstructedObject(byte[] encoded) throws TLVEncodingException {
+		super(encoded);
+	}
+
+	/**
+	 * Method addComponent.
+	 * @param obj ASN1Object
+	 * @throws ASN1Exception
+	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(ASN1Object)
+	 */
+	@Override
+	public void addComponent(ASN1Object obj) throws ASN1Exception {
+		if (obj == null) {
+			throw new ASN1Exception("Component is null");
+		}
+		if (this.components == null) {
+			this.head = super.getValue();
+			this.components = new Vector<ASN1Object>();
+		}
+		this.components.add(obj);
+		this.valueSize = -1;
+	}
+
+	/**
+	 * Method addComponent.
+	 * @param encoded byte[]
+	 * @throws ASN1Exception
+	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(byte[])
+	 */
+	@Override
+	public void addComponent(byte[] encoded) throws ASN1Exception {
+		ASN1Object eobj = null;
+		try {
+			eobj = new ASN1Object(encoded);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		this.addComponent(eobj);
+	}
+
+	/**
+	 * Method setValue.
+	 *
+	 * Replaces the value, discarding any pending components.
+	 *
+	 * @param obj ASN1Object
+	 */
+	@Override
+	public void setValue(ASN1Object obj) {
+		this.head = null;
+		this.components = null;
+		super.setValue(obj);
+	}
+
+	/**
+	 * Method encodeDeferred.
+	 *
+	 * Encodes the pending components, if any.
+	 */
+	@Override
+	protected void encodeDeferred() {
+		if (this.components == null) {
+			return;
+		}
+		byte[] encoded = new byte[encodedSize()];
+		TLVWriter writer = new TLVWriter(encoded);
+		write(writer);
+		writer.finish();
+		TLVCursor cursor = new TLVCursor(encoded);
+		try {
+			cursor.next();
+		} catch (TLVEncodingException e) {
+			// Not reached; the encoding was just written
+			throw new IllegalStateException(e);
+		}
+		super.setValue(new ASN1Object(cursor));
+		this.head = null;
+		this.components = null;
+	}
+
+	/**
+	 * Method encodedSize.
+	 * @return int Size of the complete encoding
+	 */
+	private int encodedSize() {
+		if (this.components == null) {
+			byte[] encoded = super.getBytes();
+			return (encoded == null) ? 0 : encoded.length;
+		}
+		if (this.valueSize < 0) {
+			int size = (this.head == null) ? 0 : this.head.length;
+			for (ASN1Object obj : this.components) {
+				size += sizeOf(obj);
+			}
+			this.valueSize = size;
+		}
+		return TLVWriter.sizeOf(getTag().getBytes().length, this.valueSize);
+	}
+
+	/**
+	 * Method write.
+	 *
+	 * Writes the encoding, including pending constructed components, using
+	 * the sizes computed by encodedSize().
+	 *
+	 * @param writer TLVWriter
+	 */
+	private void write(TLVWriter writer) {
+		if (this.components == null) {
+			byte[] encoded = super.getBytes();
+			if (encoded != null) {
+				writer.putRaw(encoded, 0, encoded.length);
+			}
+			return;
+		}
+		writer.putHeader(getTag().getBytes(), this.valueSize);
+		if (this.head != null) {
+			writer.putRaw(this.head, 0, this.head.length);
+		}
+		for (ASN1Object obj : this.components) {
+			if (obj instanceof ASN1ConstructedObject) {
+				((ASN1ConstructedObject) obj).write(writer);
+			} else {
+				byte[] encoded = obj.getBytes();
+				if (encoded != null) {
+					writer.putRaw(encoded, 0, encoded.length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method sizeOf.
+	 * @param obj ASN1Object
+	 * @return int Size of the component's encoding, 0 if it has none
+	 */
+	private static int sizeOf(ASN1Object obj) {
+		if (obj instanceof ASN1ConstructedObject) {
+			return ((ASN1ConstructedObject) obj).encodedSize();
+		}
+		byte[] encoded = obj.getBytes();
+		return (encoded == null) ? 0 : encoded.length;
+	}
+
+}
@@ -29,6 +29,7 @@ import java.util.Vector;
 
 import org.keysupport.encoding.BERTLVFactory;
 import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
 import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 
@@ -47,10 +48,30 @@ public class ASN1Factory extends BERTLVFactory {
 	 */
 	public static Enumeration<ASN1Object> decodeASN1Object(byte[] value)
 			throws TLVEncodingException {
-		Enumeration<TLV> en = decodeTLV(value);
+		TLVCursor cursor = new TLVCursor(value);
 		Vector<ASN1Object> objs = new Vector<ASN1Object>();
-		while (en.hasMoreElements()) {
-			objs.add(new ASN1Object(en.nextElement().getBytes()));
+		while (cursor.next()) {
+			objs.add(new ASN1Object(cursor));
+		}
+		return objs.elements();
+	}
+
+	/**
+	 * Method decodeASN1Object.
+	 *
+	 * Decodes the elements of the value of a constructed object. The elements
+	 * refer to the buffer of the object, as with getValueCursor().
+	 *
+	 * @param obj ASN1Object
+	 * @return Enumeration<ASN1Object>
+	 * @throws TLVEncodingException
+	 */
+	public static Enumeration<ASN1Object> decodeASN1Object(ASN1Object obj)
+			throws TLVEncodingException {
+		TLVCursor cursor = obj.getValueCursor();
+		Vector<ASN1Object> objs = new Vector<ASN1Object>();
+		while (cursor.next()) {
+			objs.add(new ASN1Object(cursor));
 		}
 		return objs.elements();
 	}
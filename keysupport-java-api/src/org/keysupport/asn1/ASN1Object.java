@@ -24,10 +24,12 @@
 
 package org.keysupport.asn1;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import org.keysupport.encoding.BERTLVFactory;
 import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
 import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
@@ -42,6 +44,14 @@ public class ASN1Object implements Cloneable {
 
 	private byte[] TLV;
 
+	/*
+	 * When created from a TLVCursor, the encoding stays in the source buffer
+	 * and the arrays above are only copied out on first use.
+	 */
+	private byte[] src;
+	private int src_offset;
+	private int src_header;
+
 	public ASN1Object() {
 	}
 
@@ -50,10 +60,49 @@ public class ASN1Object implements Cloneable {
 	 * @param obj ASN1Object
 	 */
 	public ASN1Object(ASN1Object obj) {
-		this.tag = obj.getTag();
-		this.encoded_length = obj.getEncodedLength();
-		this.value = obj.getValue();
-		this.TLV = obj.getBytes();
+		setValue(obj);
+	}
+
+	/**
+	 * Constructor for ASN1Object.
+	 *
+	 * Creates an object backed by the current element of the cursor. No bytes
+	 * are copied until the encoded length, value, or full encoding is
+	 * requested, so the buffer must not be modified while this object is in
+	 * use. Indefinite length elements are re-encoded with a definite length.
+	 *
+	 * @param cursor TLVCursor positioned on an element
+	 */
+	public ASN1Object(TLVCursor cursor) {
+		this.tag = cursor.getTag();
+		this.length = cursor.getLength();
+		if (cursor.isIndefinite()) {
+			// Hold a definite length encoding, as decodeTLV always has
+			TLV definite = BERTLVFactory.encodeTLV(this.tag, cursor.getValue());
+			this.encoded_length = definite.getEncodedLength();
+			this.value = definite.getValue();
+			this.TLV = definite.getBytes();
+		} else {
+			this.src = cursor.getBuffer();
+			this.src_offset = cursor.getOffset();
+			this.src_header = cursor.getHeaderLength();
+		}
+	}
+
+	/**
+	 * Method firstElement.
+	 * @param encoded byte[]
+	 * @return TLVCursor positioned on the first element
+	 * @throws TLVEncodingException
+	 */
+	private static TLVCursor firstElement(byte[] encoded)
+			throws TLVEncodingException {
+		TLVCursor cursor = new TLVCursor(encoded);
+		if (!cursor.next()) {
+			throw new TLVEncodingException(
+					"Byte Array does not contain a TLV object");
+		}
+		return cursor;
 	}
 
 	/**
@@ -74,18 +123,7 @@ public class ASN1Object implements Cloneable {
 	 * @throws TLVEncodingException
 	 */
 	public ASN1Object(byte[] encoded) throws TLVEncodingException {
-		Enumeration<TLV> tlvs = BERTLVFactory.decodeTLV(encoded);
-		if (tlvs != null && tlvs.hasMoreElements()) {
-			// Initialize this TLV object
-			TLV tmp = tlvs.nextElement();
-			this.tag = tmp.getTag();
-			this.encoded_length = tmp.getEncodedLength();
-			this.value = tmp.getValue();
-			this.TLV = tmp.getBytes();
-		} else {
-			throw new TLVEncodingException(
-					"Byte Array does not contain a TLV object");
-		}
+		this(firstElement(encoded));
 	}
 
 	// Only a BERLTVFactory should create a TLV object.
@@ -115,6 +153,11 @@ public class ASN1Object implements Cloneable {
 	 * @return byte[]
 	 */
 	public byte[] getBytes() {
+		encodeDeferred();
+		if (this.TLV == null && this.src != null) {
+			this.TLV = Arrays.copyOfRange(this.src, this.src_offset,
+					this.src_offset + this.src_header + this.length);
+		}
 		return this.TLV;
 	}
 
@@ -123,7 +166,25 @@ public class ASN1Object implements Cloneable {
 	 * @return Enumeration<TLV>
 	 */
 	public Enumeration<TLV> getChildren() {
-		return BERTLVFactory.decodeTLV(this.value);
+		return BERTLVFactory.decodeTLV(getValue());
+	}
+
+	/**
+	 * Method getValueCursor.
+	 *
+	 * Returns a cursor over the elements of the value. For an object created
+	 * from a TLVCursor the cursor walks the source buffer, so the elements
+	 * obtained from it share that buffer and nothing is copied.
+	 *
+	 * @return TLVCursor
+	 */
+	public TLVCursor getValueCursor() {
+		encodeDeferred();
+		if (this.src != null) {
+			return new TLVCursor(this.src, this.src_offset + this.src_header,
+					this.length);
+		}
+		return new TLVCursor((this.value == null) ? new byte[0] : this.value);
 	}
 
 	/**
@@ -131,6 +192,12 @@ public class ASN1Object implements Cloneable {
 	 * @return byte[]
 	 */
 	public byte[] getEncodedLength() {
+		encodeDeferred();
+		if (this.encoded_length == null && this.src != null) {
+			this.encoded_length = Arrays.copyOfRange(this.src,
+					this.src_offset + this.tag.getBytes().length,
+					this.src_offset + this.src_header);
+		}
 		return this.encoded_length;
 	}
 
@@ -139,6 +206,10 @@ public class ASN1Object implements Cloneable {
 	 * @return int
 	 */
 	public int getLength() {
+		encodeDeferred();
+		if (this.src != null) {
+			return this.length;
+		}
 		return this.value.length;
 	}
 
@@ -155,9 +226,23 @@ public class ASN1Object implements Cloneable {
 	 * @return byte[]
 	 */
 	public byte[] getValue() {
+		encodeDeferred();
+		if (this.value == null && this.src != null) {
+			int voff = this.src_offset + this.src_header;
+			this.value = Arrays.copyOfRange(this.src, voff, voff + this.length);
+		}
 		return this.value;
 	}
 
+	/**
+	 * Method encodeDeferred.
+	 *
+	 * Called before the encoding is accessed, so that subclasses which defer
+	 * their encoding (see ASN1ConstructedObject) can produce it.
+	 */
+	protected void encodeDeferred() {
+	}
+
 	/**
 	 * Method isA.
 	 * @param otherTag Tag
@@ -172,10 +257,15 @@ public class ASN1Object implements Cloneable {
 	 * @param obj ASN1Object
 	 */
 	public void setValue(ASN1Object obj) {
+		obj.encodeDeferred();
 		this.tag = obj.getTag();
-		this.encoded_length = obj.getEncodedLength();
-		this.value = obj.getValue();
-		this.TLV = obj.getBytes();
+		this.encoded_length = obj.encoded_length;
+		this.length = obj.length;
+		this.value = obj.value;
+		this.TLV = obj.TLV;
+		this.src = obj.src;
+		this.src_offset = obj.src_offset;
+		this.src_header = obj.src_header;
 	}
 
 	/**
@@ -184,9 +274,10 @@ public class ASN1Object implements Cloneable {
 	 */
 	@Override
 	public String toString() {
+		encodeDeferred();
 		return "BER-TLV:\n" + "TAG Data:" + this.tag.toString() + "\n" + "LEN:"
 				+ this.length + "\n" + "VAL:"
-				+ DataUtil.byteArrayToString(this.value);
+				+ DataUtil.byteArrayToString(getValue());
 
 	}
 }
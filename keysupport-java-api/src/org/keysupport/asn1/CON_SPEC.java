@@ -24,9 +24,6 @@
 
 package org.keysupport.asn1;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 
@@ -35,7 +32,7 @@ import org.keysupport.encoding.Tag;
  * 
  * @version $Revision: 3 $
  */
-public class CON_SPEC extends ASN1Object implements ASN1ConstructedType {
+public class CON_SPEC extends ASN1ConstructedObject {
 
 	private byte E_TAG_VALUE = Tag.CLASS_CONTEXT_SPECIFIC
 			| Tag.TYPE_CONSTRUCTED;
@@ -106,54 +103,6 @@ public class CON_SPEC extends ASN1Object implements ASN1ConstructedType {
 		}
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.keysupport.asn1.ASN1ConstructedType#addComponent(org.keysupport.asn1
-	 * .ASN1Object)
-	 */
-	/**
-	 * Method addComponent.
-	 * @param obj ASN1Object
-	 * @throws ASN1Exception
-	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(ASN1Object)
-	 */
-	@Override
-	public void addComponent(ASN1Object obj) throws ASN1Exception {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		if (super.getValue() != null) {
-			try {
-				baos.write(super.getValue());
-			} catch (IOException e) {
-				throw new ASN1Exception(e);
-			}
-		}
-		try {
-			baos.write(obj.getBytes());
-		} catch (IOException e) {
-			throw new ASN1Exception(e);
-		}
-		super.setValue(ASN1Factory.encodeASN1Object(this.CON_SPEC,
-				baos.toByteArray()));
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(byte[])
-	 */
-	@Override
-	public void addComponent(byte[] encoded) throws ASN1Exception {
-		ASN1Object eobj = null;
-		try {
-			eobj = new ASN1Object(encoded);
-		} catch (TLVEncodingException e) {
-			throw new ASN1Exception(e);
-		}
-		this.addComponent(eobj);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 */
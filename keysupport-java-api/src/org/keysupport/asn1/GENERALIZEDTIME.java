@@ -0,0 +1,112 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.asn1;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
+
+/**
+ * A GeneralizedTime, encoded in UTC as YYYYMMDDHHMMSSZ per X.690 (DER).
+ * Fractional seconds are accepted when decoding, and discarded.
+ *
+ * @author tejohnson
+ */
+public class GENERALIZEDTIME extends ASN1Object implements ASN1UniversalClass {
+
+	private final Tag GENERALIZEDTIME = new Tag(Tag.GENERALIZEDTIME);
+
+	private final static TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	/**
+	 * Constructor for GENERALIZEDTIME.
+	 * @param encoded ASN1Object
+	 */
+	public GENERALIZEDTIME(ASN1Object encoded) {
+		super(encoded);
+	}
+
+	/**
+	 * Constructor for GENERALIZEDTIME.
+	 * @param encoded byte[]
+	 * @throws TLVEncodingException
+	 */
+	public GENERALIZEDTIME(byte[] encoded) throws TLVEncodingException {
+		super(encoded);
+	}
+
+	/**
+	 * Constructor for GENERALIZEDTIME.
+	 * @param value Date
+	 */
+	public GENERALIZEDTIME(Date value) {
+		super();
+		Calendar c = new GregorianCalendar(UTC);
+		c.setTime(value);
+		String s = String.format("%04d%02d%02d%02d%02d%02dZ",
+				c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1,
+				c.get(Calendar.DAY_OF_MONTH), c.get(Calendar.HOUR_OF_DAY),
+				c.get(Calendar.MINUTE), c.get(Calendar.SECOND));
+		super.setValue(ASN1Factory.encodeASN1Object(this.GENERALIZEDTIME,
+				s.getBytes()));
+	}
+
+	/**
+	 * Method getDate.
+	 * @return Date
+	 * @throws ASN1Exception If the value is not a UTC GeneralizedTime
+	 */
+	public Date getDate() throws ASN1Exception {
+		String s = new String(super.getValue());
+		if (s.length() < 15 || s.charAt(s.length() - 1) != 'Z') {
+			throw new ASN1Exception("Invalid GeneralizedTime: " + s);
+		}
+		Calendar c = new GregorianCalendar(UTC);
+		c.clear();
+		try {
+			c.set(Integer.parseInt(s.substring(0, 4)),
+					Integer.parseInt(s.substring(4, 6)) - 1,
+					Integer.parseInt(s.substring(6, 8)),
+					Integer.parseInt(s.substring(8, 10)),
+					Integer.parseInt(s.substring(10, 12)),
+					Integer.parseInt(s.substring(12, 14)));
+		} catch (NumberFormatException e) {
+			throw new ASN1Exception("Invalid GeneralizedTime: " + s);
+		}
+		return c.getTime();
+	}
+
+	/**
+	 * Method isA.
+	 * @param tag Tag
+	 * @return boolean
+	 * @see org.keysupport.asn1.ASN1UniversalClass#isA(Tag)
+	 */
+	@Override
+	public boolean isA(Tag tag) {
+		return tag.equals(this.GENERALIZEDTIME);
+	}
+
+}
@@ -24,15 +24,12 @@
 
 package org.keysupport.asn1;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 
 /**
  */
-public class SET extends ASN1Object implements ASN1ConstructedType {
+public class SET extends ASN1ConstructedObject {
 
 	public final Tag SET = new Tag(Tag.SET);
 
@@ -58,50 +55,6 @@ public class SET extends ASN1Object implements ASN1ConstructedType {
 		super(encoded);
 	}
 
-	/**
-	 * Method addComponent.
-	 * @param obj ASN1Object
-	 * @throws ASN1Exception
-	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(ASN1Object)
-	 */
-	@Override
-	public void addComponent(ASN1Object obj) throws ASN1Exception {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		if (super.getValue() != null) {
-			try {
-				baos.write(super.getValue());
-			} catch (IOException e) {
-				throw new ASN1Exception(e);
-			}
-		}
-		if (obj.getBytes() != null) { 
-			try {
-				baos.write(obj.getBytes());
-			} catch (IOException e) {
-				throw new ASN1Exception(e);
-			}
-		}
-		super.setValue(ASN1Factory.encodeASN1Object(new Tag(Tag.SET),
-				baos.toByteArray()));
-	}
-
-	/**
-	 * Method addComponent.
-	 * @param encoded byte[]
-	 * @throws ASN1Exception
-	 * @see org.keysupport.asn1.ASN1ConstructedType#addComponent(byte[])
-	 */
-	@Override
-	public void addComponent(byte[] encoded) throws ASN1Exception {
-		ASN1Object eobj = null;
-		try {
-			eobj = new ASN1Object(encoded);
-		} catch (TLVEncodingException e) {
-			throw new ASN1Exception(e);
-		}
-		this.addComponent(eobj);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -24,6 +24,7 @@
 
 package org.keysupport.encoding;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import org.keysupport.util.DataUtil;
@@ -39,6 +40,14 @@ public class TLV {
 
 	private byte[] TLV;
 
+	/*
+	 * When created from a TLVCursor, the encoding stays in the source buffer
+	 * and the arrays above are only copied out on first use.
+	 */
+	private byte[] src;
+	private int src_offset;
+	private int src_header;
+
 	/*
 	 * Creates a TLV object using BERLTVFactory assuming the Byte array contains
 	 * only one TLV. Otherwise, only the first TLV object will be used for this
@@ -57,18 +66,7 @@ public class TLV {
 	 * @throws TLVEncodingException
 	 */
 	public TLV(byte[] encoded) throws TLVEncodingException {
-		Enumeration<TLV> tlvs = BERTLVFactory.decodeTLV(encoded);
-		if (tlvs != null && tlvs.hasMoreElements()) {
-			// Initialize this TLV object
-			TLV tmp = tlvs.nextElement();
-			this.tag = tmp.getTag();
-			this.encoded_length = tmp.getEncodedLength();
-			this.value = tmp.getValue();
-			this.TLV = tmp.getBytes();
-		} else {
-			throw new TLVEncodingException(
-					"Byte Array does not contain a TLV object");
-		}
+		this(firstElement(encoded));
 	}
 
 	// Only a BERLTVFactory should create a TLV object.
@@ -92,11 +90,57 @@ public class TLV {
 		}
 	}
 
+	/**
+	 * Constructor for TLV.
+	 *
+	 * Creates a TLV backed by the current element of the cursor. No bytes are
+	 * copied until the encoded length, value, or full encoding is requested,
+	 * so the buffer must not be modified while the TLV is in use. Indefinite
+	 * length elements are re-encoded with a definite length.
+	 *
+	 * @param cursor TLVCursor positioned on an element
+	 */
+	public TLV(TLVCursor cursor) {
+		this.tag = cursor.getTag();
+		this.length = cursor.getLength();
+		if (cursor.isIndefinite()) {
+			// Hold a definite length encoding, as decodeTLV always has
+			TLV definite = BERTLVFactory.encodeTLV(this.tag, cursor.getValue());
+			this.encoded_length = definite.getEncodedLength();
+			this.value = definite.getValue();
+			this.TLV = definite.getBytes();
+		} else {
+			this.src = cursor.getBuffer();
+			this.src_offset = cursor.getOffset();
+			this.src_header = cursor.getHeaderLength();
+		}
+	}
+
+	/**
+	 * Method firstElement.
+	 * @param encoded byte[]
+	 * @return TLVCursor positioned on the first element
+	 * @throws TLVEncodingException
+	 */
+	private static TLVCursor firstElement(byte[] encoded)
+			throws TLVEncodingException {
+		TLVCursor cursor = new TLVCursor(encoded);
+		if (!cursor.next()) {
+			throw new TLVEncodingException(
+					"Byte Array does not contain a TLV object");
+		}
+		return cursor;
+	}
+
 	/**
 	 * Method getBytes.
 	 * @return byte[]
 	 */
 	public byte[] getBytes() {
+		if (this.TLV == null && this.src != null) {
+			this.TLV = Arrays.copyOfRange(this.src, this.src_offset,
+					this.src_offset + this.src_header + this.length);
+		}
 		return this.TLV;
 	}
 
@@ -105,7 +149,7 @@ public class TLV {
 	 * @return Enumeration<TLV>
 	 */
 	public Enumeration<TLV> getChildren() {
-		return BERTLVFactory.decodeTLV(this.value);
+		return BERTLVFactory.decodeTLV(getValue());
 	}
 
 	/**
@@ -113,6 +157,11 @@ public class TLV {
 	 * @return byte[]
 	 */
 	public byte[] getEncodedLength() {
+		if (this.encoded_length == null && this.src != null) {
+			this.encoded_length = Arrays.copyOfRange(this.src,
+					this.src_offset + this.tag.getBytes().length,
+					this.src_offset + this.src_header);
+		}
 		return this.encoded_length;
 	}
 
@@ -121,6 +170,9 @@ public class TLV {
 	 * @return int
 	 */
 	public int getLength() {
+		if (this.src != null) {
+			return this.length;
+		}
 		return this.value.length;
 	}
 
@@ -137,6 +189,10 @@ public class TLV {
 	 * @return byte[]
 	 */
 	public byte[] getValue() {
+		if (this.value == null && this.src != null) {
+			int voff = this.src_offset + this.src_header;
+			this.value = Arrays.copyOfRange(this.src, voff, voff + this.length);
+		}
 		return this.value;
 	}
 
@@ -148,7 +204,7 @@ public class TLV {
 	public String toString() {
 		return "BER-TLV:\n" + "TAG Data:" + this.tag.toString() + "\n" + "LEN:"
 				+ this.length + "\n" + "VAL:"
-				+ DataUtil.byteArrayToString(this.value);
+				+ DataUtil.byteArrayToString(getValue());
 
 	}
 
@@ -0,0 +1,465 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A forward-only cursor over a run of sibling BER-TLV elements.
+ * <p>
+ * Unlike BERTLVFactory.decodeTLV, the cursor never copies the input. Each call
+ * to next() parses the header of the following element in place and exposes
+ * the tag, length and value as offsets into the original buffer. Children of a
+ * constructed element are walked with getChildren(), which returns a cursor
+ * over the same buffer.
+ * <p>
+ * Only the accessors documented as copying (getTag, getTagBytes,
+ * getEncodedLength, getValue and getBytes) allocate.
+ * <p>
+ * Indefinite length elements are supported. The end of such an element is
+ * found with a single forward scan that tracks nesting depth, so decoding
+ * remains linear in the size of the input.
+ *
+ * @author tejohnson
+ */
+public class TLVCursor {
+
+	private final byte[] buf;
+	private final int start;
+	private final int end;
+
+	private int next;
+	private int tagOffset = -1;
+	private int tagLength;
+	private int valueOffset;
+	private int valueLength;
+	private boolean indefinite;
+
+	/**
+	 * Constructor for TLVCursor.
+	 * @param buf byte[] containing one or more encoded TLV objects
+	 */
+	public TLVCursor(byte[] buf) {
+		this(buf, 0, buf.length);
+	}
+
+	/**
+	 * Constructor for TLVCursor.
+	 * @param buf byte[]
+	 * @param offset int offset of the first element
+	 * @param length int number of bytes to walk
+	 */
+	public TLVCursor(byte[] buf, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException("offset=" + offset
+					+ " length=" + length + " buffer=" + buf.length);
+		}
+		this.buf = buf;
+		this.start = offset;
+		this.end = offset + length;
+		this.next = offset;
+	}
+
+	/**
+	 * Method wrap.
+	 *
+	 * Creates a cursor over the remaining bytes of an array backed ByteBuffer.
+	 * The position of the buffer is not modified.
+	 *
+	 * @param bb ByteBuffer
+	 * @return TLVCursor
+	 */
+	public static TLVCursor wrap(ByteBuffer bb) {
+		if (!bb.hasArray()) {
+			throw new IllegalArgumentException(
+					"TLVCursor requires an array backed ByteBuffer");
+		}
+		return new TLVCursor(bb.array(), bb.arrayOffset() + bb.position(),
+				bb.remaining());
+	}
+
+	/**
+	 * Method hasNext.
+	 * @return boolean True if there are bytes remaining after the current
+	 *         element
+	 */
+	public boolean hasNext() {
+		return this.next < this.end;
+	}
+
+	/**
+	 * Advance to the next sibling element.
+	 *
+	 * @return boolean False if there are no elements remaining
+	 * @throws TLVEncodingException
+	 *             if the element is truncated or malformed
+	 */
+	public boolean next() throws TLVEncodingException {
+		if (this.next >= this.end) {
+			this.tagOffset = -1;
+			return false;
+		}
+		int index = this.next;
+
+		// Parse the tag
+		if ((this.buf[index++] & 0x1f) == 0x1f) {
+			do {
+				if (index >= this.end) {
+					throw new TLVEncodingException("Truncated tag at offset "
+							+ this.next);
+				}
+			} while ((this.buf[index++] & 0x80) == 0x80);
+		}
+		int tlen = index - this.next;
+
+		// Parse the length
+		if (index >= this.end) {
+			throw new TLVEncodingException("Missing length at offset "
+					+ this.next);
+		}
+		int first = this.buf[index++] & 0xff;
+		int length;
+		int following;
+		if (first == 0x80) {
+			if ((this.buf[this.next] & Tag.TYPE_CONSTRUCTED) != Tag.TYPE_CONSTRUCTED) {
+				throw new TLVEncodingException(
+						"Indefinite length on a primitive tag at offset "
+								+ this.next);
+			}
+			int eoc = findEndOfContents(this.buf, index, this.end);
+			length = eoc - index;
+			following = eoc + 2;
+			this.indefinite = true;
+		} else {
+			length = readLength(this.buf, index - 1, this.end, this.next);
+			if (first > 0x80) {
+				index += first & 0x7f;
+			}
+			following = index + length;
+			this.indefinite = false;
+		}
+
+		this.tagOffset = this.next;
+		this.tagLength = tlen;
+		this.valueOffset = index;
+		this.valueLength = length;
+		this.next = following;
+		return true;
+	}
+
+	/**
+	 * Method readLength.
+	 *
+	 * Decodes a definite length beginning at index.
+	 *
+	 * @param buf byte[]
+	 * @param index int offset of the first length octet
+	 * @param end int
+	 * @param element int offset of the element, for error messages
+	 * @return int
+	 * @throws TLVEncodingException
+	 */
+	private static int readLength(byte[] buf, int index, int end, int element)
+			throws TLVEncodingException {
+		int first = buf[index++] & 0xff;
+		int length;
+		if (first < 0x80) {
+			length = first;
+		} else {
+			int num = first & 0x7f;
+			if (num > 4 || index + num > end) {
+				throw new TLVEncodingException("Bad length encoding at offset "
+						+ element);
+			}
+			length = 0;
+			for (int i = 0; i < num; i++) {
+				length = (length << 8) | (buf[index++] & 0xff);
+			}
+			if (length < 0) {
+				throw new TLVEncodingException("Length overflow at offset "
+						+ element);
+			}
+		}
+		if (length > end - index) {
+			throw new TLVEncodingException("Value exceeds buffer at offset "
+					+ element + ": " + length + " bytes");
+		}
+		return length;
+	}
+
+	/**
+	 * Method findEndOfContents.
+	 *
+	 * Walks forward over the contents of an indefinite length element,
+	 * skipping definite length children by their length and counting nested
+	 * indefinite length children, until the matching 00 00 is found. Each byte
+	 * is visited at most once.
+	 *
+	 * @param buf byte[]
+	 * @param index int offset of the first content octet
+	 * @param end int
+	 * @return int Offset of the end-of-contents octets
+	 * @throws TLVEncodingException
+	 */
+	private static int findEndOfContents(byte[] buf, int index, int end)
+			throws TLVEncodingException {
+		int start = index;
+		int depth = 1;
+		while (index < end) {
+			int element = index;
+			if (buf[index] == 0x00) {
+				if (index + 1 >= end || buf[index + 1] != 0x00) {
+					throw new TLVEncodingException(
+							"Malformed end-of-contents at offset " + index);
+				}
+				if (--depth == 0) {
+					return index;
+				}
+				index += 2;
+				continue;
+			}
+			if ((buf[index++] & 0x1f) == 0x1f) {
+				do {
+					if (index >= end) {
+						throw new TLVEncodingException(
+								"Truncated tag at offset " + element);
+					}
+				} while ((buf[index++] & 0x80) == 0x80);
+			}
+			if (index >= end) {
+				throw new TLVEncodingException("Missing length at offset "
+						+ element);
+			}
+			int first = buf[index] & 0xff;
+			if (first == 0x80) {
+				if ((buf[element] & Tag.TYPE_CONSTRUCTED) != Tag.TYPE_CONSTRUCTED) {
+					throw new TLVEncodingException(
+							"Indefinite length on a primitive tag at offset "
+									+ element);
+				}
+				depth++;
+				index++;
+				continue;
+			}
+			int length = readLength(buf, index, end, element);
+			index += ((first < 0x80) ? 1 : 1 + (first & 0x7f)) + length;
+		}
+		throw new TLVEncodingException(
+				"Missing end-of-contents for element at offset " + (start - 2));
+	}
+
+	/**
+	 * Rewind the cursor to the first element.
+	 */
+	public void reset() {
+		this.next = this.start;
+		this.tagOffset = -1;
+	}
+
+	/**
+	 * Method getBuffer.
+	 * @return byte[] The underlying buffer, not a copy
+	 */
+	public byte[] getBuffer() {
+		return this.buf;
+	}
+
+	/**
+	 * Method getOffset.
+	 * @return int Offset of the current element (its first tag byte)
+	 */
+	public int getOffset() {
+		checkCurrent();
+		return this.tagOffset;
+	}
+
+	/**
+	 * Method getTagLength.
+	 * @return int Number of identifier octets in the current element
+	 */
+	public int getTagLength() {
+		checkCurrent();
+		return this.tagLength;
+	}
+
+	/**
+	 * Method getTagByte.
+	 * @return byte The first identifier octet of the current element
+	 */
+	public byte getTagByte() {
+		checkCurrent();
+		return this.buf[this.tagOffset];
+	}
+
+	/**
+	 * Method isConstructed.
+	 * @return boolean True if the current element is constructed
+	 */
+	public boolean isConstructed() {
+		checkCurrent();
+		return (this.buf[this.tagOffset] & Tag.TYPE_CONSTRUCTED) == Tag.TYPE_CONSTRUCTED;
+	}
+
+	/**
+	 * Method tagEquals.
+	 * @param tag byte
+	 * @return boolean True if the current element has the single byte tag
+	 */
+	public boolean tagEquals(byte tag) {
+		checkCurrent();
+		return this.tagLength == 1 && this.buf[this.tagOffset] == tag;
+	}
+
+	/**
+	 * Method tagEquals.
+	 * @param tag byte[]
+	 * @return boolean True if the current element has the given tag
+	 */
+	public boolean tagEquals(byte[] tag) {
+		checkCurrent();
+		if (this.tagLength != tag.length) {
+			return false;
+		}
+		for (int i = 0; i < tag.length; i++) {
+			if (this.buf[this.tagOffset + i] != tag[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method isIndefinite.
+	 * @return boolean True if the current element uses the indefinite length
+	 *         form. The value then excludes the end-of-contents octets.
+	 */
+	public boolean isIndefinite() {
+		checkCurrent();
+		return this.indefinite;
+	}
+
+	/**
+	 * Method getLength.
+	 * @return int Length of the value of the current element
+	 */
+	public int getLength() {
+		checkCurrent();
+		return this.valueLength;
+	}
+
+	/**
+	 * Method getValueOffset.
+	 * @return int Offset of the value of the current element
+	 */
+	public int getValueOffset() {
+		checkCurrent();
+		return this.valueOffset;
+	}
+
+	/**
+	 * Method getHeaderLength.
+	 * @return int Number of tag and length octets in the current element
+	 */
+	public int getHeaderLength() {
+		checkCurrent();
+		return this.valueOffset - this.tagOffset;
+	}
+
+	/**
+	 * Method getElementLength.
+	 * @return int Length of the complete current element
+	 */
+	public int getElementLength() {
+		checkCurrent();
+		return this.next - this.tagOffset;
+	}
+
+	/**
+	 * Method getChildren.
+	 * @return TLVCursor A cursor over the value of the current element
+	 */
+	public TLVCursor getChildren() {
+		checkCurrent();
+		return new TLVCursor(this.buf, this.valueOffset, this.valueLength);
+	}
+
+	/**
+	 * Method getTag. (copies)
+	 * @return Tag
+	 */
+	public Tag getTag() {
+		return new Tag(getTagBytes());
+	}
+
+	/**
+	 * Method getTagBytes. (copies)
+	 * @return byte[]
+	 */
+	public byte[] getTagBytes() {
+		checkCurrent();
+		return Arrays.copyOfRange(this.buf, this.tagOffset, this.tagOffset
+				+ this.tagLength);
+	}
+
+	/**
+	 * Method getEncodedLength. (copies)
+	 *
+	 * Returns all of the length octets, including the 0x8n prefix of a long
+	 * form length, matching what BERTLVFactory.encodeTLV produces.
+	 *
+	 * @return byte[]
+	 */
+	public byte[] getEncodedLength() {
+		checkCurrent();
+		return Arrays.copyOfRange(this.buf, this.tagOffset + this.tagLength,
+				this.valueOffset);
+	}
+
+	/**
+	 * Method getValue. (copies)
+	 * @return byte[]
+	 */
+	public byte[] getValue() {
+		checkCurrent();
+		return Arrays.copyOfRange(this.buf, this.valueOffset, this.valueOffset
+				+ this.valueLength);
+	}
+
+	/**
+	 * Method getBytes. (copies)
+	 * @return byte[] The complete encoding of the current element
+	 */
+	public byte[] getBytes() {
+		checkCurrent();
+		return Arrays.copyOfRange(this.buf, this.tagOffset, this.next);
+	}
+
+	/**
+	 * Method checkCurrent.
+	 */
+	private void checkCurrent() {
+		if (this.tagOffset < 0) {
+			throw new IllegalStateException("No current element");
+		}
+	}
+
+}
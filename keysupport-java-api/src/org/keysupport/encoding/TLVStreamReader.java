@@ -0,0 +1,455 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A pull parser for BER-TLV encoded data read from a stream.
+ * <p>
+ * Each call to next() returns one event:
+ *
+ * <pre>
+ * START_ELEMENT  the tag and length of an element have been read
+ * VALUE          a chunk of the current element's value is available
+ * END_ELEMENT    the current element is complete
+ * END_OF_STREAM  the stream ended between top level elements
+ * </pre>
+ *
+ * The value of an element is delivered in chunks no larger than the chunk
+ * size, so memory use is bounded regardless of the size of the object. The
+ * reader does not descend into an element unless enter() is called after its
+ * START_ELEMENT event; several PIV tags (e.g. 0x70, 0xBC) have the constructed
+ * bit set but carry raw data. Elements with an indefinite length must be
+ * entered, and end at their 00 00 end-of-contents marker.
+ *
+ * @author tejohnson
+ */
+public class TLVStreamReader {
+
+	public final static int START_ELEMENT = 1;
+	public final static int VALUE = 2;
+	public final static int END_ELEMENT = 3;
+	public final static int END_OF_STREAM = 4;
+
+	private final static int DEFAULT_CHUNK_SIZE = 1024;
+	// Largest value readValue() allocates; PIV containers are well below it
+	private final static int DEFAULT_MAX_VALUE_SIZE = 65536;
+	private final static long INDEFINITE = -1;
+
+	private final InputStream in;
+	private final byte[] chunk;
+	private int chunkLength;
+
+	// Number of bytes consumed from the stream
+	private long pos = 0;
+
+	// One frame per open element: absolute end of its value (or INDEFINITE),
+	// and whether its value is being read as children.
+	private long[] end = new long[8];
+	private boolean[] entered = new boolean[8];
+	private int depth = 0;
+	private boolean started = false;
+
+	private final byte[] tag = new byte[8];
+	private int tagLength;
+	private long length;
+
+	/**
+	 * Constructor for TLVStreamReader.
+	 * @param in InputStream
+	 */
+	public TLVStreamReader(InputStream in) {
+		this(in, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructor for TLVStreamReader.
+	 * @param in InputStream
+	 * @param chunkSize int maximum number of value bytes per VALUE event
+	 */
+	public TLVStreamReader(InputStream in, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size: "
+					+ chunkSize);
+		}
+		this.in = in;
+		this.chunk = new byte[chunkSize];
+	}
+
+	/**
+	 * Constructor for TLVStreamReader.
+	 * @param channel ReadableByteChannel
+	 */
+	public TLVStreamReader(ReadableByteChannel channel) {
+		this(Channels.newInputStream(channel), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Method next.
+	 * @return int The next event
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	public int next() throws IOException, TLVEncodingException {
+		this.chunkLength = 0;
+		this.started = false;
+		if (this.depth > 0 && !this.entered[this.depth - 1]) {
+			return nextValue();
+		}
+		if (this.depth > 0) {
+			long parentEnd = this.end[this.depth - 1];
+			if (parentEnd != INDEFINITE && this.pos >= parentEnd) {
+				this.depth--;
+				return END_ELEMENT;
+			}
+		}
+
+		// Parse the tag
+		int b = this.in.read();
+		if (b < 0) {
+			if (this.depth == 0) {
+				return END_OF_STREAM;
+			}
+			throw new TLVEncodingException("Unexpected end of stream at offset "
+					+ this.pos);
+		}
+		this.pos++;
+		if (b == 0x00 && this.depth > 0
+				&& this.end[this.depth - 1] == INDEFINITE) {
+			if (readByte() != 0x00) {
+				throw new TLVEncodingException(
+						"Malformed end-of-contents at offset " + (this.pos - 2));
+			}
+			this.depth--;
+			return END_ELEMENT;
+		}
+		this.tagLength = 0;
+		this.tag[this.tagLength++] = (byte) b;
+		if ((b & 0x1f) == 0x1f) {
+			do {
+				if (this.tagLength == this.tag.length) {
+					throw new TLVEncodingException("Tag too long at offset "
+							+ this.pos);
+				}
+				b = readByte();
+				this.tag[this.tagLength++] = (byte) b;
+			} while ((b & 0x80) == 0x80);
+		}
+
+		// Parse the length
+		int first = readByte();
+		if (first < 0x80) {
+			this.length = first;
+		} else if (first == 0x80) {
+			if ((this.tag[0] & Tag.TYPE_CONSTRUCTED) != Tag.TYPE_CONSTRUCTED) {
+				throw new TLVEncodingException(
+						"Indefinite length on a primitive tag at offset "
+								+ this.pos);
+			}
+			this.length = INDEFINITE;
+		} else {
+			int num = first & 0x7f;
+			if (num > 4) {
+				throw new TLVEncodingException("Bad length encoding at offset "
+						+ this.pos);
+			}
+			long len = 0;
+			for (int i = 0; i < num; i++) {
+				len = (len << 8) | readByte();
+			}
+			this.length = len;
+		}
+
+		long valueEnd = (this.length == INDEFINITE) ? INDEFINITE : this.pos
+				+ this.length;
+		if (this.depth > 0) {
+			long parentEnd = this.end[this.depth - 1];
+			if (parentEnd != INDEFINITE
+					&& (valueEnd == INDEFINITE || valueEnd > parentEnd)) {
+				throw new TLVEncodingException("Element at offset " + this.pos
+						+ " exceeds its parent");
+			}
+		}
+		push(valueEnd);
+		this.started = true;
+		return START_ELEMENT;
+	}
+
+	/**
+	 * Method nextValue.
+	 * @return int
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	private int nextValue() throws IOException, TLVEncodingException {
+		long valueEnd = this.end[this.depth - 1];
+		if (valueEnd == INDEFINITE) {
+			throw new TLVEncodingException(
+					"Indefinite length element must be entered");
+		}
+		long remaining = valueEnd - this.pos;
+		if (remaining <= 0) {
+			this.depth--;
+			return END_ELEMENT;
+		}
+		int want = (int) Math.min(remaining, this.chunk.length);
+		int read = this.in.read(this.chunk, 0, want);
+		if (read < 0) {
+			throw new TLVEncodingException("Unexpected end of stream at offset "
+					+ this.pos);
+		}
+		this.pos += read;
+		this.chunkLength = read;
+		return VALUE;
+	}
+
+	/**
+	 * Method enter.
+	 *
+	 * Read the value of the element just started as a series of child
+	 * elements. Must be called immediately after a START_ELEMENT event.
+	 */
+	public void enter() {
+		if (!this.started) {
+			throw new IllegalStateException("enter() must follow START_ELEMENT");
+		}
+		this.entered[this.depth - 1] = true;
+		this.started = false;
+	}
+
+	/**
+	 * Method readValue.
+	 *
+	 * Reads the complete value of the element just started. The following
+	 * call to next() returns END_ELEMENT. Only use this for elements known to
+	 * be small; values larger than 64K are rejected.
+	 *
+	 * @return byte[]
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	public byte[] readValue() throws IOException, TLVEncodingException {
+		return readValue(DEFAULT_MAX_VALUE_SIZE);
+	}
+
+	/**
+	 * Method readValue.
+	 *
+	 * Reads the complete value of the element just started, if its length
+	 * is no more than maxLength. The length is checked before the value is
+	 * allocated, so a bad length from the stream cannot exhaust memory.
+	 *
+	 * @param maxLength int Largest value accepted
+	 * @return byte[]
+	 * @throws IOException
+	 * @throws TLVEncodingException If the value is longer than maxLength
+	 */
+	public byte[] readValue(int maxLength) throws IOException,
+			TLVEncodingException {
+		if (!this.started) {
+			throw new IllegalStateException(
+					"readValue() must follow START_ELEMENT");
+		}
+		if (this.length == INDEFINITE) {
+			throw new TLVEncodingException(
+					"Indefinite length element must be entered");
+		}
+		if (this.length > maxLength) {
+			throw new TLVEncodingException("Value of " + this.length
+					+ " bytes at offset " + this.pos + " exceeds " + maxLength);
+		}
+		this.started = false;
+		byte[] value = new byte[(int) this.length];
+		int off = 0;
+		while (off < value.length) {
+			int read = this.in.read(value, off, value.length - off);
+			if (read < 0) {
+				throw new TLVEncodingException(
+						"Unexpected end of stream at offset " + this.pos);
+			}
+			off += read;
+			this.pos += read;
+		}
+		return value;
+	}
+
+	/**
+	 * Method skipValue.
+	 *
+	 * Discards the rest of the current element. The following call to next()
+	 * returns its END_ELEMENT.
+	 *
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	public void skipValue() throws IOException, TLVEncodingException {
+		if (this.depth == 0) {
+			throw new IllegalStateException("No current element");
+		}
+		this.started = false;
+		int d = this.depth;
+		if (this.end[d - 1] == INDEFINITE) {
+			this.entered[d - 1] = true;
+			while (this.depth >= d) {
+				int event = next();
+				if (event == START_ELEMENT) {
+					skipValue();
+				} else if (event == END_ELEMENT && this.depth < d) {
+					// Leave the END_ELEMENT for the caller
+					push(this.pos);
+					return;
+				}
+			}
+			return;
+		}
+		long remaining = this.end[d - 1] - this.pos;
+		while (remaining > 0) {
+			long skipped = this.in.skip(remaining);
+			if (skipped <= 0) {
+				if (this.in.read() < 0) {
+					throw new TLVEncodingException(
+							"Unexpected end of stream at offset " + this.pos);
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+			this.pos += skipped;
+		}
+		this.entered[d - 1] = false;
+	}
+
+	/**
+	 * Method push.
+	 * @param valueEnd long
+	 */
+	private void push(long valueEnd) {
+		if (this.depth == this.end.length) {
+			this.end = Arrays.copyOf(this.end, this.depth * 2);
+			this.entered = Arrays.copyOf(this.entered, this.depth * 2);
+		}
+		this.end[this.depth] = valueEnd;
+		this.entered[this.depth] = false;
+		this.depth++;
+	}
+
+	/**
+	 * Method readByte.
+	 * @return int
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	private int readByte() throws IOException, TLVEncodingException {
+		int b = this.in.read();
+		if (b < 0) {
+			throw new TLVEncodingException("Unexpected end of stream at offset "
+					+ this.pos);
+		}
+		this.pos++;
+		return b;
+	}
+
+	/**
+	 * Method getDepth.
+	 * @return int Number of open elements, including the current one
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Method getTag. (copies)
+	 * @return Tag The tag of the last START_ELEMENT
+	 */
+	public Tag getTag() {
+		return new Tag(Arrays.copyOf(this.tag, this.tagLength));
+	}
+
+	/**
+	 * Method getTagByte.
+	 * @return byte The first identifier octet of the last START_ELEMENT
+	 */
+	public byte getTagByte() {
+		return this.tag[0];
+	}
+
+	/**
+	 * Method tagEquals.
+	 * @param other byte[]
+	 * @return boolean
+	 */
+	public boolean tagEquals(byte[] other) {
+		if (other.length != this.tagLength) {
+			return false;
+		}
+		for (int i = 0; i < other.length; i++) {
+			if (this.tag[i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method isConstructed.
+	 * @return boolean
+	 */
+	public boolean isConstructed() {
+		return (this.tag[0] & Tag.TYPE_CONSTRUCTED) == Tag.TYPE_CONSTRUCTED;
+	}
+
+	/**
+	 * Method getLength.
+	 * @return long Length of the last START_ELEMENT, or -1 if indefinite
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Method getChunk.
+	 * @return byte[] The internal chunk buffer, valid until the next event
+	 */
+	public byte[] getChunk() {
+		return this.chunk;
+	}
+
+	/**
+	 * Method getChunkLength.
+	 * @return int Number of valid bytes in the chunk buffer
+	 */
+	public int getChunkLength() {
+		return this.chunkLength;
+	}
+
+	/**
+	 * Method getOffset.
+	 * @return long Number of bytes consumed from the stream
+	 */
+	public long getOffset() {
+		return this.pos;
+	}
+
+}
@@ -0,0 +1,390 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes BER-TLV elements directly into a caller supplied buffer.
+ * <p>
+ * Primitive elements are written with put(). Constructed elements are opened
+ * with begin() and closed with end(); the length octets are backpatched when
+ * the element is closed, moving the value in place if the length needs more
+ * than one octet. Nothing is allocated per element, so a writer over a reused
+ * buffer can encode any number of objects without creating garbage.
+ * <p>
+ * When the size of the output is needed up front, sizeOf() gives the encoded
+ * size of an element without writing it. Lengths use the minimal (DER) form.
+ *
+ * @author tejohnson
+ */
+public class TLVWriter {
+
+	private final byte[] buf;
+	private final int start;
+	private final int limit;
+	private final ByteBuffer bb;
+	private int pos;
+
+	// Offset of the length octet reserved by each open begin()
+	private int[] open = new int[8];
+	private int depth = 0;
+
+	/**
+	 * Constructor for TLVWriter.
+	 * @param buf byte[]
+	 */
+	public TLVWriter(byte[] buf) {
+		this(buf, 0, buf.length);
+	}
+
+	/**
+	 * Constructor for TLVWriter.
+	 * @param buf byte[]
+	 * @param offset int
+	 * @param length int space available from offset
+	 */
+	public TLVWriter(byte[] buf, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException("offset=" + offset
+					+ " length=" + length + " buffer=" + buf.length);
+		}
+		this.buf = buf;
+		this.start = offset;
+		this.limit = offset + length;
+		this.pos = offset;
+		this.bb = null;
+	}
+
+	/**
+	 * Constructor for TLVWriter.
+	 *
+	 * Writes from the position of an array backed ByteBuffer. The position is
+	 * advanced by finish().
+	 *
+	 * @param bb ByteBuffer
+	 */
+	public TLVWriter(ByteBuffer bb) {
+		if (!bb.hasArray()) {
+			throw new IllegalArgumentException(
+					"TLVWriter requires an array backed ByteBuffer");
+		}
+		this.buf = bb.array();
+		this.start = bb.arrayOffset() + bb.position();
+		this.limit = bb.arrayOffset() + bb.limit();
+		this.pos = this.start;
+		this.bb = bb;
+	}
+
+	/**
+	 * Method lengthOfLength.
+	 * @param length int
+	 * @return int Number of octets needed to encode the length
+	 */
+	public static int lengthOfLength(int length) {
+		if (length < 0x80) {
+			return 1;
+		} else if (length <= 0xff) {
+			return 2;
+		} else if (length <= 0xffff) {
+			return 3;
+		} else if (length <= 0xffffff) {
+			return 4;
+		}
+		return 5;
+	}
+
+	/**
+	 * Method sizeOf.
+	 * @param tagLength int
+	 * @param valueLength int
+	 * @return int Encoded size of an element
+	 */
+	public static int sizeOf(int tagLength, int valueLength) {
+		return tagLength + lengthOfLength(valueLength) + valueLength;
+	}
+
+	/**
+	 * Method sizeOf.
+	 * @param tag byte[]
+	 * @param value byte[] (May be null)
+	 * @return int Encoded size of an element
+	 */
+	public static int sizeOf(byte[] tag, byte[] value) {
+		return sizeOf(tag.length, (value == null) ? 0 : value.length);
+	}
+
+	/**
+	 * Method sizeOf.
+	 * @param tag byte
+	 * @param value byte[] (May be null)
+	 * @return int Encoded size of an element with a single byte tag
+	 */
+	public static int sizeOf(byte tag, byte[] value) {
+		return sizeOf(1, (value == null) ? 0 : value.length);
+	}
+
+	/**
+	 * Method put.
+	 * @param tag byte
+	 * @param value byte[] (May be null)
+	 * @return TLVWriter
+	 */
+	public TLVWriter put(byte tag, byte[] value) {
+		ensure(1);
+		this.buf[this.pos++] = tag;
+		return putLengthAndValue(value, 0, (value == null) ? 0 : value.length);
+	}
+
+	/**
+	 * Method put.
+	 * @param tag byte[]
+	 * @param value byte[] (May be null)
+	 * @return TLVWriter
+	 */
+	public TLVWriter put(byte[] tag, byte[] value) {
+		return put(tag, value, 0, (value == null) ? 0 : value.length);
+	}
+
+	/**
+	 * Method put.
+	 * @param tag byte[]
+	 * @param value byte[]
+	 * @param offset int
+	 * @param length int
+	 * @return TLVWriter
+	 */
+	public TLVWriter put(byte[] tag, byte[] value, int offset, int length) {
+		putRaw(tag, 0, tag.length);
+		return putLengthAndValue(value, offset, length);
+	}
+
+	/**
+	 * Method put.
+	 * @param tag Tag
+	 * @param value byte[] (May be null)
+	 * @return TLVWriter
+	 */
+	public TLVWriter put(Tag tag, byte[] value) {
+		return put(tag.getBytes(), value);
+	}
+
+	/**
+	 * Method putHeader.
+	 *
+	 * Writes the tag and length of an element whose value length is known,
+	 * e.g. from sizeOf(); the value is written next with put() or putRaw().
+	 *
+	 * @param tag byte[]
+	 * @param valueLength int
+	 * @return TLVWriter
+	 */
+	public TLVWriter putHeader(byte[] tag, int valueLength) {
+		putRaw(tag, 0, tag.length);
+		int lol = lengthOfLength(valueLength);
+		ensure(lol);
+		writeLength(this.pos, valueLength);
+		this.pos += lol;
+		return this;
+	}
+
+	/**
+	 * Method putRaw.
+	 *
+	 * Copies bytes that are already encoded, such as a complete TLV.
+	 *
+	 * @param encoded byte[]
+	 * @param offset int
+	 * @param length int
+	 * @return TLVWriter
+	 */
+	public TLVWriter putRaw(byte[] encoded, int offset, int length) {
+		ensure(length);
+		System.arraycopy(encoded, offset, this.buf, this.pos, length);
+		this.pos += length;
+		return this;
+	}
+
+	/**
+	 * Method begin.
+	 *
+	 * Opens a constructed element; its value is everything written until the
+	 * matching end().
+	 *
+	 * @param tag byte[]
+	 * @return TLVWriter
+	 */
+	public TLVWriter begin(byte[] tag) {
+		putRaw(tag, 0, tag.length);
+		return reserve();
+	}
+
+	/**
+	 * Method begin.
+	 * @param tag byte
+	 * @return TLVWriter
+	 */
+	public TLVWriter begin(byte tag) {
+		ensure(1);
+		this.buf[this.pos++] = tag;
+		return reserve();
+	}
+
+	/**
+	 * Method end.
+	 *
+	 * Closes the most recently opened element and writes its length.
+	 *
+	 * @return TLVWriter
+	 */
+	public TLVWriter end() {
+		if (this.depth == 0) {
+			throw new IllegalStateException("end() without begin()");
+		}
+		int lenOffset = this.open[--this.depth];
+		int valueLength = this.pos - lenOffset - 1;
+		int extra = lengthOfLength(valueLength) - 1;
+		if (extra > 0) {
+			ensure(extra);
+			System.arraycopy(this.buf, lenOffset + 1, this.buf, lenOffset + 1
+					+ extra, valueLength);
+			this.pos += extra;
+		}
+		writeLength(lenOffset, valueLength);
+		return this;
+	}
+
+	/**
+	 * Method finish.
+	 *
+	 * Verifies all elements are closed and, for a ByteBuffer, advances its
+	 * position past the encoded data.
+	 *
+	 * @return int Number of bytes written
+	 */
+	public int finish() {
+		if (this.depth != 0) {
+			throw new IllegalStateException(this.depth
+					+ " element(s) not closed");
+		}
+		if (this.bb != null) {
+			this.bb.position(this.pos - this.bb.arrayOffset());
+		}
+		return this.pos - this.start;
+	}
+
+	/**
+	 * Method reset.
+	 *
+	 * Discards everything written, allowing the buffer to be reused.
+	 */
+	public void reset() {
+		this.pos = this.start;
+		this.depth = 0;
+	}
+
+	/**
+	 * Method getBuffer.
+	 * @return byte[] The underlying buffer, not a copy
+	 */
+	public byte[] getBuffer() {
+		return this.buf;
+	}
+
+	/**
+	 * Method getLength.
+	 * @return int Number of bytes written so far
+	 */
+	public int getLength() {
+		return this.pos - this.start;
+	}
+
+	/**
+	 * Method toByteArray. (copies)
+	 * @return byte[]
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOfRange(this.buf, this.start, this.pos);
+	}
+
+	/**
+	 * Method putLengthAndValue.
+	 * @param value byte[]
+	 * @param offset int
+	 * @param length int
+	 * @return TLVWriter
+	 */
+	private TLVWriter putLengthAndValue(byte[] value, int offset, int length) {
+		int lol = lengthOfLength(length);
+		ensure(lol + length);
+		writeLength(this.pos, length);
+		this.pos += lol;
+		if (length > 0) {
+			System.arraycopy(value, offset, this.buf, this.pos, length);
+			this.pos += length;
+		}
+		return this;
+	}
+
+	/**
+	 * Method reserve.
+	 * @return TLVWriter
+	 */
+	private TLVWriter reserve() {
+		ensure(1);
+		if (this.depth == this.open.length) {
+			this.open = Arrays.copyOf(this.open, this.depth * 2);
+		}
+		this.open[this.depth++] = this.pos++;
+		return this;
+	}
+
+	/**
+	 * Method writeLength.
+	 * @param offset int
+	 * @param length int
+	 */
+	private void writeLength(int offset, int length) {
+		int lol = lengthOfLength(length);
+		if (lol == 1) {
+			this.buf[offset] = (byte) length;
+			return;
+		}
+		this.buf[offset] = (byte) (0x80 | (lol - 1));
+		for (int i = lol - 1; i > 0; i--) {
+			this.buf[offset + i] = (byte) length;
+			length >>>= 8;
+		}
+	}
+
+	/**
+	 * Method ensure.
+	 * @param n int
+	 */
+	private void ensure(int n) {
+		if (this.limit - this.pos < n) {
+			throw new BufferOverflowException();
+		}
+	}
+
+}
@@ -117,7 +117,7 @@ public class AlgorithmIdentifier {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.ai.getValue());
+			en = ASN1Factory.decodeASN1Object(this.ai);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
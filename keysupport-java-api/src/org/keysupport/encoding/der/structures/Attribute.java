@@ -86,13 +86,13 @@ public class Attribute {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.attr.getValue());
+			en = ASN1Factory.decodeASN1Object(this.attr);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
 		if (en.hasMoreElements()) {
-			this.setAttrTypeOID(en.nextElement());
-			this.setAttributeValues(en.nextElement());
+			this.id = en.nextElement();
+			this.val = en.nextElement();
 		}
 	}
 
@@ -113,7 +113,7 @@ public class Attribute {
 	 * @return the val * @throws ASN1Exception */
 	public Enumeration<ASN1Object> getAttributeValues() throws ASN1Exception {
 		try {
-			return ASN1Factory.decodeASN1Object(this.val.getValue());
+			return ASN1Factory.decodeASN1Object(this.val);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
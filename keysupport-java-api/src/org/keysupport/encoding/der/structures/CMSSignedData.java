@@ -185,7 +185,7 @@ public class CMSSignedData {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.cms.getValue());
+			en = ASN1Factory.decodeASN1Object(this.cms);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
@@ -242,13 +242,17 @@ public class CMSSignedData {
 	 * @throws ASN1Exception
 	 */
 	public SignedData getSignedData() throws ASN1Exception {
-		CON_SPEC signed_data;
+		// The SignedData is decoded in place, within the [0] EXPLICIT content
+		Enumeration<ASN1Object> en;
 		try {
-			signed_data = new CON_SPEC(this.content);
+			en = ASN1Factory.decodeASN1Object(this.content);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
-		return new SignedData(signed_data.getValue());
+		if (!en.hasMoreElements()) {
+			throw new ASN1Exception("Malformed Content in SignedData.");
+		}
+		return new SignedData(en.nextElement());
 	}
 	
 	/**
@@ -0,0 +1,270 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding.der.structures;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.asn1.BITSTRING;
+import org.keysupport.asn1.INTEGER;
+import org.keysupport.asn1.SEQUENCE;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.der.ObjectIdentifier;
+import org.keysupport.util.DataUtil;
+
+/**
+ * Per: <A HREF="http://www.ietf.org/rfc/rfc6960.txt">RFC6960</A>
+ * 
+ * <pre>
+ *  CertID          ::=     SEQUENCE {
+ *      hashAlgorithm       AlgorithmIdentifier,
+ *      issuerNameHash      OCTET STRING, -- Hash of issuer's DN
+ *      issuerKeyHash       OCTET STRING, -- Hash of issuer's public key
+ *      serialNumber        CertificateSerialNumber }
+ * </pre>
+ * 
+ * CertIDs created from a certificate use SHA-1, as required by the
+ * lightweight profile (RFC5019).
+ * 
+ * @author tejohnson
+ */
+public class CertID {
+
+	// id-sha1
+	public final static ObjectIdentifier SHA1 = new ObjectIdentifier(
+			"1.3.14.3.2.26");
+
+	private SEQUENCE cid = new SEQUENCE();
+	private ASN1Object halg = new ASN1Object();
+	private ASN1Object nameHash = new ASN1Object();
+	private ASN1Object keyHash = new ASN1Object();
+	private ASN1Object sn = new ASN1Object();
+
+	/**
+	 * Constructor for CertID.
+	 * @param issuer X509Certificate The issuer of the certificate
+	 * @param serial BigInteger The serial number of the certificate
+	 * @throws ASN1Exception
+	 */
+	public CertID(X509Certificate issuer, BigInteger serial)
+			throws ASN1Exception {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new ASN1Exception(e);
+		}
+		this.halg = new AlgorithmIdentifier(SHA1, null).getASN1Object();
+		this.nameHash = ASN1Factory.encodeASN1Object(new Tag(Tag.OCTETSTRING),
+				md.digest(issuer.getSubjectX500Principal().getEncoded()));
+		this.keyHash = ASN1Factory.encodeASN1Object(new Tag(Tag.OCTETSTRING),
+				md.digest(getKeyBits(issuer)));
+		this.sn = new INTEGER(serial);
+		this.encode();
+	}
+
+	/**
+	 * Constructor for CertID.
+	 * @param encoded ASN1Object
+	 * @throws ASN1Exception
+	 */
+	public CertID(ASN1Object encoded) throws ASN1Exception {
+		this.cid = new SEQUENCE(encoded);
+		this.decode();
+	}
+
+	/**
+	 * Constructor for CertID.
+	 * @param encoded byte[]
+	 * @throws ASN1Exception
+	 */
+	public CertID(byte[] encoded) throws ASN1Exception {
+		try {
+			this.cid = new SEQUENCE(encoded);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		this.decode();
+	}
+
+	/**
+	 * Method getKeyBits.
+	 * 
+	 * @param cert X509Certificate
+	 * @return byte[] The value of the subjectPublicKey BIT STRING, which is
+	 *         hashed for the issuerKeyHash and byKey ResponderID
+	 * @throws ASN1Exception
+	 */
+	public static byte[] getKeyBits(X509Certificate cert) throws ASN1Exception {
+		Enumeration<ASN1Object> en;
+		try {
+			// SubjectPublicKeyInfo ::= SEQUENCE { algorithm, subjectPublicKey }
+			en = ASN1Factory.decodeASN1Object(new SEQUENCE(cert.getPublicKey()
+					.getEncoded()));
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		if (!en.hasMoreElements()) {
+			throw new ASN1Exception("Invalid SubjectPublicKeyInfo");
+		}
+		en.nextElement();
+		if (!en.hasMoreElements()) {
+			throw new ASN1Exception("Invalid SubjectPublicKeyInfo");
+		}
+		return new BITSTRING(en.nextElement()).getValue();
+	}
+
+	/**
+	 * Method decode.
+	 * @throws ASN1Exception
+	 */
+	private void decode() throws ASN1Exception {
+		Enumeration<ASN1Object> en = null;
+		try {
+			en = ASN1Factory.decodeASN1Object(this.cid);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		if (!en.hasMoreElements()) {
+			throw new ASN1Exception("Empty CertID");
+		}
+		this.halg = en.nextElement();
+		if (en.hasMoreElements()) {
+			this.nameHash = en.nextElement();
+		}
+		if (en.hasMoreElements()) {
+			this.keyHash = en.nextElement();
+		}
+		if (en.hasMoreElements()) {
+			this.sn = en.nextElement();
+		} else {
+			throw new ASN1Exception("Incomplete CertID");
+		}
+	}
+
+	/**
+	 * Method encode.
+	 * @throws ASN1Exception
+	 */
+	private void encode() throws ASN1Exception {
+		SEQUENCE tmpseq = new SEQUENCE();
+		tmpseq.addComponent(this.halg);
+		tmpseq.addComponent(this.nameHash);
+		tmpseq.addComponent(this.keyHash);
+		tmpseq.addComponent(this.sn);
+		this.cid = tmpseq;
+	}
+
+	/**
+	 * Method matches.
+	 * 
+	 * Compares the hash algorithm, hashes and serial number, ignoring the
+	 * encoding of the algorithm parameters, which responders vary.
+	 * 
+	 * @param other CertID
+	 * @return boolean
+	 * @throws ASN1Exception
+	 */
+	public boolean matches(CertID other) throws ASN1Exception {
+		return getHashAlgorithm().getAlgOID().equals(
+				other.getHashAlgorithm().getAlgOID())
+				&& Arrays.equals(getIssuerNameHash(), other.getIssuerNameHash())
+				&& Arrays.equals(getIssuerKeyHash(), other.getIssuerKeyHash())
+				&& getSerialNumber().equals(other.getSerialNumber());
+	}
+
+	/**
+	 * Method getHashAlgorithm.
+	 * @return AlgorithmIdentifier
+	 * @throws ASN1Exception
+	 */
+	public AlgorithmIdentifier getHashAlgorithm() throws ASN1Exception {
+		return new AlgorithmIdentifier(this.halg);
+	}
+
+	/**
+	 * Method getIssuerNameHash.
+	 * @return byte[]
+	 */
+	public byte[] getIssuerNameHash() {
+		return this.nameHash.getValue();
+	}
+
+	/**
+	 * Method getIssuerKeyHash.
+	 * @return byte[]
+	 */
+	public byte[] getIssuerKeyHash() {
+		return this.keyHash.getValue();
+	}
+
+	/**
+	 * Method getSerialNumber.
+	 * @return BigInteger
+	 */
+	public BigInteger getSerialNumber() {
+		return new INTEGER(this.sn).getIntegerValue();
+	}
+
+	/**
+	 * Method getBytes.
+	 * @return byte[]
+	 */
+	public byte[] getBytes() {
+		return this.cid.getBytes();
+	}
+
+	/**
+	 * Method getASN1Object.
+	 * @return ASN1Object
+	 */
+	public ASN1Object getASN1Object() {
+		return this.cid;
+	}
+
+	/**
+	 * Method toString.
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SEQUENCE {\n");
+		sb.append("\t [AlgorithmIdentifier],\n");
+		sb.append("\t" + DataUtil.byteArrayToString(getIssuerNameHash())
+				+ ",\n");
+		sb.append("\t" + DataUtil.byteArrayToString(getIssuerKeyHash())
+				+ ",\n");
+		sb.append("\t" + DataUtil.byteArrayToString(getSerialNumber()
+				.toByteArray()) + "\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
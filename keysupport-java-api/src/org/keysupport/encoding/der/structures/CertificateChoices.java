@@ -60,6 +60,7 @@ import org.keysupport.encoding.TLVEncodingException;
  */
 public class CertificateChoices {
 	ASN1Object sc = new ASN1Object();
+	private X509Certificate certificate = null;
 
 	/**
 	 * Constructor for CertificateChoices.
@@ -89,19 +90,34 @@ public class CertificateChoices {
 
 	/**
 	 * Method getCertificate.
+	 *
+	 * The certificate is decoded on the first call.
+	 *
 	 * @return X509Certificate
 	 * @throws ASN1Exception
 	 */
 	public X509Certificate getCertificate() throws ASN1Exception {
+		if (this.certificate != null) {
+			return this.certificate;
+		}
 		// Render us a Certificate
 		ByteArrayInputStream is = new ByteArrayInputStream(this.sc.getBytes());
 		CertificateFactory cf = null;
 		try {
 			cf = CertificateFactory.getInstance("X.509");
-			return (X509Certificate) cf.generateCertificate(is);
+			this.certificate = (X509Certificate) cf.generateCertificate(is);
+			return this.certificate;
 		} catch (CertificateException e) {
 			throw new ASN1Exception(e);
 		}
 	}
 
+	/**
+	 * Method getBytes.
+	 * @return byte[]
+	 */
+	public byte[] getBytes() {
+		return this.sc.getBytes();
+	}
+
 }
@@ -106,7 +106,7 @@ public class DigestInfo {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.di.getValue());
+			en = ASN1Factory.decodeASN1Object(this.di);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
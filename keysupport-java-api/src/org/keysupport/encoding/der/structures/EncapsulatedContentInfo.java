@@ -96,7 +96,7 @@ public class EncapsulatedContentInfo {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.eci.getValue());
+			en = ASN1Factory.decodeASN1Object(this.eci);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
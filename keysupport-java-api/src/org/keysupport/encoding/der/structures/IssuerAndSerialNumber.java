@@ -103,7 +103,7 @@ public class IssuerAndSerialNumber {
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.iasn.getValue());
+			en = ASN1Factory.decodeASN1Object(this.iasn);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
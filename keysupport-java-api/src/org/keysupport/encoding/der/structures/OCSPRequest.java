@@ -0,0 +1,180 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding.der.structures;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.asn1.SEQUENCE;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
+
+/**
+ * Per: <A HREF="http://www.ietf.org/rfc/rfc6960.txt">RFC6960</A>
+ * 
+ * <pre>
+ *  OCSPRequest     ::=     SEQUENCE {
+ *      tbsRequest                  TBSRequest,
+ *      optionalSignature   [0]     EXPLICIT Signature OPTIONAL }
+ * 
+ *  TBSRequest      ::=     SEQUENCE {
+ *      version             [0]     EXPLICIT Version DEFAULT v1,
+ *      requestorName       [1]     EXPLICIT GeneralName OPTIONAL,
+ *      requestList                 SEQUENCE OF Request,
+ *      requestExtensions   [2]     EXPLICIT Extensions OPTIONAL }
+ * 
+ *  Request         ::=     SEQUENCE {
+ *      reqCert                     CertID,
+ *      singleRequestExtensions     [0] EXPLICIT Extensions OPTIONAL }
+ * </pre>
+ * 
+ * Requests are encoded unsigned and without a nonce, so that responses can
+ * be cached (RFC5019). When decoding, the optional fields are ignored.
+ * 
+ * @author tejohnson
+ */
+public class OCSPRequest {
+
+	private SEQUENCE req = new SEQUENCE();
+	private List<CertID> certIDs = new ArrayList<CertID>();
+
+	/**
+	 * Constructor for OCSPRequest.
+	 * @param certIDs List<CertID>
+	 * @throws ASN1Exception
+	 */
+	public OCSPRequest(List<CertID> certIDs) throws ASN1Exception {
+		this.certIDs = new ArrayList<CertID>(certIDs);
+		this.encode();
+	}
+
+	/**
+	 * Constructor for OCSPRequest.
+	 * @param encoded byte[]
+	 * @throws ASN1Exception
+	 */
+	public OCSPRequest(byte[] encoded) throws ASN1Exception {
+		try {
+			this.req = new SEQUENCE(encoded);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		this.decode();
+	}
+
+	/**
+	 * Method decode.
+	 * @throws ASN1Exception
+	 */
+	private void decode() throws ASN1Exception {
+		Tag seq = new Tag(Tag.SEQUENCE);
+		try {
+			Enumeration<ASN1Object> en = ASN1Factory.decodeASN1Object(this.req);
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Empty OCSPRequest");
+			}
+			Enumeration<ASN1Object> tbs = ASN1Factory.decodeASN1Object(en
+					.nextElement());
+			while (tbs.hasMoreElements()) {
+				ASN1Object obj = tbs.nextElement();
+				// version, requestorName and requestExtensions are tagged
+				if (!obj.isA(seq)) {
+					continue;
+				}
+				Enumeration<ASN1Object> list = ASN1Factory.decodeASN1Object(obj);
+				while (list.hasMoreElements()) {
+					Enumeration<ASN1Object> request = ASN1Factory
+							.decodeASN1Object(list.nextElement());
+					if (!request.hasMoreElements()) {
+						throw new ASN1Exception("Empty Request");
+					}
+					this.certIDs.add(new CertID(request.nextElement()));
+				}
+			}
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+	}
+
+	/**
+	 * Method encode.
+	 * @throws ASN1Exception
+	 */
+	private void encode() throws ASN1Exception {
+		SEQUENCE list = new SEQUENCE();
+		for (CertID id : this.certIDs) {
+			SEQUENCE request = new SEQUENCE();
+			request.addComponent(id.getASN1Object());
+			list.addComponent(request);
+		}
+		SEQUENCE tbs = new SEQUENCE();
+		tbs.addComponent(list);
+		SEQUENCE tmpseq = new SEQUENCE();
+		tmpseq.addComponent(tbs);
+		this.req = tmpseq;
+	}
+
+	/**
+	 * Method getCertIDs.
+	 * @return List<CertID>
+	 */
+	public List<CertID> getCertIDs() {
+		return this.certIDs;
+	}
+
+	/**
+	 * Method getBytes.
+	 * @return byte[]
+	 */
+	public byte[] getBytes() {
+		return this.req.getBytes();
+	}
+
+	/**
+	 * Method getASN1Object.
+	 * @return ASN1Object
+	 */
+	public ASN1Object getASN1Object() {
+		return this.req;
+	}
+
+	/**
+	 * Method toString.
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SEQUENCE {\n");
+		sb.append("\tSEQUENCE {\n");
+		for (CertID id : this.certIDs) {
+			sb.append("\t\t" + id.getSerialNumber().toString(16) + "\n");
+		}
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,424 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding.der.structures;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.asn1.BITSTRING;
+import org.keysupport.asn1.CON_SPEC;
+import org.keysupport.asn1.GENERALIZEDTIME;
+import org.keysupport.asn1.SEQUENCE;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.der.ObjectIdentifier;
+
+/**
+ * Per: <A HREF="http://www.ietf.org/rfc/rfc6960.txt">RFC6960</A>
+ * 
+ * <pre>
+ *  OCSPResponse ::= SEQUENCE {
+ *      responseStatus         OCSPResponseStatus,
+ *      responseBytes          [0] EXPLICIT ResponseBytes OPTIONAL }
+ * 
+ *  ResponseBytes ::=       SEQUENCE {
+ *      responseType   OBJECT IDENTIFIER,
+ *      response       OCTET STRING }
+ * 
+ *  BasicOCSPResponse       ::= SEQUENCE {
+ *      tbsResponseData      ResponseData,
+ *      signatureAlgorithm   AlgorithmIdentifier,
+ *      signature            BIT STRING,
+ *      certs            [0] EXPLICIT SEQUENCE OF Certificate OPTIONAL }
+ * 
+ *  ResponseData ::= SEQUENCE {
+ *      version              [0] EXPLICIT Version DEFAULT v1,
+ *      responderID              ResponderID,
+ *      producedAt               GeneralizedTime,
+ *      responses                SEQUENCE OF SingleResponse,
+ *      responseExtensions   [1] EXPLICIT Extensions OPTIONAL }
+ * 
+ *  ResponderID ::= CHOICE {
+ *      byName   [1] Name,
+ *      byKey    [2] KeyHash }
+ * </pre>
+ * 
+ * Only the basic response type (id-pkix-ocsp-basic) is supported. The
+ * signature is not verified here; see getTBSResponseData().
+ * 
+ * @author tejohnson
+ */
+public class OCSPResponse {
+
+	public final static int SUCCESSFUL = 0;
+	public final static int MALFORMED_REQUEST = 1;
+	public final static int INTERNAL_ERROR = 2;
+	public final static int TRY_LATER = 3;
+	public final static int SIG_REQUIRED = 5;
+	public final static int UNAUTHORIZED = 6;
+
+	// id-pkix-ocsp-basic
+	public final static ObjectIdentifier BASIC = new ObjectIdentifier(
+			"1.3.6.1.5.5.7.48.1.1");
+
+	private SEQUENCE resp = new SEQUENCE();
+	private int status = INTERNAL_ERROR;
+	private ASN1Object tbs = null;
+	private ASN1Object salg = null;
+	private byte[] signature = null;
+	private List<X509Certificate> certs = new ArrayList<X509Certificate>();
+	private X500Principal responderName = null;
+	private byte[] responderKeyHash = null;
+	private Date producedAt = null;
+	private List<SingleResponse> responses = new ArrayList<SingleResponse>();
+
+	/**
+	 * Constructor for OCSPResponse.
+	 * 
+	 * Creates a response without responseBytes, for an unsuccessful status.
+	 * 
+	 * @param status int
+	 * @throws ASN1Exception
+	 */
+	public OCSPResponse(int status) throws ASN1Exception {
+		if (status == SUCCESSFUL) {
+			throw new ASN1Exception("A successful response requires a body");
+		}
+		this.status = status;
+		SEQUENCE tmpseq = new SEQUENCE();
+		tmpseq.addComponent(status());
+		this.resp = tmpseq;
+	}
+
+	/**
+	 * Constructor for OCSPResponse.
+	 * 
+	 * Creates a successful basic response.
+	 * 
+	 * @param tbsResponseData ASN1Object From encodeResponseData()
+	 * @param sigAlg AlgorithmIdentifier
+	 * @param signature byte[] The signature of the tbsResponseData encoding
+	 * @param certs List<X509Certificate> Certificates for the client, such
+	 *            as a delegated responder certificate, may be null
+	 * @throws ASN1Exception
+	 */
+	public OCSPResponse(ASN1Object tbsResponseData, AlgorithmIdentifier sigAlg,
+			byte[] signature, List<X509Certificate> certs) throws ASN1Exception {
+		this.status = SUCCESSFUL;
+		SEQUENCE basic = new SEQUENCE();
+		basic.addComponent(tbsResponseData);
+		basic.addComponent(sigAlg.getASN1Object());
+		basic.addComponent(new BITSTRING(signature, 0));
+		if (certs != null && !certs.isEmpty()) {
+			SEQUENCE seq = new SEQUENCE();
+			try {
+				for (X509Certificate cert : certs) {
+					seq.addComponent(cert.getEncoded());
+				}
+			} catch (CertificateException e) {
+				throw new ASN1Exception(e);
+			}
+			CON_SPEC c = new CON_SPEC(0);
+			c.addComponent(seq);
+			basic.addComponent(c);
+		}
+		SEQUENCE rb = new SEQUENCE();
+		rb.addComponent(ASN1Factory.encodeASN1Object(new Tag(Tag.OBJECTID),
+				BASIC.getEncoded()));
+		rb.addComponent(ASN1Factory.encodeASN1Object(new Tag(Tag.OCTETSTRING),
+				basic.getBytes()));
+		CON_SPEC c = new CON_SPEC(0);
+		c.addComponent(rb);
+		SEQUENCE tmpseq = new SEQUENCE();
+		tmpseq.addComponent(status());
+		tmpseq.addComponent(c);
+		// Decode again, so that the getters work as for a received response
+		try {
+			this.resp = new SEQUENCE(tmpseq.getBytes());
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		this.decode();
+	}
+
+	/**
+	 * Constructor for OCSPResponse.
+	 * @param encoded byte[]
+	 * @throws ASN1Exception
+	 */
+	public OCSPResponse(byte[] encoded) throws ASN1Exception {
+		try {
+			this.resp = new SEQUENCE(encoded);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		this.decode();
+	}
+
+	/**
+	 * Method encodeResponseData.
+	 * 
+	 * @param responderKeyHash byte[] SHA-1 hash of the responder's key bits
+	 * @param producedAt Date
+	 * @param responses List<SingleResponse>
+	 * @return ASN1Object The ResponseData to be signed
+	 * @throws ASN1Exception
+	 */
+	public static ASN1Object encodeResponseData(byte[] responderKeyHash,
+			Date producedAt, List<SingleResponse> responses)
+			throws ASN1Exception {
+		CON_SPEC byKey = new CON_SPEC(2);
+		byKey.addComponent(ASN1Factory.encodeASN1Object(new Tag(
+				Tag.OCTETSTRING), responderKeyHash));
+		SEQUENCE list = new SEQUENCE();
+		for (SingleResponse sr : responses) {
+			list.addComponent(sr.getASN1Object());
+		}
+		SEQUENCE rd = new SEQUENCE();
+		rd.addComponent(byKey);
+		rd.addComponent(new GENERALIZEDTIME(producedAt));
+		rd.addComponent(list);
+		try {
+			return new SEQUENCE(rd.getBytes());
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+	}
+
+	/**
+	 * Method status.
+	 * @return ASN1Object The responseStatus ENUMERATED
+	 */
+	private ASN1Object status() {
+		return ASN1Factory.encodeASN1Object(new Tag(Tag.ENUMERATED),
+				new byte[] { (byte) this.status });
+	}
+
+	/**
+	 * Method decode.
+	 * @throws ASN1Exception
+	 */
+	private void decode() throws ASN1Exception {
+		try {
+			Enumeration<ASN1Object> en = ASN1Factory.decodeASN1Object(this.resp);
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Empty OCSPResponse");
+			}
+			byte[] rs = en.nextElement().getValue();
+			this.status = rs[rs.length - 1] & 0xff;
+			if (this.status != SUCCESSFUL) {
+				return;
+			}
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Missing responseBytes");
+			}
+			Enumeration<ASN1Object> rb = ASN1Factory.decodeASN1Object(
+					en.nextElement());
+			rb = ASN1Factory.decodeASN1Object(rb.nextElement());
+			ObjectIdentifier type = new ObjectIdentifier(rb.nextElement()
+					.getValue());
+			if (!type.equals(BASIC)) {
+				throw new ASN1Exception("Unsupported response type: " + type);
+			}
+			decodeBasic(new SEQUENCE(rb.nextElement().getValue()));
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		} catch (NoSuchElementException e) {
+			throw new ASN1Exception("Incomplete OCSPResponse");
+		}
+	}
+
+	/**
+	 * Method decodeBasic.
+	 * @param basic SEQUENCE BasicOCSPResponse
+	 * @throws ASN1Exception
+	 * @throws TLVEncodingException
+	 */
+	private void decodeBasic(SEQUENCE basic) throws ASN1Exception,
+			TLVEncodingException {
+		Enumeration<ASN1Object> en = ASN1Factory.decodeASN1Object(basic);
+		this.tbs = en.nextElement();
+		this.salg = en.nextElement();
+		this.signature = new BITSTRING(en.nextElement()).getValue();
+		if (en.hasMoreElements()) {
+			Enumeration<ASN1Object> c = ASN1Factory.decodeASN1Object(en
+					.nextElement());
+			if (c.hasMoreElements()) {
+				Enumeration<ASN1Object> seq = ASN1Factory.decodeASN1Object(c
+						.nextElement());
+				try {
+					CertificateFactory cf = CertificateFactory
+							.getInstance("X509");
+					while (seq.hasMoreElements()) {
+						this.certs.add((X509Certificate) cf
+								.generateCertificate(new ByteArrayInputStream(
+										seq.nextElement().getBytes())));
+					}
+				} catch (CertificateException e) {
+					throw new ASN1Exception(e);
+				}
+			}
+		}
+		Tag version = new Tag((byte) 0xa0);
+		Tag byName = new Tag((byte) 0xa1);
+		Enumeration<ASN1Object> rd = ASN1Factory.decodeASN1Object(this.tbs);
+		ASN1Object obj = rd.nextElement();
+		if (obj.isA(version)) {
+			obj = rd.nextElement();
+		}
+		ASN1Object id = ASN1Factory.decodeASN1Object(obj).nextElement();
+		if (obj.isA(byName)) {
+			this.responderName = new X500Principal(id.getBytes());
+		} else {
+			this.responderKeyHash = id.getValue();
+		}
+		this.producedAt = new GENERALIZEDTIME(rd.nextElement()).getDate();
+		Enumeration<ASN1Object> list = ASN1Factory.decodeASN1Object(rd
+				.nextElement());
+		while (list.hasMoreElements()) {
+			this.responses.add(new SingleResponse(list.nextElement()));
+		}
+	}
+
+	/**
+	 * Method getResponseStatus.
+	 * @return int
+	 */
+	public int getResponseStatus() {
+		return this.status;
+	}
+
+	/**
+	 * Method getTBSResponseData.
+	 * @return byte[] The signed ResponseData encoding
+	 */
+	public byte[] getTBSResponseData() {
+		return (this.tbs == null) ? null : this.tbs.getBytes();
+	}
+
+	/**
+	 * Method getSignatureAlgorithm.
+	 * @return AlgorithmIdentifier
+	 * @throws ASN1Exception
+	 */
+	public AlgorithmIdentifier getSignatureAlgorithm() throws ASN1Exception {
+		return (this.salg == null) ? null : new AlgorithmIdentifier(this.salg);
+	}
+
+	/**
+	 * Method getSignature.
+	 * @return byte[]
+	 */
+	public byte[] getSignature() {
+		return this.signature;
+	}
+
+	/**
+	 * Method getCertificates.
+	 * @return List<X509Certificate>
+	 */
+	public List<X509Certificate> getCertificates() {
+		return this.certs;
+	}
+
+	/**
+	 * Method getResponderName.
+	 * @return X500Principal Null if the responder is identified by key
+	 */
+	public X500Principal getResponderName() {
+		return this.responderName;
+	}
+
+	/**
+	 * Method getResponderKeyHash.
+	 * @return byte[] Null if the responder is identified by name
+	 */
+	public byte[] getResponderKeyHash() {
+		return this.responderKeyHash;
+	}
+
+	/**
+	 * Method getProducedAt.
+	 * @return Date
+	 */
+	public Date getProducedAt() {
+		return this.producedAt;
+	}
+
+	/**
+	 * Method getSingleResponses.
+	 * @return List<SingleResponse>
+	 */
+	public List<SingleResponse> getSingleResponses() {
+		return this.responses;
+	}
+
+	/**
+	 * Method getBytes.
+	 * @return byte[]
+	 */
+	public byte[] getBytes() {
+		return this.resp.getBytes();
+	}
+
+	/**
+	 * Method getASN1Object.
+	 * @return ASN1Object
+	 */
+	public ASN1Object getASN1Object() {
+		return this.resp;
+	}
+
+	/**
+	 * Method toString.
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SEQUENCE {\n");
+		sb.append("\t" + this.status + ",\n");
+		if (this.status == SUCCESSFUL) {
+			sb.append("\t[0] {\n");
+			sb.append("\t\t" + BASIC.toString() + ",\n");
+			sb.append("\t\tproducedAt " + this.producedAt + ",\n");
+			for (SingleResponse sr : this.responses) {
+				sb.append(sr.toString());
+			}
+			sb.append("\t}\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
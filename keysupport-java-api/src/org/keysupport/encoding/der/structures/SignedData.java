@@ -34,6 +34,7 @@ import org.keysupport.asn1.CON_SPEC;
 import org.keysupport.asn1.SEQUENCE;
 import org.keysupport.asn1.SET;
 import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
 
 /**
  * * Per: <A HREF="http://www.ietf.org/rfc/rfc3852.txt">RFC3852</A>
@@ -63,6 +64,16 @@ public class SignedData {
 	public SignedData() {
 	}
 
+	/**
+	 * Constructor for SignedData.
+	 * @param encoded ASN1Object
+	 * @throws ASN1Exception
+	 */
+	public SignedData(ASN1Object encoded) throws ASN1Exception {
+		this.sd = new SEQUENCE(encoded);
+		this.decode();
+	}
+
 	/**
 	 * Constructor for SignedData.
 	 * @param encoded byte[]
@@ -79,29 +90,36 @@ public class SignedData {
 
 	/**
 	 * Method decode.
+	 *
+	 * Locates the fields within the encoding. The fields refer to the
+	 * encoding, and are only decoded by their getters.
+	 *
 	 * @throws ASN1Exception
 	 */
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.sd.getValue());
+			en = ASN1Factory.decodeASN1Object(this.sd);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
 		if (en.hasMoreElements()) {
-			this.setVersion(en.nextElement());
-			this.setDigestAlgIDs(en.nextElement());
-			this.setEncapContentInfo(en.nextElement());
+			this.version = en.nextElement();
+			this.dalgs = en.nextElement();
+			this.eci = en.nextElement();
+			Tag certificates = new CON_SPEC(0).CON_SPEC;
+			Tag crls = new CON_SPEC(1).CON_SPEC;
+			Tag signerInfos = new SET().SET;
 			while (en.hasMoreElements()) {
 				ASN1Object cobj = en.nextElement();
-				if (cobj.isA(new CON_SPEC(0).CON_SPEC)) {
-					setCertificateSet(cobj);
+				if (cobj.isA(certificates)) {
+					this.cset = cobj;
 				}
-				if (cobj.isA(new CON_SPEC(1).CON_SPEC)) {
-					setRevocationInfoChoices(cobj);
+				if (cobj.isA(crls)) {
+					this.ric = cobj;
 				}
-				if (cobj.isA(new SET().SET)) {
-					setSignerInfos(cobj);
+				if (cobj.isA(signerInfos)) {
+					this.si = cobj;
 				}
 			}
 
@@ -151,7 +169,7 @@ public class SignedData {
 		Vector<CertificateChoices> v = new Vector<CertificateChoices>();
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.cset.getValue());
+			en = ASN1Factory.decodeASN1Object(this.cset);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
@@ -167,7 +185,16 @@ public class SignedData {
 	 * @throws ASN1Exception
 	 */
 	public AlgorithmIdentifier getDigestAlgIDs() throws ASN1Exception {
-		return new AlgorithmIdentifier(this.dalgs.getValue());
+		Enumeration<ASN1Object> en = null;
+		try {
+			en = ASN1Factory.decodeASN1Object(this.dalgs);
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+		if (!en.hasMoreElements()) {
+			throw new ASN1Exception("DigestAlgorithmIdentifiers is empty");
+		}
+		return new AlgorithmIdentifier(en.nextElement());
 	}
 
 	/**
@@ -196,7 +223,7 @@ public class SignedData {
 		Vector<SignerInfo> v = new Vector<SignerInfo>();
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.si.getValue());
+			en = ASN1Factory.decodeASN1Object(this.si);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
@@ -106,24 +106,28 @@ public class SignerInfo {
 
 	/**
 	 * Method decode.
+	 *
+	 * Locates the fields within the encoding. The fields refer to the
+	 * encoding, and are only decoded by their getters.
+	 *
 	 * @throws ASN1Exception
 	 */
 	private void decode() throws ASN1Exception {
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.si.getValue());
+			en = ASN1Factory.decodeASN1Object(this.si);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
 		if (en.hasMoreElements()) {
-			this.setVersion(en.nextElement());
-			this.setSignerIdentifier(en.nextElement());
-			this.setDigestAlgID(en.nextElement());
-			this.setSignedAttributes(en.nextElement());
-			this.setSigAlgID(en.nextElement());
-			this.setSignature(en.nextElement());
+			this.version = en.nextElement();
+			this.sid = en.nextElement();
+			this.aldig = en.nextElement();
+			this.sattr = en.nextElement();
+			this.sigalg = en.nextElement();
+			this.sig = en.nextElement();
 			if (en.hasMoreElements()) {
-				this.setUnsignedAttributes(en.nextElement());
+				this.usattr = en.nextElement();
 			}
 		}
 	}
@@ -206,7 +210,7 @@ public class SignerInfo {
 		Vector<Attribute> v = new Vector<Attribute>();
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.sattr.getValue());
+			en = ASN1Factory.decodeASN1Object(this.sattr);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
@@ -232,7 +236,7 @@ public class SignerInfo {
 		Vector<Attribute> v = new Vector<Attribute>();
 		Enumeration<ASN1Object> en = null;
 		try {
-			en = ASN1Factory.decodeASN1Object(this.usattr.getValue());
+			en = ASN1Factory.decodeASN1Object(this.usattr);
 		} catch (TLVEncodingException e) {
 			throw new ASN1Exception(e);
 		}
@@ -0,0 +1,282 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.encoding.der.structures;
+
+import java.security.cert.CRLReason;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.asn1.CON_SPEC;
+import org.keysupport.asn1.GENERALIZEDTIME;
+import org.keysupport.asn1.SEQUENCE;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.Tag;
+
+/**
+ * Per: <A HREF="http://www.ietf.org/rfc/rfc6960.txt">RFC6960</A>
+ * 
+ * <pre>
+ *  SingleResponse ::= SEQUENCE {
+ *      certID                       CertID,
+ *      certStatus                   CertStatus,
+ *      thisUpdate                   GeneralizedTime,
+ *      nextUpdate         [0]       EXPLICIT GeneralizedTime OPTIONAL,
+ *      singleExtensions   [1]       EXPLICIT Extensions OPTIONAL }
+ * 
+ *  CertStatus ::= CHOICE {
+ *      good        [0]     IMPLICIT NULL,
+ *      revoked     [1]     IMPLICIT RevokedInfo,
+ *      unknown     [2]     IMPLICIT UnknownInfo }
+ * 
+ *  RevokedInfo ::= SEQUENCE {
+ *      revocationTime              GeneralizedTime,
+ *      revocationReason    [0]     EXPLICIT CRLReason OPTIONAL }
+ * </pre>
+ * 
+ * @author tejohnson
+ */
+public class SingleResponse {
+
+	public final static int GOOD = 0;
+	public final static int REVOKED = 1;
+	public final static int UNKNOWN = 2;
+
+	private SEQUENCE sr = new SEQUENCE();
+	private CertID certID = null;
+	private int status = UNKNOWN;
+	private Date revocationTime = null;
+	private CRLReason revocationReason = null;
+	private Date thisUpdate = null;
+	private Date nextUpdate = null;
+
+	/**
+	 * Constructor for SingleResponse.
+	 * @param certID CertID
+	 * @param status int GOOD, REVOKED or UNKNOWN
+	 * @param revocationTime Date If REVOKED
+	 * @param revocationReason CRLReason If REVOKED, may be null
+	 * @param thisUpdate Date
+	 * @param nextUpdate Date May be null
+	 * @throws ASN1Exception
+	 */
+	public SingleResponse(CertID certID, int status, Date revocationTime,
+			CRLReason revocationReason, Date thisUpdate, Date nextUpdate)
+			throws ASN1Exception {
+		if (status < GOOD || status > UNKNOWN
+				|| (status == REVOKED && revocationTime == null)) {
+			throw new ASN1Exception("Invalid CertStatus: " + status);
+		}
+		this.certID = certID;
+		this.status = status;
+		this.revocationTime = revocationTime;
+		this.revocationReason = revocationReason;
+		this.thisUpdate = thisUpdate;
+		this.nextUpdate = nextUpdate;
+		this.encode();
+	}
+
+	/**
+	 * Constructor for SingleResponse.
+	 * @param encoded ASN1Object
+	 * @throws ASN1Exception
+	 */
+	public SingleResponse(ASN1Object encoded) throws ASN1Exception {
+		this.sr = new SEQUENCE(encoded);
+		this.decode();
+	}
+
+	/**
+	 * Method decode.
+	 * @throws ASN1Exception
+	 */
+	private void decode() throws ASN1Exception {
+		try {
+			Enumeration<ASN1Object> en = ASN1Factory.decodeASN1Object(this.sr);
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Empty SingleResponse");
+			}
+			this.certID = new CertID(en.nextElement());
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Incomplete SingleResponse");
+			}
+			ASN1Object cs = en.nextElement();
+			// The tag number is the choice
+			this.status = cs.getTag().getBytes()[0] & 0x1f;
+			if (this.status == REVOKED) {
+				Enumeration<ASN1Object> ri = ASN1Factory.decodeASN1Object(cs);
+				if (!ri.hasMoreElements()) {
+					throw new ASN1Exception("Empty RevokedInfo");
+				}
+				this.revocationTime = new GENERALIZEDTIME(ri.nextElement())
+						.getDate();
+				if (ri.hasMoreElements()) {
+					// [0] EXPLICIT ENUMERATED
+					Enumeration<ASN1Object> reason = ASN1Factory
+							.decodeASN1Object(ri.nextElement());
+					if (reason.hasMoreElements()) {
+						byte[] value = reason.nextElement().getValue();
+						int code = value[value.length - 1] & 0xff;
+						CRLReason[] reasons = CRLReason.values();
+						if (code < reasons.length) {
+							this.revocationReason = reasons[code];
+						}
+					}
+				}
+			} else if (this.status != GOOD) {
+				this.status = UNKNOWN;
+			}
+			if (!en.hasMoreElements()) {
+				throw new ASN1Exception("Incomplete SingleResponse");
+			}
+			this.thisUpdate = new GENERALIZEDTIME(en.nextElement()).getDate();
+			Tag next = new Tag((byte) 0xa0);
+			while (en.hasMoreElements()) {
+				ASN1Object obj = en.nextElement();
+				if (obj.isA(next)) {
+					Enumeration<ASN1Object> nu = ASN1Factory
+							.decodeASN1Object(obj);
+					if (nu.hasMoreElements()) {
+						this.nextUpdate = new GENERALIZEDTIME(nu.nextElement())
+								.getDate();
+					}
+				}
+			}
+		} catch (TLVEncodingException e) {
+			throw new ASN1Exception(e);
+		}
+	}
+
+	/**
+	 * Method encode.
+	 * @throws ASN1Exception
+	 */
+	private void encode() throws ASN1Exception {
+		SEQUENCE tmpseq = new SEQUENCE();
+		tmpseq.addComponent(this.certID.getASN1Object());
+		if (this.status == REVOKED) {
+			CON_SPEC revoked = new CON_SPEC(REVOKED);
+			revoked.addComponent(new GENERALIZEDTIME(this.revocationTime));
+			if (this.revocationReason != null) {
+				CON_SPEC reason = new CON_SPEC(0);
+				reason.addComponent(ASN1Factory.encodeASN1Object(new Tag(
+						Tag.ENUMERATED), new byte[] { (byte) this.revocationReason
+						.ordinal() }));
+				revoked.addComponent(reason);
+			}
+			tmpseq.addComponent(revoked);
+		} else {
+			tmpseq.addComponent(new CON_SPEC(this.status, true, null));
+		}
+		tmpseq.addComponent(new GENERALIZEDTIME(this.thisUpdate));
+		if (this.nextUpdate != null) {
+			CON_SPEC next = new CON_SPEC(0);
+			next.addComponent(new GENERALIZEDTIME(this.nextUpdate));
+			tmpseq.addComponent(next);
+		}
+		this.sr = tmpseq;
+	}
+
+	/**
+	 * Method getCertID.
+	 * @return CertID
+	 */
+	public CertID getCertID() {
+		return this.certID;
+	}
+
+	/**
+	 * Method getStatus.
+	 * @return int GOOD, REVOKED or UNKNOWN
+	 */
+	public int getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * Method getRevocationTime.
+	 * @return Date Null unless REVOKED
+	 */
+	public Date getRevocationTime() {
+		return this.revocationTime;
+	}
+
+	/**
+	 * Method getRevocationReason.
+	 * @return CRLReason Null if not given
+	 */
+	public CRLReason getRevocationReason() {
+		return this.revocationReason;
+	}
+
+	/**
+	 * Method getThisUpdate.
+	 * @return Date
+	 */
+	public Date getThisUpdate() {
+		return this.thisUpdate;
+	}
+
+	/**
+	 * Method getNextUpdate.
+	 * @return Date Null if not given
+	 */
+	public Date getNextUpdate() {
+		return this.nextUpdate;
+	}
+
+	/**
+	 * Method getBytes.
+	 * @return byte[]
+	 */
+	public byte[] getBytes() {
+		return this.sr.getBytes();
+	}
+
+	/**
+	 * Method getASN1Object.
+	 * @return ASN1Object
+	 */
+	public ASN1Object getASN1Object() {
+		return this.sr;
+	}
+
+	/**
+	 * Method toString.
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SEQUENCE {\n");
+		sb.append("\t [CertID],\n");
+		sb.append("\t" + ((this.status == GOOD) ? "good"
+				: (this.status == REVOKED) ? "revoked " + this.revocationTime
+						: "unknown") + ",\n");
+		sb.append("\t" + this.thisUpdate + ",\n");
+		sb.append("\t" + this.nextUpdate + "\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
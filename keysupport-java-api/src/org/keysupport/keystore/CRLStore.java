@@ -0,0 +1,596 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.keystore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRL;
+import java.security.cert.CRLException;
+import java.security.cert.CRLReason;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertPathValidatorException.BasicReason;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.Extension;
+import java.security.cert.PKIXRevocationChecker;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * An index of the certificates revoked by a set of CRLs, for revocation
+ * checking without network access.
+ * <p>
+ * The CRLs, such as the TrustAnchor.crl and ECCP-256CA.crl files produced by
+ * make.bash, are given to load(). Each CRL must be signed by one of the
+ * issuer certificates given with it. The serial numbers of the revoked
+ * certificates are written to an index file as fixed size records, sorted by
+ * issuer and serial number, and the file is memory mapped; a lookup is a
+ * binary search of the mapped records, so a large CRL uses neither heap nor
+ * a parse per lookup. The index file also holds the issuer names and update
+ * times of the CRLs, so an index built by another process can be opened with
+ * open().
+ * <p>
+ * getRevocationChecker() returns a PKIXRevocationChecker for
+ * CertValidator.addCertPathChecker(), which PKIX then uses in place of its
+ * own CRL distribution point and OCSP checking. A certificate whose issuer
+ * has no CRL in the index, or whose CRL is past its nextUpdate time, has an
+ * undetermined status and fails validation unless the checker has the
+ * SOFT_FAIL option. load() replaces the whole index and may be called, e.g.
+ * when new CRLs are published, while other threads are checking
+ * certificates. Delta and indirect CRLs are not supported.
+ *
+ * @author tejohnson
+ */
+public class CRLStore {
+
+	private final static boolean debug = false;
+
+	// "CRLI"
+	private final static int MAGIC = 0x43524c49;
+	private final static int VERSION = 1;
+
+	// Maximum length of a serial number (RFC 5280, 4.1.2.2)
+	private final static int SERIAL_LENGTH = 20;
+
+	// Issuer key, serial number, revocation date, reason
+	private final static int KEY_LENGTH = 8 + SERIAL_LENGTH;
+	private final static int RECORD_LENGTH = KEY_LENGTH + 8 + 4;
+
+	private final File file;
+	private volatile Index index = null;
+
+	/**
+	 * Constructor for CRLStore.
+	 * @param file File The index file, created by load()
+	 */
+	public CRLStore(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Method loadCRLs.
+	 *
+	 * @param in InputStream One or more PEM or DER CRLs
+	 * @return List<X509CRL>
+	 * @throws GeneralSecurityException
+	 */
+	public static List<X509CRL> loadCRLs(InputStream in)
+			throws GeneralSecurityException {
+		CertificateFactory cf = CertificateFactory.getInstance("X509");
+		List<X509CRL> crls = new ArrayList<X509CRL>();
+		for (CRL crl : cf.generateCRLs(in)) {
+			crls.add((X509CRL) crl);
+		}
+		return crls;
+	}
+
+	/**
+	 * Method load.
+	 *
+	 * Verifies the CRLs, writes the index file and maps it, replacing the
+	 * current index.
+	 *
+	 * @param crls Collection<X509CRL> One CRL per issuer
+	 * @param issuers Collection<X509Certificate> The certificates of the CRL
+	 *            issuers
+	 * @throws GeneralSecurityException If a CRL is not signed by one of the
+	 *             issuers, or cannot be indexed
+	 * @throws IOException
+	 */
+	public synchronized void load(Collection<X509CRL> crls,
+			Collection<X509Certificate> issuers)
+			throws GeneralSecurityException, IOException {
+		Map<X500Principal, Issuer> names = new HashMap<X500Principal, Issuer>();
+		Map<Long, X500Principal> keys = new HashMap<Long, X500Principal>();
+		List<byte[]> records = new ArrayList<byte[]>();
+		for (X509CRL crl : crls) {
+			X500Principal name = crl.getIssuerX500Principal();
+			verify(crl, issuers);
+			Set<String> critical = crl.getCriticalExtensionOIDs();
+			if (critical != null && critical.contains("2.5.29.27")) {
+				throw new CRLException("Delta CRLs are not supported: " + name);
+			}
+			if (names.containsKey(name)) {
+				throw new CRLException("More than one CRL for " + name);
+			}
+			long key = issuerKey(name);
+			if (keys.containsKey(key)) {
+				throw new CRLException("Issuer key collision: " + name + ", "
+						+ keys.get(key));
+			}
+			keys.put(key, name);
+			Date next = crl.getNextUpdate();
+			names.put(name, new Issuer(key, crl.getThisUpdate().getTime(),
+					(next == null) ? Long.MAX_VALUE : next.getTime()));
+			Set<? extends X509CRLEntry> revoked = crl.getRevokedCertificates();
+			if (revoked == null) {
+				continue;
+			}
+			for (X509CRLEntry entry : revoked) {
+				if (entry.getCertificateIssuer() != null) {
+					throw new CRLException("Indirect CRLs are not supported: "
+							+ name);
+				}
+				records.add(record(key, entry));
+			}
+		}
+		Collections.sort(records, new Comparator<byte[]>() {
+			@Override
+			public int compare(byte[] a, byte[] b) {
+				for (int i = 0; i < KEY_LENGTH; i++) {
+					int d = (a[i] & 0xff) - (b[i] & 0xff);
+					if (d != 0) {
+						return d;
+					}
+				}
+				return 0;
+			}
+		});
+		write(names, records);
+		this.index = map(this.file);
+		if (debug) {
+			System.out.println("CRLStore: " + names.size() + " CRLs, "
+					+ records.size() + " revoked certificates");
+		}
+	}
+
+	/**
+	 * Method open.
+	 *
+	 * Maps an index file written by load(), e.g. by another process.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException {
+		this.index = map(this.file);
+	}
+
+	/**
+	 * Method isRevoked.
+	 *
+	 * @param cert X509Certificate
+	 * @return boolean True if the certificate is on its issuer's CRL
+	 * @throws CertPathValidatorException If the issuer has no current CRL in
+	 *             the index
+	 */
+	public boolean isRevoked(X509Certificate cert)
+			throws CertPathValidatorException {
+		return check(cert) != null;
+	}
+
+	/**
+	 * Method getRevocationChecker.
+	 * @return PKIXRevocationChecker A checker using this store
+	 */
+	public PKIXRevocationChecker getRevocationChecker() {
+		return new Checker();
+	}
+
+	/**
+	 * Method size.
+	 * @return int Number of revoked certificates in the index
+	 */
+	public int size() {
+		Index current = this.index;
+		return (current == null) ? 0 : current.count;
+	}
+
+	/**
+	 * Method getNextUpdate.
+	 * @param issuer X500Principal
+	 * @return Date The nextUpdate time of the issuer's CRL, or null
+	 */
+	public Date getNextUpdate(X500Principal issuer) {
+		Index current = this.index;
+		Issuer i = (current == null) ? null : current.issuers.get(issuer);
+		return (i == null) ? null : new Date(i.nextUpdate);
+	}
+
+	/**
+	 * Method check.
+	 *
+	 * @param cert X509Certificate
+	 * @return CertificateRevokedException If the certificate is revoked,
+	 *         otherwise null
+	 * @throws CertPathValidatorException If the issuer has no current CRL in
+	 *             the index
+	 */
+	private CertificateRevokedException check(X509Certificate cert)
+			throws CertPathValidatorException {
+		Index current = this.index;
+		X500Principal name = cert.getIssuerX500Principal();
+		Issuer issuer = (current == null) ? null : current.issuers.get(name);
+		if (issuer == null) {
+			throw new CertPathValidatorException("No CRL for " + name, null,
+					null, -1, BasicReason.UNDETERMINED_REVOCATION_STATUS);
+		}
+		if (System.currentTimeMillis() > issuer.nextUpdate) {
+			throw new CertPathValidatorException("CRL for " + name
+					+ " is past its nextUpdate time", null, null, -1,
+					BasicReason.UNDETERMINED_REVOCATION_STATUS);
+		}
+		byte[] serial = serial(cert.getSerialNumber());
+		if (serial == null) {
+			return null;
+		}
+		byte[] key = new byte[KEY_LENGTH];
+		ByteBuffer.wrap(key).putLong(issuer.key).put(serial);
+		int pos = current.find(key);
+		if (pos < 0) {
+			return null;
+		}
+		long date = current.records.getLong(pos + KEY_LENGTH);
+		int reason = current.records.getInt(pos + KEY_LENGTH + 8);
+		CRLReason[] reasons = CRLReason.values();
+		return new CertificateRevokedException(new Date(date),
+				(reason >= 0 && reason < reasons.length) ? reasons[reason]
+						: CRLReason.UNSPECIFIED, name,
+				Collections.<String, Extension> emptyMap());
+	}
+
+	/**
+	 * Method verify.
+	 *
+	 * @param crl X509CRL
+	 * @param issuers Collection<X509Certificate>
+	 * @throws GeneralSecurityException If no issuer's key verifies the CRL
+	 */
+	private static void verify(X509CRL crl, Collection<X509Certificate> issuers)
+			throws GeneralSecurityException {
+		for (X509Certificate issuer : issuers) {
+			if (!issuer.getSubjectX500Principal().equals(
+					crl.getIssuerX500Principal())) {
+				continue;
+			}
+			try {
+				crl.verify(issuer.getPublicKey());
+				return;
+			} catch (GeneralSecurityException e) {
+				// Try the next certificate with the same name
+			}
+		}
+		throw new CRLException("CRL not signed by a given issuer: "
+				+ crl.getIssuerX500Principal());
+	}
+
+	/**
+	 * Method issuerKey.
+	 * @param name X500Principal
+	 * @return long The first 8 bytes of the SHA-256 hash of the name
+	 */
+	private static long issuerKey(X500Principal name) {
+		try {
+			return ByteBuffer.wrap(
+					MessageDigest.getInstance("SHA-256").digest(
+							name.getEncoded())).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Method serial.
+	 * @param serial BigInteger
+	 * @return byte[] The serial number, right aligned in SERIAL_LENGTH bytes,
+	 *         or null if it is negative or too long
+	 */
+	private static byte[] serial(BigInteger serial) {
+		byte[] value = serial.toByteArray();
+		int off = (value.length > 1 && value[0] == 0) ? 1 : 0;
+		int len = value.length - off;
+		if (serial.signum() < 0 || len > SERIAL_LENGTH) {
+			return null;
+		}
+		byte[] padded = new byte[SERIAL_LENGTH];
+		System.arraycopy(value, off, padded, SERIAL_LENGTH - len, len);
+		return padded;
+	}
+
+	/**
+	 * Method record.
+	 * @param key long
+	 * @param entry X509CRLEntry
+	 * @return byte[]
+	 * @throws CRLException
+	 */
+	private static byte[] record(long key, X509CRLEntry entry)
+			throws CRLException {
+		byte[] serial = serial(entry.getSerialNumber());
+		if (serial == null) {
+			throw new CRLException("Unsupported serial number: "
+					+ entry.getSerialNumber().toString(16));
+		}
+		CRLReason reason = entry.getRevocationReason();
+		byte[] record = new byte[RECORD_LENGTH];
+		ByteBuffer.wrap(record).putLong(key).put(serial)
+				.putLong(entry.getRevocationDate().getTime())
+				.putInt((reason == null) ? -1 : reason.ordinal());
+		return record;
+	}
+
+	/**
+	 * Method write.
+	 *
+	 * Writes the index to a temporary file, which then replaces the index
+	 * file; an index mapped earlier remains valid.
+	 *
+	 * @param issuers Map<X500Principal, Issuer>
+	 * @param records List<byte[]> Sorted records
+	 * @throws IOException
+	 */
+	private void write(Map<X500Principal, Issuer> issuers, List<byte[]> records)
+			throws IOException {
+		int size = 16;
+		for (X500Principal name : issuers.keySet()) {
+			size += 2 + name.getEncoded().length + 8 + 8 + 8;
+		}
+		size += records.size() * RECORD_LENGTH;
+		File dir = this.file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(this.file.getName(), ".tmp", dir);
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE,
+					0, size);
+			out.putInt(MAGIC).putInt(VERSION).putInt(issuers.size())
+					.putInt(records.size());
+			for (Map.Entry<X500Principal, Issuer> e : issuers.entrySet()) {
+				byte[] name = e.getKey().getEncoded();
+				out.putShort((short) name.length).put(name)
+						.putLong(e.getValue().key)
+						.putLong(e.getValue().thisUpdate)
+						.putLong(e.getValue().nextUpdate);
+			}
+			for (byte[] record : records) {
+				out.put(record);
+			}
+			out.force();
+		} finally {
+			raf.close();
+		}
+		if (!tmp.renameTo(this.file)) {
+			tmp.delete();
+			throw new IOException("Could not replace " + this.file);
+		}
+	}
+
+	/**
+	 * Method map.
+	 * @param file File
+	 * @return Index
+	 * @throws IOException
+	 */
+	private static Index map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer in;
+		try {
+			FileChannel channel = raf.getChannel();
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// The mapping remains valid after the file is closed
+			raf.close();
+		}
+		if (in.remaining() < 16 || in.getInt() != MAGIC
+				|| in.getInt() != VERSION) {
+			throw new IOException("Not a CRL index: " + file);
+		}
+		int issuerCount = in.getInt();
+		int count = in.getInt();
+		Map<X500Principal, Issuer> issuers = new HashMap<X500Principal, Issuer>();
+		for (int i = 0; i < issuerCount; i++) {
+			byte[] name = new byte[in.getShort() & 0xffff];
+			in.get(name);
+			issuers.put(new X500Principal(name), new Issuer(in.getLong(),
+					in.getLong(), in.getLong()));
+		}
+		if (in.remaining() != count * RECORD_LENGTH) {
+			throw new IOException("Truncated CRL index: " + file);
+		}
+		return new Index(issuers, in.slice(), count);
+	}
+
+	/**
+	 * The CRL of one issuer.
+	 */
+	private static class Issuer {
+
+		private final long key;
+		private final long thisUpdate;
+		private final long nextUpdate;
+
+		/**
+		 * Constructor for Issuer.
+		 * @param key long
+		 * @param thisUpdate long
+		 * @param nextUpdate long
+		 */
+		private Issuer(long key, long thisUpdate, long nextUpdate) {
+			this.key = key;
+			this.thisUpdate = thisUpdate;
+			this.nextUpdate = nextUpdate;
+		}
+
+	}
+
+	/**
+	 * A mapped index file.
+	 */
+	private static class Index {
+
+		private final Map<X500Principal, Issuer> issuers;
+		// Read only, and only read with absolute gets, so shared by threads
+		private final ByteBuffer records;
+		private final int count;
+
+		/**
+		 * Constructor for Index.
+		 * @param issuers Map<X500Principal, Issuer>
+		 * @param records ByteBuffer
+		 * @param count int
+		 */
+		private Index(Map<X500Principal, Issuer> issuers, ByteBuffer records,
+				int count) {
+			this.issuers = issuers;
+			this.records = records;
+			this.count = count;
+		}
+
+		/**
+		 * Method find.
+		 * @param key byte[] Issuer key and serial number
+		 * @return int The offset of the record, or -1
+		 */
+		private int find(byte[] key) {
+			int low = 0;
+			int high = this.count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int pos = mid * RECORD_LENGTH;
+				int d = 0;
+				for (int i = 0; i < KEY_LENGTH && d == 0; i++) {
+					d = (this.records.get(pos + i) & 0xff) - (key[i] & 0xff);
+				}
+				if (d < 0) {
+					low = mid + 1;
+				} else if (d > 0) {
+					high = mid - 1;
+				} else {
+					return pos;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+	/**
+	 * A PKIXRevocationChecker using the store.
+	 * <p>
+	 * Of the PKIXRevocationChecker options, ONLY_END_ENTITY and SOFT_FAIL
+	 * are used; with ONLY_END_ENTITY, CA certificates (those with a
+	 * basicConstraints extension) are not checked.
+	 */
+	private class Checker extends PKIXRevocationChecker {
+
+		private List<CertPathValidatorException> softFailures = new LinkedList<CertPathValidatorException>();
+
+		@Override
+		public void init(boolean forward) {
+			this.softFailures.clear();
+		}
+
+		@Override
+		public boolean isForwardCheckingSupported() {
+			return true;
+		}
+
+		@Override
+		public Set<String> getSupportedExtensions() {
+			return null;
+		}
+
+		@Override
+		public List<CertPathValidatorException> getSoftFailExceptions() {
+			return Collections.unmodifiableList(this.softFailures);
+		}
+
+		@Override
+		public void check(Certificate cert, Collection<String> unresolvedCritExts)
+				throws CertPathValidatorException {
+			X509Certificate x509 = (X509Certificate) cert;
+			if (getOptions().contains(Option.ONLY_END_ENTITY)
+					&& x509.getBasicConstraints() != -1) {
+				return;
+			}
+			CertificateRevokedException revoked;
+			try {
+				revoked = CRLStore.this.check(x509);
+			} catch (CertPathValidatorException e) {
+				if (getOptions().contains(Option.SOFT_FAIL)) {
+					this.softFailures.add(e);
+					return;
+				}
+				throw e;
+			}
+			if (revoked != null) {
+				if (debug) {
+					System.out.println("CRLStore: Revoked: "
+							+ x509.getSubjectX500Principal());
+				}
+				throw new CertPathValidatorException(revoked.getMessage(),
+						revoked, null, -1, BasicReason.REVOKED);
+			}
+		}
+
+		@Override
+		public Checker clone() {
+			// Each copy, e.g. one per validation, has its own failures
+			Checker copy = (Checker) super.clone();
+			copy.softFailures = new LinkedList<CertPathValidatorException>();
+			return copy;
+		}
+
+	}
+
+}
@@ -27,37 +27,69 @@ package org.keysupport.keystore;
 import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.AccessController;
+import java.security.GeneralSecurityException;
 import java.security.PrivilegedAction;
 import java.security.Security;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
-import java.security.cert.CertPathValidator;
 import java.security.cert.CertStore;
-import java.security.cert.CertStoreParameters;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXBuilderParameters;
 import java.security.cert.PKIXCertPathBuilderResult;
-import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.PKIXCertPathChecker;
+import java.security.cert.PKIXRevocationChecker;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.keysupport.util.TimestampPrintStream;
 
 /**
+ * Validates certificates to a set of trust anchors with PKIX path building.
+ * <p>
+ * The trust anchors and intermediate certificates are given once, when the
+ * validator is created, and the PKIXBuilderParameters are built from them
+ * then. Each validation only sets the target certificate on a copy of those
+ * parameters, so a validator can be kept and used from any number of
+ * threads. Trust anchors and certificates can be loaded from PEM or DER
+ * files, such as the trustanchor-ca.pem and eccp256issuing-ca.pem files
+ * produced by make.bash, with loadTrustAnchors() and loadCertificates().
+ * <p>
+ * Revocation checking is enabled by default; without a PKIXCertPathChecker
+ * for revocation, it uses the CRL distribution points and OCSP responders
+ * named in the certificates, for every validation. setOCSPClient() makes the
+ * validator check revocation with an OCSPClient instead, which caches OCSP
+ * responses between validations. Add the checker from
+ * CRLStore.getRevocationChecker() to check local CRLs only, e.g. on readers
+ * without network access. The validated path is only written to a .p7b
+ * file if setSavePath(true) has been called.
+ * <p>
+ * CertValidator(X509Certificate) validates to the Federal Common Policy CA,
+ * as before, with its own copy of the parameters; setRevocationEnabled() and
+ * addCertPathChecker() only change the validator they are called on. The
+ * OCSPClient given to setDefaultOCSPClient() is used by the validators
+ * created with CertValidator(X509Certificate) after the call, and by
+ * SignerTrustCache.
  */
 public class CertValidator {
 
-	static boolean debug = true;
+	static boolean debug = false;
+
+	private static boolean initialized = false;
+	private static CertValidator common = null;
 
 	// static boolean httpProxy = false;
 	static boolean inhibitAnyPolicy = true;
@@ -113,7 +145,16 @@ public class CertValidator {
 			+ "Dn0KJnNR6obLB6jI/WNaNZvSr79PMUjBhHDbNXuaGQ/lj/RqDG8z2esccKIN47lQ\n"
 			+ "A2EC/0rskqTcLe4qNJMHtyznGI8=\n" + "-----END CERTIFICATE-----";
 
-	private static void init() {
+	/**
+	 * Method init.
+	 *
+	 * Sets the revocation properties, once.
+	 */
+	private static synchronized void init() {
+		if (initialized) {
+			return;
+		}
+		initialized = true;
 		if (debug) {
 			AccessController.doPrivileged(new PrivilegedAction<Void>() {
 				@Override
@@ -145,6 +186,21 @@ public class CertValidator {
 
 	X509Certificate ee;
 
+	private final PKIXBuilderParameters params;
+	private boolean savePath = false;
+
+	// CertPathBuilder instances are not thread safe
+	private final ThreadLocal<CertPathBuilder> builders = new ThreadLocal<CertPathBuilder>() {
+		@Override
+		protected CertPathBuilder initialValue() {
+			try {
+				return CertPathBuilder.getInstance("PKIX");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
 	/**
 	 * Default Constructor
 	 * 
@@ -155,41 +211,79 @@ public class CertValidator {
 	 *                Exception thrown if certificate path construction or
 	 *                validation fails. */
 	public CertValidator(X509Certificate ee) throws Exception {
-		init();
+		this(getCommon());
 		this.ee = ee;
 	}
 
 	/**
-	 * Method validate.
-	 * @return boolean
-	 * @throws IOException 
+	 * Constructor for CertValidator.
+	 * 
+	 * @param anchors
+	 *            Set<TrustAnchor>
+	 * @param certs
+	 *            Collection<X509Certificate> Intermediate CA certificates,
+	 *            may be null
+	 * @throws GeneralSecurityException
 	 */
-	public boolean validate() throws IOException {
-		boolean valid = false;
-		FileOutputStream fvpath = null;
-		try {
-			init();
+	public CertValidator(Set<TrustAnchor> anchors,
+			Collection<X509Certificate> certs) throws GeneralSecurityException {
+		init();
+		this.params = new PKIXBuilderParameters(anchors, null);
+		this.params.setRevocationEnabled(true);
+		this.params.setAnyPolicyInhibited(inhibitAnyPolicy);
+		this.params.setPolicyQualifiersRejected(true);
+		// params.setInitialPolicies(Collections.singleton("2.16.840.1.101.3.2.1.3.13"));
+		if (certs != null && !certs.isEmpty()) {
+			this.params.addCertStore(CertStore.getInstance("Collection",
+					new CollectionCertStoreParameters(certs)));
+		}
+		if (debug) {
+			System.out.println("Parameters:");
+			System.out.println(this.params.toString());
+		}
+	}
 
-			CertificateFactory cf = CertificateFactory.getInstance("X509");
-			ByteArrayInputStream bais = new ByteArrayInputStream(
-					COMMON_SHA2_PEM.getBytes());
-			X509Certificate ta = (X509Certificate) cf.generateCertificate(bais);
+	/**
+	 * Constructor for CertValidator.
+	 * 
+	 * Copies the parameters of another validator, so that changes made to
+	 * either validator do not affect the other.
+	 * 
+	 * @param other
+	 *            CertValidator
+	 */
+	private CertValidator(CertValidator other) {
+		synchronized (other) {
+			this.params = (PKIXBuilderParameters) other.params.clone();
+		}
+	}
 
-			if (debug) {
-				if (this.ee.hasUnsupportedCriticalExtension()) {
-					System.out
-							.println("JAVA THINKS THE EE CERT HAS AN UNSUPPORTED EXTENSION");
-					Iterator<String> extensions = this.ee.getCriticalExtensionOIDs()
-							.iterator();
-					System.out.println("Critical Extension OIDS:");
-					while (extensions.hasNext()) {
-						System.out.println(extensions.next());
-					}
-				}
-			}
+	/**
+	 * Method getCommon.
+	 * @return CertValidator The validator for the Federal Common Policy CA
+	 * @throws GeneralSecurityException
+	 */
+	static synchronized CertValidator getCommon()
+			throws GeneralSecurityException {
+		if (common == null) {
+			common = new CertValidator(loadTrustAnchors(new ByteArrayInputStream(
+					COMMON_SHA2_PEM.getBytes())), null);
+		}
+		return common;
+	}
 
-			// X509Certificate ta =
-			// (X509Certificate)cf.generateCertificate(tafile);
+	/**
+	 * Method loadTrustAnchors.
+	 * 
+	 * @param in
+	 *            InputStream One or more PEM or DER certificates
+	 * @return Set<TrustAnchor>
+	 * @throws CertificateException
+	 */
+	public static Set<TrustAnchor> loadTrustAnchors(InputStream in)
+			throws CertificateException {
+		Set<TrustAnchor> anchors = new HashSet<TrustAnchor>();
+		for (X509Certificate ta : loadCertificates(in)) {
 			if (debug) {
 				if (ta.hasUnsupportedCriticalExtension()) {
 					System.out
@@ -202,91 +296,213 @@ public class CertValidator {
 					}
 				}
 			}
+			anchors.add(new TrustAnchor(ta, null));
+		}
+		return anchors;
+	}
 
-			X509CertSelector selector = new X509CertSelector();
-			selector.setCertificate(this.ee);
-			TrustAnchor anchor = new TrustAnchor(ta, null);
-
-			List<Certificate> cert_list = new ArrayList<Certificate>();
-			cert_list.add(this.ee);
-			cert_list.add(ta);
-			CertStoreParameters cparam = new CollectionCertStoreParameters(
-					cert_list);
-			CertStore cstore = CertStore.getInstance("Collection", cparam,
-					"SUN");
-
-			PKIXBuilderParameters params = new PKIXBuilderParameters(
-					Collections.singleton(anchor), selector);
-			params.setRevocationEnabled(true);
-			params.setAnyPolicyInhibited(inhibitAnyPolicy);
-			params.setPolicyQualifiersRejected(true);
-			// params.setInitialPolicies(Collections.singleton("2.16.840.1.101.3.2.1.3.13"));
-			params.addCertStore(cstore);
-			if (debug) {
-				System.out.println("Parameters:");
-				System.out.println(params.toString());
-			}
+	/**
+	 * Method loadCertificates.
+	 * 
+	 * @param in
+	 *            InputStream One or more PEM or DER certificates
+	 * @return List<X509Certificate>
+	 * @throws CertificateException
+	 */
+	public static List<X509Certificate> loadCertificates(InputStream in)
+			throws CertificateException {
+		CertificateFactory cf = CertificateFactory.getInstance("X509");
+		List<X509Certificate> certs = new ArrayList<X509Certificate>();
+		for (Certificate cert : cf.generateCertificates(in)) {
+			certs.add((X509Certificate) cert);
+		}
+		return certs;
+	}
 
-			if (debug) {
-				System.out.println("--- BEGIN PATH DISCOVERY ---");
-			}
-			CertPathBuilder cpb = CertPathBuilder.getInstance("PKIX", "SUN");
+	/**
+	 * Method setRevocationEnabled.
+	 * 
+	 * @param enabled
+	 *            boolean
+	 */
+	public synchronized void setRevocationEnabled(boolean enabled) {
+		this.params.setRevocationEnabled(enabled);
+	}
 
-			if (debug) {
-				System.out.println("Path Builder Provider: "
-						+ cpb.getProvider().toString());
-			}
+	/**
+	 * Method addCertPathChecker.
+	 * 
+	 * Adds a checker, such as a PKIXRevocationChecker, run on every path.
+	 * 
+	 * @param checker
+	 *            PKIXCertPathChecker
+	 */
+	public synchronized void addCertPathChecker(PKIXCertPathChecker checker) {
+		this.params.addCertPathChecker(checker);
+	}
 
-			PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult) cpb
-					.build(params);
-			if (debug) {
-				System.out.println("Result:");
-				System.out.println(result.toString());
-			}
-			if (debug) {
-				System.out.println("--- END PATH DISCOVERY ---");
+	/**
+	 * Method setOCSPClient.
+	 * 
+	 * Checks revocation with the client, replacing any other
+	 * PKIXRevocationChecker, and enables revocation checking.
+	 * 
+	 * @param client
+	 *            OCSPClient The client, or null to use the revocation checking
+	 *            of the PKIX provider
+	 */
+	public synchronized void setOCSPClient(OCSPClient client) {
+		List<PKIXCertPathChecker> checkers = new ArrayList<PKIXCertPathChecker>();
+		for (PKIXCertPathChecker checker : this.params.getCertPathCheckers()) {
+			if (!(checker instanceof PKIXRevocationChecker)) {
+				checkers.add(checker);
 			}
+		}
+		if (client != null) {
+			checkers.add(client.getRevocationChecker());
+			this.params.setRevocationEnabled(true);
+		}
+		this.params.setCertPathCheckers(checkers);
+	}
 
-			CertPath cp = result.getCertPath();
-			if (debug) {
-				System.out.println("Parameters:");
-				System.out.println(params.toString());
-			}
+	/**
+	 * Method setDefaultOCSPClient.
+	 * 
+	 * Sets the OCSPClient of the Federal Common Policy CA validator.
+	 * 
+	 * @param client
+	 *            OCSPClient The client, or null to use the revocation checking
+	 *            of the PKIX provider
+	 * @throws GeneralSecurityException
+	 */
+	public static void setDefaultOCSPClient(OCSPClient client)
+			throws GeneralSecurityException {
+		getCommon().setOCSPClient(client);
+	}
 
+	/**
+	 * Method setSavePath.
+	 * 
+	 * @param savePath
+	 *            boolean Write each validated path to a .p7b file named for
+	 *            the subject of the certificate (default false)
+	 */
+	public void setSavePath(boolean savePath) {
+		this.savePath = savePath;
+	}
+
+	/**
+	 * Method validate.
+	 * @return boolean
+	 * @throws IOException 
+	 */
+	public boolean validate() throws IOException {
+		return validate(this.ee);
+	}
+
+	/**
+	 * Method validate.
+	 * 
+	 * @param ee
+	 *            X509Certificate
+	 * @return boolean
+	 * @throws IOException
+	 */
+	public boolean validate(X509Certificate ee) throws IOException {
+		try {
+			check(ee);
+			return true;
+		} catch (GeneralSecurityException e) {
 			if (debug) {
-				System.out.println("--- BEGIN PATH VALIDATION ---");
-			}
-			CertPathValidator cpv = CertPathValidator.getInstance("PKIX");
-			PKIXCertPathValidatorResult pvr = (PKIXCertPathValidatorResult) cpv
-					.validate(cp, params);
-			if (debug) {
-				System.out.println(pvr);
+				e.printStackTrace();
 			}
-			if (debug) {
-				System.out.println("--- END PATH VALIDATION ---");
+			return false;
+		}
+	}
+
+	/**
+	 * Method check.
+	 * 
+	 * Builds and validates a path for the certificate, throwing the reason
+	 * if there is none. Callers can tell a certificate that does not
+	 * validate from a revocation status that could not be determined (a
+	 * CertPathValidatorException with reason UNDETERMINED_REVOCATION_STATUS,
+	 * e.g. when a responder cannot be reached).
+	 * 
+	 * @param ee
+	 *            X509Certificate
+	 * @throws GeneralSecurityException
+	 *             If no valid path was found
+	 * @throws IOException
+	 *             If the path could not be saved
+	 */
+	public void check(X509Certificate ee) throws GeneralSecurityException,
+			IOException {
+		if (debug) {
+			if (ee.hasUnsupportedCriticalExtension()) {
+				System.out
+						.println("JAVA THINKS THE EE CERT HAS AN UNSUPPORTED EXTENSION");
+				Iterator<String> extensions = ee.getCriticalExtensionOIDs()
+						.iterator();
+				System.out.println("Critical Extension OIDS:");
+				while (extensions.hasNext()) {
+					System.out.println(extensions.next());
+				}
 			}
+		}
 
-			// If we got this far, all is good!
+		X509CertSelector selector = new X509CertSelector();
+		selector.setCertificate(ee);
+		PKIXBuilderParameters vparams;
+		synchronized (this) {
+			vparams = (PKIXBuilderParameters) this.params.clone();
+		}
+		vparams.setTargetCertConstraints(selector);
+
+		if (debug) {
+			System.out.println("--- BEGIN PATH DISCOVERY ---");
+		}
+		CertPathBuilder cpb = this.builders.get();
+
+		if (debug) {
+			System.out.println("Path Builder Provider: "
+					+ cpb.getProvider().toString());
+		}
+
+		// The PKIX builder validates the path it returns
+		PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult) cpb
+				.build(vparams);
+		if (debug) {
+			System.out.println("Result:");
+			System.out.println(result.toString());
+		}
+		if (debug) {
+			System.out.println("--- END PATH DISCOVERY ---");
+		}
+
+		// If we got this far, all is good!
+		if (debug) {
 			System.out
 					.println("Path construction & validation successful!  Certificate is valid!");
-			valid = true;
+		}
 
-			String p7bfile = this.ee.getSubjectX500Principal().getName() + ".p7b";
+		if (this.savePath) {
+			CertPath cp = result.getCertPath();
+			String p7bfile = ee.getSubjectX500Principal().getName()
+					+ ".p7b";
 			if (debug) {
 				System.out.println("Saving validated certificate path to: "
 						+ p7bfile);
 			}
-			fvpath = new FileOutputStream(p7bfile);
-			byte[] vpath = cp.getEncoded("PKCS7");
-			fvpath.write(vpath);
-			fvpath.flush();
-
-		} catch (Throwable e) {
-			e.printStackTrace();
-		} finally {
-			fvpath.close();
+			FileOutputStream fvpath = new FileOutputStream(p7bfile);
+			try {
+				byte[] vpath = cp.getEncoded("PKCS7");
+				fvpath.write(vpath);
+				fvpath.flush();
+			} finally {
+				fvpath.close();
+			}
 		}
-		return valid;
 	}
 
-}
\ No newline at end of file
+}
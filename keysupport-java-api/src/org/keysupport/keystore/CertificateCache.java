@@ -0,0 +1,161 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.keystore;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.keysupport.util.DataUtil;
+
+/**
+ * A cache of parsed certificates, keyed by the SHA-256 fingerprint of their
+ * encoding.
+ * <p>
+ * The same certificates, such as the content signer certificate in every
+ * CHUID and security object of an issuer, and the certificates of cards
+ * that are presented every day, are read again and again. Parsing one of
+ * them costs far more than computing its fingerprint, so parsed certificates
+ * are kept and shared; X509Certificate objects are immutable. Entries are
+ * evicted least recently used first once the cache holds maxEntries.
+ * Instances may be shared by any number of threads.
+ *
+ * @author tejohnson
+ */
+public class CertificateCache {
+
+	private final static boolean debug = false;
+
+	// Default size of the shared instance
+	private final static int DEFAULT_MAX_ENTRIES = 256;
+
+	private final static CertificateCache defaultCache = new CertificateCache(
+			DEFAULT_MAX_ENTRIES);
+
+	private final int maxEntries;
+
+	// Fingerprint -> certificate, in access order
+	private final LinkedHashMap<String, X509Certificate> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructor for CertificateCache.
+	 * @param maxEntries int Maximum number of certificates held
+	 */
+	public CertificateCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries=" + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, X509Certificate>(16, 0.75f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, X509Certificate> eldest) {
+				return size() > CertificateCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Method getDefault.
+	 * @return CertificateCache The instance shared by PIVCertificate and
+	 *         CMSSignedDataObject
+	 */
+	public static CertificateCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * Method getCertificate.
+	 * 
+	 * Returns the cached certificate with the encoding's fingerprint,
+	 * parsing and caching the encoding if there is none.
+	 * 
+	 * @param encoded byte[] The DER encoded certificate
+	 * @return X509Certificate
+	 * @throws CertificateException
+	 */
+	public X509Certificate getCertificate(byte[] encoded)
+			throws CertificateException {
+		String fingerprint = DataUtil.byteArrayToString(DigestEngine
+				.sHA256Sum(encoded));
+		synchronized (this) {
+			X509Certificate cert = this.entries.get(fingerprint);
+			if (cert != null) {
+				this.hits++;
+				return cert;
+			}
+			this.misses++;
+		}
+		// Parsed outside the lock; a race parses the certificate twice
+		X509Certificate cert = (X509Certificate) CertificateFactory
+				.getInstance("X.509").generateCertificate(
+						new ByteArrayInputStream(encoded));
+		if (debug) {
+			System.out.println("CertificateCache: " + fingerprint + " -> "
+					+ cert.getSubjectX500Principal());
+		}
+		synchronized (this) {
+			this.entries.put(fingerprint, cert);
+		}
+		return cert;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+	/**
+	 * Method size.
+	 * @return int Number of certificates held
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Method getHits.
+	 * @return long Number of lookups that found a certificate
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Method getMisses.
+	 * @return long Number of lookups that parsed a certificate
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+}
@@ -179,6 +179,28 @@ public class CipherEngine {
 
 	}
 
+	/**
+	 * Method getDigestAlgorithm.
+	 * 
+	 * @param digest
+	 *            ObjectIdentifier
+	 * @return String The JCA MessageDigest name
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static String getDigestAlgorithm(ObjectIdentifier digest)
+			throws NoSuchAlgorithmException {
+		if (digest.equals(SHA1)) {
+			return "SHA-1";
+		} else if (digest.equals(SHA256)) {
+			return "SHA-256";
+		} else if (digest.equals(SHA384)) {
+			return "SHA-384";
+		} else {
+			throw new NoSuchAlgorithmException(
+					"Algorithm not included in NIST 800-78");
+		}
+	}
+
 	/**
 	 * Method getSigningAlgorithm.
 	 * 
@@ -189,8 +211,9 @@ public class CipherEngine {
 	 */
 	public static String getSigningAlgorithm(ObjectIdentifier sigalg)
 			throws NoSuchAlgorithmException {
-        System.out.println("ENTER getSigningAlgorithm(sigalg): sigalg=");
-        System.out.println(sigalg);
+		if (debug) {
+			System.out.println("getSigningAlgorithm: " + sigalg);
+		}
 		if (sigalg.equals(SHA1withRSA)) {
 			return "SHA1withRSA";
 		} else if (sigalg.equals(SHA256withRSA)) {
@@ -0,0 +1,805 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.keystore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertPathValidatorException.BasicReason;
+import java.security.cert.CRLReason;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.Extension;
+import java.security.cert.PKIXRevocationChecker;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.der.ObjectIdentifier;
+import org.keysupport.encoding.der.structures.CertID;
+import org.keysupport.encoding.der.structures.OCSPRequest;
+import org.keysupport.encoding.der.structures.OCSPResponse;
+import org.keysupport.encoding.der.structures.SingleResponse;
+import org.keysupport.util.DataUtil;
+
+/**
+ * An OCSP client that caches the status of the certificates it checks, such
+ * as the Card Authentication (9E) and PIV Authentication (9A) certificates
+ * presented at a reader.
+ * <p>
+ * Responses are requested without a nonce (RFC5019), verified, and cached
+ * until their nextUpdate time, so a card that is presented again does not
+ * cause another round trip to the responder. Responses without a nextUpdate
+ * time are cached for the default time to live. When several threads check
+ * the same certificate while its status is being fetched, they wait for the
+ * one request to the responder. A cached status is refreshed in the
+ * background once it is used within the prefetch time of its nextUpdate time
+ * (or in the second half of its lifetime, if that is later), so that cards
+ * in regular use are not delayed when their status expires.
+ * <p>
+ * The issuer certificates of the checked certificates, including trust
+ * anchors, are given when the client is created; they are needed for the
+ * request and to verify the response. Responses must be signed by the issuer
+ * or by a responder certificate it issued for OCSP signing. The responder is
+ * the one given, or else the OCSP access location in the certificate's
+ * authority information access extension. Requests are sent with a
+ * Transport, by default an HTTP POST; OCSPResponder is an in process
+ * Transport for testing without a network.
+ * <p>
+ * CertValidator.setOCSPClient() makes a validator check revocation through
+ * getRevocationChecker(), so that chain validation uses the cached status
+ * rather than asking the network each time. Instances may be shared by any
+ * number of threads.
+ *
+ * @author tejohnson
+ */
+public class OCSPClient {
+
+	private final static boolean debug = false;
+
+	// Time to live of a response without nextUpdate
+	private final static long DEFAULT_TIME_TO_LIVE = 60 * 60 * 1000;
+	// Time before nextUpdate at which a response in use is refreshed
+	private final static long DEFAULT_PREFETCH = 5 * 60 * 1000;
+	// Allowed difference between the responder's clock and ours
+	private final static long MAX_CLOCK_SKEW = 5 * 60 * 1000;
+
+	// id-ad-ocsp and id-pe-authorityInfoAccess
+	private final static String ID_AD_OCSP = "1.3.6.1.5.5.7.48.1";
+	private final static String AIA = "1.3.6.1.5.5.7.1.1";
+	// id-kp-OCSPSigning
+	private final static String OCSP_SIGNING = "1.3.6.1.5.5.7.3.9";
+
+	/**
+	 * Sends an encoded OCSP request to a responder.
+	 */
+	public interface Transport {
+
+		/**
+		 * Method send.
+		 * @param responder URI
+		 * @param request byte[] The encoded OCSPRequest
+		 * @return byte[] The encoded OCSPResponse
+		 * @throws IOException
+		 */
+		byte[] send(URI responder, byte[] request) throws IOException;
+	}
+
+	private final Map<X500Principal, List<Issuer>> issuers = new HashMap<X500Principal, List<Issuer>>();
+	private final URI responder;
+	private final Transport transport;
+	private final int maxEntries;
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+	private long prefetch = DEFAULT_PREFETCH;
+
+	// Issuer key hash and serial number -> Entry, in access order
+	private final LinkedHashMap<String, Entry> entries;
+	// Requests in progress
+	private final HashMap<String, FutureTask<SingleResponse>> pending = new HashMap<String, FutureTask<SingleResponse>>();
+	private ExecutorService prefetcher = null;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long requests = 0;
+
+	/**
+	 * Constructor for OCSPClient.
+	 * 
+	 * Sends requests over HTTP to the responder named in each certificate.
+	 * 
+	 * @param issuers Collection<X509Certificate> CA certificates
+	 * @throws GeneralSecurityException
+	 */
+	public OCSPClient(Collection<X509Certificate> issuers)
+			throws GeneralSecurityException {
+		this(issuers, null, new HttpTransport(10000), 1024);
+	}
+
+	/**
+	 * Constructor for OCSPClient.
+	 * @param issuers Collection<X509Certificate> CA certificates
+	 * @param responder URI The responder for all certificates, or null to
+	 *            use the authority information access extension
+	 * @param transport Transport
+	 * @param maxEntries int Maximum number of certificates held
+	 * @throws GeneralSecurityException
+	 */
+	public OCSPClient(Collection<X509Certificate> issuers, URI responder,
+			Transport transport, int maxEntries)
+			throws GeneralSecurityException {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries=" + maxEntries);
+		}
+		for (X509Certificate cert : issuers) {
+			Issuer issuer = new Issuer(cert);
+			List<Issuer> named = this.issuers.get(cert
+					.getSubjectX500Principal());
+			if (named == null) {
+				named = new ArrayList<Issuer>(1);
+				this.issuers.put(cert.getSubjectX500Principal(), named);
+			}
+			named.add(issuer);
+		}
+		this.responder = responder;
+		this.transport = transport;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > OCSPClient.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Method setTimeToLive.
+	 * @param timeToLive long Milliseconds a response without nextUpdate is
+	 *            kept (default one hour)
+	 */
+	public synchronized void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Method setPrefetch.
+	 * @param prefetch long Milliseconds before nextUpdate at which a
+	 *            response in use is refreshed (default five minutes), or 0
+	 *            to only fetch expired responses
+	 */
+	public synchronized void setPrefetch(long prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * Method getStatus.
+	 * 
+	 * @param cert X509Certificate
+	 * @return SingleResponse The verified status of the certificate
+	 * @throws CertPathValidatorException If the status could not be obtained
+	 */
+	public SingleResponse getStatus(X509Certificate cert)
+			throws CertPathValidatorException {
+		return getStatus(cert, null);
+	}
+
+	/**
+	 * Method getStatus.
+	 * 
+	 * @param cert X509Certificate
+	 * @param uri URI The responder to ask, or null
+	 * @return SingleResponse The verified status of the certificate
+	 * @throws CertPathValidatorException If the status could not be obtained
+	 */
+	private SingleResponse getStatus(final X509Certificate cert, URI uri)
+			throws CertPathValidatorException {
+		final Issuer issuer = findIssuer(cert);
+		final URI target = (uri != null) ? uri : (this.responder != null)
+				? this.responder : getResponderURI(cert);
+		final String key = issuer.keyHashString + ":"
+				+ cert.getSerialNumber().toString(16);
+		FutureTask<SingleResponse> fetch;
+		boolean owner = false;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			Entry entry = this.entries.get(key);
+			if (entry != null && now < entry.expires) {
+				this.hits++;
+				if (now >= entry.refreshAt && !this.pending.containsKey(key)) {
+					// Refresh in the background, answering from the cache
+					fetch = newFetch(key, cert, issuer, target);
+					getPrefetcher().execute(fetch);
+				}
+				return entry.response;
+			}
+			this.misses++;
+			fetch = this.pending.get(key);
+			if (fetch == null) {
+				fetch = newFetch(key, cert, issuer, target);
+				owner = true;
+			}
+		}
+		if (owner) {
+			fetch.run();
+		}
+		try {
+			return fetch.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CertPathValidatorException) {
+				throw (CertPathValidatorException) e.getCause();
+			}
+			throw new CertPathValidatorException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CertPathValidatorException("Interrupted", e, null, -1,
+					BasicReason.UNDETERMINED_REVOCATION_STATUS);
+		}
+	}
+
+	/**
+	 * Method newFetch.
+	 * 
+	 * Registers a request for the certificate, which replaces the cached
+	 * status when it completes successfully. Called with the lock held.
+	 * 
+	 * @param key String
+	 * @param cert X509Certificate
+	 * @param issuer Issuer
+	 * @param uri URI
+	 * @return FutureTask<SingleResponse>
+	 */
+	private FutureTask<SingleResponse> newFetch(final String key,
+			final X509Certificate cert, final Issuer issuer, final URI uri) {
+		FutureTask<SingleResponse> fetch = new FutureTask<SingleResponse>(
+				new Callable<SingleResponse>() {
+					@Override
+					public SingleResponse call() throws Exception {
+						SingleResponse sr = null;
+						try {
+							sr = fetch(cert, issuer, uri);
+							return sr;
+						} finally {
+							store(key, sr);
+						}
+					}
+				});
+		this.pending.put(key, fetch);
+		return fetch;
+	}
+
+	/**
+	 * Method store.
+	 * @param key String
+	 * @param sr SingleResponse The fetched status, or null if the request
+	 *            failed
+	 */
+	private synchronized void store(String key, SingleResponse sr) {
+		this.pending.remove(key);
+		if (sr == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expires = (sr.getNextUpdate() != null) ? sr.getNextUpdate()
+				.getTime() : now + this.timeToLive;
+		long refreshAt = (this.prefetch <= 0) ? expires : Math.max(now
+				+ (expires - now) / 2, expires - this.prefetch);
+		this.entries.put(key, new Entry(sr, expires, refreshAt));
+	}
+
+	/**
+	 * Method fetch.
+	 * 
+	 * Sends a request for the certificate, and verifies the response.
+	 * 
+	 * @param cert X509Certificate
+	 * @param issuer Issuer
+	 * @param uri URI
+	 * @return SingleResponse
+	 * @throws CertPathValidatorException
+	 */
+	private SingleResponse fetch(X509Certificate cert, Issuer issuer, URI uri)
+			throws CertPathValidatorException {
+		if (uri == null) {
+			throw undetermined("No OCSP responder for "
+					+ cert.getSubjectX500Principal(), null);
+		}
+		synchronized (this) {
+			this.requests++;
+		}
+		OCSPResponse response;
+		CertID id;
+		try {
+			id = new CertID(issuer.cert, cert.getSerialNumber());
+			List<CertID> ids = new ArrayList<CertID>(1);
+			ids.add(id);
+			byte[] request = new OCSPRequest(ids).getBytes();
+			if (debug) {
+				System.out.println("OCSPClient: Request to " + uri + ": "
+						+ DataUtil.byteArrayToString(request));
+			}
+			response = new OCSPResponse(this.transport.send(uri, request));
+		} catch (IOException e) {
+			throw undetermined("OCSP request to " + uri + " failed", e);
+		} catch (ASN1Exception e) {
+			throw undetermined("Invalid OCSP response from " + uri, null);
+		}
+		if (debug) {
+			System.out.println("OCSPClient: " + response.toString());
+		}
+		return verify(response, id, issuer);
+	}
+
+	/**
+	 * Method verify.
+	 * 
+	 * @param response OCSPResponse
+	 * @param id CertID The requested certificate
+	 * @param issuer Issuer
+	 * @return SingleResponse The status of the requested certificate
+	 * @throws CertPathValidatorException If the response is not successful,
+	 *             not current, or not signed by an authorized responder
+	 */
+	private SingleResponse verify(OCSPResponse response, CertID id,
+			Issuer issuer) throws CertPathValidatorException {
+		if (response.getResponseStatus() != OCSPResponse.SUCCESSFUL) {
+			throw undetermined("OCSP responder returned status "
+					+ response.getResponseStatus(), null);
+		}
+		X509Certificate signer = findSigner(response, issuer);
+		try {
+			Signature sig = Signature.getInstance(CipherEngine
+					.getSigningAlgorithm(response.getSignatureAlgorithm()
+							.getAlgOID()));
+			sig.initVerify(signer.getPublicKey());
+			sig.update(response.getTBSResponseData());
+			if (!sig.verify(response.getSignature())) {
+				throw undetermined("OCSP response signature is invalid", null);
+			}
+		} catch (GeneralSecurityException e) {
+			throw undetermined("OCSP response signature is invalid", e);
+		} catch (ASN1Exception e) {
+			throw undetermined("Invalid OCSP signature algorithm", null);
+		}
+		long now = System.currentTimeMillis();
+		for (SingleResponse sr : response.getSingleResponses()) {
+			try {
+				if (!sr.getCertID().matches(id)) {
+					continue;
+				}
+			} catch (ASN1Exception e) {
+				continue;
+			}
+			if (sr.getThisUpdate().getTime() > now + MAX_CLOCK_SKEW) {
+				throw undetermined("OCSP response is not yet valid", null);
+			}
+			if (sr.getNextUpdate() != null
+					&& sr.getNextUpdate().getTime() < now - MAX_CLOCK_SKEW) {
+				throw undetermined("OCSP response is stale", null);
+			}
+			return sr;
+		}
+		throw undetermined("OCSP response does not include the certificate",
+				null);
+	}
+
+	/**
+	 * Method findSigner.
+	 * 
+	 * @param response OCSPResponse
+	 * @param issuer Issuer
+	 * @return X509Certificate The issuer, or a responder certificate issued
+	 *         by it for OCSP signing
+	 * @throws CertPathValidatorException
+	 */
+	private static X509Certificate findSigner(OCSPResponse response,
+			Issuer issuer) throws CertPathValidatorException {
+		if (issuer.isResponder(response)) {
+			return issuer.cert;
+		}
+		for (X509Certificate cert : response.getCertificates()) {
+			try {
+				if (!new Issuer(cert).isResponder(response)) {
+					continue;
+				}
+				List<String> eku = cert.getExtendedKeyUsage();
+				if (eku == null || !eku.contains(OCSP_SIGNING)
+						|| !cert.getIssuerX500Principal().equals(
+								issuer.cert.getSubjectX500Principal())) {
+					continue;
+				}
+				cert.checkValidity();
+				cert.verify(issuer.cert.getPublicKey());
+				return cert;
+			} catch (GeneralSecurityException e) {
+				if (debug) {
+					e.printStackTrace();
+				}
+			}
+		}
+		throw undetermined("OCSP response not signed by an authorized responder",
+				null);
+	}
+
+	/**
+	 * Method findIssuer.
+	 * @param cert X509Certificate
+	 * @return Issuer
+	 * @throws CertPathValidatorException
+	 */
+	private Issuer findIssuer(X509Certificate cert)
+			throws CertPathValidatorException {
+		List<Issuer> named = this.issuers.get(cert.getIssuerX500Principal());
+		if (named != null) {
+			if (named.size() == 1) {
+				return named.get(0);
+			}
+			for (Issuer issuer : named) {
+				try {
+					cert.verify(issuer.cert.getPublicKey());
+					return issuer;
+				} catch (GeneralSecurityException e) {
+					// Try the next certificate with the same name
+				}
+			}
+		}
+		throw undetermined("Unknown issuer: " + cert.getIssuerX500Principal(),
+				null);
+	}
+
+	/**
+	 * Method getResponderURI.
+	 * @param cert X509Certificate
+	 * @return URI The OCSP access location, or null
+	 */
+	private static URI getResponderURI(X509Certificate cert) {
+		byte[] ext = cert.getExtensionValue(AIA);
+		if (ext == null) {
+			return null;
+		}
+		try {
+			// OCTET STRING { SEQUENCE OF AccessDescription }
+			ASN1Object aia = new ASN1Object(new ASN1Object(ext).getValue());
+			Enumeration<ASN1Object> en = ASN1Factory.decodeASN1Object(aia);
+			while (en.hasMoreElements()) {
+				Enumeration<ASN1Object> ad = ASN1Factory.decodeASN1Object(en
+						.nextElement());
+				String method = new ObjectIdentifier(ad.nextElement()
+						.getValue()).toString();
+				ASN1Object location = ad.nextElement();
+				// uniformResourceIdentifier [6] IA5String
+				if (method.equals(ID_AD_OCSP)
+						&& location.getTag().getBytes()[0] == (byte) 0x86) {
+					return new URI(new String(location.getValue()));
+				}
+			}
+		} catch (TLVEncodingException e) {
+			if (debug) {
+				e.printStackTrace();
+			}
+		} catch (Exception e) {
+			// URISyntaxException, or an incomplete AccessDescription
+			if (debug) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Method undetermined.
+	 * @param msg String
+	 * @param cause Throwable
+	 * @return CertPathValidatorException
+	 */
+	private static CertPathValidatorException undetermined(String msg,
+			Throwable cause) {
+		return new CertPathValidatorException(msg, cause, null, -1,
+				BasicReason.UNDETERMINED_REVOCATION_STATUS);
+	}
+
+	/**
+	 * Method getPrefetcher.
+	 * @return ExecutorService Called with the lock held
+	 */
+	private ExecutorService getPrefetcher() {
+		if (this.prefetcher == null) {
+			this.prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "OCSPClient prefetch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return this.prefetcher;
+	}
+
+	/**
+	 * Method getRevocationChecker.
+	 * @return PKIXRevocationChecker A checker using this client
+	 */
+	public PKIXRevocationChecker getRevocationChecker() {
+		return new Checker();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+	/**
+	 * Method size.
+	 * @return int Number of certificates held
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Method getHits.
+	 * @return long Number of lookups answered from the cache
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Method getMisses.
+	 * @return long Number of lookups that waited for a response
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Method getRequests.
+	 * @return long Number of requests sent, including prefetches
+	 */
+	public synchronized long getRequests() {
+		return this.requests;
+	}
+
+	/**
+	 * A certificate that issues the checked certificates.
+	 */
+	private static class Issuer {
+
+		private final X509Certificate cert;
+		private final byte[] keyHash;
+		private final String keyHashString;
+
+		/**
+		 * Constructor for Issuer.
+		 * @param cert X509Certificate
+		 * @throws GeneralSecurityException
+		 */
+		private Issuer(X509Certificate cert) throws GeneralSecurityException {
+			this.cert = cert;
+			try {
+				this.keyHash = MessageDigest.getInstance("SHA-1").digest(
+						CertID.getKeyBits(cert));
+			} catch (ASN1Exception e) {
+				throw new GeneralSecurityException("Invalid public key: "
+						+ cert.getSubjectX500Principal());
+			}
+			this.keyHashString = DataUtil.byteArrayToString(this.keyHash);
+		}
+
+		/**
+		 * Method isResponder.
+		 * @param response OCSPResponse
+		 * @return boolean True if the ResponderID names this certificate
+		 */
+		private boolean isResponder(OCSPResponse response) {
+			if (response.getResponderKeyHash() != null) {
+				return Arrays.equals(this.keyHash, response.getResponderKeyHash());
+			}
+			return this.cert.getSubjectX500Principal().equals(
+					response.getResponderName());
+		}
+
+	}
+
+	/**
+	 * A cached status.
+	 */
+	private static class Entry {
+
+		private final SingleResponse response;
+		private final long expires;
+		private final long refreshAt;
+
+		/**
+		 * Constructor for Entry.
+		 * @param response SingleResponse
+		 * @param expires long
+		 * @param refreshAt long
+		 */
+		private Entry(SingleResponse response, long expires, long refreshAt) {
+			this.response = response;
+			this.expires = expires;
+			this.refreshAt = refreshAt;
+		}
+
+	}
+
+	/**
+	 * Sends requests with an HTTP POST (RFC6960, Appendix A).
+	 */
+	public static class HttpTransport implements Transport {
+
+		private final int timeout;
+
+		/**
+		 * Constructor for HttpTransport.
+		 * @param timeout int Connect and read timeout, in milliseconds
+		 */
+		public HttpTransport(int timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public byte[] send(URI responder, byte[] request) throws IOException {
+			HttpURLConnection con = (HttpURLConnection) responder.toURL()
+					.openConnection();
+			try {
+				con.setConnectTimeout(this.timeout);
+				con.setReadTimeout(this.timeout);
+				con.setDoOutput(true);
+				con.setRequestMethod("POST");
+				con.setRequestProperty("Content-Type", "application/ocsp-request");
+				con.setRequestProperty("Accept", "application/ocsp-response");
+				con.setFixedLengthStreamingMode(request.length);
+				OutputStream out = con.getOutputStream();
+				out.write(request);
+				out.close();
+				if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
+					throw new IOException("HTTP " + con.getResponseCode());
+				}
+				InputStream in = con.getInputStream();
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				byte[] buf = new byte[4096];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					bos.write(buf, 0, n);
+				}
+				in.close();
+				return bos.toByteArray();
+			} finally {
+				con.disconnect();
+			}
+		}
+
+	}
+
+	/**
+	 * A PKIXRevocationChecker using the client.
+	 * <p>
+	 * Of the PKIXRevocationChecker options, ONLY_END_ENTITY and SOFT_FAIL
+	 * are used; with ONLY_END_ENTITY, CA certificates (those with a
+	 * basicConstraints extension) are not checked. A responder set with
+	 * setOcspResponder() is used instead of the client's.
+	 */
+	private class Checker extends PKIXRevocationChecker {
+
+		private List<CertPathValidatorException> softFailures = new LinkedList<CertPathValidatorException>();
+
+		@Override
+		public void init(boolean forward) {
+			this.softFailures.clear();
+		}
+
+		@Override
+		public boolean isForwardCheckingSupported() {
+			return true;
+		}
+
+		@Override
+		public Set<String> getSupportedExtensions() {
+			return null;
+		}
+
+		@Override
+		public List<CertPathValidatorException> getSoftFailExceptions() {
+			return Collections.unmodifiableList(this.softFailures);
+		}
+
+		@Override
+		public void check(Certificate cert, Collection<String> unresolvedCritExts)
+				throws CertPathValidatorException {
+			X509Certificate x509 = (X509Certificate) cert;
+			if (getOptions().contains(Option.ONLY_END_ENTITY)
+					&& x509.getBasicConstraints() != -1) {
+				return;
+			}
+			SingleResponse sr;
+			try {
+				sr = OCSPClient.this.getStatus(x509, getOcspResponder());
+				if (sr.getStatus() == SingleResponse.UNKNOWN) {
+					throw undetermined("OCSP status unknown: "
+							+ x509.getSubjectX500Principal(), null);
+				}
+			} catch (CertPathValidatorException e) {
+				if (getOptions().contains(Option.SOFT_FAIL)) {
+					this.softFailures.add(e);
+					return;
+				}
+				throw e;
+			}
+			if (sr.getStatus() == SingleResponse.REVOKED) {
+				if (debug) {
+					System.out.println("OCSPClient: Revoked: "
+							+ x509.getSubjectX500Principal());
+				}
+				CertificateRevokedException revoked = new CertificateRevokedException(
+						sr.getRevocationTime(),
+						(sr.getRevocationReason() == null) ? CRLReason.UNSPECIFIED
+								: sr.getRevocationReason(),
+						x509.getIssuerX500Principal(),
+						Collections.<String, Extension> emptyMap());
+				throw new CertPathValidatorException(revoked.getMessage(),
+						revoked, null, -1, BasicReason.REVOKED);
+			}
+		}
+
+		@Override
+		public Checker clone() {
+			// Each copy, e.g. one per validation, has its own failures
+			Checker copy = (Checker) super.clone();
+			copy.softFailures = new LinkedList<CertPathValidatorException>();
+			return copy;
+		}
+
+	}
+
+}
@@ -0,0 +1,275 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.keystore;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.CRLReason;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.asn1.ASN1Object;
+import org.keysupport.asn1.SEQUENCE;
+import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.der.structures.AlgorithmIdentifier;
+import org.keysupport.encoding.der.structures.CertID;
+import org.keysupport.encoding.der.structures.OCSPRequest;
+import org.keysupport.encoding.der.structures.OCSPResponse;
+import org.keysupport.encoding.der.structures.SingleResponse;
+
+/**
+ * A stand-in OCSP responder for one CA, which answers requests in process,
+ * for testing and load testing OCSPClient without a network or a real
+ * responder.
+ * <p>
+ * Every certificate of the CA is reported good unless it has been revoked
+ * with revoke(). Responses are signed either by the CA or by a delegated
+ * responder certificate, which is then included in the response, and are
+ * valid for the given validity period. An optional latency is added to each
+ * request, to simulate the round trip to a real responder. Requests for
+ * other CAs are answered with the unauthorized status.
+ *
+ * @author tejohnson
+ */
+public class OCSPResponder implements OCSPClient.Transport {
+
+	private final static boolean debug = false;
+
+	private final X509Certificate issuer;
+	private final X509Certificate signer;
+	private final PrivateKey key;
+	private final byte[] nameHash;
+	private final byte[] keyHash;
+	private final byte[] responderKeyHash;
+	private final AlgorithmIdentifier sigAlg;
+	private final String sigAlgName;
+
+	private final Map<BigInteger, SingleResponse> revoked = new HashMap<BigInteger, SingleResponse>();
+	private long validity = 60 * 60 * 1000;
+	private long latency = 0;
+	private long requests = 0;
+
+	/**
+	 * Constructor for OCSPResponder.
+	 * 
+	 * Signs responses with the CA's key.
+	 * 
+	 * @param issuer X509Certificate The CA
+	 * @param key PrivateKey The CA's key
+	 * @throws GeneralSecurityException
+	 */
+	public OCSPResponder(X509Certificate issuer, PrivateKey key)
+			throws GeneralSecurityException {
+		this(issuer, issuer, key);
+	}
+
+	/**
+	 * Constructor for OCSPResponder.
+	 * @param issuer X509Certificate The CA
+	 * @param signer X509Certificate The CA, or a responder certificate
+	 *            issued by it with the id-kp-OCSPSigning extended key usage
+	 * @param key PrivateKey The signer's key
+	 * @throws GeneralSecurityException
+	 */
+	public OCSPResponder(X509Certificate issuer, X509Certificate signer,
+			PrivateKey key) throws GeneralSecurityException {
+		this.issuer = issuer;
+		this.signer = signer;
+		this.key = key;
+		try {
+			CertID id = new CertID(issuer, BigInteger.ZERO);
+			this.nameHash = id.getIssuerNameHash();
+			this.keyHash = id.getIssuerKeyHash();
+			this.responderKeyHash = MessageDigest.getInstance("SHA-1").digest(
+					CertID.getKeyBits(signer));
+			if (key.getAlgorithm().equals("EC")) {
+				// ECDSA AlgorithmIdentifiers have no parameters (RFC5758)
+				SEQUENCE ai = new SEQUENCE();
+				ai.addComponent(ASN1Factory.encodeASN1Object(new Tag(
+						Tag.OBJECTID), CipherEngine.SHA256withECDSA.getEncoded()));
+				this.sigAlg = new AlgorithmIdentifier(ai.getBytes());
+			} else {
+				this.sigAlg = new AlgorithmIdentifier(CipherEngine.SHA256withRSA,
+						null);
+			}
+		} catch (ASN1Exception e) {
+			throw new GeneralSecurityException("Invalid certificate: " + e);
+		}
+		this.sigAlgName = key.getAlgorithm().equals("EC") ? "SHA256withECDSA"
+				: "SHA256withRSA";
+	}
+
+	/**
+	 * Method revoke.
+	 * @param serial BigInteger
+	 * @param time Date
+	 * @param reason CRLReason May be null
+	 */
+	public synchronized void revoke(BigInteger serial, Date time,
+			CRLReason reason) {
+		// The CertID and times are filled in per response
+		try {
+			this.revoked.put(serial, new SingleResponse(new CertID(this.issuer,
+					serial), SingleResponse.REVOKED, time, reason, time, null));
+		} catch (ASN1Exception e) {
+			throw new IllegalArgumentException(e.toString());
+		}
+	}
+
+	/**
+	 * Method setValidity.
+	 * @param validity long Milliseconds from thisUpdate to nextUpdate
+	 *            (default one hour), or 0 to omit nextUpdate
+	 */
+	public synchronized void setValidity(long validity) {
+		this.validity = validity;
+	}
+
+	/**
+	 * Method setLatency.
+	 * @param latency long Milliseconds added to each request
+	 */
+	public synchronized void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Method getRequests.
+	 * @return long Number of requests answered
+	 */
+	public synchronized long getRequests() {
+		return this.requests;
+	}
+
+	/**
+	 * Method send.
+	 * @param responder URI Ignored
+	 * @param request byte[]
+	 * @return byte[]
+	 * @throws IOException
+	 * @see org.keysupport.keystore.OCSPClient.Transport#send(URI, byte[])
+	 */
+	@Override
+	public byte[] send(URI responder, byte[] request) throws IOException {
+		long delay;
+		synchronized (this) {
+			this.requests++;
+			delay = this.latency;
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted");
+			}
+		}
+		return respond(request);
+	}
+
+	/**
+	 * Method respond.
+	 * @param request byte[] The encoded OCSPRequest
+	 * @return byte[] The encoded OCSPResponse
+	 */
+	public byte[] respond(byte[] request) {
+		try {
+			OCSPRequest req;
+			try {
+				req = new OCSPRequest(request);
+			} catch (ASN1Exception e) {
+				return new OCSPResponse(OCSPResponse.MALFORMED_REQUEST).getBytes();
+			}
+			Date now = new Date();
+			Date next;
+			synchronized (this) {
+				next = (this.validity > 0) ? new Date(now.getTime()
+						+ this.validity) : null;
+			}
+			List<SingleResponse> responses = new ArrayList<SingleResponse>();
+			for (CertID id : req.getCertIDs()) {
+				if (!Arrays.equals(this.nameHash, id.getIssuerNameHash())
+						|| !Arrays.equals(this.keyHash, id.getIssuerKeyHash())) {
+					return new OCSPResponse(OCSPResponse.UNAUTHORIZED).getBytes();
+				}
+				SingleResponse r;
+				synchronized (this) {
+					r = this.revoked.get(id.getSerialNumber());
+				}
+				if (r == null) {
+					responses.add(new SingleResponse(id, SingleResponse.GOOD,
+							null, null, now, next));
+				} else {
+					responses.add(new SingleResponse(id, SingleResponse.REVOKED,
+							r.getRevocationTime(), r.getRevocationReason(), now,
+							next));
+				}
+			}
+			ASN1Object tbs = OCSPResponse.encodeResponseData(
+					this.responderKeyHash, now, responses);
+			Signature sig = Signature.getInstance(this.sigAlgName);
+			sig.initSign(this.key);
+			sig.update(tbs.getBytes());
+			List<X509Certificate> certs = new ArrayList<X509Certificate>();
+			if (this.signer != this.issuer) {
+				certs.add(this.signer);
+			}
+			return new OCSPResponse(tbs, this.sigAlg, sig.sign(), certs)
+					.getBytes();
+		} catch (GeneralSecurityException e) {
+			if (debug) {
+				e.printStackTrace();
+			}
+			return internalError();
+		} catch (ASN1Exception e) {
+			if (debug) {
+				e.printStackTrace();
+			}
+			return internalError();
+		}
+	}
+
+	/**
+	 * Method internalError.
+	 * @return byte[] An internalError response
+	 */
+	private static byte[] internalError() {
+		try {
+			return new OCSPResponse(OCSPResponse.INTERNAL_ERROR).getBytes();
+		} catch (ASN1Exception e) {
+			// Not reached; only a successful response has a body
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+}
@@ -0,0 +1,331 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.keystore;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.keysupport.util.DataUtil;
+
+/**
+ * A cache of signer certificate validation results, so that PKIX path
+ * building and revocation checking are only done the first time a content
+ * signer is seen.
+ * <p>
+ * The CHUID and security object of every card from an issuer are usually
+ * signed by the same content signing certificate. Results are keyed by the
+ * SHA-256 fingerprint of the certificate. A valid result is kept until the
+ * earlier of the time to live and the certificate's notAfter date, so a
+ * revoked signer is accepted for at most the time to live after its
+ * revocation; choose it accordingly. An invalid result is kept for the
+ * shorter negative time to live. A result that could not be determined,
+ * because the revocation status was unavailable (e.g. the OCSP responder
+ * could not be reached) or an I/O error occurred, is not cached at all, and
+ * the signer is validated again when it is next presented.
+ * <p>
+ * When several threads present the same signer before its result is known,
+ * one validates it and the others wait for that result. Entries are evicted
+ * least recently used first once the cache holds maxEntries. Instances may be
+ * shared by any number of threads.
+ *
+ * @author tejohnson
+ */
+public class SignerTrustCache {
+
+	private final static boolean debug = false;
+
+	// Default size and time to live of the shared instance
+	private final static int DEFAULT_MAX_ENTRIES = 64;
+	private final static long DEFAULT_TIME_TO_LIVE = 60 * 60 * 1000;
+	private final static long DEFAULT_NEGATIVE_TIME_TO_LIVE = 60 * 1000;
+
+	private final static SignerTrustCache defaultCache = new SignerTrustCache(
+			DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+
+	private final int maxEntries;
+	private final long timeToLive;
+	private final long negativeTimeToLive;
+
+	// Fingerprint -> Entry, in access order
+	private final LinkedHashMap<String, Entry> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructor for SignerTrustCache.
+	 * @param maxEntries int Maximum number of signers held
+	 * @param timeToLive long Milliseconds a result is kept
+	 */
+	public SignerTrustCache(int maxEntries, long timeToLive) {
+		this(maxEntries, timeToLive, Math.min(timeToLive,
+				DEFAULT_NEGATIVE_TIME_TO_LIVE));
+	}
+
+	/**
+	 * Constructor for SignerTrustCache.
+	 * @param maxEntries int Maximum number of signers held
+	 * @param timeToLive long Milliseconds a valid result is kept
+	 * @param negativeTimeToLive long Milliseconds an invalid result is kept
+	 */
+	public SignerTrustCache(int maxEntries, long timeToLive,
+			long negativeTimeToLive) {
+		if (maxEntries <= 0 || timeToLive <= 0 || negativeTimeToLive <= 0) {
+			throw new IllegalArgumentException("maxEntries=" + maxEntries
+					+ " timeToLive=" + timeToLive + " negativeTimeToLive="
+					+ negativeTimeToLive);
+		}
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.negativeTimeToLive = negativeTimeToLive;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > SignerTrustCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Method getDefault.
+	 * @return SignerTrustCache The instance used by CMSSignedDataObject
+	 *         unless another is given
+	 */
+	public static SignerTrustCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * Method isTrusted.
+	 *
+	 * Returns the cached result for the certificate, validating it first if
+	 * there is none.
+	 *
+	 * @param signer X509Certificate
+	 * @return boolean True if the certificate validated to the trust anchor
+	 */
+	public boolean isTrusted(X509Certificate signer) {
+		String fingerprint;
+		try {
+			fingerprint = fingerprint(signer);
+		} catch (CertificateEncodingException e) {
+			return false;
+		}
+		Entry entry;
+		synchronized (this) {
+			entry = this.entries.get(fingerprint);
+			if (entry != null && entry.isExpired()) {
+				this.entries.remove(fingerprint);
+				entry = null;
+			}
+			if (entry == null) {
+				this.misses++;
+				long expires = Math.min(System.currentTimeMillis()
+						+ this.timeToLive, signer.getNotAfter().getTime());
+				entry = new Entry(expires);
+				this.entries.put(fingerprint, entry);
+			} else {
+				this.hits++;
+			}
+		}
+		synchronized (entry) {
+			if (!entry.validated) {
+				try {
+					entry.trusted = validate(signer);
+				} catch (GeneralSecurityException e) {
+					if (isUndetermined(e)) {
+						discard(fingerprint, entry, e);
+						return false;
+					}
+					entry.trusted = false;
+				} catch (IOException e) {
+					discard(fingerprint, entry, e);
+					return false;
+				}
+				if (!entry.trusted) {
+					entry.expires = Math.min(entry.expires, System
+							.currentTimeMillis()
+							+ this.negativeTimeToLive);
+				}
+				entry.validated = true;
+				if (debug) {
+					System.out.println("SignerTrustCache: "
+							+ signer.getSubjectX500Principal().getName()
+							+ " -> " + entry.trusted);
+				}
+			}
+			return entry.trusted;
+		}
+	}
+
+	/**
+	 * Method validate.
+	 *
+	 * Validates a certificate that is not in the cache. The default
+	 * implementation uses the CertValidator for the Federal Common Policy
+	 * CA.
+	 *
+	 * @param signer X509Certificate
+	 * @return boolean False, or a GeneralSecurityException, if the
+	 *         certificate does not validate
+	 * @throws GeneralSecurityException
+	 * @throws IOException If the result could not be determined
+	 */
+	protected boolean validate(X509Certificate signer)
+			throws GeneralSecurityException, IOException {
+		CertValidator.getCommon().check(signer);
+		return true;
+	}
+
+	/**
+	 * Method isUndetermined.
+	 * @param e GeneralSecurityException
+	 * @return boolean True if the revocation status could not be determined
+	 */
+	private static boolean isUndetermined(GeneralSecurityException e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof CertPathValidatorException
+					&& ((CertPathValidatorException) t).getReason() == CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS) {
+				return true;
+			} else if (t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Method discard.
+	 *
+	 * Removes an entry whose result could not be determined, so that the
+	 * signer is validated again when it is next presented.
+	 *
+	 * @param fingerprint String
+	 * @param entry Entry
+	 * @param e Exception
+	 */
+	private void discard(String fingerprint, Entry entry, Exception e) {
+		synchronized (this) {
+			if (this.entries.get(fingerprint) == entry) {
+				this.entries.remove(fingerprint);
+			}
+		}
+		if (debug) {
+			System.out.println("SignerTrustCache: Undetermined: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Method invalidate.
+	 * @param signer X509Certificate
+	 */
+	public void invalidate(X509Certificate signer) {
+		try {
+			String fingerprint = fingerprint(signer);
+			synchronized (this) {
+				this.entries.remove(fingerprint);
+			}
+		} catch (CertificateEncodingException e) {
+			// Never cached
+		}
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+	/**
+	 * Method size.
+	 * @return int Number of signers held
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Method getHits.
+	 * @return long Number of lookups answered from the cache
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Method getMisses.
+	 * @return long Number of lookups that required validation
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Method fingerprint.
+	 * @param cert X509Certificate
+	 * @return String
+	 * @throws CertificateEncodingException
+	 */
+	private static String fingerprint(X509Certificate cert)
+			throws CertificateEncodingException {
+		return DataUtil.byteArrayToString(DigestEngine.sHA256Sum(cert
+				.getEncoded()));
+	}
+
+	/**
+	 * The validation result for one signer.
+	 */
+	private static class Entry {
+
+		// Shortened, under the entry's lock, for an invalid result
+		private volatile long expires;
+		// Guarded by the entry
+		private boolean validated = false;
+		private boolean trusted = false;
+
+		/**
+		 * Constructor for Entry.
+		 * @param expires long
+		 */
+		private Entry(long expires) {
+			this.expires = expires;
+		}
+
+		/**
+		 * Method isExpired.
+		 * @return boolean
+		 */
+		private boolean isExpired() {
+			return System.currentTimeMillis() >= this.expires;
+		}
+
+	}
+
+}
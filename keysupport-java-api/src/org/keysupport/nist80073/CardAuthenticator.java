@@ -0,0 +1,394 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.nist80073;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+
+import org.keysupport.asn1.ASN1Exception;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
+import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.der.structures.AlgorithmIdentifier;
+import org.keysupport.encoding.der.structures.DigestInfo;
+import org.keysupport.keystore.CipherEngine;
+import org.keysupport.keystore.PaddingEngine;
+import org.keysupport.nist80073.cardedge.PIVAPDU;
+import org.keysupport.nist80073.cardedge.PIVAPDUInterface;
+import org.keysupport.nist80073.datamodel.PIVCertificate;
+
+/**
+ * Authenticates a card with its Card Authentication Key (CAK), by having the
+ * card sign a random challenge with GENERAL AUTHENTICATE and verifying the
+ * signature with the public key of the Card Authentication certificate.
+ * RSA 1024 and 2048, and ECC P-256 and P-384 keys are supported.
+ * <p>
+ * The challenge is random bytes, used directly as the digest that the card
+ * signs: the card is given the 32 or 48 byte challenge for ECC keys, and the
+ * PKCS #1 v1.5 padded DigestInfo of a 32 byte challenge, as a SHA-256
+ * digest, for RSA keys. Nothing is hashed on the host, and the signature is
+ * verified with NONEwithECDSA or NONEwithRSA.
+ * <p>
+ * For each key type, and for short and extended length APDUs, the command
+ * APDUs are built once, with only the challenge changing between cards. The
+ * random source, the Signature objects and the response buffer are also
+ * kept, so authenticating a card costs the GENERAL AUTHENTICATE round trip,
+ * one signature verification, and little else.
+ * <p>
+ * Only possession of the private key is proven. The Card Authentication
+ * certificate must still be validated, e.g. with CertValidator, and the
+ * credential checked, e.g. with CredentialIndex. An instance is not thread
+ * safe; use one per reader, e.g. per CardTerminalService worker thread.
+ *
+ * @author tejohnson
+ */
+public class CardAuthenticator {
+
+	private final static boolean debug = false;
+
+	// Bytes of random in an RSA challenge, signed as a SHA-256 digest
+	private final static int RSA_RANDOM_LENGTH = 32;
+
+	private final SecureRandom random;
+	private final ResponseAssembler assembler = new ResponseAssembler();
+	private final HashMap<Integer, Template> templates = new HashMap<Integer, Template>();
+	private Signature rsa = null;
+	private Signature ecdsa = null;
+	private byte[] challenge = new byte[48];
+
+	/**
+	 * Constructor for CardAuthenticator.
+	 */
+	public CardAuthenticator() {
+		this(defaultRandom());
+	}
+
+	/**
+	 * Constructor for CardAuthenticator.
+	 * @param random SecureRandom The source of challenges
+	 */
+	public CardAuthenticator(SecureRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Method authenticate.
+	 *
+	 * Reads the Card Authentication certificate from the card, and
+	 * authenticates the card with its key.
+	 *
+	 * @param card PIVCard
+	 * @return X509Certificate The Card Authentication certificate, or null if
+	 *         the card did not prove possession of the key
+	 * @throws CardException
+	 */
+	public X509Certificate authenticate(PIVCard card) throws CardException {
+		PIVCertificate cak = card.getCardAuthCert();
+		X509Certificate cert;
+		try {
+			cert = cak.getCertificate();
+		} catch (CertificateException e) {
+			throw new CardException(e);
+		} catch (IOException e) {
+			throw new CardException(e);
+		}
+		return authenticate(card, cert) ? cert : null;
+	}
+
+	/**
+	 * Method authenticate.
+	 *
+	 * Authenticates the card with the key of the given Card Authentication
+	 * certificate, e.g. one taken from a cache.
+	 *
+	 * @param card PIVCard
+	 * @param cardAuth X509Certificate
+	 * @return boolean True if the card proved possession of the key
+	 * @throws CardException If the exchange with the card failed, or the key
+	 *         is not supported
+	 */
+	public boolean authenticate(PIVCard card, X509Certificate cardAuth)
+			throws CardException {
+		long start = System.nanoTime();
+		PublicKey key = cardAuth.getPublicKey();
+		Template t = getTemplate(algorithm(key), card.isExtendedLength());
+
+		// Put a new challenge in the command APDUs
+		this.random.nextBytes(this.challenge);
+		t.setChallenge(this.challenge);
+
+		int sw = 0;
+		for (int i = 0; i < t.apdus.length; i++) {
+			sw = this.assembler.transmit(card.getChannel(), new CommandAPDU(
+					t.apdus[i]));
+			if (sw != PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
+				break;
+			}
+		}
+		if (sw != PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
+			throw new CardException("GENERAL AUTHENTICATE failed: SW="
+					+ Integer.toHexString(sw));
+		}
+
+		boolean verified;
+		try {
+			// 7C { 82 signature }
+			TLVCursor dat = new TLVCursor(this.assembler.getBuffer(), 0,
+					this.assembler.getLength());
+			if (!dat.next() || !dat.tagEquals(Tag.PIV_DAT)) {
+				throw new CardException("No Dynamic Authentication Template");
+			}
+			TLVCursor children = dat.getChildren();
+			boolean found = false;
+			while (!found && children.next()) {
+				found = children.tagEquals(Tag.PIV_DAT_RESPONSE);
+			}
+			if (!found) {
+				throw new CardException("No response in the Dynamic Authentication Template");
+			}
+			Signature sig = t.isRSA() ? this.rsa : this.ecdsa;
+			sig.initVerify(key);
+			sig.update(t.data, t.data.length - t.signedLength, t.signedLength);
+			verified = sig.verify(children.getBuffer(), children
+					.getValueOffset(), children.getLength());
+		} catch (TLVEncodingException e) {
+			throw new CardException(e);
+		} catch (GeneralSecurityException e) {
+			// A malformed signature is a failed proof
+			verified = false;
+		}
+		PIVMetrics metrics = card.getMetrics();
+		if (metrics != null) {
+			metrics.record(PIVMetrics.CARD_AUTHENTICATION, System.nanoTime()
+					- start);
+		}
+		if (debug) {
+			System.out.println("CardAuthenticator: " + verified);
+		}
+		return verified;
+	}
+
+	/**
+	 * Method algorithm.
+	 * @param key PublicKey
+	 * @return byte The PIV algorithm identifier of the key
+	 * @throws CardException If the key is not supported
+	 */
+	private static byte algorithm(PublicKey key) throws CardException {
+		if (key instanceof RSAPublicKey) {
+			int bits = ((RSAPublicKey) key).getModulus().bitLength();
+			if (bits == 1024) {
+				return CipherEngine.RSA_1024;
+			} else if (bits == 2048) {
+				return CipherEngine.RSA_2048;
+			}
+		} else if (key instanceof ECPublicKey) {
+			int bits = ((ECPublicKey) key).getParams().getCurve().getField()
+					.getFieldSize();
+			if (bits == 256) {
+				return CipherEngine.ECC_CURVE_P256;
+			} else if (bits == 384) {
+				return CipherEngine.ECC_CURVE_P384;
+			}
+		}
+		throw new CardException("Unsupported Card Authentication key: "
+				+ key.getAlgorithm());
+	}
+
+	/**
+	 * Method getTemplate.
+	 * @param algorithm byte
+	 * @param extended boolean
+	 * @return Template
+	 * @throws CardException
+	 */
+	private Template getTemplate(byte algorithm, boolean extended)
+			throws CardException {
+		Integer k = Integer.valueOf(((algorithm & 0xff) << 1)
+				| (extended ? 1 : 0));
+		Template t = this.templates.get(k);
+		if (t == null) {
+			try {
+				t = new Template(algorithm, extended);
+				if (t.isRSA() && this.rsa == null) {
+					this.rsa = Signature.getInstance("NONEwithRSA");
+				} else if (!t.isRSA() && this.ecdsa == null) {
+					this.ecdsa = Signature.getInstance("NONEwithECDSA");
+				}
+			} catch (NoSuchAlgorithmException e) {
+				throw new CardException(e);
+			} catch (ASN1Exception e) {
+				throw new CardException(e);
+			}
+			this.templates.put(k, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Method defaultRandom.
+	 * @return SecureRandom A DRBG if there is one, else the default
+	 */
+	private static SecureRandom defaultRandom() {
+		try {
+			return SecureRandom.getInstance("DRBG");
+		} catch (NoSuchAlgorithmException e) {
+			return new SecureRandom();
+		}
+	}
+
+	/**
+	 * The GENERAL AUTHENTICATE command APDUs for one key type.
+	 */
+	private static class Template {
+
+		private final byte algorithm;
+		// 7C { 82 00, 81 challenge }, the challenge ending with the random
+		private final byte[] data;
+		private final int randomLength;
+		// Length of what is signed, at the end of data
+		private final int signedLength;
+		private final byte[][] apdus;
+		// Offset in data of the first data byte of each APDU
+		private final int[] offsets;
+		// Length of the data, and of the header, of each APDU
+		private final int[] lengths;
+		private final int[] headerLengths;
+
+		/**
+		 * Constructor for Template.
+		 * @param algorithm byte
+		 * @param extended boolean
+		 * @throws ASN1Exception
+		 */
+		private Template(byte algorithm, boolean extended)
+				throws ASN1Exception {
+			this.algorithm = algorithm;
+			byte[] c;
+			if (isRSA()) {
+				// Padded DigestInfo of a SHA-256 digest, the digest to follow
+				this.randomLength = RSA_RANDOM_LENGTH;
+				byte[] di = new DigestInfo(new AlgorithmIdentifier(
+						CipherEngine.SHA256, null),
+						new byte[RSA_RANDOM_LENGTH]).getBytes();
+				c = PaddingEngine.pkcs1v1_5Pad(di,
+						(algorithm == CipherEngine.RSA_1024) ? 128 : 256);
+				this.signedLength = di.length;
+			} else {
+				this.randomLength = (algorithm == CipherEngine.ECC_CURVE_P256) ? 32
+						: 48;
+				c = new byte[this.randomLength];
+				this.signedLength = this.randomLength;
+			}
+			int value = TLVWriter.sizeOf(Tag.PIV_DAT_RESPONSE, null)
+					+ TLVWriter.sizeOf(Tag.PIV_DAT_CHALLENGE, c);
+			this.data = new byte[TLVWriter.sizeOf(1, value)];
+			TLVWriter writer = new TLVWriter(this.data);
+			writer.begin(Tag.PIV_DAT);
+			writer.put(Tag.PIV_DAT_RESPONSE, null);
+			writer.put(Tag.PIV_DAT_CHALLENGE, c);
+			writer.end();
+			writer.finish();
+
+			// One extended APDU, one short APDU, or a chain of short APDUs
+			int n = (extended || this.data.length <= PIVAPDU.MAX_APDU_SIZE) ? 1
+					: (this.data.length + PIVAPDU.MAX_APDU_SIZE - 1) / PIVAPDU.MAX_APDU_SIZE;
+			this.apdus = new byte[n][];
+			this.offsets = new int[n];
+			this.lengths = new int[n];
+			this.headerLengths = new int[n];
+			for (int i = 0; i < n; i++) {
+				int off = i * PIVAPDU.MAX_APDU_SIZE;
+				int len = extended ? this.data.length : Math.min(PIVAPDU.MAX_APDU_SIZE,
+						this.data.length - off);
+				boolean last = (i == n - 1);
+				int header = extended ? 7 : 5;
+				int le = last ? (extended ? 2 : 1) : 0;
+				byte[] apdu = new byte[header + len + le];
+				apdu[0] = last ? PIVAPDUInterface.GP_COMMAND
+						: PIVAPDUInterface.GP_COMMAND_CC;
+				apdu[1] = PIVAPDUInterface.PIV_GEN_AUTH_HEADER[1];
+				apdu[2] = algorithm;
+				apdu[3] = CipherEngine.CARD_AUTH_KEY;
+				if (extended) {
+					apdu[4] = 0x00;
+					apdu[5] = (byte) (len >> 8);
+					apdu[6] = (byte) len;
+				} else {
+					apdu[4] = (byte) len;
+				}
+				// Le, on the last APDU, is 00 (or 00 00) for all the response
+				System.arraycopy(this.data, off, apdu, header, len);
+				this.apdus[i] = apdu;
+				this.offsets[i] = off;
+				this.lengths[i] = len;
+				this.headerLengths[i] = header;
+			}
+		}
+
+		/**
+		 * Method isRSA.
+		 * @return boolean
+		 */
+		private boolean isRSA() {
+			return this.algorithm == CipherEngine.RSA_1024
+					|| this.algorithm == CipherEngine.RSA_2048;
+		}
+
+		/**
+		 * Method setChallenge.
+		 *
+		 * Copies the random bytes to the end of the challenge, in the data
+		 * and in the APDUs holding it.
+		 *
+		 * @param random byte[] At least randomLength bytes
+		 */
+		private void setChallenge(byte[] random) {
+			int from = this.data.length - this.randomLength;
+			System.arraycopy(random, 0, this.data, from, this.randomLength);
+			for (int i = 0; i < this.apdus.length; i++) {
+				int start = Math.max(from, this.offsets[i]);
+				int end = this.offsets[i] + this.lengths[i];
+				if (start < end) {
+					System.arraycopy(this.data, start, this.apdus[i],
+							this.headerLengths[i] + start - this.offsets[i],
+							end - start);
+				}
+			}
+		}
+
+	}
+
+}
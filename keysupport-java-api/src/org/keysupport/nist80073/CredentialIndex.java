@@ -0,0 +1,634 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.nist80073;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Date;
+import java.util.UUID;
+
+import org.keysupport.nist80073.datamodel.FASCN;
+import org.keysupport.nist80073.datamodel.PIVCardHolderUniqueID;
+
+/**
+ * An allowlist of credentials, answering whether a credential may open a
+ * door at a given time.
+ * <p>
+ * Credentials are listed by FASC-N, keyed by the long from FASCN.toLong()
+ * (Agency Code, System Code, Credential Number, Credential Series and
+ * Individual Credential Issue), or by the GUID from the CHUID. Each entry
+ * holds the doors the credential may open, as a bit mask of door numbers 0
+ * to 63, and the period during which it may open them.
+ * <p>
+ * The entries are held in open addressing hash tables with linear probing,
+ * in direct ByteBuffers outside the Java heap, so millions of credentials
+ * can be listed without adding to garbage collection, and a lookup does not
+ * allocate. The tables are never more than half full.
+ * <p>
+ * A Snapshot is immutable. It is built, or copied from the current one and
+ * changed, with a Builder, and then installed with setSnapshot(). Lookups
+ * use the snapshot that was installed when they started, so readers never
+ * see a partly applied update and need no locking.
+ *
+ * @author tejohnson
+ */
+public class CredentialIndex {
+
+	private final static boolean debug = false;
+
+	/**
+	 * Number of doors an entry may list.
+	 */
+	public final static int MAX_DOORS = 64;
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Constructor for CredentialIndex.
+	 *
+	 * Creates an index that lists no credentials.
+	 */
+	public CredentialIndex() {
+		this(new Builder(0).build());
+	}
+
+	/**
+	 * Constructor for CredentialIndex.
+	 * @param snapshot Snapshot
+	 */
+	public CredentialIndex(Snapshot snapshot) {
+		setSnapshot(snapshot);
+	}
+
+	/**
+	 * Method getSnapshot.
+	 * @return Snapshot The snapshot in use
+	 */
+	public Snapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Method setSnapshot.
+	 *
+	 * Replaces the snapshot in use. Lookups already in progress complete
+	 * against the previous snapshot.
+	 *
+	 * @param snapshot Snapshot
+	 * @return Snapshot The previous snapshot, or null
+	 */
+	public Snapshot setSnapshot(Snapshot snapshot) {
+		if (snapshot == null) {
+			throw new IllegalArgumentException("Snapshot is null");
+		}
+		Snapshot previous = this.snapshot;
+		this.snapshot = snapshot;
+		if (debug) {
+			System.out.println("CredentialIndex: " + snapshot.sizeFASCN()
+					+ " FASC-Ns, " + snapshot.sizeGUID() + " GUIDs");
+		}
+		return previous;
+	}
+
+	/**
+	 * Method isAuthorized.
+	 * @param fascn long From FASCN.toLong()
+	 * @param door int
+	 * @param time long Milliseconds since the epoch
+	 * @return boolean
+	 */
+	public boolean isAuthorized(long fascn, int door, long time) {
+		return this.snapshot.isAuthorized(fascn, door, time);
+	}
+
+	/**
+	 * Method isAuthorized.
+	 * @param guid UUID
+	 * @param door int
+	 * @param time long Milliseconds since the epoch
+	 * @return boolean
+	 */
+	public boolean isAuthorized(UUID guid, int door, long time) {
+		return this.snapshot.isAuthorized(guid, door, time);
+	}
+
+	/**
+	 * Method isAuthorized.
+	 *
+	 * Checks the FASC-N and the GUID of the CHUID, now, against the same
+	 * snapshot. The credential is authorized if either is.
+	 *
+	 * @param chuid PIVCardHolderUniqueID
+	 * @param door int
+	 * @return boolean
+	 */
+	public boolean isAuthorized(PIVCardHolderUniqueID chuid, int door) {
+		Snapshot s = this.snapshot;
+		long now = System.currentTimeMillis();
+		try {
+			// A FASC-N whose LRC does not match is not trusted to identify
+			// the credential
+			FASCN fascn = chuid.getFASCN();
+			if (fascn.isValidLRC()
+					&& s.isAuthorized(fascn.toLong(), door, now)) {
+				return true;
+			}
+		} catch (IOException e) {
+			// An invalid FASC-N is not listed; the GUID may be
+			if (debug) {
+				System.out.println("CredentialIndex: " + e.getMessage());
+			}
+		}
+		UUID guid = chuid.getGUID();
+		return guid != null && s.isAuthorized(guid, door, now);
+	}
+
+	/**
+	 * Method checkDoor.
+	 * @param door int
+	 */
+	private static void checkDoor(int door) {
+		if (door < 0 || door >= MAX_DOORS) {
+			throw new IllegalArgumentException("door=" + door);
+		}
+	}
+
+	/**
+	 * Method toSeconds.
+	 * @param date Date, or null
+	 * @param unbounded long Value for null
+	 * @return int Unsigned seconds since the epoch
+	 */
+	private static int toSeconds(Date date, long unbounded) {
+		long seconds = (date == null) ? unbounded : date.getTime() / 1000;
+		if (seconds < 0 || seconds > 0xffffffffL) {
+			throw new IllegalArgumentException("Date out of range: " + date);
+		}
+		return (int) seconds;
+	}
+
+	/**
+	 * An immutable set of entries.
+	 */
+	public static final class Snapshot {
+
+		private final Table fascns;
+		private final Table guids;
+
+		/**
+		 * Constructor for Snapshot.
+		 * @param fascns Table
+		 * @param guids Table
+		 */
+		private Snapshot(Table fascns, Table guids) {
+			this.fascns = fascns;
+			this.guids = guids;
+		}
+
+		/**
+		 * Method isAuthorized.
+		 * @param fascn long From FASCN.toLong()
+		 * @param door int
+		 * @param time long Milliseconds since the epoch
+		 * @return boolean
+		 */
+		public boolean isAuthorized(long fascn, int door, long time) {
+			checkDoor(door);
+			return this.fascns.isAuthorized(this.fascns.find(fascn, 0), door,
+					time);
+		}
+
+		/**
+		 * Method isAuthorized.
+		 * @param guid UUID
+		 * @param door int
+		 * @param time long Milliseconds since the epoch
+		 * @return boolean
+		 */
+		public boolean isAuthorized(UUID guid, int door, long time) {
+			checkDoor(door);
+			return this.guids.isAuthorized(this.guids.find(
+					guid.getMostSignificantBits(),
+					guid.getLeastSignificantBits()), door, time);
+		}
+
+		/**
+		 * Method getDoors.
+		 * @param fascn long From FASCN.toLong()
+		 * @return long The doors of the entry, or 0 if not listed
+		 */
+		public long getDoors(long fascn) {
+			return this.fascns.getDoors(this.fascns.find(fascn, 0));
+		}
+
+		/**
+		 * Method getDoors.
+		 * @param guid UUID
+		 * @return long The doors of the entry, or 0 if not listed
+		 */
+		public long getDoors(UUID guid) {
+			return this.guids.getDoors(this.guids.find(
+					guid.getMostSignificantBits(),
+					guid.getLeastSignificantBits()));
+		}
+
+		/**
+		 * Method sizeFASCN.
+		 * @return int Number of FASC-Ns listed
+		 */
+		public int sizeFASCN() {
+			return this.fascns.size;
+		}
+
+		/**
+		 * Method sizeGUID.
+		 * @return int Number of GUIDs listed
+		 */
+		public int sizeGUID() {
+			return this.guids.size;
+		}
+
+	}
+
+	/**
+	 * Builds a Snapshot. A Builder is not thread safe, and may only build
+	 * one Snapshot.
+	 */
+	public static final class Builder {
+
+		private Table fascns;
+		private Table guids;
+
+		/**
+		 * Constructor for Builder.
+		 * @param expected int Number of entries expected, to size the tables
+		 */
+		public Builder(int expected) {
+			this.fascns = new Table(1, expected);
+			this.guids = new Table(2, expected);
+		}
+
+		/**
+		 * Constructor for Builder.
+		 *
+		 * Starts with a copy of the entries of a snapshot, which is not
+		 * changed.
+		 *
+		 * @param base Snapshot
+		 */
+		public Builder(Snapshot base) {
+			this.fascns = new Table(base.fascns);
+			this.guids = new Table(base.guids);
+		}
+
+		/**
+		 * Method add.
+		 *
+		 * Lists a FASC-N, replacing any entry for it.
+		 *
+		 * @param fascn long From FASCN.toLong()
+		 * @param doors long Bit mask of the doors, not 0
+		 * @param notBefore Date, or null
+		 * @param notAfter Date, or null
+		 * @return Builder
+		 */
+		public Builder add(long fascn, long doors, Date notBefore,
+				Date notAfter) {
+			tables().fascns.put(fascn, 0, doors, notBefore, notAfter);
+			return this;
+		}
+
+		/**
+		 * Method add.
+		 *
+		 * Lists a GUID, replacing any entry for it.
+		 *
+		 * @param guid UUID
+		 * @param doors long Bit mask of the doors, not 0
+		 * @param notBefore Date, or null
+		 * @param notAfter Date, or null
+		 * @return Builder
+		 */
+		public Builder add(UUID guid, long doors, Date notBefore,
+				Date notAfter) {
+			tables().guids.put(guid.getMostSignificantBits(),
+					guid.getLeastSignificantBits(), doors, notBefore,
+					notAfter);
+			return this;
+		}
+
+		/**
+		 * Method remove.
+		 * @param fascn long From FASCN.toLong()
+		 * @return boolean True if the FASC-N was listed
+		 */
+		public boolean remove(long fascn) {
+			return tables().fascns.remove(fascn, 0);
+		}
+
+		/**
+		 * Method remove.
+		 * @param guid UUID
+		 * @return boolean True if the GUID was listed
+		 */
+		public boolean remove(UUID guid) {
+			return tables().guids.remove(guid.getMostSignificantBits(),
+					guid.getLeastSignificantBits());
+		}
+
+		/**
+		 * Method build.
+		 * @return Snapshot
+		 */
+		public Snapshot build() {
+			Snapshot s = new Snapshot(tables().fascns, this.guids);
+			this.fascns = null;
+			this.guids = null;
+			return s;
+		}
+
+		/**
+		 * Method tables.
+		 * @return Builder
+		 */
+		private Builder tables() {
+			if (this.fascns == null) {
+				throw new IllegalStateException("Snapshot already built");
+			}
+			return this;
+		}
+
+	}
+
+	/**
+	 * An open addressing hash table of keys of one or two longs, in a direct
+	 * ByteBuffer.
+	 * <p>
+	 * Each slot holds the key, the doors, and notBefore and notAfter as
+	 * unsigned seconds since the epoch. A slot whose doors are 0 is empty.
+	 */
+	private static final class Table {
+
+		// Largest number of slots; a ByteBuffer holds at most 2 GB
+		private final static int MAX_CAPACITY = 1 << 25;
+
+		private final int keys;
+		private final int slot;
+		private ByteBuffer buf;
+		private int capacity;
+		int size;
+
+		/**
+		 * Constructor for Table.
+		 * @param keys int Longs per key
+		 * @param expected int
+		 */
+		Table(int keys, int expected) {
+			this.keys = keys;
+			this.slot = 8 * keys + 16;
+			allocate(capacityFor(expected));
+		}
+
+		/**
+		 * Constructor for Table.
+		 * @param table Table To copy
+		 */
+		Table(Table table) {
+			this.keys = table.keys;
+			this.slot = table.slot;
+			this.size = table.size;
+			allocate(table.capacity);
+			ByteBuffer src = table.buf.duplicate();
+			src.clear();
+			this.buf.put(src);
+			this.buf.clear();
+		}
+
+		/**
+		 * Method capacityFor.
+		 * @param entries int
+		 * @return int Smallest power of two at least twice entries
+		 */
+		private static int capacityFor(int entries) {
+			int capacity = 16;
+			while (capacity < entries * 2L) {
+				if (capacity == MAX_CAPACITY) {
+					throw new IllegalArgumentException("Too many entries: "
+							+ entries);
+				}
+				capacity <<= 1;
+			}
+			return capacity;
+		}
+
+		/**
+		 * Method allocate.
+		 * @param capacity int
+		 */
+		private void allocate(int capacity) {
+			this.capacity = capacity;
+			this.buf = ByteBuffer.allocateDirect(capacity * this.slot).order(
+					ByteOrder.nativeOrder());
+		}
+
+		/**
+		 * Method index.
+		 * @param k0 long
+		 * @param k1 long
+		 * @return int Home slot of the key
+		 */
+		private int index(long k0, long k1) {
+			long h = (k0 ^ (k1 * 0xc2b2ae3d27d4eb4fL)) * 0x9e3779b97f4a7c15L;
+			return (int) (h >>> (64 - Integer.numberOfTrailingZeros(this.capacity)));
+		}
+
+		/**
+		 * Method find.
+		 * @param k0 long
+		 * @param k1 long 0 for keys of one long
+		 * @return int Offset of the key's slot, or -1
+		 */
+		int find(long k0, long k1) {
+			int mask = this.capacity - 1;
+			for (int i = index(k0, k1);; i = (i + 1) & mask) {
+				int off = i * this.slot;
+				if (getDoors(off) == 0) {
+					return -1;
+				}
+				if (this.buf.getLong(off) == k0
+						&& (this.keys == 1 || this.buf.getLong(off + 8) == k1)) {
+					return off;
+				}
+			}
+		}
+
+		/**
+		 * Method getDoors.
+		 * @param off int Offset of a slot, or -1
+		 * @return long
+		 */
+		long getDoors(int off) {
+			return (off < 0) ? 0 : this.buf.getLong(off + 8 * this.keys);
+		}
+
+		/**
+		 * Method isAuthorized.
+		 * @param off int Offset of a slot, or -1
+		 * @param door int
+		 * @param time long Milliseconds since the epoch
+		 * @return boolean
+		 */
+		boolean isAuthorized(int off, int door, long time) {
+			if ((getDoors(off) & (1L << door)) == 0) {
+				return false;
+			}
+			int v = off + 8 * this.keys + 8;
+			long seconds = time / 1000;
+			return seconds >= (this.buf.getInt(v) & 0xffffffffL)
+					&& seconds <= (this.buf.getInt(v + 4) & 0xffffffffL);
+		}
+
+		/**
+		 * Method put.
+		 * @param k0 long
+		 * @param k1 long
+		 * @param doors long
+		 * @param notBefore Date
+		 * @param notAfter Date
+		 */
+		void put(long k0, long k1, long doors, Date notBefore, Date notAfter) {
+			if (doors == 0) {
+				throw new IllegalArgumentException("No doors");
+			}
+			int nb = toSeconds(notBefore, 0);
+			int na = toSeconds(notAfter, 0xffffffffL);
+			int off = find(k0, k1);
+			if (off < 0) {
+				if ((this.size + 1) * 2L > this.capacity) {
+					rehash(capacityFor(this.size + 1));
+				}
+				off = insert(k0, k1);
+				this.size++;
+			}
+			this.buf.putLong(off + 8 * this.keys, doors);
+			this.buf.putInt(off + 8 * this.keys + 8, nb);
+			this.buf.putInt(off + 8 * this.keys + 12, na);
+		}
+
+		/**
+		 * Method insert.
+		 *
+		 * Writes a key to the first empty slot from its home slot.
+		 *
+		 * @param k0 long
+		 * @param k1 long
+		 * @return int Offset of the slot
+		 */
+		private int insert(long k0, long k1) {
+			int mask = this.capacity - 1;
+			int i = index(k0, k1);
+			while (getDoors(i * this.slot) != 0) {
+				i = (i + 1) & mask;
+			}
+			int off = i * this.slot;
+			this.buf.putLong(off, k0);
+			if (this.keys == 2) {
+				this.buf.putLong(off + 8, k1);
+			}
+			return off;
+		}
+
+		/**
+		 * Method remove.
+		 *
+		 * Empties the key's slot, and moves back the entries that follow it
+		 * in the probe sequence, so that no tombstones are needed.
+		 *
+		 * @param k0 long
+		 * @param k1 long
+		 * @return boolean True if the key was present
+		 */
+		boolean remove(long k0, long k1) {
+			int off = find(k0, k1);
+			if (off < 0) {
+				return false;
+			}
+			int mask = this.capacity - 1;
+			int i = off / this.slot;
+			for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+				int joff = j * this.slot;
+				if (getDoors(joff) == 0) {
+					break;
+				}
+				int home = index(this.buf.getLong(joff), (this.keys == 1) ? 0
+						: this.buf.getLong(joff + 8));
+				// Leave the entry if its home is cyclically within (i, j]
+				if ((i <= j) ? (i < home && home <= j) : (i < home || home <= j)) {
+					continue;
+				}
+				copy(joff, i * this.slot);
+				i = j;
+			}
+			int ioff = i * this.slot;
+			for (int k = 0; k < this.slot; k += 8) {
+				this.buf.putLong(ioff + k, 0);
+			}
+			this.size--;
+			return true;
+		}
+
+		/**
+		 * Method copy.
+		 * @param from int
+		 * @param to int
+		 */
+		private void copy(int from, int to) {
+			for (int k = 0; k < this.slot; k += 8) {
+				this.buf.putLong(to + k, this.buf.getLong(from + k));
+			}
+		}
+
+		/**
+		 * Method rehash.
+		 * @param newCapacity int
+		 */
+		private void rehash(int newCapacity) {
+			ByteBuffer old = this.buf;
+			int oldCapacity = this.capacity;
+			allocate(newCapacity);
+			for (int i = 0; i < oldCapacity; i++) {
+				int from = i * this.slot;
+				if (old.getLong(from + 8 * this.keys) == 0) {
+					continue;
+				}
+				int to = insert(old.getLong(from), (this.keys == 1) ? 0 : old
+						.getLong(from + 8));
+				for (int k = 8 * this.keys; k < this.slot; k += 8) {
+					this.buf.putLong(to + k, old.getLong(from + k));
+				}
+			}
+		}
+
+	}
+
+}
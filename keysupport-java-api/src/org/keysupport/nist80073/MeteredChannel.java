@@ -0,0 +1,262 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.nist80073;
+
+import java.nio.ByteBuffer;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import org.keysupport.nist80073.cardedge.PIVAPDUInterface;
+import org.keysupport.smartcardio.APDUTrace;
+import org.keysupport.smartcardio.APDUTraceSink;
+
+/**
+ * A CardChannel that records the APDUs sent through it in PIVMetrics, and
+ * passes them to the APDUTraceSink, if one is set.
+ * <p>
+ * A command is timed from its first command APDU to its final response, so
+ * the GET RESPONSE commands that follow a 61xx answer, a command sent again
+ * with the Le given in a 6Cxx answer, and the command APDUs of a chain (CLA
+ * bit 0x10), are counted as part of the command they belong to. The time
+ * spent in transmit() is also summed, as the card time of the session. With
+ * neither metrics nor a trace sink, APDUs are passed straight to the
+ * channel. An instance is not thread safe; it belongs to one PIVCard.
+ *
+ * @author tejohnson
+ */
+class MeteredChannel extends CardChannel {
+
+	private final static byte INS_SELECT = PIVAPDUInterface.PIV_SELECT_HEADER[1];
+	private final static byte INS_GET_DATA = PIVAPDUInterface.PIV_GET_DATA_HEADER[1];
+	private final static byte INS_VERIFY = PIVAPDUInterface.PIV_VERIFY_HEADER[1];
+	private final static byte INS_GENERAL_AUTHENTICATE = PIVAPDUInterface.PIV_GEN_AUTH_HEADER[1];
+	private final static byte INS_PUT_DATA = PIVAPDUInterface.PIV_PUT_DATA_HEADER[1];
+	private final static byte INS_GET_RESPONSE = (byte) 0xc0;
+
+	private final static int CLA_CHAINING = 0x10;
+
+	private final CardChannel channel;
+	private final PIVMetrics metrics;
+
+	// Phase and start of the command in progress, or -1
+	private int phase = -1;
+	private long start;
+	// True if the card accepted a command APDU of a chain
+	private boolean chaining = false;
+	// INS of a command the card answered with 6Cxx, or -1
+	private int retryIns = -1;
+	private long cardTime = 0;
+
+	/**
+	 * Constructor for MeteredChannel.
+	 * @param channel CardChannel
+	 * @param metrics PIVMetrics (May be null)
+	 */
+	MeteredChannel(CardChannel channel, PIVMetrics metrics) {
+		this.channel = channel;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Method getCardTime.
+	 * @return long Nanoseconds spent in transmit()
+	 */
+	long getCardTime() {
+		return this.cardTime;
+	}
+
+	@Override
+	public Card getCard() {
+		return this.channel.getCard();
+	}
+
+	@Override
+	public int getChannelNumber() {
+		return this.channel.getChannelNumber();
+	}
+
+	@Override
+	public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+		APDUTraceSink sink = APDUTrace.getSink();
+		if (this.metrics == null && sink == null) {
+			return this.channel.transmit(command);
+		}
+		byte[] apdu = command.getBytes();
+		long t = begin(apdu[0], apdu[1]);
+		ResponseAPDU response = null;
+		try {
+			response = this.channel.transmit(command);
+		} finally {
+			byte[] rsp = (response == null) ? new byte[0] : response.getBytes();
+			int sw = (response == null) ? 0 : response.getSW();
+			long nanos = end(t, apdu.length, rsp.length, sw, apdu[0], apdu[1]);
+			if (sink != null) {
+				sink.trace(apdu, 0, apdu.length, rsp, 0, rsp.length, sw, nanos);
+			}
+		}
+		return response;
+	}
+
+	@Override
+	public int transmit(ByteBuffer command, ByteBuffer response)
+			throws CardException {
+		APDUTraceSink sink = APDUTrace.getSink();
+		if (this.metrics == null && sink == null) {
+			return this.channel.transmit(command, response);
+		}
+		int pos = command.position();
+		int sent = command.remaining();
+		// The command is consumed by transmit(); keep a view for the sink
+		ByteBuffer apdu = (sink == null) ? null : command.duplicate();
+		int rpos = response.position();
+		byte cla = command.get(pos);
+		byte ins = command.get(pos + 1);
+		long t = begin(cla, ins);
+		int n = 0;
+		try {
+			n = this.channel.transmit(command, response);
+		} finally {
+			int sw = (n < 2) ? 0 : ((response.get(rpos + n - 2) & 0xff) << 8)
+					| (response.get(rpos + n - 1) & 0xff);
+			long nanos = end(t, sent, n, sw, cla, ins);
+			if (sink != null) {
+				trace(sink, apdu, response, rpos, n, sw, nanos);
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public void close() throws CardException {
+		this.channel.close();
+	}
+
+	/**
+	 * Method begin.
+	 * @param cla byte
+	 * @param ins byte
+	 * @return long The time the APDU is sent
+	 */
+	private long begin(byte cla, byte ins) {
+		long now = System.nanoTime();
+		boolean continued = (this.phase >= 0)
+				&& (this.chaining || ins == INS_GET_RESPONSE
+						|| (ins & 0xff) == this.retryIns);
+		if (!continued) {
+			// A command left unfinished by the host is not recorded
+			this.phase = phase(ins);
+			this.start = now;
+		}
+		return now;
+	}
+
+	/**
+	 * Method end.
+	 * @param sent long The time the APDU was sent
+	 * @param sentBytes int
+	 * @param receivedBytes int
+	 * @param sw int
+	 * @param cla byte
+	 * @param ins byte
+	 * @return long Time taken by the card
+	 */
+	private long end(long sent, int sentBytes, int receivedBytes, int sw,
+			byte cla, byte ins) {
+		long now = System.nanoTime();
+		this.cardTime += now - sent;
+		if (this.metrics != null) {
+			int sw1 = sw >> 8;
+			this.metrics.countAPDU(sentBytes, receivedBytes);
+			this.chaining = (cla & CLA_CHAINING) != 0 && sw1 == 0x90;
+			// After 6Cxx the same command is sent again with the right Le
+			this.retryIns = (sw1 == 0x6c) ? ins & 0xff : -1;
+			if (sw1 != 0x61 && sw1 != 0x6c && !this.chaining) {
+				this.metrics.record(this.phase, now - this.start);
+				this.phase = -1;
+			}
+		}
+		return now - sent;
+	}
+
+	/**
+	 * Method trace.
+	 * @param sink APDUTraceSink
+	 * @param command ByteBuffer The command as it was before transmit()
+	 * @param response ByteBuffer
+	 * @param offset int Position of the response
+	 * @param length int Length of the response
+	 * @param sw int
+	 * @param nanos long
+	 */
+	private static void trace(APDUTraceSink sink, ByteBuffer command,
+			ByteBuffer response, int offset, int length, int sw, long nanos) {
+		int clen = command.remaining();
+		byte[] c;
+		int coff;
+		if (command.hasArray()) {
+			c = command.array();
+			coff = command.arrayOffset() + command.position();
+		} else {
+			c = new byte[clen];
+			command.get(c);
+			coff = 0;
+		}
+		byte[] r;
+		int roff;
+		if (response.hasArray()) {
+			r = response.array();
+			roff = response.arrayOffset() + offset;
+		} else {
+			r = new byte[length];
+			for (int i = 0; i < length; i++) {
+				r[i] = response.get(offset + i);
+			}
+			roff = 0;
+		}
+		sink.trace(c, coff, clen, r, roff, length, sw, nanos);
+	}
+
+	/**
+	 * Method phase.
+	 * @param ins byte
+	 * @return int The PIVMetrics phase of the instruction
+	 */
+	private static int phase(byte ins) {
+		if (ins == INS_SELECT) {
+			return PIVMetrics.SELECT;
+		} else if (ins == INS_GET_DATA) {
+			return PIVMetrics.GET_DATA;
+		} else if (ins == INS_VERIFY) {
+			return PIVMetrics.VERIFY;
+		} else if (ins == INS_GENERAL_AUTHENTICATE) {
+			return PIVMetrics.GENERAL_AUTHENTICATE;
+		} else if (ins == INS_PUT_DATA) {
+			return PIVMetrics.PUT_DATA;
+		}
+		return PIVMetrics.OTHER_APDU;
+	}
+
+}
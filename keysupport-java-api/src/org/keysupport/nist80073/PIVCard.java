@@ -24,15 +24,24 @@
 
 package org.keysupport.nist80073;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Vector;
+import java.util.UUID;
 
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
@@ -46,6 +55,7 @@ import javax.smartcardio.ResponseAPDU;
 
 import org.keysupport.encoding.TLV;
 import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVStreamReader;
 import org.keysupport.encoding.Tag;
 import org.keysupport.keystore.CipherEngine;
 import org.keysupport.keystore.KeyStoreManager;
@@ -76,7 +86,7 @@ public class PIVCard {
 		NONE, USER, ADMIN
 	}
 
-	private final static boolean debug = true;
+	private final static boolean debug = false;
 
 	// state of this card connection
 	private volatile Auth auth;
@@ -85,7 +95,16 @@ public class PIVCard {
 	private PIVCardApplicationProperty pcap;
 	private PIVDiscoveryObject pdo;
 	private boolean hasDiscoveryObject = false;
+	private boolean extendedLength = false;
 	private CardChannel channel;
+	private final ResponseAssembler assembler = new ResponseAssembler();
+	private PIVObjectCache cache;
+	private PIVObjectCache.Entry cacheEntry;
+	private boolean cacheChecked = false;
+	private final PIVMetrics metrics;
+	private final MeteredChannel metered;
+	private boolean sessionRecorded = false;
+	private final long created = System.nanoTime();
 
 	/**
 	 * Constructor for PIVCard.
@@ -95,10 +114,29 @@ public class PIVCard {
 	 * @throws TLVEncodingException
 	 */
 	public PIVCard(Card card) throws CardException, IOException, TLVEncodingException {
-		this.card = card;
-		this.channel = card.getBasicChannel();
+		this(card, PIVMetrics.getDefault());
+	}
 
-		ResponseAPDU response;
+	/**
+	 * Constructor for PIVCard.
+	 * 
+	 * The commands sent to the card, and the session when the card is
+	 * disconnected, are recorded in the given PIVMetrics. The APDUs are
+	 * passed to the APDUTraceSink, if one is set, whether or not metrics
+	 * are kept.
+	 * 
+	 * @param card Card
+	 * @param metrics PIVMetrics (May be null)
+	 * @throws CardException
+	 * @throws IOException
+	 * @throws TLVEncodingException
+	 */
+	public PIVCard(Card card, PIVMetrics metrics) throws CardException,
+			IOException, TLVEncodingException {
+		this.card = card;
+		this.metrics = metrics;
+		this.metered = new MeteredChannel(card.getBasicChannel(), metrics);
+		this.channel = this.metered;
 
 		// Select the PIV application
 		CommandAPDU command = PIVAPDU.selectPIVApplication();
@@ -123,67 +161,21 @@ public class PIVCard {
 		 * 7816 response of 61xx is given indicating BYTES REMAINING, where
 		 * xx is the number of bytes remaining.  If xx = 00, then there are
 		 * more than 255 bytes remaining.  The PCAP data can be retrieved
-		 * by performing GET DATA commands until there are no bytes remaining
-		 * and 9000 is received.
+		 * by performing GET RESPONSE commands until there are no bytes
+		 * remaining and 9000 is received.  ResponseAssembler handles this
+		 * and returns the complete response.
 		 * 
 		 * Regardless, an application property is to be returned upon
 		 * selecting the PIV AID.
 		 */
-		response = this.channel.transmit(command);
-		int status_word = response.getSW();
-		int SW1 = response.getSW1();
-		int SW2 = response.getSW2();
-
-		if (SW1 == 0x61) {
-			ByteArrayOutputStream rbaos = new ByteArrayOutputStream();
-			if (debug) {
-				System.out.println(response.toString() + ": "
-						+ DataUtil.byteArrayToString(response.getData()));
-			}
-			rbaos.write(response.getData());
-			while (SW1 == 0x61) {
-				// Craft a GET-DATA APDU to collect the bytes remaining
-				if (SW2 == 0x00) {
-					CommandAPDU remain = new CommandAPDU(
-							DataUtil.stringToByteArray("00C0000000"));
-					if (debug) {
-						System.out.println(remain.toString() + ": "
-								+ DataUtil.byteArrayToString(remain.getBytes()));
-					}
-					response = this.channel.transmit(remain);
-				} else {
-					CommandAPDU remain = new CommandAPDU(0x00, 0xc0, 0x00,
-							0x00, SW2);
-					if (debug) {
-						System.out.println(remain.toString() + ": "
-								+ DataUtil.byteArrayToString(remain.getBytes()));
-					}
-					response = this.channel.transmit(remain);
-				}
-				if (debug) {
-					System.out
-							.println(response.toString()
-									+ ": "
-									+ DataUtil.byteArrayToString(response
-											.getData()));
-				}
-				rbaos.write(response.getData());
-				SW1 = response.getSW1();
-				SW2 = response.getSW2();
-			}
-			TLV pcaptmpl = new TLV(response.getData());
-			this.pcap = new PIVCardApplicationProperty(pcaptmpl.getValue());
-		} else if (status_word == PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
-			if (debug) {
-				System.out.println(response.toString() + ": "
-						+ DataUtil.byteArrayToString(response.getData()));
-			}
-			if (response.getData().length  <= 0) {
+		int status_word = this.assembler.transmit(this.channel, command);
+		if (status_word == PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
+			if (this.assembler.getLength() <= 0) {
 				if (debug) {
 					System.out.println("Response APDU is empty, should contain App Prop.");
 				}
 			} else {
-				TLV pcaptmpl = new TLV(response.getData());
+				TLV pcaptmpl = new TLV(this.assembler.getData());
 				this.pcap = new PIVCardApplicationProperty(pcaptmpl.getValue());
 			}
 		}
@@ -193,11 +185,22 @@ public class PIVCard {
 			}
 		}
 
+		/*
+		 * Use extended length APDUs if the card advertises support for them
+		 * in the historical bytes of the ATR.  Neither the PCAP nor the
+		 * Discovery Object carry this capability.
+		 */
+		this.extendedLength = PIVAPDU.isExtendedLengthSupported(card.getATR(),
+				card.getProtocol());
+		if (debug) {
+			System.out.println("Extended length APDUs: " + this.extendedLength);
+		}
+
 		// Perform a GET-DATA command to obtain to get the Discovery Object
-		command = PIVAPDU.getPIVData(new Tag(Tag.PIV_DISCOVERY_OBJECT));
-		response = this.channel.transmit(command);
-		if (response.getSW() == 0x9000) {
-			this.pdo = new PIVDiscoveryObject(response.getData());
+		command = PIVAPDU.getPIVData(new Tag(Tag.PIV_DISCOVERY_OBJECT),
+				this.extendedLength);
+		if (this.assembler.transmit(this.channel, command) == PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
+			this.pdo = new PIVDiscoveryObject(this.assembler.getData());
 			this.setHasDiscoveryObject(true);
 			if (debug) {
 				System.out.println(this.pdo.toString());
@@ -215,7 +218,15 @@ public class PIVCard {
 	 * @throws CardException
 	 */
 	public void disconnect(boolean reset) throws CardException {
-		this.card.disconnect(reset);
+		try {
+			this.card.disconnect(reset);
+		} finally {
+			if (this.metrics != null && !this.sessionRecorded) {
+				this.metrics.endSession(System.nanoTime() - this.created,
+						this.metered.getCardTime());
+				this.sessionRecorded = true;
+			}
+		}
 	}
 
 	/**
@@ -259,7 +270,8 @@ public class PIVCard {
 					DynamicAuthTempl.POP_TO_CARD_SYM_CHAL_REQ, null);
 			Enumeration<CommandAPDU> gaapdus = PIVAPDU.generalAuthenticate(
 					CipherEngine.THREE_KEY_3DES_ECB,
-					CipherEngine.CARD_MGMT_KEY, gaReq.getEncoded());
+					CipherEngine.CARD_MGMT_KEY, gaReq.getEncoded(),
+					this.extendedLength);
 			CommandAPDU gaapdu;
 			while (gaapdus.hasMoreElements()) {
 				gaapdu = gaapdus.nextElement();
@@ -301,7 +313,8 @@ public class PIVCard {
 							CipherEngine.ENCRYPT_MODE));
 			gaapdus = PIVAPDU.generalAuthenticate(
 					CipherEngine.THREE_KEY_3DES_ECB,
-					CipherEngine.CARD_MGMT_KEY, gaAuthResp.getEncoded());
+					CipherEngine.CARD_MGMT_KEY, gaAuthResp.getEncoded(),
+					this.extendedLength);
 			while (gaapdus.hasMoreElements()) {
 				gaapdu = gaapdus.nextElement();
 				if (debug) {
@@ -434,6 +447,50 @@ public class PIVCard {
 		return new PIVCardHolderFacialImage(data.getData());
 	}
 
+	/**
+	 * Method getFacialImage.
+	 *
+	 * Streams the image from the facial image object into the OutputStream as
+	 * it is read from the card, without holding the whole object in memory.
+	 *
+	 * @param out OutputStream
+	 * @return long Number of image bytes written
+	 * @throws CardException
+	 * @throws IOException
+	 */
+	public long getFacialImage(OutputStream out) throws CardException,
+			IOException {
+		TLVStreamReader reader = new TLVStreamReader(this.getPIVDataStream(new Tag(
+				Tag.PIV_CARDHOLDER_FACIAL_IMAGE)));
+		long written = 0;
+		try {
+			if (reader.next() != TLVStreamReader.START_ELEMENT
+					|| reader.getTagByte() != Tag.PIV_DATA) {
+				throw new CardException("Unexpected response to GET DATA");
+			}
+			reader.enter();
+			while (reader.next() == TLVStreamReader.START_ELEMENT) {
+				if (reader.getTagByte() == Tag.CFI_IMAGE) {
+					while (reader.next() == TLVStreamReader.VALUE) {
+						out.write(reader.getChunk(), 0, reader.getChunkLength());
+						written += reader.getChunkLength();
+					}
+				} else {
+					reader.skipValue();
+					reader.next();
+				}
+			}
+		} catch (TLVEncodingException e) {
+			throw new CardException(e);
+		} catch (IOException e) {
+			if (e.getCause() instanceof CardException) {
+				throw (CardException) e.getCause();
+			}
+			throw e;
+		}
+		return written;
+	}
+
 	/**
 	 * Method getFingerprints.
 	 * @return PIVCardHolderFingerprints
@@ -505,6 +562,22 @@ public class PIVCard {
 		return new PIVCertificate(data.getData());
 	}
 
+	/**
+	 * Method getPIVDataStream.
+	 *
+	 * Returns the response to GET DATA for the object as a stream, beginning
+	 * with the PIV data tag (0x53). GET RESPONSE commands are sent only as the
+	 * stream is read, so a TLVStreamReader over the stream can decode large
+	 * objects while they are transferred.
+	 *
+	 * @param pivObjectTag Tag
+	 * @return InputStream
+	 */
+	public InputStream getPIVDataStream(Tag pivObjectTag) {
+		return new PIVDataInputStream(this.channel, pivObjectTag,
+				this.extendedLength);
+	}
+
 	/**
 	 * Method getPIVCardApplicationProperty.
 	 * @return PIVCardApplicationProperty
@@ -513,6 +586,37 @@ public class PIVCard {
 		return this.pcap;
 	}
 
+	/**
+	 * Method getMetrics.
+	 * @return PIVMetrics (May be null)
+	 */
+	public PIVMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Method getObjectCache.
+	 * @return PIVObjectCache
+	 */
+	public PIVObjectCache getObjectCache() {
+		return this.cache;
+	}
+
+	/**
+	 * Method setObjectCache.
+	 * 
+	 * Once set, objects are read through the cache.  The security object is
+	 * read from the card before the first object, to find the cached objects
+	 * for this card.
+	 * 
+	 * @param cache PIVObjectCache (May be null)
+	 */
+	public void setObjectCache(PIVObjectCache cache) {
+		this.cache = cache;
+		this.cacheEntry = null;
+		this.cacheChecked = false;
+	}
+
 	/**
 	 * Method getPIVData.
 	 * @param pivObjectTag Tag
@@ -520,68 +624,263 @@ public class PIVCard {
 	 * @throws CardException
 	 */
 	private PIVDataTempl getPIVData(Tag pivObjectTag) throws CardException {
-		PIVDataTempl data = null;
+		return this.getPIVData(pivObjectTag, false);
+	}
+
+	/**
+	 * Method getPIVData.
+	 * @param pivObjectTag Tag
+	 * @param optional boolean Return null if the object is not on the card or needs authentication
+	 * @return PIVDataTempl
+	 * @throws CardException
+	 */
+	private PIVDataTempl getPIVData(Tag pivObjectTag, boolean optional)
+			throws CardException {
+		if (this.cache != null
+				&& !Arrays.equals(pivObjectTag.getBytes(), Tag.PIV_SECURITY_OBJECT)) {
+			PIVObjectCache.Entry entry = this.getCacheEntry();
+			if (entry != null) {
+				byte[] cached = this.cache.get(entry, pivObjectTag);
+				if (cached != null) {
+					return new PIVDataTempl(cached);
+				}
+				PIVDataTempl data = this.readPIVData(pivObjectTag, optional);
+				if (data != null) {
+					this.cache.put(entry, pivObjectTag, data);
+				}
+				return data;
+			}
+		}
+		return this.readPIVData(pivObjectTag, optional);
+	}
+
+	/**
+	 * Method readObjects.
+	 * 
+	 * Reads a set of objects with back to back GET DATA commands on the
+	 * channel, which already has the PIV application selected.  The decoded
+	 * objects are returned in the iteration order of the set, as the same
+	 * types returned by the individual getters (e.g. PIVCertificate for the
+	 * certificates, PIVCardHolderUniqueID for the CHUID).  Objects without a
+	 * getter are returned as a PIVDataTempl.
+	 * 
+	 * Objects that are not on the card, or that need an authentication the
+	 * channel does not have, are left out of the map.  When the key history
+	 * object or retired key management certificates are requested, the key
+	 * history object is read once, before the other objects, and only the
+	 * number of on card certificates it gives are requested.
+	 * 
+	 * @param pivObjectTags Set<Tag>
+	 * @return Map<Tag, Object>
+	 * @throws CardException
+	 */
+	public Map<Tag, Object> readObjects(Set<Tag> pivObjectTags)
+			throws CardException {
+		Map<Tag, Object> objects = new LinkedHashMap<Tag, Object>();
+		Tag khoTag = new Tag(Tag.PIV_KEY_HISTORY_OBJECT);
+		boolean khoNeeded = false;
+		for (Tag tag : pivObjectTags) {
+			if (tag.equals(khoTag) || getRetiredCertNumber(tag) > 0) {
+				khoNeeded = true;
+				break;
+			}
+		}
+		// Read once, before any of the tags that depend on it
+		PIVKeyHistoryObject kho = null;
+		int onCardCerts = 0;
+		if (khoNeeded) {
+			PIVDataTempl data = this.readObject(khoTag);
+			if (data != null) {
+				kho = new PIVKeyHistoryObject(data.getData());
+				onCardCerts = kho.getOnCardCertCount();
+			}
+		}
+		for (Tag tag : pivObjectTags) {
+			if (tag.equals(khoTag)) {
+				if (kho != null) {
+					objects.put(tag, kho);
+				}
+				continue;
+			}
+			if (getRetiredCertNumber(tag) > onCardCerts) {
+				// No key history object, no retired keys
+				continue;
+			}
+			PIVDataTempl data = this.readObject(tag);
+			if (data != null) {
+				objects.put(tag, decodeObject(tag, data));
+			}
+		}
+		return objects;
+	}
+
+	/**
+	 * Method readObject.
+	 * @param pivObjectTag Tag
+	 * @return PIVDataTempl (null if the object is not on the card or needs authentication)
+	 * @throws CardException
+	 */
+	private PIVDataTempl readObject(Tag pivObjectTag) throws CardException {
+		return this.getPIVData(pivObjectTag, true);
+	}
+
+	/**
+	 * Method getRetiredCertNumber.
+	 * @param pivObjectTag Tag
+	 * @return int 1 through 20 for a retired key management certificate, else 0
+	 */
+	private static int getRetiredCertNumber(Tag pivObjectTag) {
+		byte[] tag = pivObjectTag.getBytes();
+		if (tag.length == 3 && tag[0] == Tag.PIV_RET_CERT_KM01[0]
+				&& tag[1] == Tag.PIV_RET_CERT_KM01[1]) {
+			int n = tag[2] - Tag.PIV_RET_CERT_KM01[2] + 1;
+			if (n >= 1 && n <= 20) {
+				return n;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Method decodeObject.
+	 * @param pivObjectTag Tag
+	 * @param data PIVDataTempl
+	 * @return Object
+	 */
+	private static Object decodeObject(Tag pivObjectTag, PIVDataTempl data) {
+		byte[] tag = pivObjectTag.getBytes();
+		if (Arrays.equals(tag, Tag.PIV_CERT_PIVAUTH)
+				|| Arrays.equals(tag, Tag.PIV_CERT_CARDAUTH)
+				|| Arrays.equals(tag, Tag.PIV_CERT_DIGSIG)
+				|| Arrays.equals(tag, Tag.PIV_CERT_KEYMGMT)
+				|| getRetiredCertNumber(pivObjectTag) > 0) {
+			return new PIVCertificate(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_CHUID)) {
+			return new PIVCardHolderUniqueID(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_CCC)) {
+			return new PIVCardCapabilityContainer(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_SECURITY_OBJECT)) {
+			return new PIVSecurityObject(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_KEY_HISTORY_OBJECT)) {
+			return new PIVKeyHistoryObject(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_PRINTED_INFORMATION)) {
+			return new PIVPrintedInformation(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_CARDHOLDER_FACIAL_IMAGE)) {
+			return new PIVCardHolderFacialImage(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_CARDHOLDER_FINGERPRINTS)) {
+			return new PIVCardHolderFingerprints(data.getData());
+		} else if (Arrays.equals(tag, Tag.PIV_CARDHOLDER_IRIS_IMAGES)) {
+			return new PIVCardHolderIrisImages(data.getData());
+		} else if (tag.length == 1 && tag[0] == Tag.PIV_DISCOVERY_OBJECT) {
+			return new PIVDiscoveryObject(data.getData());
+		}
+		return data;
+	}
+
+	/**
+	 * Method getCacheEntry.
+	 * 
+	 * Reads the security object and finds the cache entry for this card,
+	 * creating one from the CHUID if the card has not been seen.  Cards
+	 * without a security object, whose security object or CHUID does not
+	 * decode, or whose CHUID does not match the security object, are not
+	 * cached.
+	 * 
+	 * @return PIVObjectCache.Entry (May be null)
+	 * @throws CardException
+	 */
+	private PIVObjectCache.Entry getCacheEntry() throws CardException {
+		if (this.cacheChecked) {
+			return this.cacheEntry;
+		}
+		this.cacheChecked = true;
+		PIVObjectCache.Entry entry = null;
+		boolean created = false;
 		try {
-			CommandAPDU command = PIVAPDU.getPIVData(pivObjectTag);
+			PIVSecurityObject so;
+			try {
+				so = new PIVSecurityObject(this.readPIVData(
+						new Tag(Tag.PIV_SECURITY_OBJECT)).getData());
+			} catch (CardException e) {
+				if (debug) {
+					System.out.println("No security object, not cached: " + e.getMessage());
+				}
+				return null;
+			}
+			entry = this.cache.lookup(so);
+			if (entry == null) {
+				Tag chuidTag = new Tag(Tag.PIV_CHUID);
+				PIVDataTempl chuid = this.readPIVData(chuidTag, true);
+				if (chuid == null) {
+					return null;
+				}
+				UUID guid = new PIVCardHolderUniqueID(chuid.getData()).getGUID();
+				if (guid == null) {
+					return null;
+				}
+				entry = this.cache.create(guid, so);
+				created = true;
+				if (!this.cache.put(entry, chuidTag, chuid)) {
+					this.cache.invalidate(entry);
+					return null;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// A security object or CHUID that does not decode is read uncached
 			if (debug) {
-				System.out.println(command.toString() + ": "
-						+ DataUtil.byteArrayToString(command.getBytes()));
+				System.out.println("Malformed object, not cached: " + e.getMessage());
+			}
+			if (created) {
+				this.cache.invalidate(entry);
 			}
-			ResponseAPDU response = this.channel.transmit(command);
-			int status_word = response.getSW();
-			int SW1 = response.getSW1();
-			int SW2 = response.getSW2();
-			if (SW1 == 0x61) {
-				ByteArrayOutputStream rbaos = new ByteArrayOutputStream();
+			return null;
+		}
+		this.cacheEntry = entry;
+		return entry;
+	}
+
+	/**
+	 * Method readPIVData.
+	 * @param pivObjectTag Tag
+	 * @return PIVDataTempl
+	 * @throws CardException
+	 */
+	private PIVDataTempl readPIVData(Tag pivObjectTag) throws CardException {
+		return this.readPIVData(pivObjectTag, false);
+	}
+
+	/**
+	 * Method readPIVData.
+	 * 
+	 * When optional, the status word of this GET DATA decides whether the
+	 * object is skipped, not the status of an earlier exchange.
+	 * 
+	 * @param pivObjectTag Tag
+	 * @param optional boolean Return null if the object is not on the card or needs authentication
+	 * @return PIVDataTempl
+	 * @throws CardException
+	 */
+	private PIVDataTempl readPIVData(Tag pivObjectTag, boolean optional)
+			throws CardException {
+		try {
+			CommandAPDU command = PIVAPDU.getPIVData(pivObjectTag,
+					this.extendedLength);
+			int sw = this.assembler.transmit(this.channel, command);
+			if (optional
+					&& (sw == PIVAPDUInterface.PIV_SW_OBJECT_OR_APPLICATION_NOT_FOUND
+					|| sw == PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED)) {
 				if (debug) {
-					System.out.println(response.toString() + ": "
-							+ DataUtil.byteArrayToString(response.getData()));
-				}
-				rbaos.write(response.getData());
-				while (SW1 == 0x61) {
-					// Craft a GET-DATA APDU to collect the bytes remaining
-					if (SW2 == 0x00) {
-						CommandAPDU remain = new CommandAPDU(
-								DataUtil.stringToByteArray("00C0000000"));
-						if (debug) {
-							System.out.println(remain.toString() + ": "
-									+ DataUtil.byteArrayToString(remain.getBytes()));
-						}
-						response = this.channel.transmit(remain);
-					} else {
-						CommandAPDU remain = new CommandAPDU(0x00, 0xc0, 0x00,
-								0x00, SW2);
-						if (debug) {
-							System.out.println(remain.toString() + ": "
-									+ DataUtil.byteArrayToString(remain.getBytes()));
-						}
-						response = this.channel.transmit(remain);
-					}
-					if (debug) {
-						System.out
-								.println(response.toString()
-										+ ": "
-										+ DataUtil.byteArrayToString(response
-												.getData()));
-					}
-					rbaos.write(response.getData());
-					SW1 = response.getSW1();
-					SW2 = response.getSW2();
+					System.out.println("Skipping: Tag: "
+							+ DataUtil.byteArrayToString(pivObjectTag.getBytes())
+							+ " SW=" + Integer.toHexString(sw));
 				}
-				data = new PIVDataTempl(rbaos.toByteArray());
-			} else if (status_word == PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
-				data = new PIVDataTempl(response.getData());
-			} else if (status_word == PIVAPDUInterface.PIV_SW_OBJECT_OR_APPLICATION_NOT_FOUND) {
-				throw new CardException("Object not found: Tag: " + DataUtil.byteArrayToString(pivObjectTag.getBytes()));
-			} else if (status_word == PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED) {
-				throw new CardException("Authentication required!");
-			} else {
-				throw new CardException(response.toString());
+				return null;
 			}
+			this.assembler.checkStatus(pivObjectTag);
+			return new PIVDataTempl(this.assembler.getData());
 		} catch (java.io.IOException ex) {
 			throw new CardException(ex);
 		}
-		return data;
 	}
 
 	/**
@@ -592,7 +891,14 @@ public class PIVCard {
 	 * @throws IOException 
 	 */
 	public void putPIVData(Tag pivObjectTag, byte[] pivData) throws CardException, IOException {
-		Enumeration<CommandAPDU> commands = PIVAPDU.putPIVData(pivObjectTag, pivData);
+		if (this.cacheEntry != null) {
+			// The card no longer matches what was cached
+			this.cache.invalidate(this.cacheEntry);
+			this.cacheEntry = null;
+			this.cacheChecked = false;
+		}
+		Enumeration<CommandAPDU> commands = PIVAPDU.putPIVData(pivObjectTag,
+				pivData, this.extendedLength);
 		CommandAPDU command;
 		ResponseAPDU response;
 		while (commands.hasMoreElements()) {
@@ -619,6 +925,111 @@ public class PIVCard {
 		return new PIVPrintedInformation(data.getData());
 	}
 
+	/**
+	 * Method getRetiredCerts.
+	 * 
+	 * Reads the key history object and returns the retired key management
+	 * certificates it says are on the card.  Each certificate is read from the
+	 * card when the iteration first reaches it, and kept for later
+	 * iterations, so empty retired certificate containers are never read.
+	 * Certificates that are only available from the off card URL are not
+	 * included; see PIVKeyHistoryObject.getOffCardURL().
+	 * 
+	 * A CardException while iterating is thrown as an IllegalStateException
+	 * with the CardException as its cause.
+	 * 
+	 * @return Iterable<PIVCertificate> (Empty if there is no key history object)
+	 * @throws CardException
+	 */
+	public Iterable<PIVCertificate> getRetiredCerts() throws CardException {
+		PIVDataTempl data = this.readObject(new Tag(Tag.PIV_KEY_HISTORY_OBJECT));
+		int onCardCerts = 0;
+		if (data != null) {
+			onCardCerts = new PIVKeyHistoryObject(data.getData())
+					.getOnCardCertCount();
+		}
+		return new RetiredCerts(Math.min(onCardCerts, 20));
+	}
+
+	/**
+	 * Retired key management certificates, read as they are iterated.
+	 */
+	private class RetiredCerts implements Iterable<PIVCertificate> {
+
+		private final int count;
+		// Certificates read so far
+		private final Vector<PIVCertificate> certs = new Vector<PIVCertificate>();
+		// Next container to read, 1 through count
+		private int next = 1;
+
+		/**
+		 * Constructor for RetiredCerts.
+		 * @param count int
+		 */
+		RetiredCerts(int count) {
+			this.count = count;
+		}
+
+		/**
+		 * Method fetch.
+		 * 
+		 * Reads containers until a certificate is found or all have been read.
+		 * 
+		 * @return boolean True if a certificate was added
+		 */
+		private boolean fetch() {
+			while (this.next <= this.count) {
+				Tag tag = new Tag(new byte[] { Tag.PIV_RET_CERT_KM01[0],
+						Tag.PIV_RET_CERT_KM01[1],
+						(byte) (Tag.PIV_RET_CERT_KM01[2] + this.next - 1) });
+				this.next++;
+				try {
+					PIVDataTempl data = PIVCard.this.readObject(tag);
+					if (data != null) {
+						this.certs.add(new PIVCertificate(data.getData()));
+						return true;
+					}
+				} catch (CardException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Method iterator.
+		 * @return Iterator<PIVCertificate>
+		 */
+		@Override
+		public Iterator<PIVCertificate> iterator() {
+			return new Iterator<PIVCertificate>() {
+
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					synchronized (RetiredCerts.this) {
+						return this.index < RetiredCerts.this.certs.size()
+								|| fetch();
+					}
+				}
+
+				@Override
+				public PIVCertificate next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return RetiredCerts.this.certs.get(this.index++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
 	/**
 	 * Method getRetiredCert01.
 	 * @return PIVCertificate
@@ -875,6 +1286,27 @@ public class PIVCard {
 			}
 	}
 
+	/**
+	 * Method isExtendedLength.
+	 * @return boolean True if extended length APDUs are used with this card
+	 */
+	public boolean isExtendedLength() {
+		return this.extendedLength;
+	}
+
+	/**
+	 * Method setExtendedLength.
+	 * 
+	 * Overrides the extended length support detected from the ATR, for cards
+	 * that support extended length APDUs without advertising it, or that
+	 * advertise it incorrectly.
+	 * 
+	 * @param extendedLength boolean
+	 */
+	public void setExtendedLength(boolean extendedLength) {
+		this.extendedLength = extendedLength;
+	}
+
 	/**
 	
 	 * @return the hasDiscoveryObject */
@@ -0,0 +1,153 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.nist80073;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+
+import org.keysupport.encoding.Tag;
+import org.keysupport.nist80073.cardedge.PIVAPDU;
+
+/**
+ * An InputStream over the response to a GET DATA command.
+ * <p>
+ * The GET DATA command is sent on the first read, and each GET RESPONSE only
+ * when the data from the previous response has been consumed. Only one
+ * response APDU is held at a time, so a TLVStreamReader over this stream
+ * decodes the object while it is being transferred from the card. Commands
+ * are exchanged through a ResponseAssembler.
+ * <p>
+ * Card errors are reported as an IOException whose cause is the
+ * CardException.
+ *
+ * @author tejohnson
+ */
+public class PIVDataInputStream extends InputStream {
+
+	private final CardChannel channel;
+	private final Tag pivObjectTag;
+	private final boolean extended;
+	private final ResponseAssembler assembler = new ResponseAssembler();
+
+	private boolean started = false;
+	private int index = 0;
+
+	/**
+	 * Constructor for PIVDataInputStream.
+	 * @param channel CardChannel with the PIV application selected
+	 * @param pivObjectTag Tag
+	 */
+	public PIVDataInputStream(CardChannel channel, Tag pivObjectTag) {
+		this(channel, pivObjectTag, false);
+	}
+
+	/**
+	 * Constructor for PIVDataInputStream.
+	 * @param channel CardChannel with the PIV application selected
+	 * @param pivObjectTag Tag
+	 * @param extended boolean Send GET DATA with an extended Le
+	 */
+	public PIVDataInputStream(CardChannel channel, Tag pivObjectTag,
+			boolean extended) {
+		this.channel = channel;
+		this.pivObjectTag = pivObjectTag;
+		this.extended = extended;
+	}
+
+	/**
+	 * Method read.
+	 * @return int
+	 * @throws IOException
+	 */
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return this.assembler.getBuffer()[this.index++] & 0xff;
+	}
+
+	/**
+	 * Method read.
+	 * @param b byte[]
+	 * @param off int
+	 * @param len int
+	 * @return int
+	 * @throws IOException
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int n = Math.min(len, this.assembler.getLength() - this.index);
+		System.arraycopy(this.assembler.getBuffer(), this.index, b, off, n);
+		this.index += n;
+		return n;
+	}
+
+	/**
+	 * Method available.
+	 * @return int Bytes remaining from the current response APDU
+	 */
+	@Override
+	public int available() {
+		return this.assembler.getLength() - this.index;
+	}
+
+	/**
+	 * Method fill.
+	 *
+	 * Transmits the next command if the current response is exhausted.
+	 *
+	 * @return boolean False once the final response has been consumed
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		while (this.index >= this.assembler.getLength()) {
+			try {
+				if (!this.started) {
+					this.started = true;
+					this.assembler.start(this.channel,
+							PIVAPDU.getPIVData(this.pivObjectTag, this.extended));
+				} else if (this.assembler.hasMoreData()) {
+					// The previous response has been consumed
+					this.assembler.clear();
+					this.assembler.fetch(this.channel);
+				} else {
+					return false;
+				}
+				this.assembler.checkStatus(this.pivObjectTag);
+			} catch (CardException e) {
+				throw new IOException(e);
+			}
+			this.index = 0;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,315 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.nist80073;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.keysupport.util.LatencyRecorder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Latency histograms and counters for the phases of a card session, from the
+ * SELECT of the PIV application to the decision made on the card.
+ * <p>
+ * PIVCard times each command sent to the card, from the command APDU to the
+ * final response, including GET RESPONSE and command chaining, and records
+ * the time under the phase of the instruction (SELECT, GET DATA, VERIFY,
+ * GENERAL AUTHENTICATE, PUT DATA or other). When the PIVCard is disconnected,
+ * the time of the session is recorded, together with the part of it spent
+ * waiting for the card and the part spent on the host. CMSSignedDataObject
+ * records the time taken to parse a signature, to verify it, and to validate
+ * the signer's certificate path, in the instance given to its setMetrics().
+ * CardAuthenticator records the time taken to authenticate a card with its
+ * Card Authentication Key, in the card's instance.
+ * <p>
+ * The metrics can be read through JMX once register() has been called, or
+ * over HTTP, in the Prometheus text format, from an endpoint started with
+ * startEndpoint(). Times are in nanoseconds. Instances are thread safe, and
+ * recording a time does not allocate.
+ *
+ * @author tejohnson
+ */
+public class PIVMetrics implements PIVMetricsMBean {
+
+	public final static int SELECT = 0;
+	public final static int GET_DATA = 1;
+	public final static int VERIFY = 2;
+	public final static int GENERAL_AUTHENTICATE = 3;
+	public final static int PUT_DATA = 4;
+	public final static int OTHER_APDU = 5;
+	public final static int CMS_PARSE = 6;
+	public final static int CMS_VERIFY = 7;
+	public final static int PKIX_VALIDATION = 8;
+	public final static int SESSION = 9;
+	public final static int SESSION_CARD = 10;
+	public final static int SESSION_HOST = 11;
+	public final static int CARD_AUTHENTICATION = 12;
+
+	private final static String[] PHASES = { "select", "get_data", "verify",
+			"general_authenticate", "put_data", "other_apdu", "cms_parse",
+			"cms_verify", "pkix_validation", "session", "session_card",
+			"session_host", "card_authentication" };
+
+	// Percentiles given in the report
+	private final static double[] QUANTILES = { 0.5, 0.9, 0.99, 1.0 };
+
+	private final static String OBJECT_NAME = "org.keysupport.nist80073:type=PIVMetrics";
+
+	private final static PIVMetrics defaultMetrics = new PIVMetrics();
+
+	private final LatencyRecorder[] recorders = new LatencyRecorder[PHASES.length];
+	private final AtomicLong apdus = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * Constructor for PIVMetrics.
+	 */
+	public PIVMetrics() {
+		for (int i = 0; i < this.recorders.length; i++) {
+			this.recorders[i] = new LatencyRecorder();
+		}
+	}
+
+	/**
+	 * Method getDefault.
+	 * @return PIVMetrics The instance used by PIVCard unless another is given
+	 */
+	public static PIVMetrics getDefault() {
+		return defaultMetrics;
+	}
+
+	/**
+	 * Method record.
+	 * @param phase int
+	 * @param nanos long
+	 */
+	public void record(int phase, long nanos) {
+		this.recorders[phase].record(nanos);
+	}
+
+	/**
+	 * Method getRecorder.
+	 * @param phase int
+	 * @return LatencyRecorder
+	 */
+	public LatencyRecorder getRecorder(int phase) {
+		return this.recorders[phase];
+	}
+
+	/**
+	 * Method countAPDU.
+	 * @param sent int Bytes of the command APDU
+	 * @param received int Bytes of the response APDU
+	 */
+	void countAPDU(int sent, int received) {
+		this.apdus.incrementAndGet();
+		this.bytesSent.addAndGet(sent);
+		this.bytesReceived.addAndGet(received);
+	}
+
+	/**
+	 * Method endSession.
+	 * @param nanos long Time from the SELECT to the disconnect
+	 * @param cardNanos long Part of the time spent waiting for the card
+	 */
+	void endSession(long nanos, long cardNanos) {
+		record(SESSION, nanos);
+		record(SESSION_CARD, cardNanos);
+		record(SESSION_HOST, nanos - cardNanos);
+	}
+
+	/**
+	 * Method register.
+	 *
+	 * Registers this instance with the platform MBeanServer.
+	 *
+	 * @param name String Added to the ObjectName, or null
+	 * @return ObjectName
+	 * @throws JMException
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName on = new ObjectName((name == null) ? OBJECT_NAME
+				: OBJECT_NAME + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		return on;
+	}
+
+	/**
+	 * Method startEndpoint.
+	 *
+	 * Starts an HTTP server answering GET /metrics with getReport().
+	 *
+	 * @param address InetSocketAddress
+	 * @return HttpServer The server, to be stopped by the caller
+	 * @throws IOException
+	 */
+	public HttpServer startEndpoint(InetSocketAddress address)
+			throws IOException {
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!"GET".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					byte[] body = getReport().getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type",
+							"text/plain; version=0.0.4; charset=utf-8");
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	@Override
+	public String[] getPhaseNames() {
+		return PHASES.clone();
+	}
+
+	@Override
+	public long getAPDUCount() {
+		return this.apdus.get();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return this.bytesSent.get();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return this.bytesReceived.get();
+	}
+
+	@Override
+	public long getSessionCount() {
+		return this.recorders[SESSION].getCount();
+	}
+
+	@Override
+	public long getCardTime() {
+		return this.recorders[SESSION_CARD].getTotal();
+	}
+
+	@Override
+	public long getHostTime() {
+		return this.recorders[SESSION_HOST].getTotal();
+	}
+
+	@Override
+	public long getCount(String phase) {
+		return this.recorders[phase(phase)].getCount();
+	}
+
+	@Override
+	public double getMean(String phase) {
+		return this.recorders[phase(phase)].getMean();
+	}
+
+	@Override
+	public long getPercentile(String phase, double percentile) {
+		return this.recorders[phase(phase)].getValueAtPercentile(percentile);
+	}
+
+	@Override
+	public long getMax(String phase) {
+		return this.recorders[phase(phase)].getMax();
+	}
+
+	@Override
+	public String getReport() {
+		StringBuffer sb = new StringBuffer();
+		counter(sb, "piv_apdus_total", getAPDUCount());
+		counter(sb, "piv_bytes_sent_total", getBytesSent());
+		counter(sb, "piv_bytes_received_total", getBytesReceived());
+		sb.append("# TYPE piv_phase_nanoseconds summary\n");
+		for (int i = 0; i < PHASES.length; i++) {
+			LatencyRecorder r = this.recorders[i];
+			for (int q = 0; q < QUANTILES.length; q++) {
+				sb.append("piv_phase_nanoseconds{phase=\"" + PHASES[i]
+						+ "\",quantile=\"" + QUANTILES[q] + "\"} "
+						+ r.getValueAtPercentile(QUANTILES[q] * 100) + "\n");
+			}
+			sb.append("piv_phase_nanoseconds_sum{phase=\"" + PHASES[i]
+					+ "\"} " + r.getTotal() + "\n");
+			sb.append("piv_phase_nanoseconds_count{phase=\"" + PHASES[i]
+					+ "\"} " + r.getCount() + "\n");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < this.recorders.length; i++) {
+			this.recorders[i].reset();
+		}
+		this.apdus.set(0);
+		this.bytesSent.set(0);
+		this.bytesReceived.set(0);
+	}
+
+	/**
+	 * Method counter.
+	 * @param sb StringBuffer
+	 * @param name String
+	 * @param value long
+	 */
+	private static void counter(StringBuffer sb, String name, long value) {
+		sb.append("# TYPE " + name + " counter\n");
+		sb.append(name + " " + value + "\n");
+	}
+
+	/**
+	 * Method phase.
+	 * @param name String
+	 * @return int
+	 */
+	private static int phase(String name) {
+		for (int i = 0; i < PHASES.length; i++) {
+			if (PHASES[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown phase: " + name);
+	}
+
+}
@@ -0,0 +1,114 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.nist80073;
+
+/**
+ * The management interface of PIVMetrics. Times are in nanoseconds, and
+ * phases are named as in PIVMetrics.getPhaseNames().
+ *
+ * @author tejohnson
+ */
+public interface PIVMetricsMBean {
+
+	/**
+	 * Method getPhaseNames.
+	 * @return String[]
+	 */
+	String[] getPhaseNames();
+
+	/**
+	 * Method getAPDUCount.
+	 * @return long Number of command APDUs sent
+	 */
+	long getAPDUCount();
+
+	/**
+	 * Method getBytesSent.
+	 * @return long Bytes of command APDUs sent
+	 */
+	long getBytesSent();
+
+	/**
+	 * Method getBytesReceived.
+	 * @return long Bytes of response APDUs received, including status words
+	 */
+	long getBytesReceived();
+
+	/**
+	 * Method getSessionCount.
+	 * @return long Number of card sessions ended
+	 */
+	long getSessionCount();
+
+	/**
+	 * Method getCardTime.
+	 * @return long Time of the ended sessions spent waiting for the card
+	 */
+	long getCardTime();
+
+	/**
+	 * Method getHostTime.
+	 * @return long Time of the ended sessions spent on the host
+	 */
+	long getHostTime();
+
+	/**
+	 * Method getCount.
+	 * @param phase String
+	 * @return long Number of times recorded for the phase
+	 */
+	long getCount(String phase);
+
+	/**
+	 * Method getMean.
+	 * @param phase String
+	 * @return double
+	 */
+	double getMean(String phase);
+
+	/**
+	 * Method getPercentile.
+	 * @param phase String
+	 * @param percentile double From 0 to 100
+	 * @return long
+	 */
+	long getPercentile(String phase, double percentile);
+
+	/**
+	 * Method getMax.
+	 * @param phase String
+	 * @return long
+	 */
+	long getMax(String phase);
+
+	/**
+	 * Method getReport.
+	 * @return String The metrics in the text exposition format
+	 */
+	String getReport();
+
+	/**
+	 * Method reset.
+	 */
+	void reset();
+
+}
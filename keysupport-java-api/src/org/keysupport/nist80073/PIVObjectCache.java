@@ -0,0 +1,319 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.nist80073;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.keysupport.encoding.Tag;
+import org.keysupport.keystore.DigestEngine;
+import org.keysupport.nist80073.cardedge.PIVDataTempl;
+import org.keysupport.nist80073.datamodel.PIVSecurityObject;
+import org.keysupport.util.DataUtil;
+
+/**
+ * A cache of PIV data objects, so that the objects of a card that has been
+ * presented before are served from memory rather than read again.
+ * <p>
+ * Entries are keyed by the GUID from the CHUID, and bound to the digest of
+ * the security object that was on the card when the entry was created. The
+ * security object is read once per connection (the check read), and its
+ * digest is used to find the entry. A card whose security object has changed
+ * (e.g. after the card was updated or reissued) is treated as a card that has
+ * not been seen, and its new entry replaces the old one for the same GUID.
+ * <p>
+ * An object listed in the security object's mapping of DG to ContainerID is
+ * only cached if its hash matches the hash in the security object. Objects
+ * that are not listed, such as certificates on most cards, are cached as
+ * read.
+ * <p>
+ * Serving objects from the cache does not authenticate the card; a copy of
+ * the security object is enough to be served the original card's objects.
+ * Relying applications must still authenticate the card, e.g. with the Card
+ * Authentication Key.
+ * <p>
+ * Entries are evicted least recently used first once the cache holds
+ * maxEntries, and when they are older than the time to live. Instances may be
+ * shared by PIVCard objects on different threads.
+ *
+ * @author tejohnson
+ */
+public class PIVObjectCache {
+
+	private final static boolean debug = false;
+
+	private final int maxEntries;
+	private final long timeToLive;
+
+	// GUID -> Entry, in access order
+	private final LinkedHashMap<UUID, Entry> entries;
+	// Security object digest -> GUID
+	private final HashMap<String, UUID> index = new HashMap<String, UUID>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructor for PIVObjectCache.
+	 * @param maxEntries int Maximum number of cards held
+	 * @param timeToLive long Milliseconds an entry is kept, or 0 for no limit
+	 */
+	public PIVObjectCache(int maxEntries, long timeToLive) {
+		if (maxEntries <= 0 || timeToLive < 0) {
+			throw new IllegalArgumentException("maxEntries=" + maxEntries
+					+ " timeToLive=" + timeToLive);
+		}
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+				if (size() > PIVObjectCache.this.maxEntries) {
+					PIVObjectCache.this.index.remove(eldest.getValue().digest);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Method lookup.
+	 * @param so PIVSecurityObject As read from the card
+	 * @return Entry The entry bound to the security object, or null
+	 */
+	public synchronized Entry lookup(PIVSecurityObject so) {
+		String digest = digest(so);
+		UUID guid = this.index.get(digest);
+		Entry entry = (guid == null) ? null : this.entries.get(guid);
+		if (entry != null && isExpired(entry)) {
+			remove(entry);
+			entry = null;
+		}
+		if (entry == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		if (debug) {
+			System.out.println("PIVObjectCache: " + digest + " -> "
+					+ ((entry == null) ? "miss" : entry.getGUID().toString()));
+		}
+		return entry;
+	}
+
+	/**
+	 * Method create.
+	 *
+	 * Creates an empty entry for a card, replacing any entry for the GUID.
+	 *
+	 * @param guid UUID From the CHUID
+	 * @param so PIVSecurityObject As read from the card
+	 * @return Entry
+	 */
+	public synchronized Entry create(UUID guid, PIVSecurityObject so) {
+		Entry old = this.entries.get(guid);
+		if (old != null) {
+			remove(old);
+		}
+		Entry entry = new Entry(guid, digest(so), so);
+		this.entries.put(guid, entry);
+		this.index.put(entry.digest, guid);
+		return entry;
+	}
+
+	/**
+	 * Method get.
+	 * @param entry Entry
+	 * @param pivObjectTag Tag
+	 * @return byte[] The cached response to GET DATA, or null
+	 */
+	public synchronized byte[] get(Entry entry, Tag pivObjectTag) {
+		return entry.objects.get(pivObjectTag);
+	}
+
+	/**
+	 * Method put.
+	 *
+	 * Caches an object read from the card, unless the security object lists
+	 * the object and its hash does not match.
+	 *
+	 * @param entry Entry
+	 * @param pivObjectTag Tag
+	 * @param data PIVDataTempl The response to GET DATA
+	 * @return boolean True if the object was cached
+	 */
+	public boolean put(Entry entry, Tag pivObjectTag, PIVDataTempl data) {
+		byte[] hash = entry.so.getDataGroupHash(pivObjectTag.getBytes());
+		if (hash != null) {
+			if (entry.so.getHashAlgorithm() == null) {
+				return false;
+			}
+			try {
+				MessageDigest md = MessageDigest.getInstance(entry.so
+						.getHashAlgorithm());
+				if (!MessageDigest.isEqual(hash, md.digest(data.getData()))) {
+					if (debug) {
+						System.out.println("PIVObjectCache: Hash mismatch: "
+								+ pivObjectTag.toString());
+					}
+					return false;
+				}
+			} catch (NoSuchAlgorithmException e) {
+				return false;
+			}
+		}
+		synchronized (this) {
+			entry.objects.put(pivObjectTag, data.getEncoded());
+		}
+		return true;
+	}
+
+	/**
+	 * Method invalidate.
+	 * @param entry Entry
+	 */
+	public synchronized void invalidate(Entry entry) {
+		if (this.entries.get(entry.guid) == entry) {
+			remove(entry);
+		}
+	}
+
+	/**
+	 * Method invalidate.
+	 * @param guid UUID
+	 */
+	public synchronized void invalidate(UUID guid) {
+		Entry entry = this.entries.get(guid);
+		if (entry != null) {
+			remove(entry);
+		}
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		this.index.clear();
+	}
+
+	/**
+	 * Method size.
+	 * @return int Number of cards held
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Method getHits.
+	 * @return long Number of lookups that found an entry
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Method getMisses.
+	 * @return long Number of lookups that did not find an entry
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Method remove.
+	 * @param entry Entry
+	 */
+	private void remove(Entry entry) {
+		this.entries.remove(entry.guid);
+		this.index.remove(entry.digest);
+	}
+
+	/**
+	 * Method isExpired.
+	 * @param entry Entry
+	 * @return boolean
+	 */
+	private boolean isExpired(Entry entry) {
+		return this.timeToLive > 0
+				&& System.currentTimeMillis() - entry.created > this.timeToLive;
+	}
+
+	/**
+	 * Method digest.
+	 * @param so PIVSecurityObject
+	 * @return String
+	 */
+	private static String digest(PIVSecurityObject so) {
+		return DataUtil.byteArrayToString(DigestEngine.sHA256Sum(so
+				.getEncoded()));
+	}
+
+	/**
+	 * The cached objects of one card.
+	 */
+	public static class Entry {
+
+		private final UUID guid;
+		private final String digest;
+		private final PIVSecurityObject so;
+		private final long created = System.currentTimeMillis();
+		private final HashMap<Tag, byte[]> objects = new HashMap<Tag, byte[]>();
+
+		/**
+		 * Constructor for Entry.
+		 * @param guid UUID
+		 * @param digest String
+		 * @param so PIVSecurityObject
+		 */
+		private Entry(UUID guid, String digest, PIVSecurityObject so) {
+			this.guid = guid;
+			this.digest = digest;
+			this.so = so;
+		}
+
+		/**
+		 * Method getGUID.
+		 * @return UUID
+		 */
+		public UUID getGUID() {
+			return this.guid;
+		}
+
+		/**
+		 * Method getCreated.
+		 * @return long Time the entry was created, in milliseconds
+		 */
+		public long getCreated() {
+			return this.created;
+		}
+
+	}
+
+}
@@ -0,0 +1,297 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.nist80073;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+
+import org.keysupport.encoding.Tag;
+import org.keysupport.nist80073.cardedge.PIVAPDUInterface;
+import org.keysupport.util.DataUtil;
+
+/**
+ * Sends a command APDU and assembles the complete response.
+ * <p>
+ * When the card answers 61xx, a GET RESPONSE is sent with Le set to the
+ * number of bytes the card reported in SW2, until the card answers with a
+ * final status word. A 6Cxx answer causes the command to be repeated with the
+ * Le given by the card.
+ * <p>
+ * Some providers send GET RESPONSE themselves and return the joined data
+ * (e.g. the Sun provider, unless sun.security.smartcardio.t0GetResponse and
+ * t1GetResponse are false), so a response may be longer than one APDU.
+ * Commands are therefore sent with transmit(CommandAPDU) until the channel
+ * has returned a 61xx status word, which shows that it leaves GET RESPONSE to
+ * the caller. From then on, the GET RESPONSE command and the response buffer
+ * are allocated once and reused. Response data is accumulated in a buffer
+ * that is kept between commands. The response buffer is enlarged the first
+ * time a command with an extended Le is sent. An instance is not thread safe;
+ * use one per card connection.
+ *
+ * @author tejohnson
+ */
+public class ResponseAssembler {
+
+	private final static boolean debug = false;
+
+	// Large enough for a short response (256 + SW1 SW2)
+	private final static int SHORT_RESPONSE_SIZE = 258;
+
+	// Large enough for an extended response (65536 + SW1 SW2)
+	private final static int EXTENDED_RESPONSE_SIZE = 65538;
+
+	private final byte[] getResponse = { 0x00, (byte) 0xc0, 0x00, 0x00, 0x00 };
+	private final ByteBuffer getResponseBuffer = ByteBuffer
+			.wrap(this.getResponse);
+	private ByteBuffer response = ByteBuffer.allocate(SHORT_RESPONSE_SIZE);
+
+	// True once the channel has returned 61xx, so responses fit one APDU
+	private boolean passThrough = false;
+
+	private byte[] data = new byte[2048];
+	private int length = 0;
+	private int sw = 0;
+
+	/**
+	 * Method transmit.
+	 *
+	 * Sends the command and collects every GET RESPONSE.
+	 *
+	 * @param channel CardChannel
+	 * @param command CommandAPDU
+	 * @return int The final status word
+	 * @throws CardException
+	 */
+	public int transmit(CardChannel channel, CommandAPDU command)
+			throws CardException {
+		start(channel, command);
+		while (hasMoreData()) {
+			fetch(channel);
+		}
+		return this.sw;
+	}
+
+	/**
+	 * Method start.
+	 *
+	 * Discards any previous response and sends the command. Remaining data,
+	 * if any, is collected with fetch().
+	 *
+	 * @param channel CardChannel
+	 * @param command CommandAPDU
+	 * @return int The status word
+	 * @throws CardException
+	 */
+	public int start(CardChannel channel, CommandAPDU command)
+			throws CardException {
+		this.length = 0;
+		if (command.getNe() > SHORT_RESPONSE_SIZE - 2
+				&& this.response.capacity() < EXTENDED_RESPONSE_SIZE) {
+			this.response = ByteBuffer.allocate(EXTENDED_RESPONSE_SIZE);
+		}
+		exchange(channel, command);
+		if (this.sw >> 8 == 0x6c) {
+			// Wrong Le; repeat the command with the length given by the card
+			int le = (this.sw & 0xff) == 0 ? 256 : this.sw & 0xff;
+			CommandAPDU retry = new CommandAPDU(command.getCLA(),
+					command.getINS(), command.getP1(), command.getP2(),
+					command.getData(), le);
+			exchange(channel, retry);
+		}
+		return this.sw;
+	}
+
+	/**
+	 * Method fetch.
+	 *
+	 * Sends one GET RESPONSE, appending its data.
+	 *
+	 * @param channel CardChannel
+	 * @return int The status word
+	 * @throws CardException
+	 */
+	public int fetch(CardChannel channel) throws CardException {
+		if (!hasMoreData()) {
+			throw new IllegalStateException("No response data remaining");
+		}
+		// SW2 is the number of bytes remaining; 0x00 requests 256
+		this.getResponse[4] = (byte) this.sw;
+		this.getResponseBuffer.clear();
+		exchange(channel, this.getResponseBuffer);
+		return this.sw;
+	}
+
+	/**
+	 * Method exchange.
+	 *
+	 * Sends a command, through the response buffer once the channel is known
+	 * to return 61xx, and otherwise as a CommandAPDU so that a response
+	 * joined by the provider is received whatever its size.
+	 *
+	 * @param channel CardChannel
+	 * @param command CommandAPDU
+	 * @throws CardException
+	 */
+	private void exchange(CardChannel channel, CommandAPDU command)
+			throws CardException {
+		if (this.passThrough) {
+			exchange(channel, ByteBuffer.wrap(command.getBytes()));
+			return;
+		}
+		if (debug) {
+			System.out.println("Command APDU: "
+					+ DataUtil.byteArrayToString(command.getBytes()));
+		}
+		byte[] rsp = channel.transmit(command).getBytes();
+		this.sw = ((rsp[rsp.length - 2] & 0xff) << 8)
+				| (rsp[rsp.length - 1] & 0xff);
+		if (debug) {
+			System.out.println("Response APDU: "
+					+ DataUtil.byteArrayToString(rsp));
+		}
+		append(rsp, 0, rsp.length - 2);
+		if (hasMoreData()) {
+			this.passThrough = true;
+		}
+	}
+
+	/**
+	 * Method exchange.
+	 * @param channel CardChannel
+	 * @param command ByteBuffer
+	 * @throws CardException
+	 */
+	private void exchange(CardChannel channel, ByteBuffer command)
+			throws CardException {
+		if (debug) {
+			System.out.println("Command APDU: "
+					+ DataUtil.byteArrayToString(Arrays.copyOfRange(
+							command.array(), command.position(),
+							command.limit())));
+		}
+		this.response.clear();
+		int n = channel.transmit(command, this.response);
+		if (n < 2) {
+			throw new CardException("Response APDU is too short");
+		}
+		byte[] rsp = this.response.array();
+		this.sw = ((rsp[n - 2] & 0xff) << 8) | (rsp[n - 1] & 0xff);
+		if (debug) {
+			System.out.println("Response APDU: "
+					+ DataUtil.byteArrayToString(Arrays.copyOf(rsp, n)));
+		}
+		append(rsp, 0, n - 2);
+	}
+
+	/**
+	 * Method append.
+	 * @param src byte[]
+	 * @param off int
+	 * @param len int
+	 */
+	private void append(byte[] src, int off, int len) {
+		if (this.length + len > this.data.length) {
+			this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2,
+					this.length + len));
+		}
+		System.arraycopy(src, off, this.data, this.length, len);
+		this.length += len;
+	}
+
+	/**
+	 * Method clear.
+	 *
+	 * Discards the data collected so far, keeping the status word so that
+	 * fetch() can continue. Used when the data is consumed as it arrives.
+	 */
+	public void clear() {
+		this.length = 0;
+	}
+
+	/**
+	 * Method hasMoreData.
+	 * @return boolean True if the card reported more data (61xx)
+	 */
+	public boolean hasMoreData() {
+		return this.sw >> 8 == 0x61;
+	}
+
+	/**
+	 * Method checkStatus.
+	 *
+	 * Throws the CardException matching the status word of the last response
+	 * for a GET DATA, unless it indicates success or more data.
+	 *
+	 * @param pivObjectTag Tag
+	 * @throws CardException
+	 */
+	public void checkStatus(Tag pivObjectTag) throws CardException {
+		if (hasMoreData()
+				|| this.sw == PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION) {
+			return;
+		} else if (this.sw == PIVAPDUInterface.PIV_SW_OBJECT_OR_APPLICATION_NOT_FOUND) {
+			throw new CardException("Object not found: Tag: "
+					+ DataUtil.byteArrayToString(pivObjectTag.getBytes()));
+		} else if (this.sw == PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED) {
+			throw new CardException("Authentication required!");
+		} else {
+			throw new CardException("ResponseAPDU: " + this.length
+					+ " bytes, SW=" + Integer.toHexString(this.sw));
+		}
+	}
+
+	/**
+	 * Method getSW.
+	 * @return int The status word of the last response
+	 */
+	public int getSW() {
+		return this.sw;
+	}
+
+	/**
+	 * Method getBuffer.
+	 * @return byte[] The internal buffer, valid until the next command
+	 */
+	public byte[] getBuffer() {
+		return this.data;
+	}
+
+	/**
+	 * Method getLength.
+	 * @return int Number of response bytes in the buffer
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Method getData. (copies)
+	 * @return byte[] The assembled response data
+	 */
+	public byte[] getData() {
+		return Arrays.copyOf(this.data, this.length);
+	}
+
+}
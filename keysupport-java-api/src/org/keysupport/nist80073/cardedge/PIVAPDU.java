@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import javax.smartcardio.ATR;
 import javax.smartcardio.CommandAPDU;
 
 import org.keysupport.encoding.Tag;
@@ -41,11 +42,14 @@ import org.keysupport.util.DataUtil;
  */
 public class PIVAPDU {
 
-	private final static boolean debug = true;
+	private final static boolean debug = false;
 
-	// No support at this time for extended length APDUs
+	// Short APDUs; longer commands are chained unless extended length is used
 	public final static int MAX_APDU_SIZE = 255;
 
+	// Extended length APDUs, used when the card advertises support for them
+	public final static int MAX_EXTENDED_APDU_SIZE = 65535;
+
 	/**
 	 * Method clearPIVData.
 	 * @param pivObjectTag Tag
@@ -67,6 +71,24 @@ public class PIVAPDU {
 	 */
 	public static Enumeration<CommandAPDU> generalAuthenticate(byte algRef,
 			byte keyRef, byte[] dat) throws IOException {
+		return generalAuthenticate(algRef, keyRef, dat, false);
+	}
+
+	/**
+	 * Method generalAuthenticate.
+	 * 
+	 * If extended is true, the template is sent in a single extended length
+	 * APDU rather than being chained.
+	 * 
+	 * @param algRef byte
+	 * @param keyRef byte
+	 * @param dat byte[]
+	 * @param extended boolean
+	 * @return Enumeration<CommandAPDU>
+	 * @throws IOException
+	 */
+	public static Enumeration<CommandAPDU> generalAuthenticate(byte algRef,
+			byte keyRef, byte[] dat, boolean extended) throws IOException {
 		byte[] apdu_data;
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		Vector<CommandAPDU> apdus = new Vector<CommandAPDU>();
@@ -75,7 +97,20 @@ public class PIVAPDU {
 
 		// TODO: Fix command chaining for additional auth methods: Ref:
 		// 800-73-3, Part 2, Section 3.2.4
-		if ((apdu_data.length) >= MAX_APDU_SIZE) {
+		if (extended && apdu_data.length >= MAX_APDU_SIZE
+				&& apdu_data.length <= MAX_EXTENDED_APDU_SIZE) {
+			baos.write(PIVAPDUInterface.PIV_GEN_AUTH_HEADER);
+			baos.write(algRef);
+			baos.write(keyRef);
+			writeExtendedLc(baos, apdu_data.length);
+			baos.write(apdu_data);
+			writeExtendedLe(baos);
+			if (debug) {
+				System.out.println("Adding APDU: "
+						+ DataUtil.byteArrayToString(baos.toByteArray()));
+			}
+			apdus.add(new CommandAPDU(baos.toByteArray()));
+		} else if ((apdu_data.length) >= MAX_APDU_SIZE) {
 			baos.write(PIVAPDUInterface.PIV_GEN_AUTH_CC_HEADER);
 			baos.write(algRef);
 			baos.write(keyRef);
@@ -174,14 +209,39 @@ public class PIVAPDU {
 	 * @throws IOException
 	 */
 	public static CommandAPDU getPIVData(Tag pivObjectTag) throws IOException {
+		return getPIVData(pivObjectTag, false);
+	}
+
+	/**
+	 * Method getPIVData.
+	 * 
+	 * If extended is true, the command carries an extended Le (0x0000) so the
+	 * card may return up to 65536 bytes in a single response, rather than
+	 * chaining 256 byte responses with GET RESPONSE.
+	 * 
+	 * @param pivObjectTag Tag
+	 * @param extended boolean
+	 * @return CommandAPDU
+	 * @throws IOException
+	 */
+	public static CommandAPDU getPIVData(Tag pivObjectTag, boolean extended)
+			throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		byte[] tag_bytes = pivObjectTag.getBytes();
 		baos.write(PIVAPDUInterface.PIV_GET_DATA_HEADER);
-		baos.write(tag_bytes.length + 2);
+		if (extended) {
+			writeExtendedLc(baos, tag_bytes.length + 2);
+		} else {
+			baos.write(tag_bytes.length + 2);
+		}
 		baos.write((byte) 0x5c);
 		baos.write(tag_bytes.length);
 		baos.write(tag_bytes);
-		baos.write(0x00);
+		if (extended) {
+			writeExtendedLe(baos);
+		} else {
+			baos.write(0x00);
+		}
 		if (debug) {
 			System.out.println("Command APDU: "
 					+ DataUtil.byteArrayToString(baos.toByteArray()));
@@ -220,6 +280,23 @@ public class PIVAPDU {
 	 */
 	public static Enumeration<CommandAPDU> putPIVData(Tag pivObjectTag,
 			byte[] data) throws IOException {
+		return putPIVData(pivObjectTag, data, false);
+	}
+
+	/**
+	 * Method putPIVData.
+	 * 
+	 * If extended is true, objects up to MAX_EXTENDED_APDU_SIZE are written
+	 * with a single extended length APDU rather than being chained.
+	 * 
+	 * @param pivObjectTag Tag
+	 * @param data byte[]
+	 * @param extended boolean
+	 * @return Enumeration<CommandAPDU>
+	 * @throws IOException
+	 */
+	public static Enumeration<CommandAPDU> putPIVData(Tag pivObjectTag,
+			byte[] data, boolean extended) throws IOException {
 		byte[] apdu_data;
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		Vector<CommandAPDU> apdus = new Vector<CommandAPDU>();
@@ -229,7 +306,18 @@ public class PIVAPDU {
 		apdu_data = _data.getEncoded();
 
 		// Determine lenght of the data object and build the APDUs accordingly
-		if ((apdu_data.length) >= MAX_APDU_SIZE) {
+		if (extended && apdu_data.length >= MAX_APDU_SIZE
+				&& apdu_data.length <= MAX_EXTENDED_APDU_SIZE) {
+			baos.write(PIVAPDUInterface.PIV_PUT_DATA_HEADER);
+			writeExtendedLc(baos, apdu_data.length);
+			baos.write(apdu_data);
+			if (debug) {
+				System.out.println("Adding APDU: "
+						+ DataUtil.byteArrayToString(baos.toByteArray()));
+			}
+			apdus.add(new CommandAPDU(baos.toByteArray()));
+			baos.reset();
+		} else if ((apdu_data.length) >= MAX_APDU_SIZE) {
 			baos.write(PIVAPDUInterface.PIV_PUT_DATA_CC_HEADER);
 			baos.write(MAX_APDU_SIZE - 5);
 			baos.write(apdu_data);
@@ -293,4 +381,75 @@ public class PIVAPDU {
 		return new CommandAPDU(PIVAPDUInterface.SELECT_PIV);
 	}
 
+	/**
+	 * Method isExtendedLengthSupported.
+	 * 
+	 * Checks the card capabilities (third software function table) in the
+	 * historical bytes of the ATR for extended Lc and Le support. Ref: ISO/IEC
+	 * 7816-4, Section 8.1.1.2.7
+	 * 
+	 * Extended length APDUs cannot be sent over T=0 without ENVELOPE, so
+	 * false is returned for that protocol regardless of the ATR.
+	 * 
+	 * @param atr ATR
+	 * @param protocol String as returned by Card.getProtocol()
+	 * @return boolean
+	 */
+	public static boolean isExtendedLengthSupported(ATR atr, String protocol) {
+		if (atr == null || "T=0".equals(protocol)) {
+			return false;
+		}
+		byte[] hist = atr.getHistoricalBytes();
+		if (hist == null || hist.length == 0) {
+			return false;
+		}
+		int end;
+		if (hist[0] == (byte) 0x00) {
+			// The last 3 bytes are the status indicator
+			end = hist.length - 3;
+		} else if (hist[0] == (byte) 0x80) {
+			end = hist.length;
+		} else {
+			// Proprietary format
+			return false;
+		}
+		// COMPACT-TLV: tag in the high nibble, length in the low nibble
+		int i = 1;
+		while (i < end) {
+			int tag = (hist[i] >> 4) & 0x0f;
+			int len = hist[i] & 0x0f;
+			if (i + 1 + len > end) {
+				break;
+			}
+			if (tag == 0x07 && len >= 3) {
+				return (hist[i + 3] & 0x40) != 0;
+			}
+			i += 1 + len;
+		}
+		return false;
+	}
+
+	/**
+	 * Method writeExtendedLc.
+	 * @param baos ByteArrayOutputStream
+	 * @param lc int
+	 */
+	private static void writeExtendedLc(ByteArrayOutputStream baos, int lc) {
+		baos.write(0x00);
+		baos.write(lc >> 8);
+		baos.write(lc);
+	}
+
+	/**
+	 * Method writeExtendedLe.
+	 * 
+	 * Writes an extended Le of 0x0000 (65536) following an extended Lc.
+	 * 
+	 * @param baos ByteArrayOutputStream
+	 */
+	private static void writeExtendedLe(ByteArrayOutputStream baos) {
+		baos.write(0x00);
+		baos.write(0x00);
+	}
+
 }
\ No newline at end of file
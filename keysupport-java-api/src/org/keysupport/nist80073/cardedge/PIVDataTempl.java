@@ -24,11 +24,9 @@
 
 package org.keysupport.nist80073.cardedge;
 
-import java.io.ByteArrayOutputStream;
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -73,47 +71,44 @@ public class PIVDataTempl {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<TLV> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
-
-			case Tag.PIV_TAGLIST: {
-				this.tag = child_tag;
-				break;
-			}
-			case Tag.PIV_DATA: {
-				this.data = value;
-				break;
-			}
-			case Tag.PIV_DISCOVERY_OBJECT: {
-				this.data = child_tag.getBytes();
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+
+				case Tag.PIV_TAGLIST: {
+					this.tag = children.getTag();
+					break;
+				}
+				case Tag.PIV_DATA: {
+					this.data = children.getValue();
+					break;
+				}
+				case Tag.PIV_DISCOVERY_OBJECT: {
+					this.data = children.getTagBytes();
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed PIV data object: "
+					+ e.getMessage(), e);
 		}
 
 	}
 
 	public void encode() {
-		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			TLV _tag = BERTLVFactory.encodeTLV(new Tag(Tag.PIV_TAGLIST),
-					this.tag.getBytes());
-			baos.write(_tag.getBytes());
-			TLV _data = BERTLVFactory.encodeTLV(new Tag(Tag.PIV_DATA), this.data);
-			baos.write(_data.getBytes());
-			this.templ = baos.toByteArray();
-		} catch (Throwable e) {
-			e.printStackTrace();
-		}
+		byte[] tag_bytes = this.tag.getBytes();
+		byte[] encoded = new byte[TLVWriter.sizeOf(Tag.PIV_TAGLIST, tag_bytes)
+				+ TLVWriter.sizeOf(Tag.PIV_DATA, this.data)];
+		TLVWriter writer = new TLVWriter(encoded);
+		writer.put(Tag.PIV_TAGLIST, tag_bytes);
+		writer.put(Tag.PIV_DATA, this.data);
+		writer.finish();
+		this.templ = encoded;
 	}
 
 	/**
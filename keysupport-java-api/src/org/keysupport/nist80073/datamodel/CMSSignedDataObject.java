@@ -32,6 +32,7 @@ import java.security.Provider;
 import java.security.Security;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -54,9 +55,11 @@ import org.keysupport.encoding.der.structures.EncapsulatedContentInfo;
 import org.keysupport.encoding.der.structures.IssuerAndSerialNumber;
 import org.keysupport.encoding.der.structures.SignedData;
 import org.keysupport.encoding.der.structures.SignerInfo;
-import org.keysupport.keystore.CertValidator;
+import org.keysupport.keystore.CertificateCache;
 import org.keysupport.keystore.CipherEngine;
 import org.keysupport.keystore.DigestEngine;
+import org.keysupport.keystore.SignerTrustCache;
+import org.keysupport.nist80073.PIVMetrics;
 import org.keysupport.util.DataUtil;
 
 /**
@@ -111,6 +114,23 @@ public class CMSSignedDataObject {
 	 * Field provider.
 	 */
 	private String provider = null;
+	/**
+	 * Field verifier.
+	 */
+	private CMSVerifier verifier = CMSVerifier.getDefault();
+	/**
+	 * Field trustCache.
+	 */
+	private SignerTrustCache trustCache = SignerTrustCache.getDefault();
+	/**
+	 * Field metrics. Parse, verify and validation times are recorded here,
+	 * if set.
+	 */
+	private PIVMetrics metrics = null;
+	/**
+	 * Field parseTime. Time taken to parse the signature, until recorded.
+	 */
+	private long parseTime = 0;
 
 	/*
 	 * Rule based booleans for signature validation
@@ -166,6 +186,48 @@ public class CMSSignedDataObject {
 		this.init();
 	}
 
+	/**
+	 * Constructor for CMSSignedDataObject.
+	 *
+	 * @param signatureObject
+	 *            byte[]
+	 * @param signedData
+	 *            byte[]
+	 * @param verifier
+	 *            CMSVerifier
+	 * @throws SignatureException
+	 */
+	public CMSSignedDataObject(byte[] signatureObject, byte[] signedData,
+			CMSVerifier verifier) throws SignatureException {
+		this.verifier = verifier;
+		this.setSignatureObject(signatureObject);
+		this.setSignedData(signedData);
+		this.init();
+	}
+
+	/**
+	 * Constructor for CMSSignedDataObject.
+	 *
+	 * @param signatureObject
+	 *            byte[]
+	 * @param signedData
+	 *            byte[]
+	 * @param signerCert
+	 *            X509Certificate
+	 * @param verifier
+	 *            CMSVerifier
+	 * @throws SignatureException
+	 */
+	public CMSSignedDataObject(byte[] signatureObject, byte[] signedData,
+			X509Certificate signerCert, CMSVerifier verifier)
+			throws SignatureException {
+		this.verifier = verifier;
+		this.setSigner(signerCert);
+		this.setSignatureObject(signatureObject);
+		this.setSignedData(signedData);
+		this.init();
+	}
+
 	/*
 	 * Intended to generate a new signed object
 	 */
@@ -221,10 +283,25 @@ public class CMSSignedDataObject {
 	/**
 	 * Method init.
 	 *
-	 *
 	 * @throws SignatureException
 	 */
 	private void init() throws SignatureException {
+		long start = System.nanoTime();
+		try {
+			parse();
+		} finally {
+			// Recorded by setMetrics(), as this is called by the constructor
+			this.parseTime = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Method parse.
+	 *
+	 *
+	 * @throws SignatureException
+	 */
+	private void parse() throws SignatureException {
 		try {
 			byte[] digest = null;
 
@@ -235,39 +312,39 @@ public class CMSSignedDataObject {
 				System.out.println("Decoding SignedData Content");
 			}
 
+			/*
+			 * Only the fields needed to verify the signature are decoded: the
+			 * signer certificate, the digest and signature algorithms, the
+			 * signed attributes and the signature.
+			 */
 			SignedData signed_data = sig.getSignedData();
-			CMSVersion version = signed_data.getVersion();
-
 			if (debug) {
+				CMSVersion version = signed_data.getVersion();
 				System.out.println("CMSVersion:\n" + version.toString());
-			}
-
-			AlgorithmIdentifier dai = signed_data.getDigestAlgIDs();
-			if (debug) {
+				AlgorithmIdentifier dai = signed_data.getDigestAlgIDs();
 				System.out.println("DigestAlgorithmIdentifiers:\n"
 						+ dai.toString());
-			}
-
-			EncapsulatedContentInfo eci = signed_data.getEncapContentInfo();
-			if (debug) {
+				EncapsulatedContentInfo eci = signed_data
+						.getEncapContentInfo();
 				System.out.println("EncapsulatedContentInfo:\n"
 						+ eci.toString());
 			}
 
-			Enumeration<CertificateChoices> certificateset = signed_data
-					.getCertificateSet();
-			CertificateChoices choice = null;
-			if (certificateset.hasMoreElements()) {
-				choice = certificateset.nextElement();
-			}
-			X509Certificate signer = choice.getCertificate();
-			if (debug) {
-				System.out
-						.println("CertificateSet:\nCertificateChoices:\nSigner Certificate:\n"
-								+ signer.toString());
-			}
-
 			if (!this.signerIsSet()) {
+				Enumeration<CertificateChoices> certificateset = signed_data
+						.getCertificateSet();
+				CertificateChoices choice = null;
+				if (certificateset.hasMoreElements()) {
+					choice = certificateset.nextElement();
+				}
+				// The same signer is in every object from the issuer
+				X509Certificate signer = CertificateCache.getDefault()
+						.getCertificate(choice.getBytes());
+				if (debug) {
+					System.out
+							.println("CertificateSet:\nCertificateChoices:\nSigner Certificate:\n"
+									+ signer.toString());
+				}
 				this.setSigner(signer);
 			}
 
@@ -279,14 +356,11 @@ public class CMSSignedDataObject {
 			if (debug) {
 				System.out.println("Decoding SignerInfo Content");
 			}
-			CMSVersion siversion = si.getVersion();
 			if (debug) {
+				CMSVersion siversion = si.getVersion();
 				System.out.println("SignerInfo CMSVersion:\n"
 						+ siversion.toString());
-			}
-
-			IssuerAndSerialNumber iasn = si.getSignerIdentifier();
-			if (debug) {
+				IssuerAndSerialNumber iasn = si.getSignerIdentifier();
 				System.out.println("Signer Name:\n"
 						+ iasn.getIssuerName().toString());
 				System.out.println("Signer Serial:\n"
@@ -302,22 +376,10 @@ public class CMSSignedDataObject {
 			/*
 			 * Only support SHA-1/SHA-256/SHA-384. Die on validation otherwise.
 			 */
-			if (dalgid.getAlgOID().equals(CipherEngine.SHA384)) {
-				/*
-				 * SHA-384
-				 */
-				digest = DigestEngine.sHA384Sum(this.signedData, this.provider);
-			} else if (dalgid.getAlgOID().equals(CipherEngine.SHA256)) {
-				/*
-				 * SHA-256
-				 */
-				digest = DigestEngine.sHA256Sum(this.signedData, this.provider);
-			} else if (dalgid.getAlgOID().equals(CipherEngine.SHA1)) {
-				/*
-				 * SHA-1
-				 */
-				digest = DigestEngine.sHA1Sum(this.signedData, this.provider);
-			} else {
+			try {
+				digest = this.verifier.digest(dalgid.getAlgOID(),
+						this.signedData);
+			} catch (NoSuchAlgorithmException e) {
 				this.usSigAlg = true;
 			}
 
@@ -325,11 +387,11 @@ public class CMSSignedDataObject {
 				System.out.println("Signed Attributes:");
 			}
 
-			if (si.getSignedAttributes() == null) {
+			Enumeration<Attribute> sattributes = si.getSignedAttributes();
+			if (sattributes == null) {
 				throw new SignatureException(
 						"CMS Object does not contain a SignedAttributes!");
 			}
-			Enumeration<Attribute> sattributes = si.getSignedAttributes();
 			byte[] messageDigest = null;
 
 			Attribute sattr = null;
@@ -385,9 +447,8 @@ public class CMSSignedDataObject {
 			/*
 			 * Get the Signed Attributes for Signature Verification
 			 */
-			if (si.getSignedAttrBytes() != null) {
-				this.signedAttrs = si.getSignedAttrBytes();
-			} else {
+			this.signedAttrs = si.getSignedAttrBytes();
+			if (this.signedAttrs == null) {
 				throw new SignatureException(
 						"CMS Object does not contain a SignedAttributes SET in the SignerInfo!");
 			}
@@ -427,6 +488,8 @@ public class CMSSignedDataObject {
 			throw new SignatureException(e);
 		} catch (TLVEncodingException e) {
 			throw new SignatureException(e);
+		} catch (CertificateException e) {
+			throw new SignatureException(e);
 		}
 	}
 
@@ -519,8 +582,12 @@ public class CMSSignedDataObject {
 // RAC changed to ECC
 //			si.setSigAlgID(new AlgorithmIdentifier(CipherEngine.RSA, null)
 //					.getASN1Object());
-			System.out.println("ALGID: ");
-            System.out.println(new AlgorithmIdentifier(CipherEngine.SHA256withECDSA, null).getASN1Object().toString());
+			if (debug) {
+				System.out.println("ALGID: ");
+				System.out.println(new AlgorithmIdentifier(
+						CipherEngine.SHA256withECDSA, null).getASN1Object()
+						.toString());
+			}
 			si.setSigAlgID(new AlgorithmIdentifier(CipherEngine.SHA256withECDSA, null)
 					.getASN1Object());
 
@@ -655,32 +722,38 @@ public class CMSSignedDataObject {
 		// TODO: Make sure certificate was valid at signing time
         //
 		try {
+			// The algorithm is named by the digest and signature algorithm OIDs
+			Signature sig;
 			if (null == this.provider) {
-				this.signature = Signature.getInstance(this.sigAlgName);
+				sig = this.verifier.getSignature(this.sigAlgName);
 			} else {
-				this.signature = Signature.getInstance(this.sigAlgName, this.provider);
+				sig = Signature.getInstance(this.sigAlgName, this.provider);
 			}
-            this.signature = Signature.getInstance(CipherEngine.getSigningAlgorithm(CipherEngine.SHA256withECDSA));
 
 			if (this.signerIsSet()) {
-				this.signature.initVerify(this.getSigner());
+				sig.initVerify(this.getSigner());
 			} else {
 				throw new SignatureException("Signing Certificate was not set!");
 			}
 			if (this.usSigAlg) {
 				throw new SignatureException("Un-Supported Signing Algorithm: "
-						+ this.signature.getAlgorithm());
+						+ sig.getAlgorithm());
 			}
 			if (!this.digestMatch) {
 				throw new SignatureException(
 						"MessageDigest and digest of signature data do not match!");
 			}
-			this.signature.update(this.signedAttrs);
-			if (this.signature.verify(this.sigToVerify)) {
+			long start = System.nanoTime();
+			sig.update(this.signedAttrs);
+			if (sig.verify(this.sigToVerify)) {
 				verified = true;
 			} else {
 				verified = false;
 			}
+			if (this.metrics != null) {
+				this.metrics.record(PIVMetrics.CMS_VERIFY, System.nanoTime()
+						- start);
+			}
 			if (verified && verifySigner) {
 				if (!verifySigner()) {
 					verified = false;
@@ -701,6 +774,8 @@ public class CMSSignedDataObject {
 	/**
 	 * Method verifySigner.
 	 *
+	 * The signer is validated once, and the result is then taken from the
+	 * SignerTrustCache until it expires.
 	 *
 	 * @return boolean
 	 */
@@ -709,17 +784,47 @@ public class CMSSignedDataObject {
 		// PDVAL logic to validate to Common
 		// TODO: Check for EKU value of
 		// PIVObjectIdentifiers.id_PIV_content_signing
-		try {
-			CertValidator pdval = new CertValidator(this.getSigner());
-			valid = pdval.validate();
-		} catch (Throwable e) {
-			e.printStackTrace();
+		long start = System.nanoTime();
+		valid = this.trustCache.isTrusted(this.getSigner());
+		if (this.metrics != null) {
+			this.metrics.record(PIVMetrics.PKIX_VALIDATION, System.nanoTime()
+					- start);
+		}
+		if (debug && !valid) {
 			System.out.println("Certificate validation failed.");
-			valid = false;
 		}
 		return valid;
 	}
 
+	/**
+	 * Method setSignerTrustCache.
+	 *
+	 * @param trustCache
+	 *            SignerTrustCache
+	 */
+	public void setSignerTrustCache(SignerTrustCache trustCache) {
+		this.trustCache = trustCache;
+	}
+
+	/**
+	 * Method setMetrics.
+	 *
+	 * Records the parse, verify and signer validation times in metrics, e.g.
+	 * PIVMetrics.getDefault() or those of a PIVCard. No times are recorded
+	 * unless metrics are set. The time taken to parse the signature in the
+	 * constructor is recorded when the metrics are set.
+	 *
+	 * @param metrics
+	 *            PIVMetrics, or null
+	 */
+	public void setMetrics(PIVMetrics metrics) {
+		this.metrics = metrics;
+		if (metrics != null && this.parseTime > 0) {
+			metrics.record(PIVMetrics.CMS_PARSE, this.parseTime);
+			this.parseTime = 0;
+		}
+	}
+
 	/**
 	 * Method getProviderName.
 	 *
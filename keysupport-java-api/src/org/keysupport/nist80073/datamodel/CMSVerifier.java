@@ -0,0 +1,174 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.nist80073.datamodel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+
+import org.keysupport.encoding.der.ObjectIdentifier;
+import org.keysupport.keystore.CipherEngine;
+
+/**
+ * Verifies PIV CMS signatures (CHUID, security object, biometrics) using
+ * Signature and MessageDigest instances that are kept between verifications.
+ * <p>
+ * Looking up an algorithm with getInstance() searches the installed
+ * providers, which costs more than verifying the signature on a CHUID. Each
+ * thread that uses a CMSVerifier gets its own set of instances, created on
+ * first use of an algorithm and reused afterwards, so a single CMSVerifier
+ * may be shared by all reader threads without locking. Digests are keyed by
+ * the digest algorithm OID; signatures by the JCA name CipherEngine builds
+ * from the digest and signature algorithm OIDs.
+ * <p>
+ * Instances from the default JCA provider list are used. To verify with a
+ * specific provider, use CMSSignedDataObject.setProviderName().
+ *
+ * @author tejohnson
+ */
+public class CMSVerifier {
+
+	private final static CMSVerifier defaultVerifier = new CMSVerifier();
+
+	/**
+	 * The instances held for one thread.
+	 */
+	private static class Pool {
+		private final HashMap<ObjectIdentifier, MessageDigest> digests = new HashMap<ObjectIdentifier, MessageDigest>();
+		private final HashMap<String, Signature> signatures = new HashMap<String, Signature>();
+	}
+
+	private final ThreadLocal<Pool> pools = new ThreadLocal<Pool>() {
+		@Override
+		protected Pool initialValue() {
+			return new Pool();
+		}
+	};
+
+	public CMSVerifier() {
+	}
+
+	/**
+	 * Method getDefault.
+	 * @return CMSVerifier The instance used by CMSSignedDataObject unless
+	 *         another is given
+	 */
+	public static CMSVerifier getDefault() {
+		return defaultVerifier;
+	}
+
+	/**
+	 * Method verify.
+	 *
+	 * Verifies the signature using the certificate included in the CMS
+	 * object.
+	 *
+	 * @param signatureObject byte[] The CMS SignedData
+	 * @param signedData byte[] The data that was signed
+	 * @return boolean
+	 * @throws SignatureException
+	 */
+	public boolean verify(byte[] signatureObject, byte[] signedData)
+			throws SignatureException {
+		return new CMSSignedDataObject(signatureObject, signedData, this)
+				.verifySignature(false);
+	}
+
+	/**
+	 * Method verify.
+	 *
+	 * Verifies the signature using the given certificate, e.g. for a security
+	 * object whose signer certificate is in the CHUID.
+	 *
+	 * @param signatureObject byte[] The CMS SignedData
+	 * @param signedData byte[] The data that was signed
+	 * @param signerCert X509Certificate
+	 * @return boolean
+	 * @throws SignatureException
+	 */
+	public boolean verify(byte[] signatureObject, byte[] signedData,
+			X509Certificate signerCert) throws SignatureException {
+		return new CMSSignedDataObject(signatureObject, signedData,
+				signerCert, this).verifySignature(false);
+	}
+
+	/**
+	 * Method digest.
+	 * @param digestAlg ObjectIdentifier One of the CipherEngine digest OIDs
+	 * @param data byte[]
+	 * @return byte[]
+	 * @throws NoSuchAlgorithmException
+	 */
+	public byte[] digest(ObjectIdentifier digestAlg, byte[] data)
+			throws NoSuchAlgorithmException {
+		MessageDigest md = getMessageDigest(digestAlg);
+		return md.digest(data);
+	}
+
+	/**
+	 * Method getMessageDigest.
+	 *
+	 * The instance belongs to the calling thread, and is reset.
+	 *
+	 * @param digestAlg ObjectIdentifier One of the CipherEngine digest OIDs
+	 * @return MessageDigest
+	 * @throws NoSuchAlgorithmException
+	 */
+	public MessageDigest getMessageDigest(ObjectIdentifier digestAlg)
+			throws NoSuchAlgorithmException {
+		Pool pool = this.pools.get();
+		MessageDigest md = pool.digests.get(digestAlg);
+		if (md == null) {
+			md = MessageDigest.getInstance(CipherEngine
+					.getDigestAlgorithm(digestAlg));
+			pool.digests.put(digestAlg, md);
+		} else {
+			md.reset();
+		}
+		return md;
+	}
+
+	/**
+	 * Method getSignature.
+	 *
+	 * The instance belongs to the calling thread, and must be initialized
+	 * with initVerify() before use.
+	 *
+	 * @param sigAlgName String As returned by
+	 *            CipherEngine.getSigningAlgorithm(digest, encryption)
+	 * @return Signature
+	 * @throws NoSuchAlgorithmException
+	 */
+	public Signature getSignature(String sigAlgName)
+			throws NoSuchAlgorithmException {
+		Pool pool = this.pools.get();
+		Signature signature = pool.signatures.get(sigAlgName);
+		if (signature == null) {
+			signature = Signature.getInstance(sigAlgName);
+			pool.signatures.put(sigAlgName, signature);
+		}
+		return signature;
+	}
+
+}
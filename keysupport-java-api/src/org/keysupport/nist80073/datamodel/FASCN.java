@@ -25,13 +25,19 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.BitSet;
+import java.util.Arrays;
 
 import org.keysupport.util.DataUtil;
 
 /**
+ * The Federal Agency Smart Credential Number, as found in the CHUID.
+ * <p>
+ * The FASC-N is 40 ANSI/ISO BCD characters of 5 bits each, and is decoded
+ * and encoded with lookup tables, a long holding 8 characters at a time. The
+ * characters are held as ASCII, as in the character set below, and toLong()
+ * packs the digits that identify a credential into a long for use as a key.
+ *
  * @author tejohnson
  * @version $Revision: 8 $
  */
@@ -117,49 +123,66 @@ public class FASCN {
 	 */
 	public static final byte bcd_es = 0x1f; // 11111 0x0f ?
 
-	// Agency Code
-	/**
-	 * Field ac.
-	 */
-	private byte[] ac = { bcd_zero, bcd_zero, bcd_zero, bcd_zero }; // 4 digits
-
-	// System Code
-	/**
-	 * Field sc.
-	 */
-	private byte[] sc = { bcd_zero, bcd_zero, bcd_zero, bcd_zero }; // 4 digits
-
-	// Credential Number
-	/**
-	 * Field cn.
-	 */
-	private byte[] cn = { bcd_zero, bcd_zero, bcd_zero, bcd_zero, bcd_zero,
-			bcd_zero }; // 6 digits
-
-	// Credential Series
-	/**
-	 * Field cs.
-	 */
-	private byte cs = bcd_one; // 1 digit
-
-	// Individual Credential Issue - Recommended '1' always
-	/**
-	 * Field ici.
-	 */
-	private byte ici = bcd_zero; // 1 digit;
-
-	// Person Identifier
-	/**
-	 * Field pi.
-	 */
-	private byte[] pi = { bcd_zero, bcd_zero, bcd_zero, bcd_zero, bcd_zero,
-			bcd_zero, bcd_zero, bcd_zero, bcd_zero, bcd_zero }; // 10 digits
 
-	// Organizational Category
 	/**
-	 * Field oc.
+	 * Length of an encoded FASC-N, in bytes.
 	 */
-	private byte oc = bcd_zero; // 1 digit
+	public static final int LENGTH = 25;
+	/**
+	 * Number of characters in a FASC-N, including the LRC.
+	 */
+	public static final int CHARACTERS = 40;
+
+	/****************************************************************************************************
+	 * --------------------------------------------------------------------
+	 * ------------------------------ - Field -| ss | ac | fs | sc | fs | cn
+	 * | fs | cs | fs | ici | fs | pi | oc | oi | poa | es | lrc |
+	 * ----------
+	 * ------------------------------------------------------------
+	 * ---------------------------- - Digits | 1 | 4 | 1 | 4 | 1 | 6 | 1 | 1
+	 * | 1 | 1 | 1 | 10 | 1 | 4 | 1 | 1 | 1 |
+	 * --------------------------------
+	 * ------------------------------------------------------------------
+	 ****************************************************************************************************/
+
+	// Offset and length of each field, in characters
+	private static final int AC = 1, AC_LEN = 4;
+	private static final int SC = 6, SC_LEN = 4;
+	private static final int CN = 11, CN_LEN = 6;
+	private static final int CS = 18;
+	private static final int ICI = 20;
+	private static final int PI = 22, PI_LEN = 10;
+	private static final int OC = 32;
+	private static final int OI = 33, OI_LEN = 4;
+	private static final int POA = 37;
+	private static final int LRC = 39;
+
+	// ANSI/ISO BCD code of each character, indexed by the character's value
+	private static final byte[] ENCODE = { bcd_zero, bcd_one, bcd_two,
+			bcd_three, bcd_four, bcd_five, bcd_six, bcd_seven, bcd_eight,
+			bcd_nine, bcd_colon, bcd_ss, bcd_less, bcd_fs, bcd_grtr, bcd_es };
+
+	// Value of each 5 bit code, or -1 if the code does not have odd parity
+	private static final byte[] DECODE = new byte[32];
+
+	// Expected character at each position, or DIGIT for any of '0' to '9'
+	private static final char DIGIT = 0;
+	private static final char[] FRAME = new char[LRC];
+
+	static {
+		Arrays.fill(DECODE, (byte) -1);
+		for (int i = 0; i < ENCODE.length; i++) {
+			DECODE[ENCODE[i]] = (byte) i;
+		}
+		Arrays.fill(FRAME, DIGIT);
+		FRAME[0] = ';';
+		FRAME[AC + AC_LEN] = '=';
+		FRAME[SC + SC_LEN] = '=';
+		FRAME[CN + CN_LEN] = '=';
+		FRAME[CS + 1] = '=';
+		FRAME[ICI + 1] = '=';
+		FRAME[POA + 1] = '?';
+	}
 
 	/**
 	 * 
@@ -178,18 +201,6 @@ public class FASCN {
 	 */
 	public static byte FOREIGN_GOVERNMENT = bcd_four;
 
-	// Organizational Identifier
-	/**
-	 * Field oi.
-	 */
-	private byte[] oi = { bcd_zero, bcd_zero, bcd_zero, bcd_zero }; // 4 digits
-
-	// Person/Organization Association Category
-	/**
-	 * Field poa.
-	 */
-	private byte poa = bcd_zero; // 1 byte
-
 	/**
 	 * 
 	 */
@@ -219,25 +230,34 @@ public class FASCN {
 	 */
 	public static byte ORGANIZATIONAL_BENEFICIARY = bcd_seven;
 
-	// Longitudal Redundancy Check digit
-	// private byte lrc = zero; // 1 digit
-
+	/**
+	 * Field chars.
+	 * 
+	 * The 40 characters as ASCII, e.g. ";0000=0000=000000=1=0=..."
+	 */
+	private final char[] chars = new char[CHARACTERS];
 	/**
 	 * Field fascn.
 	 */
 	private byte[] fascn;
-	/**
-	 * Field dfascn.
-	 */
-	private byte[] dfascn;
 
 	/**
+	 * The parity of each character and the field separators are checked,
+	 * but a FASC-N whose LRC does not match is accepted, so that its fields
+	 * can still be read; see isValidLRC().
+	 * 
 	 * @param ba
 	
 	 * @throws IOException */
 	public FASCN(byte[] ba) throws IOException {
+		if (ba == null || ba.length != LENGTH) {
+			throw new IOException("FASC-N must be " + LENGTH + " bytes");
+		}
+		decodeFASCN(ba, 0, this.chars, false);
 		this.fascn = ba;
-		decodeFASCN(ba);
+		if (debug) {
+			System.out.println(new String(this.chars));
+		}
 	}
 
 	/**
@@ -257,351 +277,199 @@ public class FASCN {
 			String personIdentifier, String organizationalCategory,
 			String organizationalIdentifier, String associationCategory)
 			throws IOException {
-		setAgencyCode(agencyCode);
-		setSystemCode(systemCode);
-		setCredentialNumber(credentialNumber);
-		setCredentialSeries(credentialSeries);
-		setIndividualCredentialIssue(individualCredentialIssue);
-		setPersonIdentifier(personIdentifier);
-		setOrganizationalCategory(organizationalCategory);
-		setOrganizationalIdentifier(organizationalIdentifier);
-		setAssociationCategory(associationCategory);
+		for (int i = 0; i < LRC; i++) {
+			this.chars[i] = (FRAME[i] == DIGIT) ? '0' : FRAME[i];
+		}
+		setDigits(AC, AC_LEN, agencyCode, "Agency Code");
+		setDigits(SC, SC_LEN, systemCode, "System Code");
+		setDigits(CN, CN_LEN, credentialNumber, "Credential Number");
+		setDigits(CS, 1, credentialSeries, "Credential Series");
+		setDigits(ICI, 1, individualCredentialIssue,
+				"Individual Credential Issue");
+		setDigits(PI, PI_LEN, personIdentifier, "Person Identifier");
+		setDigits(OC, 1, organizationalCategory, "Organizational Category");
+		setDigits(OI, OI_LEN, organizationalIdentifier,
+				"Organizational Identifier");
+		setDigits(POA, 1, associationCategory, "Association Category");
 		encodeFASCN();
 	}
 
 	/**
-	 * Method bitSetToByteArray.
-	 * @param bitset BitSet
-	
-	 * @return byte[] */
-	private static byte[] bitSetToByteArray(BitSet bitset) {
-		ByteArrayOutputStream ba = new ByteArrayOutputStream();
-		int current_bit = 0;
-		if (debug) {
-			System.out.println("BitSet is " + bitset.size() + " bits long");
-		}
-		// Loop through the BitSet and construct individual bytes, placing thm
-		// in a ByteArray
-		for (int i = 0; i < 25; i++) {
-			byte current_byte = 0x00;
-			for (int j = 0; j <= 7; j++) {
-				if (bitset.get(current_bit)) {
-					switch (j) {
-					case 0: {
-						current_byte |= 0x80;
-						break;
-					}
-					case 1: {
-						current_byte |= 0x40;
-						break;
-					}
-					case 2: {
-						current_byte |= 0x20;
-						break;
-					}
-					case 3: {
-						current_byte |= 0x10;
-						break;
-					}
-					case 4: {
-						current_byte |= 0x08;
-						break;
-					}
-					case 5: {
-						current_byte |= 0x04;
-						break;
-					}
-					case 6: {
-						current_byte |= 0x02;
-						break;
-					}
-					case 7: {
-						current_byte |= 0x01;
-						break;
-					}
-					}
-				}
-				current_bit++;
-			}
-			ba.write(current_byte);
+	 * Method decode.
+	 * 
+	 * Decodes a FASC-N to its 40 characters as ASCII, checking the parity of
+	 * each character, the field separators and the LRC. Nothing is allocated
+	 * unless the FASC-N is invalid.
+	 * 
+	 * @param ba byte[] Containing the encoded FASC-N
+	 * @param offset int Offset of the FASC-N in ba
+	 * @param chars char[] Receives the characters, at least 40 long
+	 * @throws IOException If the FASC-N is invalid
+	 */
+	public static void decode(byte[] ba, int offset, char[] chars)
+			throws IOException {
+		if (chars.length < CHARACTERS) {
+			throw new IllegalArgumentException("chars must hold " + CHARACTERS
+					+ " characters");
 		}
-		return ba.toByteArray();
+		decodeFASCN(ba, offset, chars, true);
+	}
+
+	/**
+	 * Method toLong.
+	 * 
+	 * Returns the Agency Code, System Code, Credential Number, Credential
+	 * Series and Individual Credential Issue of a FASC-N, the 16 digits that
+	 * identify a credential, packed as BCD into a long. The FASC-N is checked
+	 * as by decode(), and nothing is allocated unless it is invalid.
+	 * <p>
+	 * The hexadecimal form of the long is the 16 digits, so
+	 * Long.parseUnsignedLong(digits, 16) gives the key for a credential listed
+	 * in a file.
+	 * 
+	 * @param ba byte[] Containing the encoded FASC-N
+	 * @param offset int Offset of the FASC-N in ba
+	 * @return long
+	 * @throws IOException If the FASC-N is invalid
+	 */
+	public static long toLong(byte[] ba, int offset) throws IOException {
+		return decodeFASCN(ba, offset, null, true);
 	}
 
 	/**
 	 * Method decodeFASCN.
+	 * 
+	 * Each 5 bytes of the FASC-N hold 8 characters, so the FASC-N is read 40
+	 * bits at a time into a long, and the characters shifted out of it and
+	 * looked up in DECODE.
+	 * 
 	 * @param ba byte[]
+	 * @param offset int
+	 * @param chars char[] Receives the characters, or null
+	 * @param checkLRC boolean Whether to reject a FASC-N whose LRC does not
+	 *            match
+	 * @return long The packed credential identifier
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unqualified-field-access")
-	private void decodeFASCN(byte[] ba) throws IOException {
-
-		ByteArrayOutputStream raw_fascn = new ByteArrayOutputStream();
-		raw_fascn.write(ba);
-		byte[] byte_fascn = raw_fascn.toByteArray();
-
-		if (debug) {
-			System.out.println(byte_fascn.length + " bytes: "
-					+ DataUtil.byteArrayToString(byte_fascn));
-		}
-
-		// Convert the 200 bit value into a 40 byte array
-		BitSet pre_fascn = new BitSet();
-		// if (debug) { System.out.println("BitSet is " + pre_fascn.size() +
-		// " bits long"); }
-		int current_bit = 0;
-		for (int i = 0; i < byte_fascn.length; i++) {
-			// loop through each byte in the array to get each BCD
-			// Shift each byte right three places
-			int temp_byte = byte_fascn[i];
-			int mask = 0x80;
-			for (int j = 0; j <= 7; j++) {
-				// get the last 5 values, adding them to the bitset
-				if ((temp_byte & mask) == mask) {
-					pre_fascn.set(current_bit);
-					// if (debug) { System.out.println("Bit " + current_bit +
-					// " = 1"); }
+	private static long decodeFASCN(byte[] ba, int offset, char[] chars,
+			boolean checkLRC) throws IOException {
+		if (offset < 0 || ba.length - offset < LENGTH) {
+			throw new IOException("FASC-N must be " + LENGTH + " bytes");
+		}
+		long key = 0;
+		int lrc = 0;
+		int c = 0;
+		for (int i = offset; i < offset + LENGTH; i += 5) {
+			long acc = ((ba[i] & 0xffL) << 32) | ((ba[i + 1] & 0xffL) << 24)
+					| ((ba[i + 2] & 0xff) << 16) | ((ba[i + 3] & 0xff) << 8)
+					| (ba[i + 4] & 0xff);
+			for (int shift = 35; shift >= 0; shift -= 5, c++) {
+				int code = (int) (acc >>> shift) & 0x1f;
+				int value = DECODE[code];
+				if (value < 0) {
+					throw new IOException("FASC-N character " + c
+							+ " has even parity");
 				}
-				temp_byte <<= 1;
-				current_bit++;
-				// if (debug) { System.out.println("BitSet is " +
-				// pre_fascn.size() + " bits long"); }
-			}
-		}
-
-		raw_fascn.reset();
-		// Loop through the 200 bits, extract 5 at a time, then convert to a
-		// byte array
-		for (int j = 0; j < 200; j += 5) {
-			byte current_byte = 0x00;
-			BitSet bitset = pre_fascn.get(j, j + 5);
-			current_bit = 0;
-			for (int k = 0; k < 5; k++) {
-				if (bitset.get(current_bit)) {
-					switch (k) {
-					case 0: {
-						current_byte |= 0x10;
-						break;
-					}
-					case 1: {
-						current_byte |= 0x08;
-						break;
-					}
-					case 2: {
-						current_byte |= 0x04;
-						break;
-					}
-					case 3: {
-						current_byte |= 0x02;
-						break;
-					}
-					case 4: {
-						current_byte |= 0x01;
-						break;
-					}
+				// The LRC makes the XOR of all 40 codes zero
+				lrc ^= code;
+				char ch = (char) ('0' + value);
+				if (c < LRC) {
+					if (FRAME[c] == DIGIT) {
+						if (value > 9) {
+							throw new IOException("FASC-N character " + c
+									+ " is not a digit: " + ch);
+						}
+						if (c <= ICI) {
+							key = (key << 4) | value;
+						}
+					} else if (FRAME[c] != ch) {
+						throw new IOException("FASC-N character " + c
+								+ " is not " + FRAME[c] + ": " + ch);
 					}
 				}
-				current_bit++;
+				if (chars != null) {
+					chars[c] = ch;
+				}
 			}
-			raw_fascn.write(current_byte);
 		}
-
-		this.dfascn = raw_fascn.toByteArray();
-		if (debug) {
-			System.out.println(this.dfascn.length + " bytes: "
-					+ DataUtil.byteArrayToString(this.dfascn));
-		}
-
-		/****************************************************************************************************
-		 * --------------------------------------------------------------------
-		 * ------------------------------ - Field -| ss | ac | fs | sc | fs | cn
-		 * | fs | cs | fs | ici | fs | pi | oc | oi | poa | es | lrc |
-		 * ----------
-		 * ------------------------------------------------------------
-		 * ---------------------------- - Digits | 1 | 4 | 1 | 4 | 1 | 6 | 1 | 1
-		 * | 1 | 1 | 1 | 10 | 1 | 4 | 1 | 1 | 1 |
-		 * --------------------------------
-		 * ------------------------------------------------------------------
-		 ****************************************************************************************************/
-
-		// Agency Code
-		ac[0] = dfascn[1];
-		ac[1] = dfascn[2];
-		ac[2] = dfascn[3];
-		ac[3] = dfascn[4];
-		if (debug) {
-			System.out.println("AC:\t" + translateS(rtranslate(ac)));
+		if (checkLRC && lrc != 0) {
+			throw new IOException("FASC-N LRC does not match");
 		}
-
-		// System Code
-		sc[0] = dfascn[6];
-		sc[1] = dfascn[7];
-		sc[2] = dfascn[8];
-		sc[3] = dfascn[9];
-		if (debug) {
-			System.out.println("SC:\t" + translateS(rtranslate(sc)));
-		}
-
-		// Credential Number
-		cn[0] = dfascn[11];
-		cn[1] = dfascn[12];
-		cn[2] = dfascn[13];
-		cn[3] = dfascn[14];
-		cn[4] = dfascn[15];
-		cn[5] = dfascn[16];
-		if (debug) {
-			System.out.println("CN:\t" + translateS(rtranslate(cn)));
-		}
-
-		// Credential Series
-		cs = dfascn[18];
-		if (debug) {
-			System.out.println("CS:\t" + translateS(rtranslate(cs)));
-		}
-
-		// Individual Credential Issue - Recommended '1' always
-		ici = dfascn[20];
-		if (debug) {
-			System.out.println("ICI:\t" + translateS(rtranslate(ici)));
-		}
-
-		// Person Identifier
-		pi[0] = dfascn[22];
-		pi[1] = dfascn[23];
-		pi[2] = dfascn[24];
-		pi[3] = dfascn[25];
-		pi[4] = dfascn[26];
-		pi[5] = dfascn[27];
-		pi[6] = dfascn[28];
-		pi[7] = dfascn[29];
-		pi[8] = dfascn[30];
-		pi[9] = dfascn[31];
-		if (debug) {
-			System.out.println("PI:\t" + translateS(rtranslate(pi)));
-		}
-
-		// Organizational Category
-		oc = dfascn[32];
-		if (debug) {
-			System.out.println("OC:\t" + translateS(rtranslate(oc)));
-		}
-
-		// Organizational Identifier
-		oi[0] = dfascn[33];
-		oi[1] = dfascn[34];
-		oi[2] = dfascn[35];
-		oi[3] = dfascn[36];
-		if (debug) {
-			System.out.println("OI:\t" + translateS(rtranslate(oi)));
-		}
-
-		// Person/Organization Association Categroy
-		poa = dfascn[37];
-		if (debug) {
-			System.out.println("POA:\t" + translateS(rtranslate(poa)));
-		}
-
+		return key;
 	}
 
 	/**
 	 * Method encodeFASCN.
-	
+	 
 	 * @throws IOException */
-	@SuppressWarnings("unqualified-field-access")
 	private void encodeFASCN() throws IOException {
-
-		/****************************************************************************************************
-		 * --------------------------------------------------------------------
-		 * ------------------------------ - Field -| ss | ac | fs | sc | fs | cn
-		 * | fs | cs | fs | ici | fs | pi | oc | oi | poa | es | lrc |
-		 * ----------
-		 * ------------------------------------------------------------
-		 * ---------------------------- - Digits | 1 | 4 | 1 | 4 | 1 | 6 | 1 | 1
-		 * | 1 | 1 | 1 | 10 | 1 | 4 | 1 | 1 | 1 |
-		 * --------------------------------
-		 * ------------------------------------------------------------------
-		 ****************************************************************************************************/
-
-		ByteArrayOutputStream raw_fascn = new ByteArrayOutputStream();
-		raw_fascn.write(bcd_ss);
-		raw_fascn.write(ac);
-		raw_fascn.write(bcd_fs);
-		raw_fascn.write(sc);
-		raw_fascn.write(bcd_fs);
-		raw_fascn.write(cn);
-		raw_fascn.write(bcd_fs);
-		raw_fascn.write(cs);
-		raw_fascn.write(bcd_fs);
-		raw_fascn.write(ici);
-		raw_fascn.write(bcd_fs);
-		raw_fascn.write(pi);
-		raw_fascn.write(oc);
-		raw_fascn.write(oi);
-		raw_fascn.write(poa);
-		raw_fascn.write(bcd_es);
-		byte[] byte_fascn = raw_fascn.toByteArray();
-
-		if (debug) {
-			System.out.println(byte_fascn.length + " bytes: "
-					+ DataUtil.byteArrayToString(byte_fascn));
-		}
-		// Convert the 39 byte array to a 195 bit value in a BitSet
-		BitSet pre_fascn = new BitSet(195);
-		int current_bit = 0;
-		for (int i = 0; i < byte_fascn.length; i++) {
-			// loop through each byte in the array to get each BCD
-			// Shift each byte left three places
-			int temp_byte = byte_fascn[i];
-			int mask = 0x80;
-			temp_byte <<= 3;
-			for (int j = 0; j <= 4; j++) {
-				// get the last 5 values, adding them to the bitset
-				if ((temp_byte & mask) == mask) {
-					pre_fascn.set(current_bit);
-					if (debug) {
-						System.out.println("Bit " + current_bit + " = 1");
-					}
-				}
-				temp_byte <<= 1;
-				current_bit++;
+		int lrc = 0;
+		for (int i = 0; i < LRC; i++) {
+			lrc ^= ENCODE[this.chars[i] - '0'];
+		}
+		// The XOR of 39 codes with odd parity has odd parity
+		this.chars[LRC] = (char) ('0' + DECODE[lrc]);
+		byte[] ba = new byte[LENGTH];
+		int c = 0;
+		for (int i = 0; i < LENGTH; i += 5) {
+			long acc = 0;
+			for (int j = 0; j < 8; j++) {
+				acc = (acc << 5) | ENCODE[this.chars[c++] - '0'];
+			}
+			for (int j = 4; j >= 0; j--) {
+				ba[i + j] = (byte) acc;
+				acc >>>= 8;
 			}
 		}
+		this.fascn = ba;
 		if (debug) {
-			System.out.println(pre_fascn.toString());
-		}
-		if (debug) {
-			System.out.println("Before LRC BitSet is " + pre_fascn.size()
-					+ " bits long");
+			System.out.println(new String(this.chars) + ": "
+					+ DataUtil.byteArrayToString(this.fascn));
 		}
-		// loop through the bitset to perform the LRC
-		BitSet bcd = new BitSet(5);
-		for (int marker = 0; marker < 195; marker += 5) {
-			bcd.xor(pre_fascn.get(marker, marker + 5));
+	}
+
+	/**
+	 * Method isValidLRC.
+	 * @return boolean Whether the LRC matches the other 39 characters
+	 */
+	public boolean isValidLRC() {
+		int lrc = 0;
+		for (int i = 0; i < CHARACTERS; i++) {
+			lrc ^= ENCODE[this.chars[i] - '0'];
 		}
+		return lrc == 0;
+	}
+
+	/**
+	 * Method setDigits.
+	 * @param offset int
+	 * @param length int
+	 * @param digits String
+	 * @param field String Name of the field, for the exception
+	 * @throws IOException If digits is not length digits
+	 */
+	private void setDigits(int offset, int length, String digits, String field)
+			throws IOException {
 		if (debug) {
-			System.out.println(bcd.toString());
-		}
-		// Add LRC value to the fascn we have created
-		for (int append = 195; append <= 199; append++) {
-			if (bcd.get(append - 195)) {
-				pre_fascn.set(append);
-			}
+			System.out.println(field + " is: " + digits);
 		}
-		if (debug) {
-			System.out.println(pre_fascn.toString());
+		if (digits == null || digits.length() != length) {
+			throw new IOException(field + " must be " + length + " digits");
 		}
-		this.fascn = bitSetToByteArray(pre_fascn);
-		if (debug) {
-			System.out.println(this.fascn.length + " bytes: "
-					+ DataUtil.byteArrayToString(this.fascn));
+		for (int i = 0; i < length; i++) {
+			char ch = digits.charAt(i);
+			if (ch < '0' || ch > '9') {
+				throw new IOException(field + " must be " + length + " digits");
+			}
 		}
+		digits.getChars(0, length, this.chars, offset);
 	}
 
 	/**
 	
 	 * @return String representing a numeric Agency Code */
 	public String getAgencyCode() {
-		return translateS(rtranslate(this.ac));
+		return new String(this.chars, AC, AC_LEN);
 	}
 
 	/**
@@ -609,28 +477,28 @@ public class FASCN {
 	
 	 * @return String */
 	public String getAssociationCategory() {
-		return translateS(rtranslate(this.poa));
+		return new String(this.chars, POA, 1);
 	}
 
 	/**
 	
 	 * @return String representing a numeric Credential Number */
 	public String getCredentialNumber() {
-		return translateS(rtranslate(this.cn));
+		return new String(this.chars, CN, CN_LEN);
 	}
 
 	/**
 	
 	 * @return String representing a Credential Series */
 	public String getCredentialSeries() {
-		return translateS(rtranslate(this.cs));
+		return new String(this.chars, CS, 1);
 	}
 
 	/**
 	
 	 * @return String representing Individual Credential Issue */
 	public String getIndividualCredentialIssue() {
-		return translateS(rtranslate(this.ici));
+		return new String(this.chars, ICI, 1);
 	}
 
 	/**
@@ -638,7 +506,7 @@ public class FASCN {
 	
 	 * @return String */
 	public String getOrganizationalCategory() {
-		return translateS(rtranslate(this.oc));
+		return new String(this.chars, OC, 1);
 	}
 
 	/**
@@ -646,7 +514,7 @@ public class FASCN {
 	
 	 * @return String */
 	public String getOrganizationalIdentifier() {
-		return translateS(rtranslate(this.oi));
+		return new String(this.chars, OI, OI_LEN);
 	}
 
 	/**
@@ -654,80 +522,34 @@ public class FASCN {
 	
 	 * @return String */
 	public String getPersonIdentifier() {
-		return translateS(rtranslate(this.pi));
+		return new String(this.chars, PI, PI_LEN);
 	}
 
 	/**
 	
 	 * @return String representing a numeric System Code */
 	public String getSystemCode() {
-		return translateS(rtranslate(this.sc));
+		return new String(this.chars, SC, SC_LEN);
 	}
 
 	/**
-	 * Method rtranslate.
-	 * @param digit byte
-	
-	 * @return byte */
-	private static byte rtranslate(byte digit) {
-		switch (digit) {
-		case bcd_zero: {
-			return 0x00;
-		}
-		case bcd_one: {
-			return 0x01;
-		}
-		case bcd_two: {
-			return 0x02;
-		}
-		case bcd_three: {
-			return 0x03;
-		}
-		case bcd_four: {
-			return 0x04;
-		}
-		case bcd_five: {
-			return 0x05;
-		}
-		case bcd_six: {
-			return 0x06;
-		}
-		case bcd_seven: {
-			return 0x07;
-		}
-		case bcd_eight: {
-			return 0x08;
-		}
-		case bcd_nine: {
-			return 0x09;
-		}
-		}
-		// if we don't have a match, return a zero, although we should not get
-		// here
-		// if (debug) { System.out.println("Returning a ZERO!"); }
-		return 0x00;
-	}
-
-	/**
-	 * Method rtranslate.
-	 * @param digits byte[]
-	
-	 * @return byte[] */
-	private static byte[] rtranslate(byte[] digits) {
-		ByteArrayOutputStream ba = new ByteArrayOutputStream();
-		for (int i = 0; i < digits.length; i++) {
-			ba.write(rtranslate(digits[i]));
-		}
-		return ba.toByteArray();
-	}
-
-	/**
-	 * @param agencyCode
+	 * @param agencyCode byte[] ANSI/ISO BCD codes, e.g. bcd_zero
 	
 	 * @throws IOException */
 	public void setAgencyCode(byte[] agencyCode) throws IOException {
-		this.ac = agencyCode;
-		encodeFASCN();
+		if (agencyCode == null || agencyCode.length != AC_LEN) {
+			throw new IOException("Agency Code must be " + AC_LEN + " digits");
+		}
+		StringBuffer sb = new StringBuffer(AC_LEN);
+		for (int i = 0; i < AC_LEN; i++) {
+			int value = DECODE[agencyCode[i] & 0x1f];
+			if ((agencyCode[i] & ~0x1f) != 0 || value < 0 || value > 9) {
+				throw new IOException("Agency Code must be " + AC_LEN
+						+ " digits");
+			}
+			sb.append((char) ('0' + value));
+		}
+		setAgencyCode(sb.toString());
 	}
 
 	/**
@@ -735,10 +557,7 @@ public class FASCN {
 	
 	 * @throws IOException */
 	public void setAgencyCode(String agencyCode) throws IOException {
-		if (debug) {
-			System.out.println("Agency Code is: " + agencyCode);
-		}
-		this.ac = translate(agencyCode);
+		setDigits(AC, AC_LEN, agencyCode, "Agency Code");
 		encodeFASCN();
 	}
 
@@ -749,11 +568,7 @@ public class FASCN {
 	 * @throws IOException */
 	public void setAssociationCategory(String associationCategory)
 			throws IOException {
-		if (debug) {
-			System.out.println("Association Category is: "
-					+ associationCategory);
-		}
-		this.poa = translate(associationCategory.charAt(0));
+		setDigits(POA, 1, associationCategory, "Association Category");
 		encodeFASCN();
 	}
 
@@ -762,10 +577,7 @@ public class FASCN {
 	
 	 * @throws IOException */
 	public void setCredentialNumber(String credentialNumber) throws IOException {
-		if (debug) {
-			System.out.println("Credential Number is: " + credentialNumber);
-		}
-		this.cn = translate(credentialNumber);
+		setDigits(CN, CN_LEN, credentialNumber, "Credential Number");
 		encodeFASCN();
 	}
 
@@ -774,10 +586,7 @@ public class FASCN {
 	
 	 * @throws IOException */
 	public void setCredentialSeries(String credentialSeries) throws IOException {
-		if (debug) {
-			System.out.println("Credential Series is: " + credentialSeries);
-		}
-		this.cs = translate(credentialSeries.charAt(0));
+		setDigits(CS, 1, credentialSeries, "Credential Series");
 		encodeFASCN();
 	}
 
@@ -787,11 +596,8 @@ public class FASCN {
 	 * @throws IOException */
 	public void setIndividualCredentialIssue(String individualCredentialIssue)
 			throws IOException {
-		if (debug) {
-			System.out.println("Individual Credential Issue is: "
-					+ individualCredentialIssue);
-		}
-		this.ici = translate(individualCredentialIssue.charAt(0));
+		setDigits(ICI, 1, individualCredentialIssue,
+				"Individual Credential Issue");
 		encodeFASCN();
 	}
 
@@ -802,11 +608,7 @@ public class FASCN {
 	 * @throws IOException */
 	public void setOrganizationalCategory(String organizationalCategory)
 			throws IOException {
-		if (debug) {
-			System.out.println("Organizational Category is: "
-					+ organizationalCategory);
-		}
-		this.oc = translate(organizationalCategory.charAt(0));
+		setDigits(OC, 1, organizationalCategory, "Organizational Category");
 		encodeFASCN();
 	}
 
@@ -817,11 +619,8 @@ public class FASCN {
 	 * @throws IOException */
 	public void setOrganizationalIdentifier(String organizationalIdentifier)
 			throws IOException {
-		if (debug) {
-			System.out.println("Organizational Identifier is: "
-					+ organizationalIdentifier);
-		}
-		this.oi = translate(organizationalIdentifier);
+		setDigits(OI, OI_LEN, organizationalIdentifier,
+				"Organizational Identifier");
 		encodeFASCN();
 	}
 
@@ -830,10 +629,7 @@ public class FASCN {
 	
 	 * @throws IOException */
 	public void setPersonIdentifier(String personIdentifier) throws IOException {
-		if (debug) {
-			System.out.println("Person Identifier is: " + personIdentifier);
-		}
-		this.pi = translate(personIdentifier);
+		setDigits(PI, PI_LEN, personIdentifier, "Person Identifier");
 		encodeFASCN();
 	}
 
@@ -842,10 +638,7 @@ public class FASCN {
 	
 	 * @throws IOException */
 	public void setSystemCode(String systemCode) throws IOException {
-		if (debug) {
-			System.out.println("System Code is: " + systemCode);
-		}
-		this.sc = translate(systemCode);
+		setDigits(SC, SC_LEN, systemCode, "System Code");
 		encodeFASCN();
 	}
 
@@ -858,6 +651,21 @@ public class FASCN {
 	}
 
 	/**
+	 * Method toLong.
+	 * @return long The packed credential identifier
+	 * @see #toLong(byte[], int)
+	 */
+	public long toLong() {
+		long key = 0;
+		for (int i = AC; i <= ICI; i++) {
+			if (FRAME[i] == DIGIT) {
+				key = (key << 4) | (this.chars[i] - '0');
+			}
+		}
+		return key;
+	}
+
+	/**
 	 * Method toString.
 	
 	 * @return String */
@@ -865,97 +673,15 @@ public class FASCN {
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("FASCN Value:\n");
-		sb.append("AC:\t" + translateS(rtranslate(this.ac)) + "\n");
-		sb.append("SC:\t" + translateS(rtranslate(this.sc)) + "\n");
-		sb.append("CN:\t" + translateS(rtranslate(this.cn)) + "\n");
-		sb.append("CS:\t" + translateS(rtranslate(this.cs)) + "\n");
-		sb.append("ICI:\t" + translateS(rtranslate(this.ici)) + "\n");
-		sb.append("PI:\t" + translateS(rtranslate(this.pi)) + "\n");
-		sb.append("OC:\t" + translateS(rtranslate(this.oc)) + "\n");
-		sb.append("OI:\t" + translateS(rtranslate(this.oi)) + "\n");
-		sb.append("POA:\t" + translateS(rtranslate(this.poa)));
-		return sb.toString();
-	}
-
-	/**
-	 * Method translate.
-	 * @param digit char
-	
-	 * @return byte */
-	private static byte translate(char digit) {
-		if (debug) {
-			System.out.println("Digit to translate is " + digit);
-		}
-		switch (digit) {
-		case '0': {
-			return bcd_zero;
-		}
-		case '1': {
-			return bcd_one;
-		}
-		case '2': {
-			return bcd_two;
-		}
-		case '3': {
-			return bcd_three;
-		}
-		case '4': {
-			return bcd_four;
-		}
-		case '5': {
-			return bcd_five;
-		}
-		case '6': {
-			return bcd_six;
-		}
-		case '7': {
-			return bcd_seven;
-		}
-		case '8': {
-			return bcd_eight;
-		}
-		case '9': {
-			return bcd_nine;
-		}
-		}
-		// if we don't have a match, return a zero, although we should not get
-		// here
-		// if (debug) { System.out.println("Returning a ZERO!"); }
-		return bcd_zero;
-	}
-
-	/**
-	 * Method translate.
-	 * @param digits String
-	
-	 * @return byte[] */
-	private static byte[] translate(String digits) {
-		ByteArrayOutputStream ba = new ByteArrayOutputStream();
-		for (int i = 0; i < digits.length(); i++) {
-			ba.write(translate(digits.charAt(i)));
-		}
-		return ba.toByteArray();
-	}
-
-	/**
-	 * Method translateS.
-	 * @param digit byte
-	
-	 * @return String */
-	private static String translateS(byte digit) {
-		return Integer.valueOf(digit).toString();
-	}
-
-	/**
-	 * Method translateS.
-	 * @param digits byte[]
-	
-	 * @return String */
-	private static String translateS(byte[] digits) {
-		StringBuffer sb = new StringBuffer(digits.length);
-		for (int i = 0; i < digits.length; i++) {
-			sb.append(translateS(digits[i]));
-		}
+		sb.append("AC:\t" + getAgencyCode() + "\n");
+		sb.append("SC:\t" + getSystemCode() + "\n");
+		sb.append("CN:\t" + getCredentialNumber() + "\n");
+		sb.append("CS:\t" + getCredentialSeries() + "\n");
+		sb.append("ICI:\t" + getIndividualCredentialIssue() + "\n");
+		sb.append("PI:\t" + getPersonIdentifier() + "\n");
+		sb.append("OC:\t" + getOrganizationalCategory() + "\n");
+		sb.append("OI:\t" + getOrganizationalIdentifier() + "\n");
+		sb.append("POA:\t" + getAssociationCategory());
 		return sb.toString();
 	}
 
@@ -26,10 +26,11 @@ package org.keysupport.nist80073.datamodel;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Enumeration;
 
 import org.keysupport.encoding.BERTLVFactory;
 import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -78,34 +79,34 @@ public class PIVCardApplicationProperty {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
-			case (byte)0x4f: {
-				this.aid = value;
-				break;
-			}
-			case (byte)0x79: {
-				this.tag_alloc = value;
-				break;
-			}
-			case (byte)0x50: {
-				this.description = value;
-				break;
-			}
-			case (byte)0x5f: {
-				this.reference = value;
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case (byte)0x4f: {
+					this.aid = children.getValue();
+					break;
+				}
+				case (byte)0x79: {
+					this.tag_alloc = children.getValue();
+					break;
+				}
+				case (byte)0x50: {
+					this.description = children.getValue();
+					break;
+				}
+				case (byte)0x5f: {
+					this.reference = children.getValue();
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Application Property Template: "
+					+ e.getMessage(), e);
 		}
 	}
 
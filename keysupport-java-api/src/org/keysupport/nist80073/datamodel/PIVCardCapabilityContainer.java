@@ -24,10 +24,8 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -74,78 +72,78 @@ public class PIVCardCapabilityContainer {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
-			case Tag.CCC_CARD_IDENTIFIER: {
-				this.card_identifier = value;
-				break;
-			}
-			case Tag.CCC_VERSION: {
-				this.version = value;
-				break;
-			}
-			case Tag.CCC_GRAMMAR_VERSION: {
-				this.grammar_version = value;
-				break;
-			}
-			case Tag.CCC_APP_CARDURL: {
-				this.app_cardurl = value;
-				break;
-			}
-			case Tag.CCC_PKCS15: {
-				this.pkcs15 = value;
-				break;
-			}
-			case Tag.CCC_REG_DATA_MODEL_NUMBER: {
-				this.reg_data_model_number = value;
-				break;
-			}
-			case Tag.CCC_ACR_TABLE: {
-				this.acr_table = value;
-				break;
-			}
-			case Tag.CCC_CARD_APDUS: {
-				this.card_apdus = value;
-				break;
-			}
-			case Tag.CCC_REDIRECTION_TAG: {
-				this.redirection_tag = value;
-				break;
-			}
-			case Tag.CCC_CRS: {
-				this.cts = value;
-				break;
-			}
-			case Tag.CCC_STS: {
-				this.sts = value;
-				break;
-			}
-			case Tag.CCC_NEXT_CCC: {
-				this.next_ccc = value;
-				break;
-			}
-			case Tag.CCC_EA_CARDURL: {
-				this.ea_cardurl = value;
-				break;
-			}
-			case Tag.CCC_SECURITY_OBJECT_BUFFER: {
-				this.security_object_buffer = value;
-				break;
-			}
-			case Tag.ERROR_DETECT_CODE: {
-				this.edc = value;
-				break;
-			}
-			default: {
-				break;
-			}
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case Tag.CCC_CARD_IDENTIFIER: {
+					this.card_identifier = children.getValue();
+					break;
+				}
+				case Tag.CCC_VERSION: {
+					this.version = children.getValue();
+					break;
+				}
+				case Tag.CCC_GRAMMAR_VERSION: {
+					this.grammar_version = children.getValue();
+					break;
+				}
+				case Tag.CCC_APP_CARDURL: {
+					this.app_cardurl = children.getValue();
+					break;
+				}
+				case Tag.CCC_PKCS15: {
+					this.pkcs15 = children.getValue();
+					break;
+				}
+				case Tag.CCC_REG_DATA_MODEL_NUMBER: {
+					this.reg_data_model_number = children.getValue();
+					break;
+				}
+				case Tag.CCC_ACR_TABLE: {
+					this.acr_table = children.getValue();
+					break;
+				}
+				case Tag.CCC_CARD_APDUS: {
+					this.card_apdus = children.getValue();
+					break;
+				}
+				case Tag.CCC_REDIRECTION_TAG: {
+					this.redirection_tag = children.getValue();
+					break;
+				}
+				case Tag.CCC_CRS: {
+					this.cts = children.getValue();
+					break;
+				}
+				case Tag.CCC_STS: {
+					this.sts = children.getValue();
+					break;
+				}
+				case Tag.CCC_NEXT_CCC: {
+					this.next_ccc = children.getValue();
+					break;
+				}
+				case Tag.CCC_EA_CARDURL: {
+					this.ea_cardurl = children.getValue();
+					break;
+				}
+				case Tag.CCC_SECURITY_OBJECT_BUFFER: {
+					this.security_object_buffer = children.getValue();
+					break;
+				}
+				case Tag.ERROR_DETECT_CODE: {
+					this.edc = children.getValue();
+					break;
+				}
+				default: {
+					break;
+				}
+				}
+			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Card Capability Container: "
+					+ e.getMessage(), e);
 		}
 
 	}
@@ -26,10 +26,9 @@ package org.keysupport.nist80073.datamodel;
 
 //import java.io.ByteArrayInputStream;
 //import java.io.IOException;
-import java.util.Enumeration;
 
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 
 /**
@@ -60,21 +59,23 @@ public class PIVCardHolderFacialImage {
 	 * @param ba byte[]
 	 */
 	public void decode(byte[] ba) {
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-			switch (child_tag.getBytes()[0]) {
-			case Tag.CFI_IMAGE: {
-				this.image = value;
-				System.out.println("GOT THE IMAGE");
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case Tag.CFI_IMAGE: {
+					this.image = children.getValue();
+					System.out.println("GOT THE IMAGE");
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Cardholder Facial Image: "
+					+ e.getMessage(), e);
 		}
 	}
 
@@ -24,10 +24,8 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 
 //TODO: PIVCardHolderFingerprints
@@ -58,20 +56,22 @@ public class PIVCardHolderFingerprints {
 	 * @param ba byte[]
 	 */
 	public void decode(byte[] ba) {
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			// byte[] value = child_tlv.getValue();
-			switch (child_tag.getBytes()[0]) {
-			case Tag.CHUID_FASCN: {
-				// this.fascn = value;
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case Tag.CHUID_FASCN: {
+					// this.fascn = children.getValue();
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Cardholder Fingerprints: "
+					+ e.getMessage(), e);
 		}
 	}
 
@@ -28,11 +28,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.UUID;
 
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -111,99 +111,95 @@ public class PIVCardHolderUniqueID {
 	 */
 	private void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
-			case Tag.CHUID_FASCN: {
-				this.fascn = value;
-				break;
-			}
-			case Tag.CHUID_AGENCY_CODE: {
-				this.ac = value;
-				break;
-			}
-			case Tag.CHUID_ORG_ID: {
-				this.oi = value;
-				break;
-			}
-			case Tag.CHUID_DUNS: {
-				this.duns = value;
-				break;
-			}
-			case Tag.CHUID_GUID: {
-				this.guid = value;
-				break;
-			}
-			case Tag.CHUID_EXPIRATION_DATE: {
-				this.expires = value;
-				break;
-			}
-			case Tag.CHUID_SIGNATURE: {
-				this.signature = value;
-				break;
-			}
-			case Tag.CHUID_ERROR_DETECT_CODE: {
-				this.edc = value;
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case Tag.CHUID_FASCN: {
+					this.fascn = children.getValue();
+					break;
+				}
+				case Tag.CHUID_AGENCY_CODE: {
+					this.ac = children.getValue();
+					break;
+				}
+				case Tag.CHUID_ORG_ID: {
+					this.oi = children.getValue();
+					break;
+				}
+				case Tag.CHUID_DUNS: {
+					this.duns = children.getValue();
+					break;
+				}
+				case Tag.CHUID_GUID: {
+					this.guid = children.getValue();
+					break;
+				}
+				case Tag.CHUID_EXPIRATION_DATE: {
+					this.expires = children.getValue();
+					break;
+				}
+				case Tag.CHUID_SIGNATURE: {
+					this.signature = children.getValue();
+					break;
+				}
+				case Tag.CHUID_ERROR_DETECT_CODE: {
+					this.edc = children.getValue();
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed CHUID: "
+					+ e.getMessage(), e);
 		}
 
 	}
 
 	private void encode() {
-		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			// FASC-N
-			TLV _ftlv = BERTLVFactory
-					.encodeTLV(new Tag(Tag.CHUID_FASCN), this.fascn);
-			baos.write(_ftlv.getBytes());
-			// Agency Code
-			if (this.ac != null) {
-				TLV _actlv = BERTLVFactory.encodeTLV(
-					new Tag(Tag.CHUID_AGENCY_CODE), this.ac);
-				baos.write(_actlv.getBytes());
-			}
-			// Organizational Identifier
-			if (this.oi != null) {
-				TLV _oitlv = BERTLVFactory.encodeTLV(
-						new Tag(Tag.CHUID_ORG_ID), this.oi);
-				baos.write(_oitlv.getBytes());
-			}
-			// DUNS
-			if (this.duns != null) {
-				TLV _dunstlv = BERTLVFactory.encodeTLV(
-						new Tag(Tag.CHUID_DUNS), this.duns);
-				baos.write(_dunstlv.getBytes());
-			}
-			// GUID
-			TLV _guidtlv = BERTLVFactory.encodeTLV(new Tag(Tag.CHUID_GUID),
-					this.guid);
-			baos.write(_guidtlv.getBytes());
-			// Expiration Date
-			TLV _extlv = BERTLVFactory.encodeTLV(new Tag(
-					Tag.CHUID_EXPIRATION_DATE), this.expires);
-			baos.write(_extlv.getBytes());
-			// Signature
-			TLV _sigtlv = BERTLVFactory.encodeTLV(new Tag(Tag.CHUID_SIGNATURE),
-					this.signature);
-			baos.write(_sigtlv.getBytes());
-			// Error Detect Code (Tag only, zero length)
-			TLV _edctlv = BERTLVFactory.encodeTLV(new Tag(
-					Tag.CHUID_ERROR_DETECT_CODE), null);
-			baos.write(_edctlv.getBytes());
-			this.chuid = baos.toByteArray();
-		} catch (Throwable e) {
-			e.printStackTrace();
+		int size = TLVWriter.sizeOf(Tag.CHUID_FASCN, this.fascn)
+				+ TLVWriter.sizeOf(Tag.CHUID_GUID, this.guid)
+				+ TLVWriter.sizeOf(Tag.CHUID_EXPIRATION_DATE, this.expires)
+				+ TLVWriter.sizeOf(Tag.CHUID_SIGNATURE, this.signature)
+				+ TLVWriter.sizeOf(Tag.CHUID_ERROR_DETECT_CODE, null);
+		if (this.ac != null) {
+			size += TLVWriter.sizeOf(Tag.CHUID_AGENCY_CODE, this.ac);
+		}
+		if (this.oi != null) {
+			size += TLVWriter.sizeOf(Tag.CHUID_ORG_ID, this.oi);
+		}
+		if (this.duns != null) {
+			size += TLVWriter.sizeOf(Tag.CHUID_DUNS, this.duns);
+		}
+		byte[] encoded = new byte[size];
+		TLVWriter writer = new TLVWriter(encoded);
+		// FASC-N
+		writer.put(Tag.CHUID_FASCN, this.fascn);
+		// Agency Code
+		if (this.ac != null) {
+			writer.put(Tag.CHUID_AGENCY_CODE, this.ac);
+		}
+		// Organizational Identifier
+		if (this.oi != null) {
+			writer.put(Tag.CHUID_ORG_ID, this.oi);
+		}
+		// DUNS
+		if (this.duns != null) {
+			writer.put(Tag.CHUID_DUNS, this.duns);
 		}
+		// GUID
+		writer.put(Tag.CHUID_GUID, this.guid);
+		// Expiration Date
+		writer.put(Tag.CHUID_EXPIRATION_DATE, this.expires);
+		// Signature
+		writer.put(Tag.CHUID_SIGNATURE, this.signature);
+		// Error Detect Code (Tag only, zero length)
+		writer.put(Tag.CHUID_ERROR_DETECT_CODE, null);
+		writer.finish();
+		this.chuid = encoded;
 	}
 
 	/**
@@ -275,9 +271,12 @@ public class PIVCardHolderUniqueID {
 
 	/**
 	 * Method getGUID.
-	 * @return UUID
+	 * @return UUID (null if the CHUID has no GUID)
 	 */
 	public UUID getGUID() {
+		if (this.guid == null || this.guid.length != 16) {
+			return null;
+		}
 		return DataUtil.byteArrayToUUID(this.guid);
 	}
 
@@ -311,59 +310,62 @@ public class PIVCardHolderUniqueID {
 				System.out.println("Decodeing CHUID Signature Data");
 			}
 
-			Enumeration<?> children = BERTLVFactory.decodeTLV(this.chuid);
-			while (children.hasMoreElements()) {
-
-				TLV child_tlv = (TLV) children.nextElement();
-				Tag child_tag = child_tlv.getTag();
-				// byte[] value = child_tlv.getValue();
+			TLVCursor children = new TLVCursor(this.chuid);
+			while (children.next()) {
 
-				switch (child_tag.getBytes()[0]) {
+				switch (children.getTagByte()) {
 
 				case Tag.CHUID_FASCN: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_FASCN.");
 					}
 					break;
 				}
 				case Tag.CHUID_AGENCY_CODE: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_AGENCY_CODE.");
 					}
 					break;
 				}
 				case Tag.CHUID_ORG_ID: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_ORG_ID.");
 					}
 					break;
 				}
 				case Tag.CHUID_DUNS: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_DUNS.");
 					}
 					break;
 				}
 				case Tag.CHUID_GUID: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_GUID.");
 					}
 					break;
 				}
 				case Tag.CHUID_EXPIRATION_DATE: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_EXPIRATION_DATE.");
 					}
 					break;
 				}
 				case Tag.CHUID_ERROR_DETECT_CODE: {
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					if (debug) {
 						System.out.println("Decoded CHUID_ERROR_DETECT_CODE.");
 					}
@@ -381,16 +383,18 @@ public class PIVCardHolderUniqueID {
 					// Everything else, even if not defined
 					if (debug) {
 						System.out.println("Including Unknown TLV: "
-								+ DataUtil.byteArrayToString(child_tlv
+								+ DataUtil.byteArrayToString(children
 										.getBytes()));
 					}
-					baos.write(child_tlv.getBytes());
+					baos.write(children.getBuffer(), children.getOffset(),
+							children.getElementLength());
 					break;
 				}
 				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed CHUID: "
+					+ e.getMessage(), e);
 		}
 		return baos.toByteArray();
 
@@ -495,31 +499,38 @@ public class PIVCardHolderUniqueID {
 	 */
 	@Override
 	public String toString() {
+		StringBuffer sb = new StringBuffer();
 		FASCN myFascn = null;
 		try {
 			myFascn = this.getFASCN();
 		} catch (IOException e) {
-			e.printStackTrace();
+			sb.append("Card Holder Unique ID:FASC-N:\t\t\t\t\t"
+					+ "Invalid: " + e.getMessage());
+		}
+		if (myFascn != null) {
+			if (!myFascn.isValidLRC()) {
+				sb.append("Card Holder Unique ID:FASC-N:LRC:\t\t\t\t"
+						+ "Does not match\n");
+			}
+			sb.append("Card Holder Unique ID:FASC-N:Agency Code:\t\t\t"
+					+ myFascn.getAgencyCode());
+			sb.append("\nCard Holder Unique ID:FASC-N:System Code:\t\t\t"
+					+ myFascn.getSystemCode());
+			sb.append("\nCard Holder Unique ID:FASC-N:Credential Number:\t\t\t"
+					+ myFascn.getCredentialNumber());
+			sb.append("\nCard Holder Unique ID:FASC-N:Credential Series:\t\t\t"
+					+ myFascn.getCredentialSeries());
+			sb.append("\nCard Holder Unique ID:FASC-N:Individual Credential Issue:\t"
+					+ myFascn.getIndividualCredentialIssue());
+			sb.append("\nCard Holder Unique ID:FASC-N:Person Identifier:\t\t\t"
+					+ myFascn.getPersonIdentifier());
+			sb.append("\nCard Holder Unique ID:FASC-N:Organizational Category:\t\t"
+					+ myFascn.getOrganizationalCategory());
+			sb.append("\nCard Holder Unique ID:FASC-N:Organizational Identifier:\t\t"
+					+ myFascn.getOrganizationalIdentifier());
+			sb.append("\nCard Holder Unique ID:FASC-N:Per/Org Association Category:\t"
+					+ myFascn.getAssociationCategory());
 		}
-		StringBuffer sb = new StringBuffer();
-		sb.append("Card Holder Unique ID:FASC-N:Agency Code:\t\t\t"
-				+ myFascn.getAgencyCode());
-		sb.append("\nCard Holder Unique ID:FASC-N:System Code:\t\t\t"
-				+ myFascn.getSystemCode());
-		sb.append("\nCard Holder Unique ID:FASC-N:Credential Number:\t\t\t"
-				+ myFascn.getCredentialNumber());
-		sb.append("\nCard Holder Unique ID:FASC-N:Credential Series:\t\t\t"
-				+ myFascn.getCredentialSeries());
-		sb.append("\nCard Holder Unique ID:FASC-N:Individual Credential Issue:\t"
-				+ myFascn.getIndividualCredentialIssue());
-		sb.append("\nCard Holder Unique ID:FASC-N:Person Identifier:\t\t\t"
-				+ myFascn.getPersonIdentifier());
-		sb.append("\nCard Holder Unique ID:FASC-N:Organizational Category:\t\t"
-				+ myFascn.getOrganizationalCategory());
-		sb.append("\nCard Holder Unique ID:FASC-N:Organizational Identifier:\t\t"
-				+ myFascn.getOrganizationalIdentifier());
-		sb.append("\nCard Holder Unique ID:FASC-N:Per/Org Association Category:\t"
-				+ myFascn.getAssociationCategory());
 		sb.append("\nCard Holder Unique ID:Agency Code:\t\t\t\t"
 				+ this.getAgencyCode());
 		sb.append("\nCard Holder Unique ID:Organization Identifier:\t\t\t"
@@ -24,19 +24,22 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.util.Enumeration;
-import java.util.zip.GZIPInputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
 import org.keysupport.encoding.Tag;
+import org.keysupport.keystore.CertificateCache;
 import org.keysupport.util.DataUtil;
 
 /**
@@ -55,6 +58,18 @@ public class PIVCertificate {
 
 	private byte[] piv_cert_obj;
 
+	// Parsed on the first call to getCertificate()
+	private X509Certificate x509 = null;
+
+	// GZIP header flags (RFC1952)
+	private final static int FHCRC = 0x02;
+	private final static int FEXTRA = 0x04;
+	private final static int FNAME = 0x08;
+	private final static int FCOMMENT = 0x10;
+
+	// Larger ISIZE values are not trusted for sizing the output
+	private final static int MAX_CERTIFICATE_SIZE = 65536;
+
 	/**
 	 * Constructor for PIVCertificate.
 	 * @param ba byte[]
@@ -91,44 +106,45 @@ public class PIVCertificate {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
+		this.x509 = null;
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
 
-			case Tag.PIV_CERT_CERTIFICATE: {
-				this.certificate = value;
-				break;
-			}
-			case Tag.PIV_CERT_CERTINFO: {
-				this.certinfo = value;
-				if ((byte) (this.certinfo[0] & CERTINFO_GZIP_COMPRESSION) == CERTINFO_GZIP_COMPRESSION) {
-					this.gzip_compressed = true;
+				case Tag.PIV_CERT_CERTIFICATE: {
+					this.certificate = children.getValue();
+					break;
+				}
+				case Tag.PIV_CERT_CERTINFO: {
+					this.certinfo = children.getValue();
+					if ((byte) (this.certinfo[0] & CERTINFO_GZIP_COMPRESSION) == CERTINFO_GZIP_COMPRESSION) {
+						this.gzip_compressed = true;
+					}
+					break;
+				}
+				case Tag.PIV_CERT_MSCUID: {
+					this.mscuid = children.getValue();
+					break;
+				}
+				case Tag.ERROR_DETECT_CODE: {
+					this.edc = children.getValue();
+					break;
+				}
+				default: {
+					break;
+				}
 				}
-				break;
-			}
-			case Tag.PIV_CERT_MSCUID: {
-				this.mscuid = value;
-				break;
-			}
-			case Tag.ERROR_DETECT_CODE: {
-				this.edc = value;
-				break;
-			}
-			default: {
-				break;
-			}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed certificate object: "
+					+ e.getMessage(), e);
 		}
 	}
 
 	public void encode() {
 		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] cert_data = this.certificate;
 			// Certificate
 			if (this.gzip_compressed) {
 				//If GZIP, then gzip first
@@ -136,29 +152,27 @@ public class PIVCertificate {
 			    GZIPOutputStream gzos = new GZIPOutputStream(gzbaos);
 			    gzos.write(this.certificate);
 			    gzos.close();
-				TLV _gzctlv = BERTLVFactory
-						.encodeTLV(new Tag(Tag.PIV_CERT_CERTIFICATE), gzbaos.toByteArray());
-				baos.write(_gzctlv.getBytes());
-			} else {
-				TLV _ctlv = BERTLVFactory
-						.encodeTLV(new Tag(Tag.PIV_CERT_CERTIFICATE), this.certificate);
-				baos.write(_ctlv.getBytes());
+			    cert_data = gzbaos.toByteArray();
+			}
+			int size = TLVWriter.sizeOf(Tag.PIV_CERT_CERTIFICATE, cert_data)
+					+ TLVWriter.sizeOf(Tag.PIV_CERT_CERTINFO, this.certinfo)
+					+ TLVWriter.sizeOf(Tag.CHUID_ERROR_DETECT_CODE, null);
+			if (this.mscuid != null) {
+				size += TLVWriter.sizeOf(Tag.PIV_CERT_MSCUID, this.mscuid);
 			}
+			byte[] encoded = new byte[size];
+			TLVWriter writer = new TLVWriter(encoded);
+			writer.put(Tag.PIV_CERT_CERTIFICATE, cert_data);
 			// CertInfo
-			TLV _citlv = BERTLVFactory.encodeTLV(
-					new Tag(Tag.PIV_CERT_CERTINFO), this.certinfo);
-			baos.write(_citlv.getBytes());
+			writer.put(Tag.PIV_CERT_CERTINFO, this.certinfo);
 			// MSCUID
 			if (this.mscuid != null) {
-				TLV _mctlv = BERTLVFactory.encodeTLV(
-						new Tag(Tag.PIV_CERT_MSCUID), this.mscuid);
-				baos.write(_mctlv.getBytes());
+				writer.put(Tag.PIV_CERT_MSCUID, this.mscuid);
 			}
 			// Error Detect Code (Tag only, zero length)
-			TLV _edctlv = BERTLVFactory.encodeTLV(new Tag(
-					Tag.CHUID_ERROR_DETECT_CODE), null);
-			baos.write(_edctlv.getBytes());
-			this.piv_cert_obj = baos.toByteArray();
+			writer.put(Tag.CHUID_ERROR_DETECT_CODE, null);
+			writer.finish();
+			this.piv_cert_obj = encoded;
 		} catch (Throwable e) {
 			e.printStackTrace();
 		}
@@ -166,29 +180,133 @@ public class PIVCertificate {
 
 	/**
 	 * Method getCertificate.
+	 * 
+	 * The certificate is decompressed and parsed on the first call, or
+	 * taken from the shared CertificateCache if it has been seen before.
+	 * 
 	 * @return X509Certificate
 	 * @throws IOException
 	 * @throws CertificateException
 	 */
 	public X509Certificate getCertificate() throws IOException,
 			CertificateException {
-
+		if (this.x509 != null) {
+			return this.x509;
+		}
 		byte[] cert_data = this.certificate;
 		// If CertInfo says it is GZIPd, then decompress
 		if (this.gzip_compressed) {
-			ByteArrayInputStream bais = new ByteArrayInputStream(cert_data);
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			GZIPInputStream gzin = new GZIPInputStream(bais);
-			for (int c = gzin.read(); c != -1; c = gzin.read()) {
-				baos.write(c);
-			}
-			cert_data = baos.toByteArray();
+			cert_data = gunzip(cert_data);
 		}
 		// Render us a Certificate
-		ByteArrayInputStream is = new ByteArrayInputStream(cert_data);
-		CertificateFactory cf = CertificateFactory.getInstance("X.509");
-		return (X509Certificate) cf.generateCertificate(is);
+		this.x509 = CertificateCache.getDefault().getCertificate(cert_data);
+		return this.x509;
+	}
+
+	/**
+	 * Method gunzip.
+	 * 
+	 * Decompresses a GZIP member (RFC1952) in one pass. The output is sized
+	 * from the ISIZE field of the trailer, so for a well formed member it is
+	 * allocated once and not copied.
+	 * 
+	 * @param gz byte[]
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	private static byte[] gunzip(byte[] gz) throws IOException {
+		if (gz.length < 18 || gz[0] != (byte) 0x1f || gz[1] != (byte) 0x8b
+				|| gz[2] != 8) {
+			throw new ZipException("Not in GZIP format");
+		}
+		int flg = gz[3] & 0xff;
+		int pos = 10;
+		// Each field must leave at least the 8 byte trailer after it
+		int end = gz.length - 8;
+		if ((flg & FEXTRA) != 0) {
+			pos += 2 + ((gz[pos] & 0xff) | (gz[pos + 1] & 0xff) << 8);
+			if (pos > end) {
+				throw new ZipException("Truncated GZIP extra field");
+			}
+		}
+		if ((flg & FNAME) != 0) {
+			pos = skipString(gz, pos, end);
+		}
+		if ((flg & FCOMMENT) != 0) {
+			pos = skipString(gz, pos, end);
+		}
+		if ((flg & FHCRC) != 0) {
+			pos += 2;
+			if (pos > end) {
+				throw new ZipException("Truncated GZIP header CRC");
+			}
+		}
+		// The trailer is normally the last 8 bytes, unless the card pads
+		int isize = getIntLE(gz, gz.length - 4);
+		byte[] out = new byte[(isize > 0 && isize <= MAX_CERTIFICATE_SIZE)
+				? isize : gz.length * 4];
+		int n = 0;
+		Inflater inf = new Inflater(true);
+		try {
+			inf.setInput(gz, pos, gz.length - pos);
+			while (!inf.finished()) {
+				if (n == out.length) {
+					out = Arrays.copyOf(out, out.length * 2);
+				}
+				int r = inf.inflate(out, n, out.length - n);
+				if (r == 0 && (inf.needsInput() || inf.needsDictionary())) {
+					throw new ZipException("Truncated GZIP data");
+				}
+				n += r;
+			}
+			pos += (int) inf.getBytesRead();
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		} finally {
+			inf.end();
+		}
+		if (pos + 8 > gz.length) {
+			throw new ZipException("Truncated GZIP trailer");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out, 0, n);
+		if (getIntLE(gz, pos) != (int) crc.getValue()
+				|| getIntLE(gz, pos + 4) != n) {
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+		return (n == out.length) ? out : Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Method skipString.
+	 * 
+	 * Skips a zero terminated header field (FNAME or FCOMMENT).
+	 * 
+	 * @param gz byte[]
+	 * @param pos int Offset of the field
+	 * @param end int Offset the field must end before
+	 * @return int Offset following the terminating zero
+	 * @throws ZipException if the field is not terminated before end
+	 */
+	private static int skipString(byte[] gz, int pos, int end)
+			throws ZipException {
+		while (pos < end) {
+			if (gz[pos++] == 0) {
+				return pos;
+			}
+		}
+		throw new ZipException("Truncated GZIP header");
+	}
 
+	/**
+	 * Method getIntLE.
+	 * @param ba byte[]
+	 * @param off int
+	 * @return int The little endian integer at off
+	 */
+	private static int getIntLE(byte[] ba, int off) {
+		return (ba[off] & 0xff) | (ba[off + 1] & 0xff) << 8
+				| (ba[off + 2] & 0xff) << 16 | (ba[off + 3] & 0xff) << 24;
 	}
 
 	/**
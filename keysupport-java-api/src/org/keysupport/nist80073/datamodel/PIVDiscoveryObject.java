@@ -24,10 +24,8 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -71,34 +69,33 @@ public class PIVDiscoveryObject {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<TLV> tlvs = BERTLVFactory.decodeTLV(ba);
-		while (tlvs.hasMoreElements()) {
-			TLV current_tlv = tlvs.nextElement();
-
-			Enumeration<TLV> children = BERTLVFactory.decodeTLV(current_tlv
-					.getValue());
+		TLVCursor tlvs = new TLVCursor(ba);
+		try {
+			while (tlvs.next()) {
 
-			while (children.hasMoreElements()) {
+				TLVCursor children = tlvs.getChildren();
 
-				TLV child_tlv = children.nextElement();
-				Tag child_tag = child_tlv.getTag();
-				byte[] value = child_tlv.getValue();
+				while (children.next()) {
 
-				if (child_tag.equals(Tag.PIV_APP_AID)) {
-					this.aid = value;
-				} else if (child_tag.equals(Tag.PIV_PIN_POLICY)) {
-					this.pin_pol = value;
+					if (children.tagEquals(Tag.PIV_APP_AID)) {
+						this.aid = children.getValue();
+					} else if (children.tagEquals(Tag.PIV_PIN_POLICY)) {
+						this.pin_pol = children.getValue();
 
-					// the pin policy is encoded in 2 bytes
-					if ((byte) (this.pin_pol[0] & (byte) 0x60) == (byte) 0x60) {
-						this.gpin_s_acr = true;
-						if ((byte) (this.pin_pol[1] & (byte) 0x10) == (byte) 0x10) {
-						} else if ((byte) (this.pin_pol[1] & (byte) 0x20) == (byte) 0x20) {
-							this.g_pin_primary = true;
+						// the pin policy is encoded in 2 bytes
+						if ((byte) (this.pin_pol[0] & (byte) 0x60) == (byte) 0x60) {
+							this.gpin_s_acr = true;
+							if ((byte) (this.pin_pol[1] & (byte) 0x10) == (byte) 0x10) {
+							} else if ((byte) (this.pin_pol[1] & (byte) 0x20) == (byte) 0x20) {
+								this.g_pin_primary = true;
+							}
 						}
 					}
 				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Discovery Object: "
+					+ e.getMessage(), e);
 		}
 	}
 
@@ -24,10 +24,8 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -61,28 +59,30 @@ public class PIVKeyHistoryObject {
 	 * @param ba byte[]
 	 */
 	public void decode(byte[] ba) {
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-			switch (child_tag.getBytes()[0]) {
-			case Tag.KHO_ON_CARD_CERTS: {
-				this.setKeysOnCardCerts(value);
-				break;
-			}
-			case Tag.KHO_OFF_CARD_CERTS: {
-				this.setKeysOffCardCerts(value);
-				break;
-			}
-			case Tag.KHO_OFF_CARD_URL: {
-				this.setOffCardURL(value);
-				break;
-			}
-			default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+				case Tag.KHO_ON_CARD_CERTS: {
+					this.setKeysOnCardCerts(children.getValue());
+					break;
+				}
+				case Tag.KHO_OFF_CARD_CERTS: {
+					this.setKeysOffCardCerts(children.getValue());
+					break;
+				}
+				case Tag.KHO_OFF_CARD_URL: {
+					this.setOffCardURL(children.getValue());
+					break;
+				}
+				default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Key History Object: "
+					+ e.getMessage(), e);
 		}
 	}
 
@@ -125,6 +125,35 @@ public class PIVKeyHistoryObject {
 		this.keysOffCardCerts = keysOffCardCerts;
 	}
 
+	/**
+	 * Method getOnCardCertCount.
+	 * @return int Number of retired key management certificates on the card
+	 */
+	public int getOnCardCertCount() {
+		return count(this.keysOnCardCerts);
+	}
+
+	/**
+	 * Method getOffCardCertCount.
+	 * @return int Number of retired key management certificates only
+	 *         available from the off card URL
+	 */
+	public int getOffCardCertCount() {
+		return count(this.keysOffCardCerts);
+	}
+
+	/**
+	 * Method count.
+	 * @param ba byte[]
+	 * @return int
+	 */
+	private static int count(byte[] ba) {
+		if (ba == null || ba.length == 0) {
+			return 0;
+		}
+		return ba[0] & 0xff;
+	}
+
 	/**
 	 * @return the offCardURL
 	 */
@@ -24,10 +24,8 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
-
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
 import org.keysupport.util.DataUtil;
 
@@ -67,49 +65,49 @@ public class PIVPrintedInformation {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
-
-			switch (child_tag.getBytes()[0]) {
-
-			case Tag.PI_NAME: {
-				this.name = value;
-				break;
-			}
-			case Tag.PI_EMPLOYEE_AFFILIATION: {
-				this.employee_aff = value;
-				break;
-			}
-			case Tag.PI_EXPIRATION_DATE: {
-				this.expire_date = value;
-				break;
-			}
-			case Tag.PI_AGENCY_CARD_SERIAL_NUMBER: {
-				this.agency_card_serial = value;
-				break;
-			}
-			case Tag.PI_ISSUER_IDENTIFICATION: {
-				this.issuer_id = value;
-				break;
-			}
-			case Tag.PI_ORGANIZATION_AFF_LN1: {
-				this.org_aff_ln1 = value;
-				break;
-			}
-			case Tag.PI_ORGANIZATION_AFF_LN2: {
-				this.org_aff_ln2 = value;
-				break;
-			}
-			/*
-			 * case Tag.ERROR_DETECT_CODE: { this.edc = value; break; }
-			 */default: {
-				break;
-			}
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
+
+				case Tag.PI_NAME: {
+					this.name = children.getValue();
+					break;
+				}
+				case Tag.PI_EMPLOYEE_AFFILIATION: {
+					this.employee_aff = children.getValue();
+					break;
+				}
+				case Tag.PI_EXPIRATION_DATE: {
+					this.expire_date = children.getValue();
+					break;
+				}
+				case Tag.PI_AGENCY_CARD_SERIAL_NUMBER: {
+					this.agency_card_serial = children.getValue();
+					break;
+				}
+				case Tag.PI_ISSUER_IDENTIFICATION: {
+					this.issuer_id = children.getValue();
+					break;
+				}
+				case Tag.PI_ORGANIZATION_AFF_LN1: {
+					this.org_aff_ln1 = children.getValue();
+					break;
+				}
+				case Tag.PI_ORGANIZATION_AFF_LN2: {
+					this.org_aff_ln2 = children.getValue();
+					break;
+				}
+				/*
+				 * case Tag.ERROR_DETECT_CODE: { this.edc = children.getValue(); break; }
+				 */default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Printed Information: "
+					+ e.getMessage(), e);
 		}
 	}
 
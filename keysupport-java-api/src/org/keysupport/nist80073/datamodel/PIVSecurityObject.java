@@ -24,11 +24,12 @@
 
 package org.keysupport.nist80073.datamodel;
 
-import java.util.Enumeration;
+import java.util.Arrays;
 
-import org.keysupport.encoding.BERTLVFactory;
-import org.keysupport.encoding.TLV;
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
 import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.der.ObjectIdentifier;
 import org.keysupport.util.DataUtil;
 
 /**
@@ -43,6 +44,26 @@ public class PIVSecurityObject {
 
 	private byte[] pso;
 
+	// LDSSecurityObject, decoded from the signed content on first use
+	private boolean ldsDecoded = false;
+	private String hashAlgorithm;
+	private byte[][] dgHashes = new byte[0][];
+
+	/*
+	 * Container IDs of the objects that may be listed in the mapping of DG to
+	 * ContainerID, and the tags used to read them.
+	 * 
+	 * Ref 800-73-3, Part 1, Table 2
+	 */
+	private final static byte[][] CONTAINER_TAGS = { Tag.PIV_CCC,
+			Tag.PIV_CHUID, Tag.PIV_CERT_PIVAUTH,
+			Tag.PIV_CARDHOLDER_FINGERPRINTS, Tag.PIV_CARDHOLDER_FACIAL_IMAGE,
+			Tag.PIV_PRINTED_INFORMATION, Tag.PIV_CERT_DIGSIG,
+			Tag.PIV_CERT_KEYMGMT, Tag.PIV_CERT_CARDAUTH,
+			Tag.PIV_KEY_HISTORY_OBJECT, Tag.PIV_CARDHOLDER_IRIS_IMAGES };
+	private final static int[] CONTAINER_IDS = { 0xdb00, 0x3000, 0x0101,
+			0x6010, 0x6030, 0x3001, 0x0100, 0x0102, 0x0500, 0x6060, 0x1015 };
+
 	public PIVSecurityObject() {
 
 		encode();
@@ -64,29 +85,29 @@ public class PIVSecurityObject {
 	 */
 	public void decode(byte[] ba) {
 
-		Enumeration<?> children = BERTLVFactory.decodeTLV(ba);
-		while (children.hasMoreElements()) {
-
-			TLV child_tlv = (TLV) children.nextElement();
-			Tag child_tag = child_tlv.getTag();
-			byte[] value = child_tlv.getValue();
+		TLVCursor children = new TLVCursor(ba);
+		try {
+			while (children.next()) {
+				switch (children.getTagByte()) {
 
-			switch (child_tag.getBytes()[0]) {
-
-			case Tag.SO_MAPPING: {
-				this.mapping = value;
-				break;
-			}
-			case Tag.SO_SO: {
-				this.so = value;
-				break;
-			}
-			/*
-			 * case Tag.CHUID_ERROR_DETECT_CODE: { this.edc = value; break; }
-			 */default: {
-				break;
-			}
+				case Tag.SO_MAPPING: {
+					this.mapping = children.getValue();
+					break;
+				}
+				case Tag.SO_SO: {
+					this.so = children.getValue();
+					break;
+				}
+				/*
+				 * case Tag.CHUID_ERROR_DETECT_CODE: { this.edc = children.getValue(); break; }
+				 */default: {
+					break;
+				}
+				}
 			}
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Security Object: "
+					+ e.getMessage(), e);
 		}
 
 	}
@@ -110,6 +131,173 @@ public class PIVSecurityObject {
 		return this.so;
 	}
 
+	/**
+	 * Method getMapping.
+	 * @return byte[] Mapping of DG to ContainerID
+	 */
+	public byte[] getMapping() {
+		return this.mapping;
+	}
+
+	/**
+	 * Method getContainerID.
+	 * @param pivObjectTag byte[] Tag used to read the object with GET DATA
+	 * @return int ContainerID, or -1 if the object has no ContainerID
+	 */
+	public static int getContainerID(byte[] pivObjectTag) {
+		for (int i = 0; i < CONTAINER_TAGS.length; i++) {
+			if (Arrays.equals(CONTAINER_TAGS[i], pivObjectTag)) {
+				return CONTAINER_IDS[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Method getDataGroupNumber.
+	 * 
+	 * The mapping is a list of entries consisting of a one byte DG number
+	 * followed by a two byte ContainerID.
+	 * 
+	 * @param containerID int
+	 * @return int DG number, or -1 if the container is not mapped
+	 */
+	public int getDataGroupNumber(int containerID) {
+		if (this.mapping == null) {
+			return -1;
+		}
+		for (int i = 0; i + 2 < this.mapping.length; i += 3) {
+			int id = ((this.mapping[i + 1] & 0xff) << 8)
+					| (this.mapping[i + 2] & 0xff);
+			if (id == containerID) {
+				return this.mapping[i] & 0xff;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Method getHashAlgorithm.
+	 * @return String OID of the hash algorithm used in the LDSSecurityObject
+	 */
+	public String getHashAlgorithm() {
+		decodeLDSSecurityObject();
+		return this.hashAlgorithm;
+	}
+
+	/**
+	 * Method getDataGroupHash.
+	 * @param dataGroupNumber int
+	 * @return byte[] The hash of the DG, or null if it is not listed
+	 */
+	public byte[] getDataGroupHash(int dataGroupNumber) {
+		decodeLDSSecurityObject();
+		if (dataGroupNumber < 0 || dataGroupNumber >= this.dgHashes.length) {
+			return null;
+		}
+		return this.dgHashes[dataGroupNumber];
+	}
+
+	/**
+	 * Method getDataGroupHash.
+	 * @param pivObjectTag byte[] Tag used to read the object with GET DATA
+	 * @return byte[] The hash of the object, or null if it is not listed
+	 */
+	public byte[] getDataGroupHash(byte[] pivObjectTag) {
+		int containerID = getContainerID(pivObjectTag);
+		if (containerID < 0) {
+			return null;
+		}
+		return getDataGroupHash(getDataGroupNumber(containerID));
+	}
+
+	/**
+	 * Method decodeLDSSecurityObject.
+	 * 
+	 * The security object is a CMS SignedData whose encapsulated content is
+	 * the LDSSecurityObject:
+	 * 
+	 * <pre>
+	 * LDSSecurityObject ::= SEQUENCE {
+	 *     version LDSSecurityObjectVersion,
+	 *     hashAlgorithm DigestAlgorithmIdentifier,
+	 *     dataGroupHashValues SEQUENCE SIZE (2..ub-DataGroups) OF DataGroupHash }
+	 * 
+	 * DataGroupHash ::= SEQUENCE {
+	 *     dataGroupNumber DataGroupNumber,
+	 *     dataGroupHashValue OCTET STRING }
+	 * </pre>
+	 * 
+	 * The signature is not verified here. A malformed security object is
+	 * rejected on every call, rather than read as listing no hashes.
+	 */
+	private synchronized void decodeLDSSecurityObject() {
+		if (this.ldsDecoded || this.so == null) {
+			return;
+		}
+		try {
+			// ContentInfo { contentType, [0] content }
+			TLVCursor c = enter(new TLVCursor(this.so), Tag.SEQUENCE);
+			c.next();
+			// SignedData { version, digestAlgorithms, encapContentInfo, ... }
+			c = enter(enter(c, (byte) 0xa0), Tag.SEQUENCE);
+			c.next();
+			c.next();
+			// EncapsulatedContentInfo { eContentType, [0] eContent }
+			c = enter(c, Tag.SEQUENCE);
+			c.next();
+			c = enter(c, (byte) 0xa0);
+			if (!c.next() || c.getTagByte() != Tag.OCTETSTRING) {
+				throw new TLVEncodingException("Unexpected encoding of the security object");
+			}
+			// LDSSecurityObject { version, hashAlgorithm, dataGroupHashValues }
+			c = enter(c.getChildren(), Tag.SEQUENCE);
+			c.next();
+			// DigestAlgorithmIdentifier { algorithm, parameters }
+			TLVCursor alg = enter(c, Tag.SEQUENCE);
+			if (alg.next() && alg.getTagByte() == Tag.OBJECTID) {
+				this.hashAlgorithm = new ObjectIdentifier(alg.getValue())
+						.toString();
+			}
+			TLVCursor values = enter(c, Tag.SEQUENCE);
+			byte[][] hashes = new byte[16][];
+			while (values.next()) {
+				TLVCursor dgh = values.getChildren();
+				if (!dgh.next() || dgh.getTagByte() != Tag.INTEGER
+						|| dgh.getLength() != 1) {
+					continue;
+				}
+				int dg = dgh.getBuffer()[dgh.getValueOffset()] & 0xff;
+				if (dgh.next() && dgh.getTagByte() == Tag.OCTETSTRING) {
+					if (dg >= hashes.length) {
+						hashes = Arrays.copyOf(hashes, dg + 1);
+					}
+					hashes[dg] = dgh.getValue();
+				}
+			}
+			this.dgHashes = hashes;
+			this.ldsDecoded = true;
+		} catch (TLVEncodingException e) {
+			throw new IllegalArgumentException("Malformed Security Object: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Method enter.
+	 * @param cursor TLVCursor
+	 * @param tag byte Expected tag of the next element
+	 * @return TLVCursor Over the contents of the next element
+	 * @throws TLVEncodingException
+	 */
+	private static TLVCursor enter(TLVCursor cursor, byte tag)
+			throws TLVEncodingException {
+		if (!cursor.next() || cursor.getTagByte() != tag) {
+			throw new TLVEncodingException("Unexpected encoding of the security object");
+		}
+		return cursor.getChildren();
+	}
+
 	/**
 	 * Method toString.
 	 * @return String
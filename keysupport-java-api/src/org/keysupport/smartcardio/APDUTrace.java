@@ -0,0 +1,56 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.smartcardio;
+
+/**
+ * Holds the APDUTraceSink that the APDUs sent by PIVCard are passed to.
+ * <p>
+ * There is no sink by default. Without a sink, tracing costs a single read of
+ * a field per APDU: no strings are built and nothing is converted to hex.
+ *
+ * @author tejohnson
+ */
+public final class APDUTrace {
+
+	private static volatile APDUTraceSink sink = null;
+
+	private APDUTrace() {
+		// Not instantiated
+	}
+
+	/**
+	 * Method getSink.
+	 * @return APDUTraceSink The sink, or null if tracing is off
+	 */
+	public static APDUTraceSink getSink() {
+		return sink;
+	}
+
+	/**
+	 * Method setSink.
+	 * @param traceSink APDUTraceSink The sink, or null to turn tracing off
+	 */
+	public static void setSink(APDUTraceSink traceSink) {
+		sink = traceSink;
+	}
+
+}
@@ -0,0 +1,244 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.smartcardio;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.keysupport.util.DataUtil;
+
+/**
+ * An APDUTraceSink that keeps the most recent APDUs in a ring buffer, to be
+ * dumped on demand, e.g. when a card fails to authenticate.
+ * <p>
+ * The buffer holds a fixed number of entries, allocated up front, each
+ * holding the first maxBytes of the command and response APDUs, so tracing
+ * does not allocate. Writers take a sequence number from a counter and
+ * claim the entry it maps to with a compare-and-set, without locks. If
+ * the entry is held by a concurrent writer or by dump(), the APDU is
+ * dropped rather than waited for, and counted in getDropped(). Hex strings
+ * are only built by dump().
+ *
+ * @author tejohnson
+ */
+public class APDUTraceBuffer implements APDUTraceSink {
+
+	// Entry stamps other than the sequence number of the APDU held
+	private final static long EMPTY = -1;
+	private final static long BUSY = -2;
+
+	private final Entry[] entries;
+	private final int mask;
+	private final int maxBytes;
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Constructor for APDUTraceBuffer.
+	 * @param capacity int Number of APDUs kept, rounded up to a power of two
+	 * @param maxBytes int Bytes kept of each command and response APDU
+	 */
+	public APDUTraceBuffer(int capacity, int maxBytes) {
+		if (capacity <= 0 || capacity > (1 << 20) || maxBytes < 0) {
+			throw new IllegalArgumentException("capacity=" + capacity
+					+ " maxBytes=" + maxBytes);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.entries = new Entry[size];
+		for (int i = 0; i < size; i++) {
+			this.entries[i] = new Entry(maxBytes);
+		}
+		this.mask = size - 1;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Method trace.
+	 * @see org.keysupport.smartcardio.APDUTraceSink#trace(byte[], int, int,
+	 *      byte[], int, int, int, long)
+	 */
+	@Override
+	public void trace(byte[] command, int commandOffset, int commandLength,
+			byte[] response, int responseOffset, int responseLength, int sw,
+			long nanos) {
+		long seq = this.next.getAndIncrement();
+		Entry e = this.entries[(int) seq & this.mask];
+		long stamp = e.stamp.get();
+		if (stamp == BUSY || stamp > seq || !e.stamp.compareAndSet(stamp, BUSY)) {
+			this.dropped.incrementAndGet();
+			return;
+		}
+		e.time = System.currentTimeMillis();
+		e.nanos = nanos;
+		e.sw = sw;
+		e.commandLength = commandLength;
+		System.arraycopy(command, commandOffset, e.command, 0, Math.min(
+				commandLength, this.maxBytes));
+		e.responseLength = responseLength;
+		System.arraycopy(response, responseOffset, e.response, 0, Math.min(
+				responseLength, this.maxBytes));
+		e.stamp.set(seq);
+	}
+
+	/**
+	 * Method getCount.
+	 * @return long Number of APDUs traced, including those dropped or
+	 *         overwritten
+	 */
+	public long getCount() {
+		return this.next.get();
+	}
+
+	/**
+	 * Method getDropped.
+	 * @return long Number of APDUs dropped because their entry was busy
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.entries.length; i++) {
+			AtomicLong stamp = this.entries[i].stamp;
+			long s = stamp.get();
+			if (s >= 0) {
+				stamp.compareAndSet(s, EMPTY);
+			}
+		}
+	}
+
+	/**
+	 * Method dump.
+	 *
+	 * Prints the APDUs held, oldest first, one per line: the sequence number,
+	 * the time, the time taken by the card, the command, the response and
+	 * the status word. APDUs longer than maxBytes are marked with the length
+	 * of the APDU.
+	 *
+	 * @param out PrintStream
+	 * @return int Number of APDUs printed
+	 */
+	public int dump(PrintStream out) {
+		List<Entry> held = new ArrayList<Entry>();
+		for (int i = 0; i < this.entries.length; i++) {
+			Entry e = this.entries[i];
+			long s = e.stamp.get();
+			if (s < 0 || !e.stamp.compareAndSet(s, BUSY)) {
+				continue;
+			}
+			held.add(e.copy(s));
+			e.stamp.set(s);
+		}
+		Collections.sort(held, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return (a.seq < b.seq) ? -1 : ((a.seq == b.seq) ? 0 : 1);
+			}
+		});
+		SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS");
+		for (Entry e : held) {
+			out.println("#" + e.seq + " " + sdf.format(new Date(e.time)) + " "
+					+ (e.nanos / 1000) + "us C: "
+					+ hex(e.command, e.commandLength) + " R: "
+					+ hex(e.response, e.responseLength) + " SW="
+					+ Integer.toHexString(e.sw));
+		}
+		return held.size();
+	}
+
+	/**
+	 * Method hex.
+	 * @param ba byte[] The bytes kept
+	 * @param length int Length of the APDU
+	 * @return String
+	 */
+	private String hex(byte[] ba, int length) {
+		int kept = Math.min(length, this.maxBytes);
+		String hex = DataUtil.byteArrayToString(Arrays.copyOf(ba, kept));
+		return (kept < length) ? hex + "...(" + length + " bytes)" : hex;
+	}
+
+	/**
+	 * One traced APDU.
+	 */
+	private static class Entry {
+
+		private final AtomicLong stamp = new AtomicLong(EMPTY);
+		private long seq;
+		private long time;
+		private long nanos;
+		private int sw;
+		private final byte[] command;
+		private int commandLength;
+		private final byte[] response;
+		private int responseLength;
+
+		/**
+		 * Constructor for Entry.
+		 * @param maxBytes int
+		 */
+		private Entry(int maxBytes) {
+			this(new byte[maxBytes], new byte[maxBytes]);
+		}
+
+		/**
+		 * Constructor for Entry.
+		 * @param command byte[]
+		 * @param response byte[]
+		 */
+		private Entry(byte[] command, byte[] response) {
+			this.command = command;
+			this.response = response;
+		}
+
+		/**
+		 * Method copy.
+		 * @param seq long The stamp of this entry
+		 * @return Entry
+		 */
+		private Entry copy(long seq) {
+			Entry e = new Entry(this.command.clone(), this.response.clone());
+			e.seq = seq;
+			e.time = this.time;
+			e.nanos = this.nanos;
+			e.sw = this.sw;
+			e.commandLength = this.commandLength;
+			e.responseLength = this.responseLength;
+			return e;
+		}
+
+	}
+
+}
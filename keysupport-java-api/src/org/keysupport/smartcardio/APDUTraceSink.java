@@ -0,0 +1,52 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.smartcardio;
+
+/**
+ * Receives the APDUs exchanged with a card, when set with
+ * APDUTrace.setSink().
+ * <p>
+ * The arrays passed to trace() belong to the caller and are only valid for
+ * the duration of the call, so a sink that keeps the APDUs must copy them. A
+ * sink is called on the thread that sent the command, concurrently for
+ * different cards, so it must be thread safe, and it should not block.
+ *
+ * @author tejohnson
+ */
+public interface APDUTraceSink {
+
+	/**
+	 * Method trace.
+	 * @param command byte[] Holds the command APDU
+	 * @param commandOffset int
+	 * @param commandLength int
+	 * @param response byte[] Holds the response APDU, including SW1 SW2
+	 * @param responseOffset int
+	 * @param responseLength int 0 if the command failed
+	 * @param sw int The status word, or 0 if the command failed
+	 * @param nanos long Time taken by the card to answer
+	 */
+	void trace(byte[] command, int commandOffset, int commandLength,
+			byte[] response, int responseOffset, int responseLength, int sw,
+			long nanos);
+
+}
@@ -0,0 +1,303 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.smartcardio;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.TerminalFactory;
+
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.nist80073.PIVCard;
+
+/**
+ * Services every card reader on the host, each with its own worker thread.
+ * <p>
+ * Each reader attached when start() or refresh() is called gets a dedicated
+ * single thread executor, which waits for a card, connects to it, selects
+ * the PIV application and passes the PIVCard to the Listener. When the
+ * Listener returns, the card is disconnected and the worker waits for the
+ * card to be removed before waiting for the next one. A slow card or reader
+ * therefore only delays its own reader, and throughput grows with the number
+ * of readers.
+ * <p>
+ * The Listener is called from the worker threads, concurrently for
+ * different readers, so it must be thread safe. To consume sessions from a
+ * single thread, have the Listener put the work on a queue and block until it
+ * has been processed; the card is only valid until the Listener returns.
+ * <p>
+ * The service does not change the smart card provider's configuration.
+ * PIVCard works whether or not the provider sends GET RESPONSE itself, but
+ * reuses its buffers when it does not; with the Sun provider, start the JVM
+ * with -Dsun.security.smartcardio.t0GetResponse=false and
+ * -Dsun.security.smartcardio.t1GetResponse=false.
+ *
+ * @author tejohnson
+ */
+public class CardTerminalService {
+
+	private final static boolean debug = false;
+
+	/**
+	 * Receives the cards presented to the serviced readers.
+	 */
+	public interface Listener {
+
+		/**
+		 * Method cardPresented.
+		 *
+		 * Called on the reader's worker thread. The card is disconnected
+		 * when this method returns.
+		 *
+		 * @param terminal javax.smartcardio.CardTerminal
+		 * @param card PIVCard
+		 * @throws Exception
+		 */
+		void cardPresented(javax.smartcardio.CardTerminal terminal,
+				PIVCard card) throws Exception;
+
+		/**
+		 * Method error.
+		 *
+		 * Called on the reader's worker thread when a card could not be
+		 * connected or the Listener threw an exception. The worker keeps
+		 * servicing the reader.
+		 *
+		 * @param terminal javax.smartcardio.CardTerminal
+		 * @param e CardTerminalException
+		 */
+		void error(javax.smartcardio.CardTerminal terminal,
+				CardTerminalException e);
+	}
+
+	// Milliseconds to wait for a card change before checking for stop()
+	private final static long POLL_INTERVAL = 500;
+
+	private final TerminalFactory factory;
+	private final Listener listener;
+	private final Map<String, ExecutorService> workers = new LinkedHashMap<String, ExecutorService>();
+	private volatile boolean running = false;
+
+	/**
+	 * Constructor for CardTerminalService.
+	 * @param listener Listener
+	 */
+	public CardTerminalService(Listener listener) {
+		this(TerminalFactory.getDefault(), listener);
+	}
+
+	/**
+	 * Constructor for CardTerminalService.
+	 * @param factory TerminalFactory
+	 * @param listener Listener
+	 */
+	public CardTerminalService(TerminalFactory factory, Listener listener) {
+		this.factory = factory;
+		this.listener = listener;
+	}
+
+	/**
+	 * Method start.
+	 *
+	 * Starts a worker for every reader currently attached.
+	 *
+	 * @throws CardTerminalException
+	 */
+	public synchronized void start() throws CardTerminalException {
+		this.running = true;
+		refresh();
+	}
+
+	/**
+	 * Method refresh.
+	 *
+	 * Starts a worker for each reader attached since the last call. Workers
+	 * for readers that have been removed stop on their own.
+	 *
+	 * @return int Number of workers started
+	 * @throws CardTerminalException
+	 */
+	public synchronized int refresh() throws CardTerminalException {
+		if (!this.running) {
+			throw new CardTerminalException("Service is not running");
+		}
+		List<javax.smartcardio.CardTerminal> terminals;
+		try {
+			terminals = this.factory.terminals().list();
+		} catch (CardException e) {
+			throw new CardTerminalException(e);
+		}
+		int started = 0;
+		for (final javax.smartcardio.CardTerminal terminal : terminals) {
+			final String name = terminal.getName();
+			ExecutorService worker = this.workers.get(name);
+			if (worker != null && !worker.isTerminated()) {
+				continue;
+			}
+			worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "CardTerminalService: " + name);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			worker.execute(new Runnable() {
+				@Override
+				public void run() {
+					service(terminal);
+				}
+			});
+			// No further tasks; the executor terminates when the worker ends
+			worker.shutdown();
+			this.workers.put(name, worker);
+			started++;
+			if (debug) {
+				System.out.println("Servicing: " + name);
+			}
+		}
+		return started;
+	}
+
+	/**
+	 * Method stop.
+	 *
+	 * Stops the workers, waiting for Listener calls in progress to return.
+	 *
+	 * @param timeout long Milliseconds to wait for the workers
+	 * @return boolean True if all workers stopped within the timeout
+	 * @throws InterruptedException
+	 */
+	public boolean stop(long timeout) throws InterruptedException {
+		List<ExecutorService> stopping;
+		synchronized (this) {
+			this.running = false;
+			stopping = new ArrayList<ExecutorService>(this.workers.values());
+			this.workers.clear();
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		boolean stopped = true;
+		for (ExecutorService worker : stopping) {
+			long remaining = Math.max(0, deadline - System.currentTimeMillis());
+			stopped &= worker.awaitTermination(remaining, TimeUnit.MILLISECONDS);
+		}
+		return stopped;
+	}
+
+	/**
+	 * Method isRunning.
+	 * @return boolean
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Method getTerminalNames.
+	 * @return List<String> Names of the readers with an active worker
+	 */
+	public synchronized List<String> getTerminalNames() {
+		List<String> names = new ArrayList<String>();
+		for (Map.Entry<String, ExecutorService> e : this.workers.entrySet()) {
+			if (!e.getValue().isTerminated()) {
+				names.add(e.getKey());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Method service.
+	 *
+	 * The worker loop for one reader.
+	 *
+	 * @param terminal javax.smartcardio.CardTerminal
+	 */
+	private void service(javax.smartcardio.CardTerminal terminal) {
+		while (this.running) {
+			try {
+				if (!terminal.waitForCardPresent(POLL_INTERVAL)) {
+					continue;
+				}
+			} catch (CardException e) {
+				// The reader has most likely been removed
+				if (debug) {
+					System.out.println(terminal.getName() + ": " + e.getMessage());
+				}
+				return;
+			}
+			present(terminal);
+			try {
+				while (this.running
+						&& !terminal.waitForCardAbsent(POLL_INTERVAL)) {
+					// Wait for the card to be removed
+				}
+			} catch (CardException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Method present.
+	 *
+	 * Connects to the card in the reader and passes it to the Listener.
+	 *
+	 * @param terminal javax.smartcardio.CardTerminal
+	 */
+	private void present(javax.smartcardio.CardTerminal terminal) {
+		Card card = null;
+		PIVCard pivCard = null;
+		try {
+			card = terminal.connect("*");
+			pivCard = new PIVCard(card);
+			this.listener.cardPresented(terminal, pivCard);
+		} catch (Exception e) {
+			this.listener.error(terminal, new CardTerminalException(e));
+		} catch (TLVEncodingException e) {
+			this.listener.error(terminal, new CardTerminalException(e));
+		} finally {
+			if (card != null) {
+				try {
+					// Through the PIVCard, so that the session is recorded
+					if (pivCard != null) {
+						pivCard.disconnect(false);
+					} else {
+						card.disconnect(false);
+					}
+				} catch (CardException e) {
+					if (debug) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,842 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.smartcardio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+import org.keysupport.encoding.TLVWriter;
+import org.keysupport.encoding.Tag;
+import org.keysupport.keystore.CipherEngine;
+import org.keysupport.nist80073.cardedge.PIVAPDUInterface;
+import org.keysupport.util.DataUtil;
+
+/**
+ * A PIV card simulated in memory, so that the host side can be run and
+ * measured without a reader or card.
+ * <p>
+ * The card answers the commands PIVCard sends:
+ * <ul>
+ * <li>SELECT of the PIV application, returning the application property
+ * template;</li>
+ * <li>GET DATA and PUT DATA, with command chaining, and with responses longer
+ * than Le returned in parts with 61xx and GET RESPONSE;</li>
+ * <li>VERIFY of the PIV application PIN, with a retry counter;</li>
+ * <li>GENERAL AUTHENTICATE, signing challenges with the RSA or EC private key
+ * set for a key reference, and authenticating the host with the 3DES card
+ * management key.</li>
+ * </ul>
+ * The objects that 800-73 protects with the PIN, the keys other than the Card
+ * Authentication Key, and PUT DATA require the PIN or the card management key
+ * as on a card.
+ * <p>
+ * As a card does, the card returns 61xx and leaves the host to send GET
+ * RESPONSE. It may instead be made to send GET RESPONSE on the host's behalf
+ * and return the joined response, as the Sun provider does unless
+ * sun.security.smartcardio.t1GetResponse is "false"; no system property is
+ * read. Each APDU may be delayed to model the time a card and reader take.
+ * The card may be used again after disconnect(), as the same card presented
+ * again; disconnect(true) also resets the security status. Commands are
+ * processed one at a time.
+ *
+ * @author tejohnson
+ */
+public class SimulatedCard extends Card {
+
+	private final static boolean debug = false;
+
+	private final static int INS_SELECT = 0xa4;
+	private final static int INS_GET_DATA = 0xcb;
+	private final static int INS_PUT_DATA = 0xdb;
+	private final static int INS_VERIFY = 0x20;
+	private final static int INS_GENERAL_AUTHENTICATE = 0x87;
+	private final static int INS_GET_RESPONSE = 0xc0;
+
+	private final static int SW_WRONG_LENGTH = 0x6700;
+	private final static int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+	private final static int SW_INS_NOT_SUPPORTED = 0x6d00;
+	private final static int SW_CLA_NOT_SUPPORTED = 0x6e00;
+
+	// Objects that can only be read after the PIN is verified
+	private final static byte[][] PIN_PROTECTED = {
+			Tag.PIV_CARDHOLDER_FINGERPRINTS, Tag.PIV_CARDHOLDER_FACIAL_IMAGE,
+			Tag.PIV_PRINTED_INFORMATION, Tag.PIV_CARDHOLDER_IRIS_IMAGES };
+
+	private final static int PIN_LENGTH = 8;
+
+	private final ATR atr;
+	private final boolean getResponse;
+	private final CardChannel channel = new Channel();
+	private final SecureRandom random = new SecureRandom();
+
+	// Complete responses to GET DATA, by tag
+	private final HashMap<Tag, byte[]> objects = new HashMap<Tag, byte[]>();
+	private final HashMap<Byte, PrivateKey> keys = new HashMap<Byte, PrivateKey>();
+	private SecretKey managementKey;
+	private byte[] pin;
+	private int maxTries = 0;
+	private int tries = 0;
+	private long latency = 0;
+	private long commands = 0;
+
+	// Security status
+	private boolean pinVerified = false;
+	private boolean adminAuthenticated = false;
+	private byte[] adminChallenge;
+
+	// Data of the chained commands received so far, and their INS
+	private final ByteArrayOutputStream chain = new ByteArrayOutputStream();
+	private int chainIns = -1;
+
+	// Response data not yet returned, from offset
+	private byte[] remaining;
+	private int offset;
+
+	/**
+	 * Constructor for SimulatedCard.
+	 *
+	 * The card's ATR advertises extended length APDUs if extendedLength is
+	 * true, so PIVCard uses them. Responses longer than Le are returned in
+	 * parts with 61xx.
+	 *
+	 * @param extendedLength boolean
+	 */
+	public SimulatedCard(boolean extendedLength) {
+		this(extendedLength, false);
+	}
+
+	/**
+	 * Constructor for SimulatedCard.
+	 *
+	 * If getResponse is true, GET RESPONSE is sent on the host's behalf
+	 * until the response is complete, as the Sun provider does, and the
+	 * joined response is returned.
+	 *
+	 * @param extendedLength boolean
+	 * @param getResponse boolean
+	 */
+	public SimulatedCard(boolean extendedLength, boolean getResponse) {
+		this.getResponse = getResponse;
+		/*
+		 * T=1, with historical bytes holding the card capabilities (7816-4,
+		 * 8.1.1.2.7). Bit 0x40 of the third byte is extended Lc and Le.
+		 */
+		byte[] b = { 0x3b, (byte) 0x85, (byte) 0x80, 0x01, (byte) 0x80,
+				0x73, (byte) 0xc0, 0x21, (byte) (extendedLength ? 0xc0 : 0x80),
+				0x00 };
+		for (int i = 1; i < b.length - 1; i++) {
+			b[b.length - 1] ^= b[i];
+		}
+		this.atr = new ATR(b);
+	}
+
+	/**
+	 * Method putObject.
+	 *
+	 * Stores a data object, replacing any with the same tag.
+	 *
+	 * @param tag Tag The object's tag, e.g. Tag.PIV_CHUID
+	 * @param data byte[] The object's value, without the 0x53 template
+	 */
+	public synchronized void putObject(Tag tag, byte[] data) {
+		byte[] t = tag.getBytes();
+		// The discovery object is returned in its own template
+		byte template = (t.length == 1 && t[0] == Tag.PIV_DISCOVERY_OBJECT) ? Tag.PIV_DISCOVERY_OBJECT
+				: Tag.PIV_DATA;
+		byte[] encoded = new byte[TLVWriter.sizeOf(template, data)];
+		new TLVWriter(encoded).put(template, data).finish();
+		this.objects.put(tag, encoded);
+	}
+
+	/**
+	 * Method putCertificate.
+	 *
+	 * Stores a certificate object holding the uncompressed certificate.
+	 *
+	 * @param tag Tag The object's tag, e.g. Tag.PIV_CERT_CARDAUTH
+	 * @param cert X509Certificate
+	 * @throws CertificateEncodingException
+	 */
+	public void putCertificate(Tag tag, X509Certificate cert)
+			throws CertificateEncodingException {
+		byte[] der = cert.getEncoded();
+		byte[] certInfo = { 0x00 };
+		byte[] data = new byte[TLVWriter.sizeOf(Tag.PIV_CERT_CERTIFICATE, der)
+				+ TLVWriter.sizeOf(Tag.PIV_CERT_CERTINFO, certInfo)
+				+ TLVWriter.sizeOf(Tag.ERROR_DETECT_CODE, null)];
+		new TLVWriter(data).put(Tag.PIV_CERT_CERTIFICATE, der)
+				.put(Tag.PIV_CERT_CERTINFO, certInfo)
+				.put(Tag.ERROR_DETECT_CODE, null).finish();
+		putObject(tag, data);
+	}
+
+	/**
+	 * Method removeObject.
+	 * @param tag Tag
+	 */
+	public synchronized void removeObject(Tag tag) {
+		this.objects.remove(tag);
+	}
+
+	/**
+	 * Method setKey.
+	 *
+	 * Sets the private key GENERAL AUTHENTICATE signs with for a key
+	 * reference, e.g. CipherEngine.CARD_AUTH_KEY. RSA 1024 and 2048, and EC
+	 * P-256 and P-384 keys are supported.
+	 *
+	 * @param keyRef byte
+	 * @param key PrivateKey, or null to remove the key
+	 */
+	public synchronized void setKey(byte keyRef, PrivateKey key) {
+		if (key == null) {
+			this.keys.remove(keyRef);
+		} else {
+			this.keys.put(keyRef, key);
+		}
+	}
+
+	/**
+	 * Method setManagementKey.
+	 * @param key SecretKey 3DES card management key, or null
+	 */
+	public synchronized void setManagementKey(SecretKey key) {
+		this.managementKey = key;
+	}
+
+	/**
+	 * Method setPIN.
+	 * @param pin byte[] Up to 8 bytes, padded with 0xFF
+	 * @param tries int Number of wrong PINs before the PIN is blocked
+	 */
+	public synchronized void setPIN(byte[] pin, int tries) {
+		if (pin.length > PIN_LENGTH || tries <= 0 || tries > 15) {
+			throw new IllegalArgumentException("PIN length=" + pin.length
+					+ " tries=" + tries);
+		}
+		this.pin = pad(pin);
+		this.maxTries = tries;
+		this.tries = tries;
+		this.pinVerified = false;
+	}
+
+	/**
+	 * Method setLatency.
+	 * @param latency long Microseconds added to each APDU
+	 */
+	public synchronized void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Method getCommands.
+	 * @return long Number of APDUs received, including GET RESPONSE
+	 */
+	public synchronized long getCommands() {
+		return this.commands;
+	}
+
+	/**
+	 * Method getATR.
+	 * @return ATR
+	 */
+	@Override
+	public ATR getATR() {
+		return this.atr;
+	}
+
+	/**
+	 * Method getProtocol.
+	 * @return String
+	 */
+	@Override
+	public String getProtocol() {
+		return "T=1";
+	}
+
+	/**
+	 * Method getBasicChannel.
+	 * @return CardChannel
+	 */
+	@Override
+	public CardChannel getBasicChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * Method openLogicalChannel.
+	 * @return CardChannel
+	 * @throws CardException
+	 */
+	@Override
+	public CardChannel openLogicalChannel() throws CardException {
+		throw new CardException("Logical channels are not supported");
+	}
+
+	/**
+	 * Method beginExclusive.
+	 */
+	@Override
+	public void beginExclusive() {
+		// Only one connection
+	}
+
+	/**
+	 * Method endExclusive.
+	 */
+	@Override
+	public void endExclusive() {
+		// Only one connection
+	}
+
+	/**
+	 * Method transmitControlCommand.
+	 * @param controlCode int
+	 * @param command byte[]
+	 * @return byte[]
+	 * @throws CardException
+	 */
+	@Override
+	public byte[] transmitControlCommand(int controlCode, byte[] command)
+			throws CardException {
+		throw new CardException("Control commands are not supported");
+	}
+
+	/**
+	 * Method disconnect.
+	 * @param reset boolean True to reset the security status
+	 */
+	@Override
+	public synchronized void disconnect(boolean reset) {
+		this.chain.reset();
+		this.chainIns = -1;
+		this.remaining = null;
+		if (reset) {
+			this.pinVerified = false;
+			this.adminAuthenticated = false;
+			this.adminChallenge = null;
+		}
+	}
+
+	/**
+	 * Method transmit.
+	 *
+	 * Processes a command, and if getResponse is set, the GET RESPONSE
+	 * commands the Sun provider would send.
+	 *
+	 * @param command byte[]
+	 * @return byte[] The response, including SW1 SW2
+	 */
+	private byte[] transmit(byte[] command) {
+		byte[] response = process(command);
+		if (!this.getResponse || response[response.length - 2] != 0x61) {
+			return response;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] getResponse = { 0x00, (byte) INS_GET_RESPONSE, 0x00, 0x00, 0x00 };
+		while (response[response.length - 2] == 0x61) {
+			baos.write(response, 0, response.length - 2);
+			getResponse[4] = response[response.length - 1];
+			response = process(getResponse);
+		}
+		baos.write(response, 0, response.length);
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Method process.
+	 * @param command byte[]
+	 * @return byte[] The response, including SW1 SW2
+	 */
+	private synchronized byte[] process(byte[] command) {
+		this.commands++;
+		if (this.latency > 0) {
+			LockSupport.parkNanos(this.latency * 1000);
+		}
+		if (debug) {
+			System.out.println("SimulatedCard: Command APDU: "
+					+ DataUtil.byteArrayToString(command));
+		}
+		CommandAPDU apdu;
+		try {
+			apdu = new CommandAPDU(command);
+		} catch (IllegalArgumentException e) {
+			return status(SW_WRONG_LENGTH);
+		}
+		int cla = apdu.getCLA();
+		int ins = apdu.getINS();
+		if (ins != INS_GET_RESPONSE) {
+			this.remaining = null;
+		}
+		if ((cla & ~0x10) != 0) {
+			return status(SW_CLA_NOT_SUPPORTED);
+		}
+		byte[] data = apdu.getData();
+		if (this.chainIns >= 0 && this.chainIns != ins) {
+			// A chain must end with the command that started it
+			this.chain.reset();
+			this.chainIns = -1;
+		}
+		if ((cla & 0x10) != 0) {
+			this.chain.write(data, 0, data.length);
+			this.chainIns = ins;
+			return status(PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION);
+		}
+		if (this.chainIns >= 0) {
+			this.chain.write(data, 0, data.length);
+			data = this.chain.toByteArray();
+			this.chain.reset();
+			this.chainIns = -1;
+		}
+		int ne = (apdu.getNe() == 0) ? 256 : apdu.getNe();
+		byte[] response;
+		try {
+			switch (ins) {
+			case INS_SELECT:
+				response = select(apdu.getP1(), data);
+				break;
+			case INS_GET_DATA:
+				response = getData(data);
+				break;
+			case INS_PUT_DATA:
+				response = putData(data);
+				break;
+			case INS_VERIFY:
+				response = verify(apdu.getP1(), apdu.getP2(), data);
+				break;
+			case INS_GENERAL_AUTHENTICATE:
+				response = generalAuthenticate(apdu.getP1(), apdu.getP2(),
+						data);
+				break;
+			case INS_GET_RESPONSE:
+				return getResponse(ne);
+			default:
+				return status(SW_INS_NOT_SUPPORTED);
+			}
+		} catch (TLVEncodingException e) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		} catch (GeneralSecurityException e) {
+			if (debug) {
+				e.printStackTrace();
+			}
+			return status(SW_CONDITIONS_NOT_SATISFIED);
+		}
+		if (response.length == 2) {
+			return response;
+		}
+		// Keep the data, without SW1 SW2, for getResponse() to return
+		this.remaining = Arrays.copyOf(response, response.length - 2);
+		this.offset = 0;
+		return getResponse(ne);
+	}
+
+	/**
+	 * Method getResponse.
+	 *
+	 * Returns up to ne bytes of the remaining response data, with 61xx if
+	 * more remains.
+	 *
+	 * @param ne int
+	 * @return byte[]
+	 */
+	private byte[] getResponse(int ne) {
+		if (this.remaining == null) {
+			return status(SW_CONDITIONS_NOT_SATISFIED);
+		}
+		int left = this.remaining.length - this.offset;
+		int n = Math.min(ne, left);
+		byte[] response = Arrays.copyOfRange(this.remaining, this.offset,
+				this.offset + n + 2);
+		this.offset += n;
+		left -= n;
+		if (left == 0) {
+			this.remaining = null;
+			response[n] = (byte) 0x90;
+			response[n + 1] = 0x00;
+		} else {
+			// 0x00 means 256 or more
+			response[n] = 0x61;
+			response[n + 1] = (byte) Math.min(left, 256);
+		}
+		return response;
+	}
+
+	/**
+	 * Method select.
+	 * @param p1 int
+	 * @param aid byte[]
+	 * @return byte[] The application property template, or a status word
+	 */
+	private byte[] select(int p1, byte[] aid) {
+		byte[] pivAID = PIVAPDUInterface.PIV_AID;
+		if (p1 != 0x04 || aid.length < 5 || aid.length > pivAID.length
+				|| !Arrays.equals(aid, Arrays.copyOf(pivAID, aid.length))) {
+			return status(PIVAPDUInterface.PIV_SW_OBJECT_OR_APPLICATION_NOT_FOUND);
+		}
+		byte[] pix = Arrays.copyOfRange(pivAID, 5, pivAID.length);
+		byte[] rid = Arrays.copyOf(pivAID, 5);
+		byte[] label = "Simulated PIV".getBytes();
+		byte[] apt = new byte[512];
+		TLVWriter writer = new TLVWriter(apt);
+		writer.begin((byte) 0x61).put(Tag.PIV_APP_AID, pix)
+				.begin(Tag.PIV_APP_TAG_ALLOC).put(Tag.PIV_APP_AID, rid).end()
+				.put(Tag.PIV_APP_DESC, label).end();
+		return withStatus(apt, writer.finish());
+	}
+
+	/**
+	 * Method getData.
+	 * @param data byte[] The tag list
+	 * @return byte[]
+	 * @throws TLVEncodingException
+	 */
+	private byte[] getData(byte[] data) throws TLVEncodingException {
+		TLVCursor cursor = new TLVCursor(data);
+		if (!cursor.next() || !cursor.tagEquals(Tag.PIV_TAGLIST)) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		byte[] tag = cursor.getValue();
+		byte[] object = this.objects.get(new Tag(tag));
+		if (object == null) {
+			return status(PIVAPDUInterface.PIV_SW_OBJECT_OR_APPLICATION_NOT_FOUND);
+		}
+		if (!this.pinVerified) {
+			for (byte[] protectedTag : PIN_PROTECTED) {
+				if (Arrays.equals(tag, protectedTag)) {
+					return status(PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED);
+				}
+			}
+		}
+		return withStatus(object, object.length);
+	}
+
+	/**
+	 * Method putData.
+	 *
+	 * Stores the object, or removes it if its value is empty.
+	 *
+	 * @param data byte[] The tag list and the object
+	 * @return byte[]
+	 * @throws TLVEncodingException
+	 */
+	private byte[] putData(byte[] data) throws TLVEncodingException {
+		if (!this.adminAuthenticated) {
+			return status(PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED);
+		}
+		TLVCursor cursor = new TLVCursor(data);
+		if (!cursor.next() || !cursor.tagEquals(Tag.PIV_TAGLIST)) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		Tag tag = new Tag(cursor.getValue());
+		if (!cursor.next()) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		if (cursor.getLength() == 0) {
+			this.objects.remove(tag);
+		} else {
+			this.objects.put(tag, cursor.getBytes());
+		}
+		return status(PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION);
+	}
+
+	/**
+	 * Method verify.
+	 * @param p1 int 0xFF to reset the PIN's security status
+	 * @param p2 int The key reference
+	 * @param data byte[] The PIN, or empty to read the status
+	 * @return byte[]
+	 */
+	private byte[] verify(int p1, int p2, byte[] data) {
+		if ((byte) p2 != Tag.PIV_APPLICATION_PIN
+				&& (byte) p2 != Tag.PIV_GLOBAL_PIN) {
+			return status(PIVAPDUInterface.PIV_SW_REFERENCE_DATA_NOT_FOUND);
+		}
+		if (this.pin == null) {
+			return status(PIVAPDUInterface.PIV_SW_REFERENCE_DATA_NOT_FOUND);
+		}
+		if (p1 == 0xff) {
+			this.pinVerified = false;
+			return status(PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION);
+		}
+		if (this.tries == 0) {
+			return status(PIVAPDUInterface.PIV_SW_AUTHENTICATION_METHOD_BLOCKED);
+		}
+		if (data.length == 0) {
+			return status(this.pinVerified ? PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION
+					: 0x63c0 | this.tries);
+		}
+		if (data.length > PIN_LENGTH) {
+			return status(SW_WRONG_LENGTH);
+		}
+		if (MessageDigest.isEqual(pad(data), this.pin)) {
+			this.tries = this.maxTries;
+			this.pinVerified = true;
+			return status(PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION);
+		}
+		this.pinVerified = false;
+		this.tries--;
+		return status((this.tries == 0) ? PIVAPDUInterface.PIV_SW_AUTHENTICATION_METHOD_BLOCKED
+				: 0x63c0 | this.tries);
+	}
+
+	/**
+	 * Method generalAuthenticate.
+	 * @param p1 int The algorithm reference
+	 * @param p2 int The key reference
+	 * @param data byte[] The dynamic authentication template
+	 * @return byte[]
+	 * @throws TLVEncodingException
+	 * @throws GeneralSecurityException
+	 */
+	private byte[] generalAuthenticate(int p1, int p2, byte[] data)
+			throws TLVEncodingException, GeneralSecurityException {
+		TLVCursor cursor = new TLVCursor(data);
+		if (!cursor.next() || !cursor.tagEquals(Tag.PIV_DAT)) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		byte[] challenge = null;
+		byte[] response = null;
+		TLVCursor children = cursor.getChildren();
+		while (children.next()) {
+			if (children.tagEquals(Tag.PIV_DAT_CHALLENGE)) {
+				challenge = children.getValue();
+			} else if (children.tagEquals(Tag.PIV_DAT_RESPONSE)) {
+				response = children.getValue();
+			}
+		}
+		if ((byte) p2 == CipherEngine.CARD_MGMT_KEY) {
+			return authenticateAdmin((byte) p1, challenge, response);
+		}
+		PrivateKey key = this.keys.get((byte) p2);
+		if (key == null) {
+			return status(PIVAPDUInterface.PIV_SW_REFERENCE_DATA_NOT_FOUND);
+		}
+		if ((byte) p2 != CipherEngine.CARD_AUTH_KEY && !this.pinVerified) {
+			return status(PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED);
+		}
+		if (challenge == null || response == null || response.length != 0) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		byte[] signature;
+		if (key instanceof RSAPrivateKey) {
+			int size = (((RSAPrivateKey) key).getModulus().bitLength() + 7) / 8;
+			if (!((byte) p1 == CipherEngine.RSA_1024 && size == 128)
+					&& !((byte) p1 == CipherEngine.RSA_2048 && size == 256)) {
+				return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER_P1_P2);
+			}
+			if (challenge.length != size) {
+				return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+			}
+			// The challenge is already padded; the card applies the key only
+			Cipher cipher = Cipher.getInstance("RSA/ECB/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, key);
+			signature = cipher.doFinal(challenge);
+		} else if (key instanceof ECPrivateKey) {
+			int size = ((ECPrivateKey) key).getParams().getCurve().getField()
+					.getFieldSize();
+			if (!((byte) p1 == CipherEngine.ECC_CURVE_P256 && size == 256)
+					&& !((byte) p1 == CipherEngine.ECC_CURVE_P384 && size == 384)) {
+				return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER_P1_P2);
+			}
+			// The challenge is the hash to be signed
+			Signature ecdsa = Signature.getInstance("NONEwithECDSA");
+			ecdsa.initSign(key);
+			ecdsa.update(challenge);
+			signature = ecdsa.sign();
+		} else {
+			return status(PIVAPDUInterface.PIV_SW_FUNCTION_NOT_SUPPORTED);
+		}
+		return template(Tag.PIV_DAT_RESPONSE, signature);
+	}
+
+	/**
+	 * Method authenticateAdmin.
+	 *
+	 * Returns a challenge when an empty challenge is requested, and checks
+	 * the host's encryption of it when a response is given.
+	 *
+	 * @param alg byte
+	 * @param challenge byte[]
+	 * @param response byte[]
+	 * @return byte[]
+	 */
+	private byte[] authenticateAdmin(byte alg, byte[] challenge,
+			byte[] response) {
+		if (this.managementKey == null) {
+			return status(PIVAPDUInterface.PIV_SW_REFERENCE_DATA_NOT_FOUND);
+		}
+		if (alg != CipherEngine.THREE_KEY_3DES_ECB && alg != 0x03) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER_P1_P2);
+		}
+		if (challenge != null && challenge.length == 0) {
+			this.adminAuthenticated = false;
+			this.adminChallenge = new byte[8];
+			this.random.nextBytes(this.adminChallenge);
+			return template(Tag.PIV_DAT_CHALLENGE, this.adminChallenge);
+		}
+		if (response == null || this.adminChallenge == null) {
+			return status(PIVAPDUInterface.PIV_SW_INCORRECT_PARAMETER);
+		}
+		byte[] expected = CipherEngine.TDES198ECB(this.adminChallenge,
+				this.managementKey, CipherEngine.ENCRYPT_MODE);
+		this.adminChallenge = null;
+		this.adminAuthenticated = expected != null
+				&& MessageDigest.isEqual(expected, response);
+		return status(this.adminAuthenticated ? PIVAPDUInterface.PIV_SW_SUCCESSFUL_EXECUTION
+				: PIVAPDUInterface.PIV_SW_SECURITY_CONDITION_NOT_SATISFIED);
+	}
+
+	/**
+	 * Method template.
+	 * @param tag byte
+	 * @param value byte[]
+	 * @return byte[] A dynamic authentication template holding the value,
+	 *         with 9000
+	 */
+	private static byte[] template(byte tag, byte[] value) {
+		byte[] encoded = new byte[TLVWriter.sizeOf(1,
+				TLVWriter.sizeOf(tag, value))];
+		TLVWriter writer = new TLVWriter(encoded);
+		writer.begin(Tag.PIV_DAT).put(tag, value).end();
+		return withStatus(encoded, writer.finish());
+	}
+
+	/**
+	 * Method withStatus.
+	 * @param data byte[]
+	 * @param length int Length of the data
+	 * @return byte[] The data followed by 9000
+	 */
+	private static byte[] withStatus(byte[] data, int length) {
+		byte[] response = Arrays.copyOf(data, length + 2);
+		response[length] = (byte) 0x90;
+		response[length + 1] = 0x00;
+		return response;
+	}
+
+	/**
+	 * Method status.
+	 * @param sw int
+	 * @return byte[]
+	 */
+	private static byte[] status(int sw) {
+		return new byte[] { (byte) (sw >> 8), (byte) sw };
+	}
+
+	/**
+	 * Method pad.
+	 * @param pin byte[]
+	 * @return byte[] The PIN padded to 8 bytes with 0xFF
+	 */
+	private static byte[] pad(byte[] pin) {
+		byte[] padded = Arrays.copyOf(pin, PIN_LENGTH);
+		Arrays.fill(padded, pin.length, PIN_LENGTH, (byte) 0xff);
+		return padded;
+	}
+
+	/**
+	 * The basic channel of the card.
+	 */
+	private class Channel extends CardChannel {
+
+		/**
+		 * Method getCard.
+		 * @return Card
+		 */
+		@Override
+		public Card getCard() {
+			return SimulatedCard.this;
+		}
+
+		/**
+		 * Method getChannelNumber.
+		 * @return int
+		 */
+		@Override
+		public int getChannelNumber() {
+			return 0;
+		}
+
+		/**
+		 * Method transmit.
+		 * @param command CommandAPDU
+		 * @return ResponseAPDU
+		 */
+		@Override
+		public ResponseAPDU transmit(CommandAPDU command) {
+			return new ResponseAPDU(SimulatedCard.this.transmit(command
+					.getBytes()));
+		}
+
+		/**
+		 * Method transmit.
+		 * @param command ByteBuffer
+		 * @param response ByteBuffer
+		 * @return int Number of bytes written to response
+		 */
+		@Override
+		public int transmit(ByteBuffer command, ByteBuffer response) {
+			byte[] c = new byte[command.remaining()];
+			command.get(c);
+			byte[] r = SimulatedCard.this.transmit(c);
+			if (response.remaining() < r.length) {
+				throw new IllegalArgumentException(
+						"Insufficient space in response buffer");
+			}
+			response.put(r);
+			return r.length;
+		}
+
+		/**
+		 * Method close.
+		 */
+		@Override
+		public void close() {
+			throw new IllegalStateException("Cannot close basic channel");
+		}
+
+	}
+
+}
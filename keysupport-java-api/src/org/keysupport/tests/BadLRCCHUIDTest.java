@@ -0,0 +1,115 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.UUID;
+
+import org.keysupport.nist80073.datamodel.FASCN;
+import org.keysupport.nist80073.datamodel.PIVCardHolderUniqueID;
+import org.keysupport.util.DataUtil;
+
+/**
+ * Decodes CHUIDs whose FASC-N has a bad LRC, or a character with even
+ * parity, and prints them.
+ * <p>
+ * A FASC-N with a bad LRC is decoded, isValidLRC() returns false, and
+ * toString() prints the fields with a note about the LRC, while
+ * FASCN.toLong() rejects it. A FASC-N that cannot be decoded is printed as
+ * invalid rather than failing toString().
+ *
+ * @author tejohnson
+ */
+public class BadLRCCHUIDTest {
+
+	/**
+	 * Method main.
+	 * @param args String[]
+	 */
+	public static void main(String args[]) {
+		try {
+			FASCN fascn = new FASCN("9999", "9999", "999999", "0", "1",
+					"0000000001", "1", "9999", "1");
+			Calendar expirydate = Calendar.getInstance();
+			expirydate.set(Calendar.MILLISECOND, 0);
+			expirydate.add(Calendar.YEAR, 5);
+			byte[] guid = DataUtil.uuidToByteArray(UUID
+					.fromString("d18b1e0d-3938-4601-9f5f-b9a6d0442e4d"));
+			PIVCardHolderUniqueID chuid = new PIVCardHolderUniqueID(fascn,
+					null, null, null, guid, DataUtil.dateToString(expirydate
+							.getTime()));
+
+			// The LRC is the low 5 bits of the last byte. Flipping two of
+			// them keeps odd parity, so only the LRC check fails.
+			byte[] badLRC = fascn.toByteArray().clone();
+			badLRC[FASCN.LENGTH - 1] ^= 0x03;
+			chuid.setFASCN(badLRC);
+			PIVCardHolderUniqueID decoded = new PIVCardHolderUniqueID(chuid
+					.getBytes());
+			FASCN bad = decoded.getFASCN();
+			check("Valid LRC accepted", fascn.isValidLRC());
+			check("Bad LRC reported", !bad.isValidLRC());
+			check("Fields of a bad LRC decoded", bad.getAgencyCode().equals(
+					"9999")
+					&& bad.getPersonIdentifier().equals("0000000001"));
+			check("Bad LRC rejected by toLong", rejected(badLRC));
+			System.out.println(decoded.toString());
+
+			// Flipping one bit gives a character with even parity
+			byte[] badParity = fascn.toByteArray().clone();
+			badParity[FASCN.LENGTH - 1] ^= 0x01;
+			chuid.setFASCN(badParity);
+			decoded = new PIVCardHolderUniqueID(chuid.getBytes());
+			String s = decoded.toString();
+			check("Even parity printed as invalid", s
+					.contains("FASC-N:\t\t\t\t\tInvalid"));
+			System.out.println(s);
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method rejected.
+	 * @param ba byte[]
+	 * @return boolean Whether FASCN.toLong() rejects ba
+	 */
+	private static boolean rejected(byte[] ba) {
+		try {
+			FASCN.toLong(ba, 0);
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Method check.
+	 * @param name String
+	 * @param passed boolean
+	 */
+	private static void check(String name, boolean passed) {
+		System.out.println(name + ": " + (passed ? "PASS" : "FAIL"));
+	}
+
+}
@@ -57,11 +57,13 @@ import org.keysupport.nist80073.PIVCard;
 import org.keysupport.nist80073.cardedge.DynamicAuthTempl;
 import org.keysupport.nist80073.cardedge.PIVAPDU;
 import org.keysupport.nist80073.datamodel.PIVCertificate;
+import org.keysupport.smartcardio.APDUTrace;
+import org.keysupport.smartcardio.APDUTraceBuffer;
 import org.keysupport.util.DataUtil;
 
 public class CAKTest {
 
-	private final static boolean debug = true;
+	private final static boolean debug = false;
 	private static PIVCard card = null;
 
 	/*****************************************************************************
@@ -88,6 +90,14 @@ public class CAKTest {
 			nonce = getNonce(256);
 
 
+			/*
+			 * Keep the APDUs, to be printed once the test is done
+			 */
+			APDUTraceBuffer trace = new APDUTraceBuffer(64, 512);
+			if (debug) {
+				APDUTrace.setSink(trace);
+			}
+
 			/*
 			 * Sign the nonce
 			 */
@@ -103,6 +113,9 @@ public class CAKTest {
 			 * Disconnect
 			 */
 			card.disconnect(false);
+			if (debug) {
+				trace.dump(System.out);
+			}
 
 		} catch (CardException e) {
 			e.printStackTrace();
@@ -157,8 +170,10 @@ public class CAKTest {
 					 * Digest the data to be signed
 					 */
 					rbDigest = DigestEngine.sHA256Sum(nonce);
-					System.out.println("SHA-256 Digest of our " + nonce.length
-							+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+					if (debug) {
+						System.out.println("SHA-256 Digest of our " + nonce.length
+								+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+					}
 
 					
 					System.out.println("RSA Mod is " + modsize + " bytes.");
@@ -180,21 +195,7 @@ public class CAKTest {
 					CommandAPDU gaapdu;
 					while (gaapdus.hasMoreElements()) {
 						gaapdu = gaapdus.nextElement();
-						if (debug) {
-							System.out
-									.println("PUT APDU: " + gaapdu.toString());
-							System.out.println("PUT APDU: "
-									+ DataUtil.byteArrayToString(gaapdu
-											.getBytes()));
-						}
 						response = channel.transmit(gaapdu);
-						if (debug) {
-							// Show response from last command APDU
-							System.out.println(response.toString()
-									+ ":\n"
-									+ DataUtil.byteArrayToString(response
-											.getData()));
-						}
 					}
 
 					DynamicAuthTempl gaResp = new DynamicAuthTempl(
@@ -228,8 +229,10 @@ public class CAKTest {
 						 * Digest the data to be signed
 						 */
 						rbDigest = DigestEngine.sHA256Sum(nonce);
-						System.out.println("SHA-256 Digest of our " + nonce.length
-								+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+						if (debug) {
+							System.out.println("SHA-256 Digest of our " + nonce.length
+									+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+						}
 					}
 					if (wSize >= 48 && wSize <= 64) {
 						wSize = 48;
@@ -238,8 +241,10 @@ public class CAKTest {
 						 * Digest the data to be signed
 						 */
 						rbDigest = DigestEngine.sHA384Sum(nonce);
-						System.out.println("SHA-384 Digest of our " + nonce.length
-								+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+						if (debug) {
+							System.out.println("SHA-384 Digest of our " + nonce.length
+									+ " byte random:\n" + DataUtil.byteArrayToString(rbDigest));
+						}
 					}
 					System.out.println("Key Size: " + wSize);
 
@@ -253,21 +258,7 @@ public class CAKTest {
 					CommandAPDU gaapdu;
 					while (gaapdus.hasMoreElements()) {
 						gaapdu = gaapdus.nextElement();
-						if (debug) {
-							System.out
-									.println("PUT APDU: " + gaapdu.toString());
-							System.out.println("PUT APDU: "
-									+ DataUtil.byteArrayToString(gaapdu
-											.getBytes()));
-						}
 						response = channel.transmit(gaapdu);
-						if (debug) {
-							// Show response from last command APDU
-							System.out.println(response.toString()
-									+ ":\n"
-									+ DataUtil.byteArrayToString(response
-											.getData()));
-						}
 					}
 
 					DynamicAuthTempl gaResp = new DynamicAuthTempl(
@@ -312,12 +303,14 @@ public class CAKTest {
 		Signature sig = null;
 
 		try {
-			System.out.println("Sig Bytes: "
-					+ DataUtil.byteArrayToString(signedData));
-			System.out.println("Msg Bytes: "
-					+ DataUtil.byteArrayToString(origData));
-			System.out.println("Public Key: "
-					+ DataUtil.byteArrayToString(cert.getPublicKey().getEncoded()));
+			if (debug) {
+				System.out.println("Sig Bytes: "
+						+ DataUtil.byteArrayToString(signedData));
+				System.out.println("Msg Bytes: "
+						+ DataUtil.byteArrayToString(origData));
+				System.out.println("Public Key: "
+						+ DataUtil.byteArrayToString(cert.getPublicKey().getEncoded()));
+			}
 			
 			sig = Signature.getInstance(sigAlg);
 			sig.initVerify(cert.getPublicKey());
@@ -343,8 +336,10 @@ public class CAKTest {
 		random = new SecureRandom();
 		random.nextBytes(nonce);
 
-		System.out.println("Our " + nonce.length + " byte random:\n"
-				+ DataUtil.byteArrayToString(nonce));
+		if (debug) {
+			System.out.println("Our " + nonce.length + " byte random:\n"
+					+ DataUtil.byteArrayToString(nonce));
+		}
 		return nonce;
 	}
 
@@ -27,11 +27,15 @@ package org.keysupport.tests;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.smartcardio.CardTerminal;
 import javax.smartcardio.TerminalFactory;
 
+import org.keysupport.encoding.Tag;
 import org.keysupport.nist80073.PIVCard;
 import org.keysupport.nist80073.datamodel.PIVCertificate;
 import org.keysupport.util.DataUtil;
@@ -85,57 +89,43 @@ public class CertDownload {
 
 
 			/*
-			 * Perform a POP test using the certificate for validation
+			 * Read the certificates, including any retired key management
+			 * certificates, in one pass
 			 */
-			// Get the cardAuth Certificate
-			PIVCertificate pivAuthPC = null;
-			PIVCertificate cardAuthPC = null;
-			PIVCertificate digSigPC = null;
-			PIVCertificate keyEncPC = null;
-
-			try {
-				pivAuthPC = card.getPIVAuthCert();
-				cardAuthPC = card.getCardAuthCert();
-				digSigPC = card.getDigSigCert();
-				keyEncPC = card.getKeyEnciphermentCert();
-			} catch (NullPointerException e) {
-				pivAuthPC = null;
-				cardAuthPC = null;
-				digSigPC = null;
-				keyEncPC = null;
+			Set<Tag> certTags = new LinkedHashSet<Tag>();
+			certTags.add(new Tag(Tag.PIV_CERT_PIVAUTH));
+			certTags.add(new Tag(Tag.PIV_CERT_CARDAUTH));
+			certTags.add(new Tag(Tag.PIV_CERT_DIGSIG));
+			certTags.add(new Tag(Tag.PIV_CERT_KEYMGMT));
+			for (int i = 0; i < 20; i++) {
+				certTags.add(new Tag(new byte[] { Tag.PIV_RET_CERT_KM01[0],
+						Tag.PIV_RET_CERT_KM01[1],
+						(byte) (Tag.PIV_RET_CERT_KM01[2] + i) }));
 			}
-
-			if (pivAuthPC != null) {
-				X509Certificate pivAuth = pivAuthPC.getCertificate();
-				System.out.println("### PIV Authentication Certificate ###");
-				System.out.println(pivAuth.toString());
-			} else {
-				System.out.println("### PIV Authentication Certificate ###");
-				System.out.println("NO PIV Authentication Certificate!");
-			}
-			if (cardAuthPC != null) {
-				X509Certificate cardAuth = cardAuthPC.getCertificate();
-				System.out.println("### Card Authentication Certificate ###");
-				System.out.println(cardAuth.toString());
-			} else {
-				System.out.println("### Card Authentication Certificate ###");
-				System.out.println("NO Card Authentication Certificate!");
-			}
-			if (digSigPC != null) {
-				X509Certificate digSig = digSigPC.getCertificate();
-				System.out.println("### Digital Signature Certificate ###");
-				System.out.println(digSig.toString());
-			} else {
-				System.out.println("### Digital Signature Certificate ###");
-				System.out.println("NO Digital Signature Certificate!");
-			}
-			if (keyEncPC != null) {
-				X509Certificate keyEnc = keyEncPC.getCertificate();
-				System.out.println("### Key Encipherment Certificate ###");
-				System.out.println(keyEnc.toString());
-			} else {
-				System.out.println("### Key Encipherment Certificate ###");
-				System.out.println("NO Key Encipherment Certificate!");
+			String[] names = { "PIV Authentication Certificate",
+					"Card Authentication Certificate",
+					"Digital Signature Certificate",
+					"Key Encipherment Certificate" };
+
+			Map<Tag, Object> certs = card.readObjects(certTags);
+
+			int i = 0;
+			for (Tag tag : certTags) {
+				String name = (i < names.length) ? names[i]
+						: "Retired Key Management Certificate "
+								+ (i - names.length + 1);
+				i++;
+				PIVCertificate pc = (PIVCertificate) certs.get(tag);
+				if (pc == null) {
+					if (i <= names.length) {
+						System.out.println("### " + name + " ###");
+						System.out.println("NO " + name + "!");
+					}
+					continue;
+				}
+				X509Certificate cert = pc.getCertificate();
+				System.out.println("### " + name + " ###");
+				System.out.println(cert.toString());
 			}
 
 			// Disconnect
@@ -0,0 +1,240 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.UUID;
+
+import org.keysupport.nist80073.CredentialIndex;
+import org.keysupport.tests.Timing.HotPath;
+
+/**
+ * Checks CredentialIndex against a HashMap, then times lookups in a large
+ * index.
+ * <p>
+ * The check adds and removes random FASC-Ns and GUIDs through a chain of
+ * Builders, each started from the last Snapshot, and compares every
+ * Snapshot with HashMaps given the same changes. The validity period of an
+ * entry is checked before, during and after it.
+ * <p>
+ * The timing lists the given number of random FASC-Ns (4 million by default)
+ * in a CredentialIndex and in a HashMap, and times a lookup of a listed
+ * FASC-N and of one that is not listed in each, in a random order so that
+ * lookups miss the processor caches as they would at a door. Timing prints
+ * the average time and the bytes allocated by the thread per lookup. The
+ * HashMap of 4 million entries needs a heap of about 2 GB (-Xmx2g).
+ *
+ * @author tejohnson
+ */
+public class CredentialIndexTimed {
+
+	// Milliseconds each lookup is measured
+	private final static long MEASURE = 2000;
+
+	// FASC-Ns listed for the timing
+	private final static int ENTRIES = 4000000;
+
+	// Keys and changes made by the check
+	private final static int CHECK_KEYS = 5000;
+	private final static int CHECK_CHANGES = 200000;
+	private final static int CHECK_SNAPSHOTS = 10;
+
+	/**
+	 * Method main.
+	 * @param args String[] optional number of FASC-Ns, and milliseconds to
+	 *            measure each lookup
+	 */
+	public static void main(String args[]) {
+		try {
+			int entries = (args.length > 0) ? Integer.parseInt(args[0])
+					: ENTRIES;
+			long measure = (args.length > 1) ? Long.parseLong(args[1])
+					: MEASURE;
+			check();
+			timeLookups(entries, measure);
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method check.
+	 * @throws Exception if a Snapshot does not match the HashMaps
+	 */
+	private static void check() throws Exception {
+		Random random = new Random(1);
+		HashMap<Long, Long> fascns = new HashMap<Long, Long>();
+		HashMap<UUID, Long> guids = new HashMap<UUID, Long>();
+		CredentialIndex.Builder builder = new CredentialIndex.Builder(0);
+		for (int i = 1; i <= CHECK_CHANGES; i++) {
+			// Spread the keys over the table with a multiplier
+			long fascn = random.nextInt(CHECK_KEYS) * 0x100000001L;
+			UUID guid = new UUID(random.nextInt(CHECK_KEYS), 0);
+			long doors = random.nextLong() | 1;
+			if (random.nextInt(3) == 0) {
+				if (builder.remove(fascn) != (fascns.remove(fascn) != null)
+						|| builder.remove(guid) != (guids.remove(guid) != null)) {
+					throw new Exception("Remove " + i + " does not match");
+				}
+			} else {
+				builder.add(fascn, doors, null, null);
+				fascns.put(fascn, doors);
+				builder.add(guid, doors, null, null);
+				guids.put(guid, doors);
+			}
+			if (i % (CHECK_CHANGES / CHECK_SNAPSHOTS) == 0) {
+				CredentialIndex.Snapshot snapshot = builder.build();
+				compare(snapshot, fascns, guids);
+				builder = new CredentialIndex.Builder(snapshot);
+			}
+		}
+		System.out.println(CHECK_SNAPSHOTS + " snapshots of " + CHECK_CHANGES
+				+ " changes match HashMap: PASS");
+
+		long now = System.currentTimeMillis();
+		Date from = new Date(now - 100000);
+		Date to = new Date(now + 100000);
+		CredentialIndex index = new CredentialIndex(builder.add(42L, 4L, from,
+				to).add(43L, 4L, to, null).build());
+		boolean passed = index.isAuthorized(42L, 2, now)
+				&& !index.isAuthorized(42L, 1, now)
+				&& !index.isAuthorized(42L, 2, now - 200000)
+				&& !index.isAuthorized(42L, 2, now + 200000)
+				&& !index.isAuthorized(43L, 2, now);
+		System.out.println("Doors and validity periods: "
+				+ (passed ? "PASS" : "FAIL"));
+	}
+
+	/**
+	 * Method compare.
+	 * @param snapshot CredentialIndex.Snapshot
+	 * @param fascns HashMap<Long, Long>
+	 * @param guids HashMap<UUID, Long>
+	 * @throws Exception if the snapshot does not match
+	 */
+	private static void compare(CredentialIndex.Snapshot snapshot,
+			HashMap<Long, Long> fascns, HashMap<UUID, Long> guids)
+			throws Exception {
+		if (snapshot.sizeFASCN() != fascns.size()
+				|| snapshot.sizeGUID() != guids.size()) {
+			throw new Exception("Sizes " + snapshot.sizeFASCN() + "/"
+					+ snapshot.sizeGUID() + " do not match " + fascns.size()
+					+ "/" + guids.size());
+		}
+		for (int k = 0; k < CHECK_KEYS; k++) {
+			long fascn = k * 0x100000001L;
+			Long doors = fascns.get(fascn);
+			if (snapshot.getDoors(fascn) != ((doors == null) ? 0 : doors
+					.longValue())) {
+				throw new Exception("FASC-N " + k + " does not match");
+			}
+			UUID guid = new UUID(k, 0);
+			doors = guids.get(guid);
+			if (snapshot.getDoors(guid) != ((doors == null) ? 0 : doors
+					.longValue())) {
+				throw new Exception("GUID " + k + " does not match");
+			}
+		}
+	}
+
+	/**
+	 * Method timeLookups.
+	 * @param entries int
+	 * @param measure long Milliseconds to measure each lookup
+	 * @throws Throwable if a lookup gives the wrong answer
+	 */
+	private static void timeLookups(int entries, long measure)
+			throws Throwable {
+		Random random = new Random(2);
+		final long[] keys = new long[entries];
+		final int[] order = new int[entries];
+		long start = System.nanoTime();
+		CredentialIndex.Builder builder = new CredentialIndex.Builder(entries);
+		for (int i = 0; i < entries; i++) {
+			keys[i] = random.nextLong();
+			builder.add(keys[i], 1L << (i & 63), null, null);
+			order[i] = i;
+		}
+		final CredentialIndex index = new CredentialIndex(builder.build());
+		System.out.println();
+		System.out.println("Built an index of "
+				+ index.getSnapshot().sizeFASCN() + " FASC-Ns in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		final HashMap<Long, Long> map = new HashMap<Long, Long>(entries * 2);
+		for (int i = 0; i < entries; i++) {
+			map.put(keys[i], 1L << (i & 63));
+		}
+		for (int i = entries - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < entries; i++) {
+			if (!index.isAuthorized(keys[i], i & 63, now)
+					|| index.isAuthorized(keys[i], (i + 1) & 63, now)) {
+				throw new Exception("Lookup of FASC-N " + i + " is wrong");
+			}
+		}
+
+		Timing timing = new Timing(System.out, measure);
+		timing.header("lookup");
+		timing.time("CredentialIndex listed", new HotPath() {
+			private int i;
+
+			@Override
+			public Object run() {
+				int k = order[this.i++ % order.length];
+				return Boolean.valueOf(index.isAuthorized(keys[k], k & 63, now));
+			}
+		});
+		timing.time("CredentialIndex not listed", new HotPath() {
+			private int i;
+
+			@Override
+			public Object run() {
+				int k = order[this.i++ % order.length];
+				return Boolean.valueOf(index.isAuthorized(~keys[k], 0, now));
+			}
+		});
+		timing.time("HashMap listed", new HotPath() {
+			private int i;
+
+			@Override
+			public Object run() {
+				return map.get(keys[order[this.i++ % order.length]]);
+			}
+		});
+		timing.time("HashMap not listed", new HotPath() {
+			private int i;
+
+			@Override
+			public Object run() {
+				return map.get(~keys[order[this.i++ % order.length]]);
+			}
+		});
+	}
+
+}
@@ -28,6 +28,7 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 
 import org.keysupport.nist80073.PIVCard;
+import org.keysupport.nist80073.PIVMetrics;
 import org.keysupport.nist80073.datamodel.CMSSignedDataObject;
 import org.keysupport.nist80073.datamodel.PIVCardHolderUniqueID;
 import org.keysupport.smartcardio.CardTerminal;
@@ -76,11 +77,14 @@ public class GetCHUIDTimed {
 			System.out.println("Verifying CHUID Signature:");
 			CMSSignedDataObject chuidSig = new CMSSignedDataObject(
 					chuid.getSignatureBytes(), chuid.getSignatureDataBytes());
+			chuidSig.setMetrics(PIVMetrics.getDefault());
 			if (chuidSig.verifySignature(true)) {
 				System.out.println("Signature Verified!");
 			} else {
 				System.out.println("Signature Verification Failed!");
 			}
+			//Print the time taken by each phase, in nanoseconds
+			System.out.println(PIVMetrics.getDefault().getReport());
 		} catch (Throwable e) {
 			e.printStackTrace();
 		}		
@@ -0,0 +1,262 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import org.keysupport.asn1.ASN1Factory;
+import org.keysupport.encoding.BERTLVFactory;
+import org.keysupport.encoding.Tag;
+import org.keysupport.encoding.TLVWriter;
+import org.keysupport.nist80073.datamodel.CMSSignedDataObject;
+import org.keysupport.nist80073.datamodel.FASCN;
+import org.keysupport.nist80073.datamodel.PIVCardHolderUniqueID;
+import org.keysupport.nist80073.datamodel.PIVCertificate;
+import org.keysupport.tests.Timing.HotPath;
+import org.keysupport.util.DataUtil;
+
+/**
+ * Times the parsing and signature paths that a card tap goes through, with
+ * fixed corpora, and no card or reader.
+ * <p>
+ * Each hot path is timed with Timing, which prints the average time and the
+ * bytes allocated by the thread per operation. A rise in either column for a
+ * path between two builds is a regression in the tap path.
+ * <p>
+ * The corpora are a CHUID signed with the content signing key below, the CMS
+ * signature object of that CHUID, and the certificate of the content signer,
+ * as it would be stored on a card both uncompressed and GZIP compressed.
+ * Output printed by the code under test is discarded while it is timed.
+ *
+ * @author tejohnson
+ */
+public class HotPathTimed {
+
+	// Milliseconds each hot path is measured
+	private final static long MEASURE = 2000;
+
+	// Self-signed P-256 content signing certificate and its PKCS#8 key
+	private final static String SIGNER_CERT = "MIIBdjCCARygAwIBAgIBATAKBggqhkjOPQQDAjAZMRcwFQYDVQQDDA5Db250ZW50"
+			+ "IFNpZ25lcjAgFw0yNjEwMTgwMjA2NDRaGA8yMTI2MDkyNDAyMDY0NFowGTEXMBUG"
+			+ "A1UEAwwOQ29udGVudCBTaWduZXIwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAAQe"
+			+ "Qz0sZWVAJUAcoZreDJZCp8N2qLyKUgWXukbyFURPLYC0j0d3wYnFY07+VhHPX4tr"
+			+ "JKiZNfXN1fSU0HLeyk1Xo1MwUTAdBgNVHQ4EFgQUj1DX8SNePXRj6LyIIbGscxhu"
+			+ "xQIwHwYDVR0jBBgwFoAUj1DX8SNePXRj6LyIIbGscxhuxQIwDwYDVR0TAQH/BAUw"
+			+ "AwEB/zAKBggqhkjOPQQDAgNIADBFAiEA4JfRhvf4WcRgaKeER5lPMpRN2+Gv9R9o"
+			+ "jzxTwo4A1X0CIBSrdMd6hgAXAAjilonVHn+uX1vm2FsWhqxcw67CHVGF";
+	private final static String SIGNER_KEY = "MIGHAgEAMBMGByqGSM49AgEGCCqGSM49AwEHBG0wawIBAQQgvNiKEKN8o3KjP+EE"
+			+ "TolWpDNK62pA3MNj9e4spIZ+sjihRANCAAQeQz0sZWVAJUAcoZreDJZCp8N2qLyK"
+			+ "UgWXukbyFURPLYC0j0d3wYnFY07+VhHPX4trJKiZNfXN1fSU0HLeyk1X";
+
+	private static PrintStream out;
+
+	/**
+	 * Method main.
+	 * @param args String[] optional milliseconds to measure each hot path
+	 */
+	public static void main(String args[]) {
+		try {
+			long measure = (args.length > 0) ? Long.parseLong(args[0]) : MEASURE;
+			final X509Certificate signer = (X509Certificate) CertificateFactory
+					.getInstance("X.509").generateCertificate(
+							new java.io.ByteArrayInputStream(Base64.getDecoder()
+									.decode(SIGNER_CERT)));
+			final PrivateKey key = KeyFactory.getInstance("EC").generatePrivate(
+					new PKCS8EncodedKeySpec(Base64.getDecoder().decode(
+							SIGNER_KEY)));
+
+			// Discard the output of the code under test
+			out = System.out;
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+
+			// The corpora
+			final FASCN fascn = new FASCN("9999", "9999", "999999", "0", "1",
+					"0000000000", "1", "1223", "2");
+			final byte[] fascnBytes = fascn.toByteArray();
+			PIVCardHolderUniqueID unsigned = new PIVCardHolderUniqueID(fascn,
+					null, null, null, DataUtil.uuidToByteArray(UUID
+							.fromString("d18b1e0d-3938-4601-9f5f-b9a6d0442e4d")),
+					"20301231");
+			unsigned.getEncoded();
+			final byte[] signedData = unsigned.getSignatureDataBytes();
+			final byte[] signature = new CMSSignedDataObject(signedData, signer,
+					key).sign();
+			unsigned.setSignatureBytes(signature);
+			final byte[] chuid = unsigned.getEncoded();
+			final byte[] certObject = new PIVCertificate(signer.getEncoded(),
+					null).getEncoded();
+			final byte[] gzipCertObject = gzipCertObject(signer.getEncoded());
+			final Tag chuidSignature = new Tag(Tag.CHUID_SIGNATURE);
+
+			out.println("CHUID " + chuid.length + " bytes, signature "
+					+ signature.length + " bytes, certificate "
+					+ certObject.length + "/" + gzipCertObject.length + " bytes");
+			out.println();
+			Timing timing = new Timing(out, measure);
+			timing.header("hot path");
+
+			timing.time("BERTLVFactory.decodeTLV", new HotPath() {
+				@Override
+				public Object run() {
+					Object last = null;
+					Enumeration<?> e = BERTLVFactory.decodeTLV(chuid);
+					while (e.hasMoreElements()) {
+						last = e.nextElement();
+					}
+					return last;
+				}
+			});
+			timing.time("BERTLVFactory.encodeTLV", new HotPath() {
+				@Override
+				public Object run() {
+					return BERTLVFactory.encodeTLV(chuidSignature, signature)
+							.getBytes();
+				}
+			});
+			timing.time("ASN1Factory.decodeASN1Object", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					Object last = null;
+					Enumeration<?> e = ASN1Factory.decodeASN1Object(signature);
+					while (e.hasMoreElements()) {
+						last = e.nextElement();
+					}
+					return last;
+				}
+			});
+			timing.time("FASCN decode", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return new FASCN(fascnBytes);
+				}
+			});
+			timing.time("FASCN.toLong", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return Long.valueOf(FASCN.toLong(fascnBytes, 0));
+				}
+			});
+			timing.time("FASCN encode", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return new FASCN("9999", "9999", "999999", "0", "1",
+							"0000000000", "1", "1223", "2").toByteArray();
+				}
+			});
+			timing.time("PIVCardHolderUniqueID parse", new HotPath() {
+				@Override
+				public Object run() {
+					return new PIVCardHolderUniqueID(chuid);
+				}
+			});
+			timing.time("getSignatureDataBytes", new HotPath() {
+				@Override
+				public Object run() {
+					return new PIVCardHolderUniqueID(chuid)
+							.getSignatureDataBytes();
+				}
+			});
+			timing.time("PIVCertificate.getCertificate", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return new PIVCertificate(certObject).getCertificate();
+				}
+			});
+			timing.time("getCertificate (GZIP)", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return new PIVCertificate(gzipCertObject).getCertificate();
+				}
+			});
+			timing.time("CMSSignedDataObject verify", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					PIVCardHolderUniqueID c = new PIVCardHolderUniqueID(chuid);
+					CMSSignedDataObject cms = new CMSSignedDataObject(c
+							.getSignatureBytes(), c.getSignatureDataBytes());
+					if (!cms.verifySignature(false)) {
+						throw new Exception("CHUID signature did not verify");
+					}
+					return cms;
+				}
+			});
+			timing.time("CMSSignedDataObject sign", new HotPath() {
+				@Override
+				public Object run() throws Throwable {
+					return new CMSSignedDataObject(signedData, signer, key)
+							.sign();
+				}
+			});
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method gzipCertObject.
+	 *
+	 * PIVCertificate only compresses certificates too large for the card, so
+	 * the compressed object is built here.
+	 *
+	 * @param certificate byte[]
+	 * @return byte[] Certificate object with a GZIP compressed certificate
+	 * @throws java.io.IOException
+	 */
+	private static byte[] gzipCertObject(byte[] certificate)
+			throws java.io.IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(certificate);
+		gzos.close();
+		byte[] gz = baos.toByteArray();
+		byte[] certinfo = new byte[] { PIVCertificate.CERTINFO_GZIP_COMPRESSION };
+		byte[] encoded = new byte[TLVWriter.sizeOf(Tag.PIV_CERT_CERTIFICATE, gz)
+				+ TLVWriter.sizeOf(Tag.PIV_CERT_CERTINFO, certinfo)
+				+ TLVWriter.sizeOf(Tag.ERROR_DETECT_CODE, null)];
+		TLVWriter writer = new TLVWriter(encoded);
+		writer.put(Tag.PIV_CERT_CERTIFICATE, gz);
+		writer.put(Tag.PIV_CERT_CERTINFO, certinfo);
+		writer.put(Tag.ERROR_DETECT_CODE, null);
+		writer.finish();
+		return encoded;
+	}
+
+}
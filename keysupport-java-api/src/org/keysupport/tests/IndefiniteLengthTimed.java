@@ -0,0 +1,142 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+package org.keysupport.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.keysupport.encoding.TLVCursor;
+import org.keysupport.encoding.TLVEncodingException;
+
+/**
+ * Times a full walk of indefinite length BER encodings of increasing size.
+ * <p>
+ * With no arguments, CMS-like structures are generated with a growing number
+ * of nested, indefinite length SignerInfo-style elements followed by sibling
+ * elements. Files given as arguments (e.g. a CMS blob saved from a card's
+ * security object) are timed as well. The ns/byte column should stay flat as
+ * the size grows.
+ */
+public class IndefiniteLengthTimed {
+
+	private final static int ITERATIONS = 200;
+
+	/**
+	 * Method main.
+	 * @param args String[] optional BER/DER files to time
+	 */
+	public static void main(String args[]) {
+		try {
+			System.out.println("bytes\telements\tns/walk\tns/byte");
+			for (int i = 0; i < args.length; i++) {
+				byte[] blob = Files.readAllBytes(new File(args[i]).toPath());
+				System.out.print(args[i] + ": ");
+				time(blob);
+			}
+			for (int signers = 1; signers <= 4096; signers *= 4) {
+				time(generate(signers));
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method time.
+	 * @param encoded byte[]
+	 * @throws TLVEncodingException
+	 */
+	private static void time(byte[] encoded) throws TLVEncodingException {
+		int elements = 0;
+		// Warm up
+		for (int i = 0; i < ITERATIONS; i++) {
+			elements = walk(new TLVCursor(encoded));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			walk(new TLVCursor(encoded));
+		}
+		long ns = (System.nanoTime() - start) / ITERATIONS;
+		System.out.println(encoded.length + "\t" + elements + "\t" + ns + "\t"
+				+ String.format("%.2f", (double) ns / encoded.length));
+	}
+
+	/**
+	 * Method walk.
+	 * @param cursor TLVCursor
+	 * @return int Number of elements visited
+	 * @throws TLVEncodingException
+	 */
+	private static int walk(TLVCursor cursor) throws TLVEncodingException {
+		int count = 0;
+		while (cursor.next()) {
+			count++;
+			if (cursor.isConstructed()) {
+				count += walk(cursor.getChildren());
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Method generate.
+	 *
+	 * ContentInfo { OID, [0] { SignedData { ..., SET { SignerInfo * n } } } }
+	 * with every constructed element using the indefinite length form.
+	 *
+	 * @param signers int
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	private static byte[] generate(int signers) throws IOException {
+		byte[] oid = { 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,
+				(byte) 0xf7, 0x0d, 0x01, 0x07, 0x02 };
+		byte[] eoc = { 0x00, 0x00 };
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(new byte[] { 0x30, (byte) 0x80 });
+		baos.write(oid);
+		baos.write(new byte[] { (byte) 0xa0, (byte) 0x80, 0x30, (byte) 0x80,
+				0x02, 0x01, 0x03 });
+		baos.write(new byte[] { 0x31, (byte) 0x80 });
+		for (int i = 0; i < signers; i++) {
+			// SignerInfo
+			baos.write(new byte[] { 0x30, (byte) 0x80, 0x02, 0x01, 0x01 });
+			baos.write(new byte[] { 0x30, (byte) 0x80 });
+			baos.write(oid);
+			baos.write(new byte[] { 0x05, 0x00 });
+			baos.write(eoc);
+			// Signature value
+			baos.write(new byte[] { 0x04, 0x40 });
+			baos.write(new byte[0x40]);
+			baos.write(eoc);
+		}
+		baos.write(eoc);
+		// Sibling following the nested SET, within SignedData
+		baos.write(new byte[] { 0x04, 0x02, 0x00, 0x00 });
+		baos.write(eoc);
+		baos.write(eoc);
+		baos.write(eoc);
+		return baos.toByteArray();
+	}
+
+}
@@ -0,0 +1,252 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateFactory;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.keysupport.encoding.der.structures.SingleResponse;
+import org.keysupport.keystore.CertValidator;
+import org.keysupport.keystore.OCSPClient;
+import org.keysupport.keystore.OCSPResponder;
+
+/**
+ * Load tests OCSPClient against an in process OCSPResponder, with no
+ * network.
+ * <p>
+ * Three runs are made with the given number of threads:
+ * <ul>
+ * <li>All threads ask for the status of one certificate at once, while the
+ * responder takes 100 ms to answer; the responder should see one request.</li>
+ * <li>All threads look up the cached status for the measurement period, and
+ * the lookups per second and the time per lookup are printed.</li>
+ * <li>All threads validate the certificate with a CertValidator that checks
+ * revocation with the client, and the validations per second are printed.
+ * A revoked certificate is checked to fail first.</li>
+ * </ul>
+ * The CA, its key and the certificates are fixed, and valid until 2126.
+ *
+ * @author tejohnson
+ */
+public class OCSPClientTimed {
+
+	private final static int THREADS = 16;
+
+	// Milliseconds each run is measured
+	private final static long MEASURE = 2000;
+
+	// Milliseconds the responder takes to answer the concurrent lookups
+	private final static long LATENCY = 100;
+
+	// P-256 CA, its PKCS#8 key, and two end entity certificates it issued
+	private final static String CA_CERT = "MIIBljCCATugAwIBAgIURzx+jb7UIzOE33vdElqAZF/ShxswCgYIKoZIzj0EAwIw"
+			+ "FzEVMBMGA1UEAwwMT0NTUCBUZXN0IENBMCAXDTI2MTAxODAyMzgzMFoYDzIxMjYw"
+			+ "OTI0MDIzODMwWjAXMRUwEwYDVQQDDAxPQ1NQIFRlc3QgQ0EwWTATBgcqhkjOPQIB"
+			+ "BggqhkjOPQMBBwNCAATbhIPHIRqHkOkw0o3+PVMBJ/9eFXyjrVlPBu8x+zdPqKo+"
+			+ "FuMqlrR1Tm75M9XOtXqQlUQIc7Oc0PQ9i36chEI0o2MwYTAdBgNVHQ4EFgQUe1D1"
+			+ "6fm0tUc+41lSw1QR+Y1r5u8wHwYDVR0jBBgwFoAUe1D16fm0tUc+41lSw1QR+Y1r"
+			+ "5u8wDwYDVR0TAQH/BAUwAwEB/zAOBgNVHQ8BAf8EBAMCAQYwCgYIKoZIzj0EAwID"
+			+ "SQAwRgIhAMo+P0z+4hHlqHRQGDMHbVUZyP3l/2uea2MQCSQtu6bRAiEA9akSxgzo"
+			+ "QJxTStkAf62Mr8tXdALD342hzvtc1gOC464=";
+	private final static String CA_KEY = "MIGHAgEAMBMGByqGSM49AgEGCCqGSM49AwEHBG0wawIBAQQgbgfbbiqiMdiHQK5Q"
+			+ "0dF8MA2nS988Ecn/lhprnKjuIlChRANCAATbhIPHIRqHkOkw0o3+PVMBJ/9eFXyj"
+			+ "rVlPBu8x+zdPqKo+FuMqlrR1Tm75M9XOtXqQlUQIc7Oc0PQ9i36chEI0";
+	private final static String EE_CERT = "MIIBiTCCAS+gAwIBAgICA+kwCgYIKoZIzj0EAwIwFzEVMBMGA1UEAwwMT0NTUCBU"
+			+ "ZXN0IENBMCAXDTI2MTAxODAyMzgzMFoYDzIxMjYwOTI0MDIzODMwWjAgMR4wHAYD"
+			+ "VQQDDBVDYXJkIEF1dGhlbnRpY2F0aW9uIDEwWTATBgcqhkjOPQIBBggqhkjOPQMB"
+			+ "BwNCAAQp8BKMQ1np5U1G6JRoZsU2KBuIx4f7/X1Qq0kJIqs9L0C8U2XKm/zDKRYq"
+			+ "QlAwfmbv4MCGaAtoaWvP/5lBsUpMo2AwXjAMBgNVHRMBAf8EAjAAMA4GA1UdDwEB"
+			+ "/wQEAwIHgDAdBgNVHQ4EFgQUP2t9y+7l++zcSPi+gj3KF/eKX5owHwYDVR0jBBgw"
+			+ "FoAUe1D16fm0tUc+41lSw1QR+Y1r5u8wCgYIKoZIzj0EAwIDSAAwRQIgWFdVnO8h"
+			+ "XmXSBATYXezWqH7cNWVsgpIDVSyJxK4fPasCIQClTc3iXz3iPLIFgjH7rS5JPf7k"
+			+ "oIrMPtfdrg1UyFOpTg==";
+	private final static String REVOKED_CERT = "MIIBiTCCAS+gAwIBAgICA+owCgYIKoZIzj0EAwIwFzEVMBMGA1UEAwwMT0NTUCBU"
+			+ "ZXN0IENBMCAXDTI2MTAxODAyMzgzMFoYDzIxMjYwOTI0MDIzODMwWjAgMR4wHAYD"
+			+ "VQQDDBVDYXJkIEF1dGhlbnRpY2F0aW9uIDIwWTATBgcqhkjOPQIBBggqhkjOPQMB"
+			+ "BwNCAATme1bcwYtPWaLgy3hkMNAmIaIzGh18Cxief4Qm5kr80q1pptTCSWaDdQ1M"
+			+ "be/2xTvy4Dhvu8PDjtcq9s+tCKM4o2AwXjAMBgNVHRMBAf8EAjAAMA4GA1UdDwEB"
+			+ "/wQEAwIHgDAdBgNVHQ4EFgQUTKS/Dgdp87q97/c1jv7RO9+jUykwHwYDVR0jBBgw"
+			+ "FoAUe1D16fm0tUc+41lSw1QR+Y1r5u8wCgYIKoZIzj0EAwIDSAAwRQIhAKBAi869"
+			+ "NuM9cUVB1VgRJ/Il9iqG8fb0vqN1fY5vyZ7nAiBSdjLvqM+/sbHXaJ9KuIFqdnXv"
+			+ "jO9YU6sBCfVlKvjyNw==";
+
+	/**
+	 * One operation run by each thread.
+	 */
+	private interface Operation {
+
+		/**
+		 * Method run.
+		 * @throws Exception
+		 */
+		void run() throws Exception;
+	}
+
+	/**
+	 * Method main.
+	 * @param args String[] optional number of threads, and milliseconds to
+	 *            measure each run
+	 */
+	public static void main(String args[]) {
+		try {
+			int threads = (args.length > 0) ? Integer.parseInt(args[0])
+					: THREADS;
+			long measure = (args.length > 1) ? Long.parseLong(args[1])
+					: MEASURE;
+			final X509Certificate ca = certificate(CA_CERT);
+			PrivateKey key = KeyFactory.getInstance("EC").generatePrivate(
+					new PKCS8EncodedKeySpec(Base64.getDecoder().decode(CA_KEY)));
+			final X509Certificate ee = certificate(EE_CERT);
+			X509Certificate revoked = certificate(REVOKED_CERT);
+
+			OCSPResponder responder = new OCSPResponder(ca, key);
+			responder.revoke(revoked.getSerialNumber(), new Date(System
+					.currentTimeMillis() - 86400000L), CRLReason.KEY_COMPROMISE);
+			final OCSPClient client = new OCSPClient(Collections
+					.singletonList(ca), new URI("http://localhost/ocsp"),
+					responder, 1024);
+
+			// Concurrent lookups of a status that is not cached
+			responder.setLatency(LATENCY);
+			run(threads, 0, new Operation() {
+				@Override
+				public void run() throws Exception {
+					if (client.getStatus(ee).getStatus() != SingleResponse.GOOD) {
+						throw new Exception("Status is not good");
+					}
+				}
+			});
+			System.out.println(threads + " concurrent lookups: "
+					+ responder.getRequests() + " responder request(s)");
+			responder.setLatency(0);
+
+			// Cached lookups
+			long ops = run(threads, measure, new Operation() {
+				@Override
+				public void run() throws Exception {
+					client.getStatus(ee);
+				}
+			});
+			System.out.println("Cached lookups: " + (ops * 1000 / measure)
+					+ "/s, " + (measure * 1000000L * threads / ops)
+					+ " ns per lookup per thread");
+
+			// Validation with the client as the revocation checker
+			final CertValidator validator = new CertValidator(Collections
+					.singleton(new TrustAnchor(ca, null)), null);
+			validator.setOCSPClient(client);
+			System.out.println("Validate: good " + validator.validate(ee)
+					+ ", revoked " + validator.validate(revoked));
+			long before = responder.getRequests();
+			ops = run(threads, measure, new Operation() {
+				@Override
+				public void run() throws Exception {
+					if (!validator.validate(ee)) {
+						throw new Exception("Validation failed");
+					}
+				}
+			});
+			System.out.println("Validations: " + (ops * 1000 / measure)
+					+ "/s, " + (responder.getRequests() - before)
+					+ " responder request(s)");
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method run.
+	 * 
+	 * Starts the threads together and runs the operation on each, once if
+	 * millis is 0, or else repeatedly for millis milliseconds.
+	 * 
+	 * @param threads int
+	 * @param millis long
+	 * @param op Operation
+	 * @return long Number of operations run by all threads
+	 * @throws Exception
+	 */
+	private static long run(int threads, final long millis, final Operation op)
+			throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong count = new AtomicLong();
+		final Exception[] failure = new Exception[1];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						long end = System.nanoTime() + millis * 1000000L;
+						long n = 0;
+						do {
+							op.run();
+							n++;
+						} while (System.nanoTime() < end);
+						count.addAndGet(n);
+					} catch (Exception e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+		}
+		return count.get();
+	}
+
+	/**
+	 * Method certificate.
+	 * @param base64 String
+	 * @return X509Certificate
+	 * @throws Exception
+	 */
+	private static X509Certificate certificate(String base64) throws Exception {
+		return (X509Certificate) CertificateFactory.getInstance("X.509")
+				.generateCertificate(new ByteArrayInputStream(Base64
+						.getDecoder().decode(base64)));
+	}
+
+}
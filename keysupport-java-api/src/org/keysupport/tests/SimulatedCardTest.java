@@ -0,0 +1,167 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.UUID;
+
+import javax.smartcardio.CommandAPDU;
+
+import org.keysupport.keystore.CipherEngine;
+import org.keysupport.keystore.DigestEngine;
+import org.keysupport.nist80073.PIVCard;
+import org.keysupport.nist80073.ResponseAssembler;
+import org.keysupport.nist80073.cardedge.DynamicAuthTempl;
+import org.keysupport.nist80073.cardedge.PIVAPDU;
+import org.keysupport.nist80073.datamodel.FASCN;
+import org.keysupport.nist80073.datamodel.PIVCardHolderUniqueID;
+import org.keysupport.encoding.Tag;
+import org.keysupport.smartcardio.SimulatedCard;
+import org.keysupport.util.DataUtil;
+
+/**
+ * Runs PIVCard end to end against a SimulatedCard, with no reader and no
+ * system properties set.
+ * <p>
+ * The card is run with short and with extended length APDUs, returning
+ * 61xx as a card does, and joining the responses as the Sun provider does
+ * by default. Each time the CHUID is read, a facial image larger than one
+ * APDU is read before and after the PIN is verified, and the Card
+ * Authentication Key signs a challenge, which is verified.
+ *
+ * @author tejohnson
+ */
+public class SimulatedCardTest {
+
+	private final static byte[] PIN = "123456".getBytes();
+
+	/**
+	 * Method main.
+	 * @param args String[]
+	 */
+	public static void main(String args[]) {
+		try {
+			System.out.println("sun.security.smartcardio.t1GetResponse: "
+					+ System.getProperty("sun.security.smartcardio.t1GetResponse"));
+			run(false, false);
+			run(true, false);
+			run(false, true);
+			run(true, true);
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method run.
+	 * @param extendedLength boolean
+	 * @param getResponse boolean
+	 * @throws Throwable
+	 */
+	private static void run(boolean extendedLength, boolean getResponse)
+			throws Throwable {
+		System.out.println();
+		System.out.println("Extended length: " + extendedLength
+				+ ", GET RESPONSE sent by the card: " + getResponse);
+
+		// The card's contents
+		SimulatedCard sc = new SimulatedCard(extendedLength, getResponse);
+		FASCN fascn = new FASCN("9999", "9999", "999999", "0", "1",
+				"0000000001", "1", "1223", "2");
+		UUID guid = UUID.fromString("d18b1e0d-3938-4601-9f5f-b9a6d0442e4d");
+		sc.putObject(new Tag(Tag.PIV_CHUID), new PIVCardHolderUniqueID(fascn,
+				null, null, null, DataUtil.uuidToByteArray(guid), "20301231")
+				.getEncoded());
+		byte[] image = new byte[3000];
+		new SecureRandom().nextBytes(image);
+		sc.putObject(new Tag(Tag.PIV_CARDHOLDER_FACIAL_IMAGE), image);
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+		kpg.initialize(new ECGenParameterSpec("secp256r1"));
+		KeyPair cak = kpg.generateKeyPair();
+		sc.setKey(CipherEngine.CARD_AUTH_KEY, cak.getPrivate());
+		sc.setPIN(PIN, 3);
+
+		PIVCard card = new PIVCard(sc);
+		check("Extended length detected",
+				card.isExtendedLength() == extendedLength);
+
+		PIVCardHolderUniqueID chuid = card.getCardHolderUniqueID();
+		check("CHUID read", chuid != null
+				&& Arrays.equals(chuid.getFASCN().toByteArray(), fascn
+						.toByteArray()) && guid.equals(chuid.getGUID()));
+
+		Tag facialImage = new Tag(Tag.PIV_CARDHOLDER_FACIAL_IMAGE);
+		boolean denied;
+		try {
+			card.getPIVDataStream(facialImage).readAllBytes();
+			denied = false;
+		} catch (IOException e) {
+			denied = true;
+		}
+		check("Facial image denied before PIN", denied);
+		card.getUserAuthenticatedChannel(PIN);
+		// The stream holds the 0x53 template, with a 4 byte tag and length
+		byte[] data = card.getPIVDataStream(facialImage).readAllBytes();
+		check("Facial image read after PIN", data.length == image.length + 4
+				&& Arrays.equals(image, Arrays.copyOfRange(data, 4,
+						data.length)));
+
+		// Sign a challenge with the Card Authentication Key
+		byte[] challenge = new byte[32];
+		new SecureRandom().nextBytes(challenge);
+		Enumeration<CommandAPDU> apdus = PIVAPDU.generalAuthenticate(
+				CipherEngine.ECC_CURVE_P256, CipherEngine.CARD_AUTH_KEY,
+				new DynamicAuthTempl(DynamicAuthTempl.POP_TO_TERM_ECC,
+						DigestEngine.sHA256Sum(challenge)).getEncoded(), card
+						.isExtendedLength());
+		ResponseAssembler ra = new ResponseAssembler();
+		while (apdus.hasMoreElements()) {
+			ra.transmit(card.getChannel(), apdus.nextElement());
+		}
+		Signature verifier = Signature.getInstance("SHA256withECDSA");
+		verifier.initVerify(cak.getPublic());
+		verifier.update(challenge);
+		check("Card Authentication Key signature", ra.getSW() == 0x9000
+				&& verifier.verify(new DynamicAuthTempl(ra.getData())
+						.getTemplateValue()));
+
+		card.disconnect(true);
+		System.out.println("APDUs received by the card: " + sc.getCommands());
+	}
+
+	/**
+	 * Method check.
+	 * @param name String
+	 * @param passed boolean
+	 */
+	private static void check(String name, boolean passed) {
+		System.out.println(name + ": " + (passed ? "PASS" : "FAIL"));
+	}
+
+}
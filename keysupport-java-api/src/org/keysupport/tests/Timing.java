@@ -0,0 +1,136 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ *
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.tests;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times hot paths for the timing drivers in this package.
+ * <p>
+ * Each hot path is run for a warm up period, then for a measurement period,
+ * and the number of operations, the average time and the bytes allocated by
+ * the thread per operation are printed on one line. The allocation column is
+ * read from the JVM's per-thread allocation counter, so it shows the garbage
+ * a path produces in the same way as a GC profiler would. An instance is
+ * used by one thread.
+ *
+ * @author tejohnson
+ */
+final class Timing {
+
+	// Milliseconds each hot path is run before it is measured
+	private final static long WARMUP = 1000;
+
+	// Operations between checks of the clock
+	private final static int BATCH = 16;
+
+	/**
+	 * A hot path to be timed.
+	 */
+	interface HotPath {
+
+		/**
+		 * Method run.
+		 * @return Object The result, which is kept so it is not optimized away
+		 * @throws Throwable
+		 */
+		Object run() throws Throwable;
+	}
+
+	// Results of the hot paths
+	private static volatile Object sink;
+
+	private final PrintStream out;
+	private final long measure;
+
+	/**
+	 * Constructor for Timing.
+	 * @param out PrintStream Receives the results
+	 * @param measure long Milliseconds to measure each hot path
+	 */
+	Timing(PrintStream out, long measure) {
+		this.out = out;
+		this.measure = measure;
+	}
+
+	/**
+	 * Method header.
+	 * @param title String Heading of the name column
+	 */
+	void header(String title) {
+		this.out.println(pad(title) + "\tops\tns/op\tB/op");
+	}
+
+	/**
+	 * Method time.
+	 * @param name String
+	 * @param path HotPath
+	 * @throws Throwable
+	 */
+	void time(String name, HotPath path) throws Throwable {
+		run(path, WARMUP);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long start = System.nanoTime();
+		long ops = run(path, this.measure);
+		long ns = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+		this.out.println(pad(name) + "\t" + ops + "\t" + (ns / ops) + "\t"
+				+ (allocated / ops));
+	}
+
+	/**
+	 * Method run.
+	 * @param path HotPath
+	 * @param millis long
+	 * @return long Number of operations run
+	 * @throws Throwable
+	 */
+	private static long run(HotPath path, long millis) throws Throwable {
+		long end = System.nanoTime() + millis * 1000000L;
+		long ops = 0;
+		do {
+			for (int i = 0; i < BATCH; i++) {
+				sink = path.run();
+			}
+			ops += BATCH;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * Method pad.
+	 * @param name String
+	 * @return String The name padded to a column
+	 */
+	private static String pad(String name) {
+		StringBuffer sb = new StringBuffer(name);
+		while (sb.length() < 32) {
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+}
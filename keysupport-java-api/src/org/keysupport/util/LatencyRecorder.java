@@ -0,0 +1,185 @@
+/******************************************************************************
+ * The following is part of the KeySupport.org PIV API
+ * 
+ * The KeySupport.org PIV API is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the KeySupport.org PIV API.  If not,
+ * see <http://www.gnu.org/licenses/>.
+ *
+ * @author Todd E. Johnson (tejohnson@yahoo.com)
+ *****************************************************************************/
+
+
+package org.keysupport.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, recorded without locks or allocation.
+ * <p>
+ * As in HdrHistogram, values are counted in buckets whose width grows with
+ * the value: values below 128 have a bucket each, and every larger power of
+ * two is divided into 64 buckets, so a value is reported within 1.6% of the
+ * value recorded, over the whole range of a long. Values are normally
+ * nanoseconds, but any non-negative long may be recorded.
+ * <p>
+ * record() may be called from any number of threads. The count, total and
+ * buckets are updated separately, so a snapshot taken while values are being
+ * recorded may be off by the values in flight, and reset() may lose values
+ * recorded while it runs.
+ *
+ * @author tejohnson
+ */
+public class LatencyRecorder {
+
+	// Buckets per power of two (above the linear range) is 1 << (SUB_BITS - 1)
+	private final static int SUB_BITS = 7;
+	private final static int HALF = 1 << (SUB_BITS - 1);
+	private final static int BUCKETS = HALF * (64 - SUB_BITS) + 2 * HALF;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Method record.
+	 * @param value long Negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.counts.incrementAndGet(index(value));
+		this.count.incrementAndGet();
+		this.total.addAndGet(value);
+		long m = this.max.get();
+		while (value > m && !this.max.compareAndSet(m, value)) {
+			m = this.max.get();
+		}
+	}
+
+	/**
+	 * Method getCount.
+	 * @return long Number of values recorded
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * Method getTotal.
+	 * @return long Sum of the values recorded
+	 */
+	public long getTotal() {
+		return this.total.get();
+	}
+
+	/**
+	 * Method getMax.
+	 * @return long Largest value recorded, or 0
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Method getMean.
+	 * @return double Mean of the values recorded, or 0
+	 */
+	public double getMean() {
+		long n = this.count.get();
+		return (n == 0) ? 0 : (double) this.total.get() / n;
+	}
+
+	/**
+	 * Method getValueAtPercentile.
+	 *
+	 * Returns the largest value in the bucket holding the given percentile,
+	 * so the value at the 100th percentile is getMax().
+	 *
+	 * @param percentile double From 0 to 100
+	 * @return long The value at the percentile, or 0 if nothing is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile=" + percentile);
+		}
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += this.counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Method reset.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	/**
+	 * Method index.
+	 *
+	 * The value is shifted right until it fits in SUB_BITS bits; the bucket
+	 * is given by the shift and the remaining bits.
+	 *
+	 * @param value long Non-negative
+	 * @return int
+	 */
+	private static int index(long value) {
+		int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value)
+				- SUB_BITS);
+		return HALF * shift + (int) (value >>> shift);
+	}
+
+	/**
+	 * Method highestValue.
+	 * @param index int
+	 * @return long Largest value counted in the bucket
+	 */
+	private static long highestValue(int index) {
+		int shift = (index < 2 * HALF) ? 0 : index / HALF - 1;
+		long top = index - HALF * shift;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * Method toString.
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + (long) getMean() + " p50="
+				+ getValueAtPercentile(50) + " p99="
+				+ getValueAtPercentile(99) + " max=" + getMax();
+	}
+
+}